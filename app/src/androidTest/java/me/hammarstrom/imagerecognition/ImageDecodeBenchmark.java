@@ -0,0 +1,108 @@
+package me.hammarstrom.imagerecognition;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import me.hammarstrom.imagerecognition.utilities.ImageHelper;
+
+/**
+ * Compares decoding a large camera JPEG at full resolution and scaling it down
+ * with decoding it directly at a sample size by {@link ImageHelper#decodeSampledBitmap}.
+ *
+ * Results are written to logcat with tag ImageDecodeBenchmark.
+ */
+public class ImageDecodeBenchmark extends AndroidTestCase {
+
+    private static final String TAG = "ImageDecodeBenchmark";
+
+    private static final int ITERATIONS = 5;
+
+    private static final int[][] CAPTURE_SIZES = {
+            {2048, 1536},   // 3 MP
+            {3264, 2448},   // 8 MP
+            {4160, 3120},   // 13 MP
+    };
+
+    public void testDecodeLargeCaptures() throws Exception {
+        for (int[] size : CAPTURE_SIZES) {
+            byte[] jpeg = createJpeg(size[0], size[1]);
+
+            long fullNanos = Long.MAX_VALUE;
+            long sampledNanos = Long.MAX_VALUE;
+            long fullPeakBytes = 0;
+            long sampledPeakBytes = 0;
+
+            for (int i = 0; i < ITERATIONS; i++) {
+                long start = System.nanoTime();
+                Bitmap full = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length);
+                Bitmap scaled = ImageHelper.scaleBitmapDown(full, ImageHelper.VISION_MAX_DIMENSION);
+                fullNanos = Math.min(fullNanos, System.nanoTime() - start);
+                fullPeakBytes = full.getByteCount() + scaled.getByteCount();
+                full.recycle();
+                scaled.recycle();
+
+                start = System.nanoTime();
+                Bitmap sampled = ImageHelper.decodeSampledBitmap(jpeg, ImageHelper.VISION_MAX_DIMENSION, Bitmap.Config.RGB_565);
+                sampledNanos = Math.min(sampledNanos, System.nanoTime() - start);
+
+                // Intermediate bitmap decoded at sample size, 2 bytes per pixel in RGB_565
+                int inSampleSize = ImageHelper.calculateInSampleSize(size[0], size[1], ImageHelper.VISION_MAX_DIMENSION);
+                sampledPeakBytes = (long) (size[0] / inSampleSize) * (size[1] / inSampleSize) * 2 + sampled.getByteCount();
+                sampled.recycle();
+            }
+
+            Log.i(TAG, String.format("%dx%d (%d KB): full decode %.1f ms, %d KB | sampled decode %.1f ms, %d KB",
+                    size[0], size[1], jpeg.length / 1024,
+                    fullNanos / 1e6, fullPeakBytes / 1024,
+                    sampledNanos / 1e6, sampledPeakBytes / 1024));
+
+            assertTrue(sampledPeakBytes < fullPeakBytes);
+        }
+    }
+
+    public void testSampledDecodeKeepsMaxDimension() throws Exception {
+        byte[] jpeg = createJpeg(3264, 2448);
+        Bitmap sampled = ImageHelper.decodeSampledBitmap(jpeg, ImageHelper.VISION_MAX_DIMENSION, Bitmap.Config.RGB_565);
+
+        assertEquals(ImageHelper.VISION_MAX_DIMENSION, sampled.getWidth());
+        assertEquals(825, sampled.getHeight());
+    }
+
+    public void testInSampleSize() throws Exception {
+        assertEquals(1, ImageHelper.calculateInSampleSize(1024, 768, ImageHelper.VISION_MAX_DIMENSION));
+        assertEquals(1, ImageHelper.calculateInSampleSize(2048, 1536, ImageHelper.VISION_MAX_DIMENSION));
+        assertEquals(2, ImageHelper.calculateInSampleSize(3264, 2448, ImageHelper.VISION_MAX_DIMENSION));
+        assertEquals(2, ImageHelper.calculateInSampleSize(2448, 3264, ImageHelper.VISION_MAX_DIMENSION));
+        assertEquals(4, ImageHelper.calculateInSampleSize(4608, 3456, ImageHelper.VISION_MAX_DIMENSION));
+    }
+
+    /**
+     * Create a JPEG with some structure and noise, so it compresses like a camera image
+     */
+    private static byte[] createJpeg(int width, int height) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint();
+        Random random = new Random(width);
+
+        canvas.drawColor(Color.DKGRAY);
+        for (int i = 0; i < 400; i++) {
+            paint.setColor(Color.rgb(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+            canvas.drawCircle(random.nextInt(width), random.nextInt(height), 20 + random.nextInt(width / 8), paint);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, 95, out);
+        bitmap.recycle();
+
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import android.test.AndroidTestCase;
+
+import java.io.File;
+
+import me.hammarstrom.imagerecognition.core.VisionResult;
+
+/**
+ * Tests both tiers of {@link VisionResultCache}, on a directory of its own
+ * in the application cache dir.
+ */
+public class VisionResultCacheTest extends AndroidTestCase {
+
+    private static final long TTL_MS = 60 * 1000;
+
+    private File mDirectory;
+    private VisionResult mCat;
+    private VisionResult mDog;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = new File(getContext().getCacheDir(), "vision-results-test");
+        deleteDirectory();
+
+        mCat = new VisionResult.Builder().addLabel("cat", 0.9f).build();
+        mDog = new VisionResult.Builder().addLabel("dog", 0.8f).build();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteDirectory();
+        super.tearDown();
+    }
+
+    public void testMemoryTierEvictsLeastRecentlyUsed() throws Exception {
+        VisionResultCache cache = new VisionResultCache(2, VisionResultCache.DEFAULT_DISK_BYTES, TTL_MS);
+        cache.put("a", mCat);
+        cache.put("b", mDog);
+        cache.get("a");
+        cache.put("c", mCat);
+
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get("b"));
+        assertSame(mCat, cache.get("a"));
+        assertSame(mCat, cache.get("c"));
+    }
+
+    public void testCountersTrackHitsAndMisses() throws Exception {
+        VisionResultCache cache = new VisionResultCache(1, VisionResultCache.DEFAULT_DISK_BYTES, TTL_MS);
+        cache.setDirectory(mDirectory);
+        cache.put("a", mCat);
+        cache.put("b", mDog);
+
+        assertSame(mDog, cache.get("b"));
+        assertEquals(1, cache.getMemoryHitCount());
+
+        // Pushed out of memory by b, still on disk
+        assertEquals("cat", cache.get("a").getLabelDescription(0));
+        assertEquals(1, cache.getDiskHitCount());
+
+        assertNull(cache.get("c"));
+        assertEquals(1, cache.getMissCount());
+    }
+
+    public void testErrorsAreNotCached() throws Exception {
+        VisionResultCache cache = new VisionResultCache(2, VisionResultCache.DEFAULT_DISK_BYTES, TTL_MS);
+        cache.put("a", new VisionResult.Builder().setError("failed").build());
+
+        assertNull(cache.get("a"));
+    }
+
+    public void testExpiredEntriesAreMisses() throws Exception {
+        VisionResultCache cache = new VisionResultCache(2, VisionResultCache.DEFAULT_DISK_BYTES, 50);
+        cache.put("a", mCat);
+        assertSame(mCat, cache.get("a"));
+
+        Thread.sleep(100);
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getMissCount());
+    }
+
+    public void testExpiredFilesAreDeleted() throws Exception {
+        VisionResultCache cache = new VisionResultCache(1, VisionResultCache.DEFAULT_DISK_BYTES, TTL_MS);
+        cache.setDirectory(mDirectory);
+        cache.put("a", mCat);
+        cache.put("b", mDog);
+
+        File file = new File(mDirectory, "a.bin");
+        assertTrue(file.setLastModified(System.currentTimeMillis() - 2 * TTL_MS));
+
+        assertNull(cache.get("a"));
+        assertFalse(file.exists());
+        // a pushed out of memory by b, then its file expired
+        assertEquals(2, cache.getEvictionCount());
+    }
+
+    public void testDiskTierStaysWithinCap() throws Exception {
+        VisionResultCache probe = new VisionResultCache(1, VisionResultCache.DEFAULT_DISK_BYTES, TTL_MS);
+        probe.setDirectory(mDirectory);
+        probe.put("probe", mCat);
+        long entryBytes = probe.getDiskBytes();
+        assertTrue(entryBytes > 0);
+        probe.clear();
+        assertEquals(0, probe.getDiskBytes());
+
+        VisionResultCache cache = new VisionResultCache(1, entryBytes * 2, TTL_MS);
+        cache.setDirectory(mDirectory);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            String key = "entry" + i;
+            cache.put(key, mCat);
+            // Make the order of the files clear to the oldest first trimming
+            assertTrue(new File(mDirectory, key + ".bin").setLastModified(now - (3 - i) * 1000));
+        }
+
+        assertFalse(new File(mDirectory, "entry0.bin").exists());
+        assertTrue(new File(mDirectory, "entry1.bin").exists());
+        assertTrue(new File(mDirectory, "entry2.bin").exists());
+        assertEquals(entryBytes * 2, cache.getDiskBytes());
+    }
+
+    public void testEntriesAreWrittenThroughTempFiles() throws Exception {
+        assertTrue(mDirectory.mkdirs());
+        File leftover = new File(mDirectory, "a.tmp");
+        assertTrue(leftover.createNewFile());
+
+        VisionResultCache cache = new VisionResultCache(1, VisionResultCache.DEFAULT_DISK_BYTES, TTL_MS);
+        cache.setDirectory(mDirectory);
+        assertTrue(leftover.exists());
+
+        cache.put("a", mCat);
+        assertFalse(leftover.exists());
+        assertTrue(new File(mDirectory, "a.bin").exists());
+        assertEquals(1, mDirectory.list().length);
+
+        // A half written entry left by a crash is never read
+        assertTrue(new File(mDirectory, "b.tmp").createNewFile());
+        VisionResultCache reopened = new VisionResultCache(1, VisionResultCache.DEFAULT_DISK_BYTES, TTL_MS);
+        reopened.setDirectory(mDirectory);
+        assertNull(reopened.get("b"));
+        assertEquals("cat", reopened.get("a").getLabelDescription(0));
+        assertFalse(new File(mDirectory, "b.tmp").exists());
+    }
+
+    private void deleteDirectory() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+}
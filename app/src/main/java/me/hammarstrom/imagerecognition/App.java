@@ -2,6 +2,11 @@ package me.hammarstrom.imagerecognition;
 
 import android.app.Application;
 
+import me.hammarstrom.imagerecognition.utilities.BitmapPool;
+import me.hammarstrom.imagerecognition.vision.UploadSpool;
+import me.hammarstrom.imagerecognition.vision.VisionClientHolder;
+import me.hammarstrom.imagerecognition.vision.VisionResultCache;
+
 /**
  * Created by Fredrik Hammarström on 01/04/16.
  */
@@ -10,6 +15,24 @@ public class App extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
+
+        // Create the Vision client and open a connection before the first capture
+        VisionClientHolder.warmUp();
+
+        VisionResultCache.init(this);
+        UploadSpool.init(this);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        BitmapPool.getInstance().trimMemory(level);
+    }
+
+    @Override
+    public void onTerminate() {
+        super.onTerminate();
+        VisionClientHolder.shutdown();
     }
 
 }
@@ -18,14 +18,18 @@ package me.hammarstrom.imagerecognition.activities;
 import android.Manifest;
 import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
-import android.animation.AnimatorSet;
 import android.animation.ObjectAnimator;
+import android.content.BroadcastReceiver;
+import android.content.Context;
 import android.content.DialogInterface;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.hardware.Camera;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.speech.tts.TextToSpeech;
 import android.support.annotation.NonNull;
 import android.support.v4.view.GestureDetectorCompat;
@@ -33,50 +37,145 @@ import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
 import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
-import android.view.animation.OvershootInterpolator;
 import android.widget.Button;
 import android.widget.FrameLayout;
 import android.widget.LinearLayout;
 import android.widget.RelativeLayout;
+import android.widget.TextView;
 
-import com.google.api.services.vision.v1.model.BatchAnnotateImagesResponse;
-import com.google.api.services.vision.v1.model.EntityAnnotation;
-import com.google.api.services.vision.v1.model.FaceAnnotation;
-
-import java.util.ArrayList;
-import java.util.List;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 import me.hammarstrom.imagerecognition.R;
+import me.hammarstrom.imagerecognition.core.CaptureQueue;
+import me.hammarstrom.imagerecognition.core.RenderPlan;
+import me.hammarstrom.imagerecognition.core.RenderPlanner;
+import me.hammarstrom.imagerecognition.core.VisionResult;
 import me.hammarstrom.imagerecognition.utilities.CameraPreview;
-import me.hammarstrom.imagerecognition.utilities.DeviceDimensionsHelper;
+import me.hammarstrom.imagerecognition.utilities.CameraSizePolicy;
+import me.hammarstrom.imagerecognition.utilities.CaptureStripView;
 import me.hammarstrom.imagerecognition.utilities.FaceFoundHelper;
 import me.hammarstrom.imagerecognition.utilities.FaceGraphicOverlay;
+import me.hammarstrom.imagerecognition.utilities.ImageHelper;
 import me.hammarstrom.imagerecognition.utilities.PermissionUtils;
-import me.hammarstrom.imagerecognition.utilities.ScoreView;
+import me.hammarstrom.imagerecognition.utilities.PipelineTrace;
+import me.hammarstrom.imagerecognition.utilities.ResultsView;
+import me.hammarstrom.imagerecognition.vision.CloudVisionBackend;
 import me.hammarstrom.imagerecognition.vision.CloudVisionRequest;
+import me.hammarstrom.imagerecognition.vision.FaceDetectorBackend;
+import me.hammarstrom.imagerecognition.vision.HedgingBackend;
+import me.hammarstrom.imagerecognition.vision.LiveAnalyzer;
+import me.hammarstrom.imagerecognition.vision.LocalFaceBackend;
+import me.hammarstrom.imagerecognition.vision.PlayServicesFaceDetector;
+import me.hammarstrom.imagerecognition.vision.RequestOutcomeStats;
+import me.hammarstrom.imagerecognition.vision.RetryPolicy;
+import me.hammarstrom.imagerecognition.vision.RetryingBackend;
+import me.hammarstrom.imagerecognition.vision.UploadSpool;
+import me.hammarstrom.imagerecognition.vision.VisionBackend;
+import me.hammarstrom.imagerecognition.vision.VisionRequest;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.Subscription;
 import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action0;
 import rx.functions.Action1;
+import rx.functions.Func1;
 import rx.schedulers.Schedulers;
+import rx.subscriptions.CompositeSubscription;
 
-public class MainActivity extends AppCompatActivity implements View.OnClickListener {
+public class MainActivity extends AppCompatActivity implements View.OnClickListener, LiveAnalyzer.Listener,
+        UploadSpool.Listener, ResultsView.Listener, CaptureQueue.Listener<RenderPlan> {
 
     private final String TAG = MainActivity.this.getClass().getName();
 
     private static final int RC_HANDLE_CAMERA_PERM = 2;
 
+    private static final float LABEL_MIN_SCORE = 0.6f;
+    private static final String LABEL_INTRO = "The image may contain ";
+    private static final int LIVE_LABEL_COUNT = 5;
+
+    // Captures analyzed at the same time in pipelined mode, and how often auto capture shoots
+    private static final int PIPELINE_MAX_PENDING = 4;
+    private static final long AUTO_CAPTURE_INTERVAL_MS = 300;
+
     private Camera mCamera;
     private CameraPreview mCameraPreview;
     private FrameLayout mCameraPreviewLayout;
     private RelativeLayout mProcessingLayout;
     private TextToSpeech mTts;
     private Toolbar mToolbar;
-    private LinearLayout mScoreResultLayout;
+    private ResultsView mResultsView;
     private LinearLayout mLoadingLayout;
     private Button mButtonReset;
+    private TextView mTraceOverlay;
+    private FaceGraphicOverlay mFaceOverlay;
+    private CaptureStripView mCaptureStrip;
     private GestureDetectorCompat mGestureDetector;
 
+    @CameraSizePolicy.Policy
+    private int mSizePolicy = CameraSizePolicy.POLICY_ANALYSIS;
+    private Camera.Size mPictureSize;
+    private long mCaptureStartTime;
+    private long mTraceCaptureStart = PipelineTrace.NOT_STARTED;
+    private long mTraceAnimationStart = PipelineTrace.NOT_STARTED;
+
+    private LiveAnalyzer mLiveAnalyzer;
+    private boolean mLiveMode;
+    private String mLastLiveLabel;
+
+    private boolean mPipelineMode;
+    private boolean mLatestResultOnly;
+    private boolean mAutoCapture;
+    private CaptureQueue<RenderPlan> mCaptureQueue;
+    // Tag of the capture being taken, the camera takes one picture at a time
+    private int mShutterTag = -1;
+    private Subscription mAutoCaptureSubscription;
+    // Requests of pipelined captures in flight
+    private final CompositeSubscription mPipelineSubscriptions = new CompositeSubscription();
+
+    private VisionBackend mVisionBackend;
+    private FaceDetectorBackend mFaceDetector;
+    private VisionBackend mFaceBackend;
+    private boolean mEmotionDetail;
+    // Read when planning, off the main thread
+    private volatile VisionResult mLocalFaces;
+    private int mCaptureCount;
+    private RenderPlanner mRenderPlanner;
+
+    /**
+     * Replays spooled captures when the device gets connected
+     */
+    private final BroadcastReceiver mConnectivityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            ConnectivityManager connectivityManager = (ConnectivityManager) getSystemService(CONNECTIVITY_SERVICE);
+            NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+            if (networkInfo != null && networkInfo.isConnected()) {
+                replaySpool();
+            }
+        }
+    };
+
+    /**
+     * Prepares the {@link RenderPlan} of a result, off the main thread
+     */
+    private final Func1<VisionResult, RenderPlan> mPlanFunction = new Func1<VisionResult, RenderPlan>() {
+        @Override
+        public RenderPlan call(VisionResult result) {
+            long traceStart = PipelineTrace.start();
+            RenderPlan plan = mRenderPlanner.plan(result, mLocalFaces);
+            PipelineTrace.end(PipelineTrace.STAGE_PLAN, traceStart);
+            return plan;
+        }
+    };
 
     /**
      *
@@ -84,21 +183,195 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     private Camera.PictureCallback mPictureCallback = new Camera.PictureCallback() {
         @Override
         public void onPictureTaken(final byte[] data, Camera camera) {
-            final Bitmap tmp = BitmapFactory.decodeByteArray(data, 0, data.length);
-            CloudVisionRequest.doRequest(tmp)
+            PipelineTrace.end(PipelineTrace.STAGE_SHUTTER, mTraceCaptureStart);
+            if (mPictureSize != null) {
+                Log.d(TAG, "capture to callback: " + (SystemClock.elapsedRealtime() - mCaptureStartTime) + " ms"
+                        + ", policy: " + CameraSizePolicy.getName(mSizePolicy)
+                        + ", picture size: " + mPictureSize.width + "x" + mPictureSize.height
+                        + ", " + data.length + " bytes");
+            }
+
+            // Faces are detected on the device, unless the user wants to know their expressions
+            boolean cloudFaces = mEmotionDetail || !mFaceBackend.supports(VisionRequest.FEATURE_FACES);
+            mLocalFaces = null;
+            if (!cloudFaces) {
+                detectFacesLocally(data);
+            }
+
+            final int features = VisionRequest.FEATURE_LABELS | (cloudFaces ? VisionRequest.FEATURE_FACES : 0);
+            mVisionBackend.analyze(new VisionRequest(data, features))
                     .subscribeOn(Schedulers.io())
+                    .observeOn(Schedulers.computation())
+                    .map(mPlanFunction)
                     .observeOn(AndroidSchedulers.mainThread())
-                    .subscribe(new Action1<BatchAnnotateImagesResponse>() {
+                    .subscribe(new Action1<RenderPlan>() {
                         @Override
-                        public void call(BatchAnnotateImagesResponse response) {
+                        public void call(RenderPlan plan) {
                             showLoading(false);
+                            if (mLiveMode || mPipelineMode) {
+                                // Live analysis or pipelined capture was started while waiting, it owns the result layout now
+                                return;
+                            }
                             mProcessingLayout.setVisibility(View.VISIBLE);
-                            convertResponseToString(response);
+                            applyRenderPlan(plan);
+
+                            // Requests get through again, send the captures waiting in the spool
+                            replaySpool();
+                        }
+                    }, new Action1<Throwable>() {
+                        @Override
+                        public void call(Throwable throwable) {
+                            Log.d(TAG, "Vision request failed: " + throwable.getMessage());
+                            showLoading(false);
+
+                            // Keep the capture if it may succeed later, ex. when back online
+                            boolean spooled = RetryPolicy.isRetryable(throwable);
+                            if (spooled) {
+                                spoolCapture(data, features);
+                            }
+                            showRequestFailed(spooled);
                         }
                     });
         }
     };
 
+    /**
+     * Store a capture in the {@link UploadSpool}, scaled down to the size that would be uploaded
+     *
+     * @param data The captured JPEG
+     * @param features The wanted features
+     */
+    private void spoolCapture(final byte[] data, final int features) {
+        final long capturedAt = System.currentTimeMillis();
+        final Scheduler.Worker worker = Schedulers.io().createWorker();
+        worker.schedule(new Action0() {
+            @Override
+            public void call() {
+                byte[] jpeg = CloudVisionRequest.toAnalysisJpeg(data);
+                if (jpeg != null && UploadSpool.getInstance().add(new VisionRequest(jpeg, features), capturedAt)) {
+                    Log.d(TAG, "capture spooled, " + UploadSpool.getInstance());
+                }
+                worker.unsubscribe();
+            }
+        });
+    }
+
+    /**
+     * Takes the picture of a pipelined capture. The preview is restarted
+     * right away, the capture is analyzed while the next one is taken.
+     */
+    private Camera.PictureCallback mPipelinedPictureCallback = new Camera.PictureCallback() {
+        @Override
+        public void onPictureTaken(final byte[] data, Camera camera) {
+            PipelineTrace.end(PipelineTrace.STAGE_SHUTTER, mTraceCaptureStart);
+            camera.startPreview();
+
+            final int tag = mShutterTag;
+            mShutterTag = -1;
+            final CaptureQueue<RenderPlan> queue = mCaptureQueue;
+            if (queue == null || tag < 0) {
+                return;
+            }
+
+            // Labels only, faces would be drawn on a preview that has moved on
+            final int features = VisionRequest.FEATURE_LABELS;
+            Subscriber<RenderPlan> subscriber = new Subscriber<RenderPlan>() {
+                @Override
+                public void onNext(RenderPlan plan) {
+                    // The queue is replaced when the mode is stopped or its order changed
+                    if (queue == mCaptureQueue) {
+                        queue.complete(tag, plan);
+                        mCaptureStrip.invalidate();
+                    }
+                }
+
+                @Override
+                public void onCompleted() {
+                    mPipelineSubscriptions.remove(this);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    mPipelineSubscriptions.remove(this);
+                    Log.d(TAG, "Vision request of capture " + tag + " failed: " + throwable.getMessage());
+                    if (RetryPolicy.isRetryable(throwable)) {
+                        spoolCapture(data, features);
+                    }
+                    if (queue == mCaptureQueue) {
+                        queue.fail(tag);
+                        mCaptureStrip.invalidate();
+                    }
+                }
+            };
+            mPipelineSubscriptions.add(subscriber);
+
+            mVisionBackend.analyze(new VisionRequest(data, features))
+                    .subscribeOn(Schedulers.io())
+                    .observeOn(Schedulers.computation())
+                    .map(mPlanFunction)
+                    .observeOn(AndroidSchedulers.mainThread())
+                    .subscribe(subscriber);
+        }
+    };
+
+    @Override
+    public void onCaptureDelivered(int tag, RenderPlan plan) {
+        Log.d(TAG, "capture " + tag + ": " + plan.getResult());
+        mResultsView.showResults(plan, LIVE_LABEL_COUNT, false);
+
+        // Only the best label is spoken, to keep up with the captures
+        if (plan.getLabelCount() > 0) {
+            mTts.speak(plan.getLabelDescription(0),
+                    mLatestResultOnly ? TextToSpeech.QUEUE_FLUSH : TextToSpeech.QUEUE_ADD, null);
+        }
+    }
+
+    /**
+     * Send the captures waiting in the {@link UploadSpool}
+     */
+    private void replaySpool() {
+        UploadSpool.getInstance().replay(mVisionBackend, UploadSpool.DEFAULT_BATCH_SIZE, Schedulers.io());
+    }
+
+    @Override
+    public void onSpooledResult(UploadSpool.SpooledResult spooledResult) {
+        Log.d(TAG, "spooled capture analyzed: " + spooledResult.getResult() + ", " + UploadSpool.getInstance());
+
+        VisionResult result = spooledResult.getResult();
+        if (mLiveMode || result.getLabelCount() == 0) {
+            return;
+        }
+        mTts.speak(getString(R.string.tts_spooled_result, result.getLabelDescription(0)), TextToSpeech.QUEUE_ADD, null);
+    }
+
+    /**
+     * Detect faces in the captured image on the device and
+     * draw them without waiting for the Vision API response
+     *
+     * @param data The captured JPEG
+     */
+    private void detectFacesLocally(byte[] data) {
+        final int capture = mCaptureCount;
+        mFaceBackend.analyze(new VisionRequest(data, VisionRequest.FEATURE_FACES))
+                .subscribeOn(Schedulers.computation())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(new Action1<VisionResult>() {
+                    @Override
+                    public void call(VisionResult result) {
+                        if (result.getFaceCount() == 0 || capture != mCaptureCount || mLiveMode || mPipelineMode) {
+                            return;
+                        }
+                        mLocalFaces = result;
+                        mFaceOverlay.setFaces(result);
+                    }
+                }, new Action1<Throwable>() {
+                    @Override
+                    public void call(Throwable throwable) {
+                        Log.d(TAG, "Local face detection failed: " + throwable.getMessage());
+                    }
+                });
+    }
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -109,6 +382,11 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         setSupportActionBar(mToolbar);
         mCameraPreviewLayout.setOnClickListener(this);
         mButtonReset.setOnClickListener(this);
+        mResultsView.setListener(this);
+
+        // Faces are drawn on top of the camera preview
+        mFaceOverlay = new FaceGraphicOverlay(this);
+        mCameraPreviewLayout.addView(mFaceOverlay);
 
 //        mGestureDetector = new GestureDetectorCompat(this, new CameraPreviewGestureListener());
 //        mCameraPreviewLayout.setOnTouchListener(new View.OnTouchListener() {
@@ -127,6 +405,120 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
                 }
             }
         });
+
+        // Slow requests are hedged, failed ones retried, and all of them end within the deadline
+        RequestOutcomeStats stats = RequestOutcomeStats.getInstance();
+        mVisionBackend = new RetryingBackend(
+                new HedgingBackend(new CloudVisionBackend(), Schedulers.io(), stats),
+                new RetryPolicy(),
+                RetryingBackend.DEFAULT_ATTEMPT_TIMEOUT_MS,
+                RetryingBackend.DEFAULT_DEADLINE_MS,
+                Schedulers.io(),
+                stats);
+        mFaceDetector = new PlayServicesFaceDetector(getApplicationContext());
+        mFaceBackend = new LocalFaceBackend(mFaceDetector);
+        mRenderPlanner = new RenderPlanner(LABEL_MIN_SCORE, LABEL_INTRO,
+                ResultsView.createLabelMeasurer(this), FaceFoundHelper.getBuilder(this));
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_main, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(R.id.action_live_analysis).setChecked(mLiveMode);
+        menu.findItem(R.id.action_pipelined_capture).setChecked(mPipelineMode);
+        menu.findItem(R.id.action_latest_result_only).setChecked(mLatestResultOnly);
+        menu.findItem(R.id.action_auto_capture).setChecked(mAutoCapture);
+        menu.findItem(getSizePolicyItemId(mSizePolicy)).setChecked(true);
+        menu.findItem(R.id.action_emotion_detail).setChecked(mEmotionDetail);
+        menu.findItem(R.id.action_pipeline_trace).setChecked(PipelineTrace.isEnabled());
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.action_live_analysis:
+                if (mLiveMode) {
+                    stopLiveAnalysis();
+                } else {
+                    startLiveAnalysis();
+                }
+                return true;
+            case R.id.action_pipelined_capture:
+                if (mPipelineMode) {
+                    stopPipelinedCapture();
+                } else {
+                    startPipelinedCapture();
+                }
+                return true;
+            case R.id.action_latest_result_only:
+                mLatestResultOnly = !mLatestResultOnly;
+                if (mPipelineMode) {
+                    // Captures in flight are ignored, the new queue delivers in the new order
+                    startCaptureQueue();
+                }
+                return true;
+            case R.id.action_auto_capture:
+                mAutoCapture = !mAutoCapture;
+                if (mAutoCapture && !mPipelineMode) {
+                    startPipelinedCapture();
+                } else if (mAutoCapture) {
+                    startAutoCapture();
+                } else {
+                    stopAutoCapture();
+                }
+                return true;
+            case R.id.action_size_max_quality:
+                setSizePolicy(CameraSizePolicy.POLICY_MAX_QUALITY);
+                return true;
+            case R.id.action_size_analysis:
+                setSizePolicy(CameraSizePolicy.POLICY_ANALYSIS);
+                return true;
+            case R.id.action_size_fastest:
+                setSizePolicy(CameraSizePolicy.POLICY_FASTEST);
+                return true;
+            case R.id.action_emotion_detail:
+                mEmotionDetail = !mEmotionDetail;
+                return true;
+            case R.id.action_pipeline_trace:
+                setTraceEnabled(!PipelineTrace.isEnabled());
+                return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private static int getSizePolicyItemId(@CameraSizePolicy.Policy int policy) {
+        switch (policy) {
+            case CameraSizePolicy.POLICY_MAX_QUALITY:
+                return R.id.action_size_max_quality;
+            case CameraSizePolicy.POLICY_FASTEST:
+                return R.id.action_size_fastest;
+            case CameraSizePolicy.POLICY_ANALYSIS:
+            default:
+                return R.id.action_size_analysis;
+        }
+    }
+
+    /**
+     * Change the picture size policy, the camera is reopened to apply it
+     *
+     * @param policy The policy
+     */
+    private void setSizePolicy(@CameraSizePolicy.Policy int policy) {
+        if (policy == mSizePolicy) {
+            return;
+        }
+        mSizePolicy = policy;
+
+        if (mCamera != null) {
+            releaseCamera();
+            createCameraSource();
+        }
     }
 
     /**
@@ -136,9 +528,11 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         mToolbar = (Toolbar) findViewById(R.id.toolbar);
         mCameraPreviewLayout = (FrameLayout) findViewById(R.id.camera_preview);
         mProcessingLayout = (RelativeLayout) findViewById(R.id.processing_layout);
-        mScoreResultLayout = (LinearLayout) findViewById(R.id.score_result_layout);
+        mResultsView = (ResultsView) findViewById(R.id.results_view);
         mLoadingLayout = (LinearLayout) findViewById(R.id.loading_layout);
         mButtonReset = (Button) findViewById(R.id.button_reset);
+        mTraceOverlay = (TextView) findViewById(R.id.trace_overlay);
+        mCaptureStrip = (CaptureStripView) findViewById(R.id.capture_strip);
     }
 
     /**
@@ -154,6 +548,9 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
             // Set auto focus mode
             Camera.Parameters parameters = camera.getParameters();
             parameters.setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE);
+
+            // Don't capture more pixels than the analysis needs
+            mPictureSize = CameraSizePolicy.apply(parameters, mSizePolicy, ImageHelper.VISION_MAX_DIMENSION);
             camera.setParameters(parameters);
 
         } catch (Exception e) {
@@ -198,6 +595,16 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
             mCamera = getCameraInstance();
             mCameraPreview = new CameraPreview(this, mCamera);
             mCameraPreviewLayout.addView(mCameraPreview);
+            mFaceOverlay.bringToFront();
+
+            // Continue live analysis after the activity was paused
+            if (mLiveMode && mCamera != null) {
+                mLiveAnalyzer = new LiveAnalyzer(mCamera, mVisionBackend, this, LiveAnalyzer.DEFAULT_MIN_REQUEST_INTERVAL_MS);
+                mLiveAnalyzer.start();
+            }
+            if (mPipelineMode && mAutoCapture && mCamera != null) {
+                startAutoCapture();
+            }
         }
     }
 
@@ -208,6 +615,10 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     protected void onResume() {
         super.onResume();
         createCameraSource();
+
+        // The sticky broadcast replays the spool right away when connected
+        UploadSpool.getInstance().setListener(this, AndroidSchedulers.mainThread());
+        registerReceiver(mConnectivityReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
     }
 
     /**
@@ -216,12 +627,38 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     @Override
     protected void onPause() {
         super.onPause();
+        unregisterReceiver(mConnectivityReceiver);
+        UploadSpool.getInstance().setListener(null, null);
+        releaseCamera();
+    }
+
+    /**
+     * Stop everything using the camera and release it
+     */
+    private void releaseCamera() {
+        if (mLiveAnalyzer != null) {
+            mLiveAnalyzer.stop();
+            mLiveAnalyzer = null;
+        }
+
+        // The picture being taken is lost with the camera
+        stopAutoCapture();
+        if (mCaptureQueue != null && mShutterTag >= 0) {
+            mCaptureQueue.fail(mShutterTag);
+            mCaptureStrip.invalidate();
+        }
+        mShutterTag = -1;
+
         if (mCamera != null){
             mCamera.setPreviewCallback(null);
             mCameraPreview.getHolder().removeCallback(mCameraPreview);
             mCamera.release();
             mCamera = null;
         }
+        if (mCameraPreview != null) {
+            mCameraPreviewLayout.removeView(mCameraPreview);
+            mCameraPreview = null;
+        }
     }
 
     /**
@@ -230,15 +667,24 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        mPipelineSubscriptions.clear();
         mTts.shutdown();
+        mFaceDetector.release();
     }
 
     @Override
     public void onClick(View v) {
         switch (v.getId()) {
             case R.id.camera_preview:
+                if (mPipelineMode) {
+                    takePipelinedCapture();
+                    break;
+                }
                 showLoading(true);
                 mCameraPreviewLayout.setOnClickListener(null);
+                mCaptureStartTime = SystemClock.elapsedRealtime();
+                mTraceCaptureStart = PipelineTrace.beginCapture();
+                mCaptureCount++;
                 mCamera.takePicture(null, null, mPictureCallback);
                 //mCamera.setPreviewCallback(null);
                 //mCamera.stopPreview();
@@ -249,101 +695,309 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         }
     }
 
-    private void convertResponseToString(BatchAnnotateImagesResponse response) {
-        Log.d(TAG, ":: " + response.getResponses().toString());
-        List<FaceAnnotation> faces = response.getResponses().get(0).getFaceAnnotations();
-        List<EntityAnnotation> labels = response.getResponses().get(0).getLabelAnnotations();
+    /**
+     * Show and speak a {@link RenderPlan}. It was prepared off the main
+     * thread, here its labels are only handed to the {@link ResultsView}.
+     *
+     * @param plan The plan
+     */
+    private void applyRenderPlan(RenderPlan plan) {
+        Log.d(TAG, ":: " + plan.getResult());
+
+        // Set reset button visibility to visible
+        mButtonReset.setVisibility(View.VISIBLE);
 
-        // Label string to be populated with data for TextToSpeech
-        String label = "";
-        if (labels != null && labels.size() > 0) {
-            label = "The image may contain ";
-            List<Animator> scoreViewAnimations = new ArrayList<>();
-            List<Animator> scoreAlphaAnimations = new ArrayList<>();
-            List<Animator> showScoreAnimations = new ArrayList<>();
+        if (plan.hasLabels()) {
+            long viewsTraceStart = PipelineTrace.start();
+            mResultsView.showResults(plan, Integer.MAX_VALUE, true);
+            PipelineTrace.end(PipelineTrace.STAGE_VIEWS, viewsTraceStart);
+            mTraceAnimationStart = PipelineTrace.start();
+        } else {
+            mButtonReset.setAlpha(1f);
+        }
+
+        // Faces detected on the device are already drawn
+        if (plan.getFaceCount() > 0) {
+            mFaceOverlay.setFaces(plan.getFaceVertices(), plan.getFaceCount(), plan.getCapture());
+        }
+
+        // Add the detected image data to TTS engine
+        RequestOutcomeStats.getInstance().recordShutterToSpeech(SystemClock.elapsedRealtime() - mCaptureStartTime);
+        Log.d(TAG, "request outcomes: " + RequestOutcomeStats.getInstance());
+        PipelineTrace.end(PipelineTrace.STAGE_TAP_TO_SPEECH, mTraceCaptureStart);
+        updateTraceOverlay();
+        mTts.speak(plan.getLabelUtterance(), TextToSpeech.QUEUE_FLUSH, null);
+        mTts.speak(plan.getFacesUtterance(), TextToSpeech.QUEUE_ADD, null);
+    }
+
+    @Override
+    public void onResultsShown() {
+        mButtonReset.animate().alpha(1f).start();
+        PipelineTrace.end(PipelineTrace.STAGE_ANIMATION, mTraceAnimationStart);
+        updateTraceOverlay();
+    }
+
+    /**
+     * Enable or disable the {@link PipelineTrace} and its overlay.
+     * The trace is dumped to files when disabled, and starts over when enabled again.
+     *
+     * @param enabled true to trace captures
+     */
+    private void setTraceEnabled(boolean enabled) {
+        if (enabled) {
+            PipelineTrace.reset();
+        } else {
+            dumpTrace();
+        }
+        PipelineTrace.setEnabled(enabled);
+        mTraceOverlay.setVisibility(enabled ? View.VISIBLE : View.GONE);
+        updateTraceOverlay();
+    }
 
-            for (EntityAnnotation l : labels) {
-                if(l.getScore() < 0.6f) {
-                    continue;
+    private void updateTraceOverlay() {
+        if (PipelineTrace.isEnabled()) {
+            mTraceOverlay.setText(PipelineTrace.getSummary());
+        }
+    }
+
+    /**
+     * Write the {@link PipelineTrace} as CSV and JSON to the traces directory in the app's files
+     */
+    private void dumpTrace() {
+        final File dir = new File(getFilesDir(), "traces");
+        final Scheduler.Worker worker = Schedulers.io().createWorker();
+        worker.schedule(new Action0() {
+            @Override
+            public void call() {
+                if (!dir.isDirectory() && !dir.mkdirs()) {
+                    Log.d(TAG, "unable to create " + dir);
+                    worker.unsubscribe();
+                    return;
                 }
 
-                // Add label description (ex. laptop, desk, person, etc.)
-                label += l.getDescription() + ", ";
-
-                /**
-                 * Create a new {@link ScoreView} and populate it with label description and score
-                 */
-                ScoreView scoreView = new ScoreView(MainActivity.this);
-                int padding = (int) DeviceDimensionsHelper.convertDpToPixel(8, this);
-                scoreView.setPadding(padding, padding, padding, padding);
-                scoreView.setScore(l.getScore());
-                scoreView.setLabelPosition(ScoreView.LABEL_POSITION_RIGHT);
-                scoreView.setLabelText(l.getDescription());
-                scoreView.setAlpha(0f);
-                scoreView.setTranslationX( (DeviceDimensionsHelper.getDisplayWidth(this) / 2) * -1 );
-
-                // Add ScoreView to result layout
-                mScoreResultLayout.addView(scoreView);
-
-                // Create animations to used to show the ScoreView in a nice way
-                ObjectAnimator animator = ObjectAnimator.ofFloat(scoreView, "translationX", (DeviceDimensionsHelper.getDisplayWidth(this) / 2) * -1, 0f);
-                animator.setInterpolator(new OvershootInterpolator());
-                scoreViewAnimations.add(animator);
-
-                ObjectAnimator alphaAnimator = ObjectAnimator.ofFloat(scoreView, "alpha", 0f, 1f);
-                scoreAlphaAnimations.add(alphaAnimator);
-
-                // Get the animation to show the actual score from ScoreView object
-                showScoreAnimations.addAll(scoreView.getShowScoreAnimationsList());
+                String name = "pipeline-trace-" + System.currentTimeMillis();
+                try {
+                    Writer csv = new FileWriter(new File(dir, name + ".csv"));
+                    try {
+                        PipelineTrace.writeCsv(csv);
+                    } finally {
+                        csv.close();
+                    }
+
+                    Writer json = new FileWriter(new File(dir, name + ".json"));
+                    try {
+                        PipelineTrace.writeJson(json);
+                    } finally {
+                        json.close();
+                    }
+                    Log.d(TAG, "pipeline trace written to " + new File(dir, name) + ".{csv,json}\n" + PipelineTrace.getSummary());
+                } catch (IOException e) {
+                    Log.d(TAG, "unable to write pipeline trace: " + e.getMessage());
+                }
+                worker.unsubscribe();
             }
+        });
+    }
+
+    /**
+     * Start analyzing preview frames continuously. The
+     * {@link ResultsView} is updated in place with each new result.
+     */
+    private void startLiveAnalysis() {
+        if (mCamera == null) {
+            return;
+        }
 
-            // Set reset button visibility to visible
-            mButtonReset.setVisibility(View.VISIBLE);
+        if (mPipelineMode) {
+            stopPipelinedCapture();
+        }
 
-            // Setup and play the animations
-            AnimatorSet translationSet = new AnimatorSet();
-            translationSet.playSequentially(scoreViewAnimations);
-            translationSet.setDuration(300);
+        if (mProcessingLayout.getVisibility() == View.VISIBLE) {
+            mResultsView.clear();
+            mButtonReset.setAlpha(0f);
+            mButtonReset.setVisibility(View.GONE);
+            mFaceOverlay.clearFaces();
+            mCamera.startPreview();
+        }
 
-            AnimatorSet alphaSet = new AnimatorSet();
-            alphaSet.playSequentially(scoreAlphaAnimations);
-            alphaSet.setDuration(300);
+        mLiveMode = true;
+        mLastLiveLabel = null;
+        mCameraPreviewLayout.setOnClickListener(null);
 
-            AnimatorSet showScoreSet = new AnimatorSet();
-            showScoreSet.playTogether(showScoreAnimations);
+        mProcessingLayout.setAlpha(1f);
+        mProcessingLayout.setVisibility(View.VISIBLE);
 
-            showLoading(false);
+        mLiveAnalyzer = new LiveAnalyzer(mCamera, mVisionBackend, this, LiveAnalyzer.DEFAULT_MIN_REQUEST_INTERVAL_MS);
+        mLiveAnalyzer.start();
 
-            AnimatorSet set = new AnimatorSet();
-            set.play(translationSet).with(alphaSet).before(showScoreSet);
-            set.addListener(new AnimatorListenerAdapter() {
-                @Override
-                public void onAnimationEnd(Animator animation) {
-                    super.onAnimationEnd(animation);
-                    mButtonReset.animate().alpha(1f).start();
-                }
-            });
-            set.start();
-        } else {
-            // Set reset button visibility to visible
-            mButtonReset.setVisibility(View.VISIBLE);
-            mButtonReset.setAlpha(1f);
+        mTts.speak(getString(R.string.tts_live_analysis_started), TextToSpeech.QUEUE_FLUSH, null);
+    }
+
+    /**
+     * Stop live analysis and go back to capture on tap
+     */
+    private void stopLiveAnalysis() {
+        mLiveMode = false;
+
+        if (mLiveAnalyzer != null) {
+            mLiveAnalyzer.stop();
+            mLiveAnalyzer = null;
         }
 
-        // Handle detected faces
-        String facesFound = "";
-        if(faces != null && faces.size() > 0) {
-            FaceGraphicOverlay faceGraphicOverlay = new FaceGraphicOverlay(MainActivity.this);
-            faceGraphicOverlay.addFaces(faces);
-            faceGraphicOverlay.setTag("faceOverlay");
-            mCameraPreviewLayout.addView(faceGraphicOverlay);
+        mResultsView.clear();
+        mProcessingLayout.setVisibility(View.GONE);
+        mCameraPreviewLayout.setOnClickListener(this);
 
-            facesFound = FaceFoundHelper.getFacesFoundString(this, faces);
+        mTts.speak(getString(R.string.tts_live_analysis_stopped), TextToSpeech.QUEUE_FLUSH, null);
+    }
+
+    /**
+     * Capture on tap, or on a timer with auto capture, while earlier
+     * captures are still analyzed. Results are shown as they are
+     * delivered by the {@link CaptureQueue}, which also bounds the
+     * number of captures pending.
+     */
+    private void startPipelinedCapture() {
+        if (mCamera == null) {
+            return;
         }
 
-        // Add the detected image data to TTS engine
-        mTts.speak(label, TextToSpeech.QUEUE_FLUSH, null);
-        mTts.speak(facesFound, TextToSpeech.QUEUE_ADD, null);
+        if (mLiveMode) {
+            stopLiveAnalysis();
+        }
+
+        if (mProcessingLayout.getVisibility() == View.VISIBLE) {
+            mResultsView.clear();
+            mButtonReset.setAlpha(0f);
+            mButtonReset.setVisibility(View.GONE);
+            mCamera.startPreview();
+        }
+
+        // Ignore faces still being detected in the last single capture
+        mCaptureCount++;
+        mLocalFaces = null;
+        mFaceOverlay.clearFaces();
+
+        mPipelineMode = true;
+        startCaptureQueue();
+        mCameraPreviewLayout.setOnClickListener(this);
+
+        mProcessingLayout.setAlpha(1f);
+        mProcessingLayout.setVisibility(View.VISIBLE);
+        mCaptureStrip.setVisibility(View.VISIBLE);
+
+        if (mAutoCapture) {
+            startAutoCapture();
+        }
+
+        mTts.speak(getString(R.string.tts_pipelined_capture_started), TextToSpeech.QUEUE_FLUSH, null);
+    }
+
+    /**
+     * Stop pipelined capture and go back to capture on tap, requests still in flight are unsubscribed from
+     */
+    private void stopPipelinedCapture() {
+        mPipelineMode = false;
+        stopAutoCapture();
+        mPipelineSubscriptions.clear();
+
+        mCaptureQueue = null;
+        mShutterTag = -1;
+        mCaptureStrip.setQueue(null);
+        mCaptureStrip.setVisibility(View.GONE);
+
+        mResultsView.clear();
+        mProcessingLayout.setVisibility(View.GONE);
+        mCameraPreviewLayout.setOnClickListener(this);
+
+        mTts.speak(getString(R.string.tts_pipelined_capture_stopped), TextToSpeech.QUEUE_FLUSH, null);
+    }
+
+    private void startCaptureQueue() {
+        mCaptureQueue = new CaptureQueue<>(PIPELINE_MAX_PENDING,
+                mLatestResultOnly ? CaptureQueue.ORDER_LATEST_WINS : CaptureQueue.ORDER_IN_ORDER, this);
+        mShutterTag = -1;
+        mCaptureStrip.setQueue(mCaptureQueue);
+    }
+
+    /**
+     * Take a picture in pipelined mode, unless a picture is being taken or the queue is full
+     */
+    private void takePipelinedCapture() {
+        if (mCamera == null || mShutterTag >= 0 || !mCaptureQueue.canSubmit()) {
+            return;
+        }
+
+        mShutterTag = mCaptureQueue.submit();
+        mCaptureStrip.invalidate();
+        mTraceCaptureStart = PipelineTrace.beginCapture();
+        try {
+            mCamera.takePicture(null, null, mPipelinedPictureCallback);
+        } catch (RuntimeException e) {
+            // Ex. the preview was not running yet
+            Log.d(TAG, "unable to take picture: " + e.getMessage());
+            mCaptureQueue.fail(mShutterTag);
+            mShutterTag = -1;
+            mCaptureStrip.invalidate();
+        }
+    }
+
+    private void startAutoCapture() {
+        if (mAutoCaptureSubscription != null) {
+            return;
+        }
+        mAutoCaptureSubscription = Observable.interval(AUTO_CAPTURE_INTERVAL_MS, TimeUnit.MILLISECONDS,
+                AndroidSchedulers.mainThread())
+                .subscribe(new Action1<Long>() {
+                    @Override
+                    public void call(Long aLong) {
+                        takePipelinedCapture();
+                    }
+                });
+    }
+
+    private void stopAutoCapture() {
+        if (mAutoCaptureSubscription != null) {
+            mAutoCaptureSubscription.unsubscribe();
+            mAutoCaptureSubscription = null;
+        }
+    }
+
+    @Override
+    public void onLiveResult(VisionResult result) {
+        if (!mLiveMode) {
+            return;
+        }
+
+        // Live results have few labels and no faces to draw, they are planned right here
+        RenderPlan plan = mRenderPlanner.plan(result, null);
+        mResultsView.showResults(plan, LIVE_LABEL_COUNT, false);
+
+        // Only speak when the best label changes
+        String best = plan.getLabelCount() > 0 ? plan.getLabelDescription(0) : null;
+        if (best != null && !best.equals(mLastLiveLabel)) {
+            mTts.speak(best, TextToSpeech.QUEUE_FLUSH, null);
+        }
+        mLastLiveLabel = best;
+    }
+
+    /**
+     * Tell the user that no result could be fetched and
+     * let them take a new picture.
+     *
+     * @param spooled true if the capture was kept to be analyzed later
+     */
+    private void showRequestFailed(boolean spooled) {
+        mTts.speak(getString(spooled ? R.string.tts_capture_spooled : R.string.no_response), TextToSpeech.QUEUE_FLUSH, null);
+
+        mCaptureCount++;
+        mLocalFaces = null;
+        mFaceOverlay.clearFaces();
+
+        mCameraPreviewLayout.setOnClickListener(MainActivity.this);
+        if (mCamera != null) {
+            mCamera.startPreview();
+        }
     }
 
     /**
@@ -353,7 +1007,7 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
         /**
          * TODO
          *
-         * Implement animation to fade out/translate ScoreViews
+         * Implement animation to fade out/translate the labels
          *
          */
 
@@ -363,6 +1017,10 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
             mTts.speak(getString(R.string.tts_reset), TextToSpeech.QUEUE_FLUSH, null);
         }
 
+        // Ignore faces still being detected in the last capture
+        mCaptureCount++;
+        mLocalFaces = null;
+
         // Hide process layout
         mProcessingLayout.animate()
                 .alpha(0f)
@@ -374,8 +1032,8 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
                         mProcessingLayout.setVisibility(View.GONE);
                         mProcessingLayout.setAlpha(1f);
 
-                        // Remove all child views (ScoreViews)
-                        mScoreResultLayout.removeAllViews();
+                        // Remove the labels
+                        mResultsView.clear();
 
                         // Hide the reset button
                         mButtonReset.setAlpha(0f);
@@ -385,7 +1043,7 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
                         mCameraPreviewLayout.setOnClickListener(MainActivity.this);
                         mCamera.startPreview();
 
-                        mCameraPreviewLayout.removeView(mCameraPreviewLayout.findViewWithTag("faceOverlay"));
+                        mFaceOverlay.clearFaces();
                     }
                 }).start();
     }
@@ -0,0 +1,247 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.utilities;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Pool of mutable bitmaps to be reused for decoding and scaling,
+ * instead of allocating new full size bitmaps for every capture.
+ *
+ * Bitmaps are kept in buckets by size and config. When the pool is
+ * over its memory budget the bitmaps in the least recently used
+ * bucket are recycled first.
+ */
+public class BitmapPool {
+
+    private static BitmapPool sInstance;
+
+    private final LinkedHashMap<String, ArrayDeque<Bitmap>> mBuckets;
+    private final long mMaxBytes;
+    private long mBytes;
+
+    private long mHits;
+    private long mMisses;
+
+    /**
+     * Get the pool shared by the application, using an eighth of the max heap size
+     *
+     * @return pool
+     */
+    public static synchronized BitmapPool getInstance() {
+        if (sInstance == null) {
+            sInstance = new BitmapPool(Runtime.getRuntime().maxMemory() / 8);
+        }
+        return sInstance;
+    }
+
+    public BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+        // Access ordered, the first bucket is the least recently used
+        mBuckets = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    private static String key(int width, int height, Bitmap.Config config) {
+        return width + "x" + height + "-" + config;
+    }
+
+    /**
+     * Memory held by a bitmap. Since KitKat a bitmap reused through inBitmap
+     * can be smaller than its allocation, which stays the same.
+     */
+    private static int sizeOf(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    /**
+     * Get a bitmap of the exact size and config
+     *
+     * @param width The width
+     * @param height The height
+     * @param config The config
+     * @return pooled bitmap with undefined content, or null if there is none
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        ArrayDeque<Bitmap> bucket = mBuckets.get(key(width, height, config));
+        Bitmap bitmap = bucket == null ? null : bucket.poll();
+
+        if (bitmap == null) {
+            mMisses++;
+            return null;
+        }
+
+        mHits++;
+        mBytes -= sizeOf(bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Get a pooled bitmap of the exact size and config, or create a new one
+     *
+     * @param width The width
+     * @param height The height
+     * @param config The config
+     * @return mutable bitmap with undefined content
+     */
+    public Bitmap getOrCreate(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = get(width, height, config);
+        return bitmap != null ? bitmap : Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Get a bitmap that can be used as {@link android.graphics.BitmapFactory.Options#inBitmap}
+     * when decoding an image of the given size
+     *
+     * @param width The decoded width
+     * @param height The decoded height
+     * @param inSampleSize The sample size used for decoding
+     * @param config The config
+     * @return pooled bitmap, or null if there is none that can be reused
+     */
+    public synchronized Bitmap getForDecode(int width, int height, int inSampleSize, Bitmap.Config config) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+            // Before KitKat only bitmaps of the exact size can be reused, and only without sampling
+            return inSampleSize == 1 ? get(width, height, config) : null;
+        }
+
+        // Since KitKat any bitmap with a large enough allocation can be reused
+        int bytesPerPixel = config == Bitmap.Config.ARGB_8888 ? 4 : 2;
+        long needed = (long) width * height * bytesPerPixel;
+
+        for (ArrayDeque<Bitmap> bucket : mBuckets.values()) {
+            Bitmap candidate = bucket.peek();
+            if (candidate != null && candidate.getConfig() == config && candidate.getAllocationByteCount() >= needed) {
+                bucket.poll();
+                mHits++;
+                mBytes -= sizeOf(candidate);
+                return candidate;
+            }
+        }
+
+        mMisses++;
+        return null;
+    }
+
+    /**
+     * Return a bitmap to the pool. The caller may not use the bitmap afterwards.
+     * Immutable bitmaps can not be reused and are recycled directly.
+     *
+     * @param bitmap The bitmap
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+
+        if (!bitmap.isMutable() || sizeOf(bitmap) > mMaxBytes) {
+            bitmap.recycle();
+            return;
+        }
+
+        String key = key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> bucket = mBuckets.get(key);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            mBuckets.put(key, bucket);
+        }
+
+        bucket.push(bitmap);
+        mBytes += sizeOf(bitmap);
+
+        trimToSize(mMaxBytes);
+    }
+
+    /**
+     * Release pooled bitmaps, to be called from {@link ComponentCallbacks2#onTrimMemory(int)}
+     *
+     * @param level The trim level
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            synchronized (this) {
+                trimToSize(mMaxBytes / 2);
+            }
+        }
+    }
+
+    /**
+     * Recycle all pooled bitmaps
+     */
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    private void trimToSize(long maxBytes) {
+        Iterator<Map.Entry<String, ArrayDeque<Bitmap>>> iterator = mBuckets.entrySet().iterator();
+
+        while (mBytes > maxBytes && iterator.hasNext()) {
+            ArrayDeque<Bitmap> bucket = iterator.next().getValue();
+
+            while (mBytes > maxBytes && !bucket.isEmpty()) {
+                Bitmap bitmap = bucket.removeLast();
+                mBytes -= sizeOf(bitmap);
+                bitmap.recycle();
+            }
+
+            if (bucket.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Get share of requests that got a pooled bitmap
+     *
+     * @return hit rate between 0 and 1
+     */
+    public synchronized float getHitRate() {
+        long total = mHits + mMisses;
+        return total == 0 ? 0f : (float) mHits / total;
+    }
+
+    public synchronized long getHitCount() {
+        return mHits;
+    }
+
+    public synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    public synchronized long getBytesHeld() {
+        return mBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "hit rate: %.2f (%d/%d), held: %d KB of %d KB",
+                getHitRate(), mHits, mHits + mMisses, mBytes / 1024, mMaxBytes / 1024);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.utilities;
+
+import android.hardware.Camera;
+import android.support.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.List;
+
+/**
+ * Helper class to choose camera picture and preview sizes.
+ *
+ * The policy decides the trade off between image quality and
+ * the time it takes to capture, transfer and decode a picture.
+ */
+public class CameraSizePolicy {
+
+    // Largest supported picture size, the camera default
+    public static final int POLICY_MAX_QUALITY = 0;
+    // Smallest picture size still covering the analysis dimension
+    public static final int POLICY_ANALYSIS = 1;
+    // Smallest supported picture size
+    public static final int POLICY_FASTEST = 2;
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({POLICY_MAX_QUALITY, POLICY_ANALYSIS, POLICY_FASTEST})
+    public @interface Policy {}
+
+    // Max difference in aspect ratio between preview and picture
+    private static final float ASPECT_RATIO_TOLERANCE = 0.05f;
+
+    /**
+     * Set picture size and matching preview size on camera parameters
+     *
+     * @param parameters The camera parameters
+     * @param policy The policy to use
+     * @param minDimension The smallest max dimension (height or width) accepted by {@link #POLICY_ANALYSIS}
+     * @return The chosen picture size, or null if the camera reports no sizes
+     */
+    public static Camera.Size apply(Camera.Parameters parameters, @Policy int policy, int minDimension) {
+        Camera.Size pictureSize = choosePictureSize(parameters.getSupportedPictureSizes(), policy, minDimension);
+        if (pictureSize == null) {
+            return null;
+        }
+        parameters.setPictureSize(pictureSize.width, pictureSize.height);
+
+        Camera.Size previewSize = choosePreviewSize(parameters.getSupportedPreviewSizes(), pictureSize);
+        if (previewSize != null) {
+            parameters.setPreviewSize(previewSize.width, previewSize.height);
+        }
+
+        return pictureSize;
+    }
+
+    /**
+     * Choose picture size
+     *
+     * @param sizes The supported picture sizes
+     * @param policy The policy to use
+     * @param minDimension The smallest max dimension (height or width) accepted by {@link #POLICY_ANALYSIS}
+     * @return The chosen size, or null if sizes is empty
+     */
+    public static Camera.Size choosePictureSize(List<Camera.Size> sizes, @Policy int policy, int minDimension) {
+        if (sizes == null || sizes.isEmpty()) {
+            return null;
+        }
+
+        Camera.Size largest = null;
+        Camera.Size smallest = null;
+        Camera.Size smallestCovering = null;
+
+        for (Camera.Size s : sizes) {
+            if (largest == null || area(s) > area(largest)) {
+                largest = s;
+            }
+            if (smallest == null || area(s) < area(smallest)) {
+                smallest = s;
+            }
+            if (Math.max(s.width, s.height) >= minDimension
+                    && (smallestCovering == null || area(s) < area(smallestCovering))) {
+                smallestCovering = s;
+            }
+        }
+
+        switch (policy) {
+            case POLICY_FASTEST:
+                return smallest;
+            case POLICY_ANALYSIS:
+                // No size is big enough, use the best the camera can do
+                return smallestCovering != null ? smallestCovering : largest;
+            case POLICY_MAX_QUALITY:
+            default:
+                return largest;
+        }
+    }
+
+    /**
+     * Choose the largest preview size with the same aspect ratio as the picture,
+     * so the preview shows exactly what is captured
+     *
+     * @param sizes The supported preview sizes
+     * @param pictureSize The chosen picture size
+     * @return The chosen size, or null if sizes is empty
+     */
+    public static Camera.Size choosePreviewSize(List<Camera.Size> sizes, Camera.Size pictureSize) {
+        if (sizes == null || sizes.isEmpty()) {
+            return null;
+        }
+
+        float pictureRatio = (float) pictureSize.width / pictureSize.height;
+        Camera.Size best = null;
+        Camera.Size largest = null;
+
+        for (Camera.Size s : sizes) {
+            if (largest == null || area(s) > area(largest)) {
+                largest = s;
+            }
+
+            float ratio = (float) s.width / s.height;
+            if (Math.abs(ratio - pictureRatio) <= ASPECT_RATIO_TOLERANCE
+                    && (best == null || area(s) > area(best))) {
+                best = s;
+            }
+        }
+
+        return best != null ? best : largest;
+    }
+
+    /**
+     * Get policy name, used for logging
+     *
+     * @param policy The policy
+     * @return name
+     */
+    public static String getName(@Policy int policy) {
+        switch (policy) {
+            case POLICY_FASTEST:
+                return "fastest";
+            case POLICY_ANALYSIS:
+                return "analysis";
+            case POLICY_MAX_QUALITY:
+            default:
+                return "max quality";
+        }
+    }
+
+    private static int area(Camera.Size size) {
+        return size.width * size.height;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.utilities;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.view.View;
+
+import me.hammarstrom.imagerecognition.core.CaptureQueue;
+
+/**
+ * Draws the captures of a {@link CaptureQueue} as a row of cells, the
+ * oldest to the left, colored by their state. Call {@link #invalidate()}
+ * when the queue changes.
+ */
+public class CaptureStripView extends View {
+
+    // Indexed by the CaptureQueue states
+    private static final int[] STATE_COLORS = {
+            Color.parseColor("#B0FFFFFF"),  // in flight
+            Color.parseColor("#FFC107"),    // waiting
+            Color.parseColor("#2196F3"),    // delivered
+            Color.parseColor("#F44336"),    // failed
+            Color.parseColor("#70FFFFFF")   // dropped
+    };
+
+    private final Paint mCellPaint;
+    private final Paint mEmptyPaint;
+    private final RectF mCell;
+    private final int mCellSize;
+    private final int mCellSpacing;
+    private final float mCornerRadius;
+
+    private CaptureQueue<?> mQueue;
+
+    public CaptureStripView(Context context) {
+        this(context, null);
+    }
+
+    public CaptureStripView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public CaptureStripView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+
+        mCellPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mCellPaint.setStyle(Paint.Style.FILL);
+        mEmptyPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mEmptyPaint.setStyle(Paint.Style.STROKE);
+        mEmptyPaint.setStrokeWidth(DeviceDimensionsHelper.convertDpToPixel(1, context));
+        mEmptyPaint.setColor(STATE_COLORS[CaptureQueue.STATE_DROPPED]);
+
+        mCellSize = (int) DeviceDimensionsHelper.convertDpToPixel(16, context);
+        mCellSpacing = (int) DeviceDimensionsHelper.convertDpToPixel(4, context);
+        mCornerRadius = DeviceDimensionsHelper.convertDpToPixel(3, context);
+        mCell = new RectF();
+    }
+
+    /**
+     * Set the queue to show
+     *
+     * @param queue The queue, null to show nothing
+     */
+    public void setQueue(CaptureQueue<?> queue) {
+        if (queue == mQueue) {
+            return;
+        }
+        mQueue = queue;
+        requestLayout();
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int cells = mQueue != null ? mQueue.getCaptureCapacity() : 0;
+        int w = getPaddingLeft() + getPaddingRight() + Math.max(0, cells * (mCellSize + mCellSpacing) - mCellSpacing);
+        int h = getPaddingTop() + getPaddingBottom() + (cells > 0 ? mCellSize : 0);
+
+        setMeasuredDimension(resolveSize(w, widthMeasureSpec), resolveSize(h, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mQueue == null) {
+            return;
+        }
+
+        // Slots not used yet are outlined, so the strip keeps its size
+        int count = mQueue.getCaptureCount();
+        int capacity = mQueue.getCaptureCapacity();
+        for (int i = 0; i < capacity; i++) {
+            float left = getPaddingLeft() + i * (mCellSize + mCellSpacing);
+            mCell.set(left, getPaddingTop(), left + mCellSize, getPaddingTop() + mCellSize);
+
+            if (i < count) {
+                mCellPaint.setColor(STATE_COLORS[mQueue.getState(mQueue.getCaptureTag(i))]);
+                canvas.drawRoundRect(mCell, mCornerRadius, mCornerRadius, mCellPaint);
+            } else {
+                canvas.drawRoundRect(mCell, mCornerRadius, mCornerRadius, mEmptyPaint);
+            }
+        }
+    }
+}
@@ -17,68 +17,46 @@ package me.hammarstrom.imagerecognition.utilities;
 
 import android.content.Context;
 
-import com.google.api.services.vision.v1.model.FaceAnnotation;
-
-import java.util.List;
+import java.util.Locale;
 
 import me.hammarstrom.imagerecognition.R;
+import me.hammarstrom.imagerecognition.core.FaceDescriptionBuilder;
+import me.hammarstrom.imagerecognition.core.VisionResult;
 
 /**
- * Helper class to analyze detected faces {@link FaceAnnotation}
+ * Helper class to analyze detected faces of a {@link VisionResult}
  * and create text to be used by TextToSpeech engine.
  *
+ * The text is built by a {@link FaceDescriptionBuilder} from the core
+ * module, with the phrases taken from the string resources.
+ *
  * Created by Fredrik Hammarström on 06/04/16.
  */
 public class FaceFoundHelper {
 
-    public static String getFacesFoundString(Context context, List<FaceAnnotation> faces) {
-        String facesFound = "";
-
-        facesFound = "I think the image contains ";
-        facesFound += faces.size() > 1 ? faces.size() + " faces" : " 1 face.";
-
-        for(int i = 0; i < faces.size(); i++) {
-            FaceAnnotation f = faces.get(i);
-            facesFound += "... Face " + (i + 1);
-            facesFound += getFaceData(context, f);
-        }
+    private static FaceDescriptionBuilder sBuilder;
+    private static Locale sBuilderLocale;
 
-        return facesFound;
+    public static String getFacesFoundString(Context context, VisionResult result) {
+        return getBuilder(context).build(result);
     }
 
-    private static String getFaceData(Context context, FaceAnnotation f) {
-        boolean foundExpression = false;
-        String faceData = "";
-
-        if(isExpressionLikely(f.getJoyLikelihood())) {
-            faceData += context.getString(R.string.face_data_expression, context.getString(R.string.happy));
-            foundExpression = true;
-        }
-
-        if(isExpressionLikely(f.getSorrowLikelihood())) {
-            faceData += context.getString(R.string.face_data_expression, context.getString(R.string.sad));
-            foundExpression = true;
+    /**
+     * Get the builder, created again only if the locale has changed
+     */
+    public static synchronized FaceDescriptionBuilder getBuilder(Context context) {
+        Locale locale = context.getResources().getConfiguration().locale;
+        if (sBuilder == null || !locale.equals(sBuilderLocale)) {
+            sBuilder = new FaceDescriptionBuilder(
+                    context.getString(R.string.face_data_expression),
+                    context.getString(R.string.happy),
+                    context.getString(R.string.sad),
+                    context.getString(R.string.angry),
+                    context.getString(R.string.surprised),
+                    context.getString(R.string.face_data_expression_not_detected));
+            sBuilderLocale = locale;
         }
-
-        if(isExpressionLikely(f.getAngerLikelihood())) {
-            faceData += context.getString(R.string.face_data_expression, context.getString(R.string.angry));
-            foundExpression = true;
-        }
-
-        if(isExpressionLikely(f.getSurpriseLikelihood())) {
-            faceData += context.getString(R.string.face_data_expression, context.getString(R.string.surprised));
-            foundExpression = true;
-        }
-
-        if(!foundExpression) {
-            faceData += context.getString(R.string.face_data_expression_not_detected);
-        }
-
-        return faceData;
-    }
-
-    private static boolean isExpressionLikely(String expression) {
-        return !expression.contains("UNLIKELY");
+        return sBuilder;
     }
 
 }
@@ -18,29 +18,46 @@ package me.hammarstrom.imagerecognition.utilities;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.util.AttributeSet;
 import android.view.View;
 
-import com.google.api.services.vision.v1.model.BoundingPoly;
-import com.google.api.services.vision.v1.model.FaceAnnotation;
-import com.google.api.services.vision.v1.model.Vertex;
-
-import java.util.ArrayList;
-import java.util.List;
+import me.hammarstrom.imagerecognition.core.CaptureDescriptor;
+import me.hammarstrom.imagerecognition.core.ImageSize;
+import me.hammarstrom.imagerecognition.core.VisionResult;
 
 /**
  * A simple view class to be used as an overlay
  * to mark out the detected face(s) in the camera
  * preview image.
  *
+ * The faces are kept in image coordinates and mapped to the view by one
+ * image to view {@link Matrix}, computed from the {@link CaptureDescriptor}
+ * of the faces when the size of the view or the capture changes. Their
+ * paths are built when faces are set, not when drawn, and the arrays and
+ * paths are reused, so faces can be updated at preview frame rate, ex.
+ * when tracking faces live.
+ *
  * Created by Fredrik Hammarström on 07/04/16.
  */
 public class FaceGraphicOverlay extends View {
     private final String TAG = FaceGraphicOverlay.this.getClass().getName();
 
-    private List<BoundingPoly> mBoundingPolys;
+    private static final int FACE_LENGTH = VisionResult.VERTICES_PER_FACE * 2;
+
+    // Vertices of each face, in the image and mapped to the view, as x, y pairs
+    private float[] mImageVertices;
+    private float[] mViewVertices;
+    private Path[] mPaths;
+    private int mFaceCount;
+
+    // The capture the faces were detected in
+    private CaptureDescriptor mCapture;
+
+    private Matrix mImageToView;
+    private boolean mHasImageToView;
     private Paint mPaint;
 
     public FaceGraphicOverlay(Context context) {
@@ -53,7 +70,10 @@ public class FaceGraphicOverlay extends View {
 
     public FaceGraphicOverlay(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
-        mBoundingPolys = new ArrayList<>();
+        mImageVertices = new float[0];
+        mViewVertices = new float[0];
+        mPaths = new Path[0];
+        mImageToView = new Matrix();
 
         mPaint = new Paint();
         mPaint.setColor(Color.parseColor("#2196F3"));
@@ -63,50 +83,155 @@ public class FaceGraphicOverlay extends View {
     }
 
     /**
-     * Add list bounding polys by supplying list of {@link FaceAnnotation}
+     * Show the faces of a {@link VisionResult}, replacing the faces shown,
+     * the capture of the result is used to place the faces on the view
      *
-     * @param faceAnnotations
+     * @param result The result
      */
-    public void addFaces(List<FaceAnnotation> faceAnnotations) {
-        for(FaceAnnotation f : faceAnnotations) {
-            mBoundingPolys.add(f.getFdBoundingPoly());
+    public void setFaces(VisionResult result) {
+        int faceCount = result.getFaceCount();
+        ensureCapacity(faceCount);
+        result.getFaceVertices(mImageVertices, 0);
+        showFaces(faceCount, result.getCapture());
+    }
+
+    /**
+     * Show faces, replacing the faces shown. The vertices are copied.
+     *
+     * @param vertices x, y pairs in image coordinates, {@link VisionResult#VERTICES_PER_FACE} per face
+     * @param faceCount Number of faces
+     * @param capture The capture the faces were detected in, nothing is drawn if null
+     */
+    public void setFaces(float[] vertices, int faceCount, CaptureDescriptor capture) {
+        ensureCapacity(faceCount);
+        System.arraycopy(vertices, 0, mImageVertices, 0, faceCount * FACE_LENGTH);
+        showFaces(faceCount, capture);
+    }
+
+    /**
+     * Show the first faces of mImageVertices
+     */
+    private void showFaces(int faceCount, CaptureDescriptor capture) {
+        mFaceCount = faceCount;
+
+        if (capture == null ? mCapture != null : !capture.equals(mCapture)) {
+            mCapture = capture;
+            updateImageToView();
         }
 
-        requestLayout();
+        mapFaces(0, faceCount);
         invalidate();
     }
 
+    /**
+     * Move one of the faces shown, ex. the next position of a tracked face
+     *
+     * @param face The face, less than the number of faces shown
+     * @param vertices x, y pairs in image coordinates
+     * @param offset Where the vertices of the face start
+     */
+    public void updateFace(int face, float[] vertices, int offset) {
+        if (face < 0 || face >= mFaceCount) {
+            throw new IndexOutOfBoundsException("Face " + face + " of " + mFaceCount);
+        }
+        System.arraycopy(vertices, offset, mImageVertices, face * FACE_LENGTH, FACE_LENGTH);
+
+        mapFaces(face, 1);
+        invalidate();
+    }
+
+    /**
+     * Remove all faces
+     */
+    public void clearFaces() {
+        mFaceCount = 0;
+        invalidate();
+    }
+
+    public int getFaceCount() {
+        return mFaceCount;
+    }
+
+    /**
+     * Grow the arrays and paths, they are never shrunk
+     */
+    private void ensureCapacity(int faceCount) {
+        if (faceCount <= mPaths.length) {
+            return;
+        }
+
+        float[] imageVertices = new float[faceCount * FACE_LENGTH];
+        System.arraycopy(mImageVertices, 0, imageVertices, 0, mImageVertices.length);
+        mImageVertices = imageVertices;
+        mViewVertices = new float[faceCount * FACE_LENGTH];
+
+        Path[] paths = new Path[faceCount];
+        System.arraycopy(mPaths, 0, paths, 0, mPaths.length);
+        for (int i = mPaths.length; i < faceCount; i++) {
+            paths[i] = new Path();
+        }
+        mPaths = paths;
+    }
+
     @Override
-    protected void onDraw(Canvas canvas) {
-        super.onDraw(canvas);
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
 
-        for(BoundingPoly bp : mBoundingPolys) {
-            Path path = new Path();
-            for(int i = 0; i < bp.getVertices().size(); i++) {
-                Vertex v = bp.getVertices().get(i);
-
-                // Have to re-calculate the vertex according to
-                // image size sent to Vision API vs. canvas size
-                float x = v.getX() / (ImageHelper.imageWidth  / (float) canvas.getWidth());
-                float y = v.getY() / (ImageHelper.imageHeight / (float) canvas.getHeight());
-                y -= (DeviceDimensionsHelper.getDisplayHeight(getContext()) - canvas.getHeight());
-
-                if(i == 0) {
-                    // Move to beginning of path
-                    path.moveTo(x, y);
-                } else {
-                    // Draw line
-                    path.lineTo(x, y);
-                }
-
-                // If we reached the last vertex, close the path!
-                if(i == bp.getVertices().size() - 1) {
-                    path.close();
-                }
+        updateImageToView();
+        mapFaces(0, mFaceCount);
+    }
+
+    /**
+     * Map the scaled image back to the upright capture, and the capture to
+     * the view. The view is shifted up by the part of the display it does not cover.
+     */
+    private void updateImageToView() {
+        int width = getWidth();
+        int height = getHeight();
+        mHasImageToView = mCapture != null && width > 0 && height > 0;
+        if (!mHasImageToView) {
+            return;
+        }
+
+        ImageSize scaled = mCapture.getScaledSize();
+        ImageSize crop = mCapture.getCropSize();
+        ImageSize upright = mCapture.getUprightSize();
+        mImageToView.setScale(crop.getWidth() / (float) scaled.getWidth(), crop.getHeight() / (float) scaled.getHeight());
+        mImageToView.postTranslate(mCapture.getCropLeft(), mCapture.getCropTop());
+        mImageToView.postScale(width / (float) upright.getWidth(), height / (float) upright.getHeight());
+        mImageToView.postTranslate(0, -(DeviceDimensionsHelper.getDisplayHeight(getContext()) - height));
+    }
+
+    private void mapFaces(int first, int count) {
+        if (!mHasImageToView || count == 0) {
+            return;
+        }
+
+        int start = first * FACE_LENGTH;
+        mImageToView.mapPoints(mViewVertices, start, mImageVertices, start, count * VisionResult.VERTICES_PER_FACE);
+
+        for (int face = first; face < first + count; face++) {
+            int v = face * FACE_LENGTH;
+            Path path = mPaths[face];
+            path.reset();
+            path.moveTo(mViewVertices[v], mViewVertices[v + 1]);
+            for (int i = 2; i < FACE_LENGTH; i += 2) {
+                path.lineTo(mViewVertices[v + i], mViewVertices[v + i + 1]);
             }
+            path.close();
+        }
+    }
 
-            canvas.drawPath(path, mPaint);
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+
+        if (!mHasImageToView) {
+            return;
         }
 
+        for (int face = 0; face < mFaceCount; face++) {
+            canvas.drawPath(mPaths[face], mPaint);
+        }
     }
 }
@@ -1,48 +1,150 @@
 package me.hammarstrom.imagerecognition.utilities;
 
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+
+import me.hammarstrom.imagerecognition.core.ImageSize;
 
 /**
  * Helper class to handle images to be analyzed
  * by the Vision API.
  *
+ * The size math lives in the core module, next to the pure Java raster
+ * operations it is tested and benchmarked with. This class applies it
+ * to {@link Bitmap}s, which are still scaled and rotated natively.
+ *
  * Created by Fredrik Hammarström on 07/04/16.
  */
 public class ImageHelper {
 
-    // Static members to hold latest scaled bitmap size
-    public static float imageWidth = 800f;
-    public static float imageHeight = 600f;
+    // Max dimension (height or width) of images sent to the Vision API
+    public static final int VISION_MAX_DIMENSION = 1100;
 
     /**
      * Scale bitmap down
      *
+     * The scaled bitmap is taken from {@link BitmapPool} and should be
+     * returned to the pool when no longer used.
+     *
      * @param bitmap The bitmap to be scaled
      * @param maxDimension The maximum dimension (height or width)
-     * @return Scaled bitmap
+     * @return Scaled bitmap, or the same bitmap if it already has the right size
      */
     public static Bitmap scaleBitmapDown(Bitmap bitmap, int maxDimension) {
+        long traceStart = PipelineTrace.start();
 
         int originalWidth = bitmap.getWidth();
         int originalHeight = bitmap.getHeight();
-        int resizedWidth = maxDimension;
-        int resizedHeight = maxDimension;
+        ImageSize resized = new ImageSize(originalWidth, originalHeight).scaleToMax(maxDimension);
+        int resizedWidth = resized.getWidth();
+        int resizedHeight = resized.getHeight();
+
+        if (resizedWidth == originalWidth && resizedHeight == originalHeight) {
+            return bitmap;
+        }
 
-        if (originalHeight > originalWidth) {
-            resizedHeight = maxDimension;
-            resizedWidth = (int) (resizedHeight * (float) originalWidth / (float) originalHeight);
-        } else if (originalWidth > originalHeight) {
-            resizedWidth = maxDimension;
-            resizedHeight = (int) (resizedWidth * (float) originalHeight / (float) originalWidth);
-        } else if (originalHeight == originalWidth) {
-            resizedHeight = maxDimension;
-            resizedWidth = maxDimension;
+        Bitmap.Config config = bitmap.getConfig() != null ? bitmap.getConfig() : Bitmap.Config.ARGB_8888;
+        Bitmap scaled = BitmapPool.getInstance().getOrCreate(resizedWidth, resizedHeight, config);
+        if (bitmap.hasAlpha()) {
+            scaled.eraseColor(Color.TRANSPARENT);
         }
 
-        ImageHelper.imageWidth = (float) resizedWidth;
-        ImageHelper.imageHeight = (float) resizedHeight;
+        // No paint, i.e. no filtering, same as Bitmap.createScaledBitmap(bitmap, w, h, false)
+        Canvas canvas = new Canvas(scaled);
+        canvas.drawBitmap(bitmap, null, new Rect(0, 0, resizedWidth, resizedHeight), null);
+
+        PipelineTrace.end(PipelineTrace.STAGE_SCALE, traceStart);
+        return scaled;
+    }
+
+    /**
+     * Decode JPEG data to a bitmap scaled down to max dimension.
+     *
+     * The size of the JPEG is read first, so it can be decoded directly
+     * at the nearest power of two sample size above max dimension, which
+     * is then resized to the exact size by {@link #scaleBitmapDown(Bitmap, int)}.
+     * The full resolution image is never decoded, and the sampled bitmap
+     * is decoded into a bitmap from {@link BitmapPool} when possible.
+     *
+     * @param data The JPEG data
+     * @param maxDimension The maximum dimension (height or width)
+     * @param config Bitmap config to decode to, ex. {@link Bitmap.Config#RGB_565} to halve the memory used
+     * @return Scaled bitmap from {@link BitmapPool}, or null if data could not be decoded
+     */
+    public static Bitmap decodeSampledBitmap(byte[] data, int maxDimension, Bitmap.Config config) {
+        long traceStart = PipelineTrace.start();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, maxDimension);
+        options.inPreferredConfig = config;
+        options.inMutable = true;
+
+        int sampledWidth = (options.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+        int sampledHeight = (options.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+        options.inBitmap = BitmapPool.getInstance().getForDecode(sampledWidth, sampledHeight, options.inSampleSize, config);
+
+        Bitmap sampled;
+        try {
+            sampled = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap could not be reused, decode into a new bitmap
+            BitmapPool.getInstance().put(options.inBitmap);
+            options.inBitmap = null;
+            sampled = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+
+        if (sampled == null) {
+            return null;
+        }
+        PipelineTrace.end(PipelineTrace.STAGE_DECODE, traceStart);
+
+        Bitmap scaled = scaleBitmapDown(sampled, maxDimension);
+        if (scaled != sampled) {
+            BitmapPool.getInstance().put(sampled);
+        }
+
+        return scaled;
+    }
+
+    /**
+     * See {@link ImageSize#calculateInSampleSize(int, int, int)}
+     */
+    public static int calculateInSampleSize(int width, int height, int maxDimension) {
+        return ImageSize.calculateInSampleSize(width, height, maxDimension);
+    }
+
+    /**
+     * Rotate bitmap clockwise
+     *
+     * @param bitmap The bitmap to be rotated, returned to {@link BitmapPool} if a new bitmap is created
+     * @param degrees 0, 90, 180 or 270
+     * @return Rotated bitmap
+     */
+    public static Bitmap rotateBitmap(Bitmap bitmap, int degrees) {
+        if (degrees % 360 == 0) {
+            return bitmap;
+        }
+
+        Matrix matrix = new Matrix();
+        matrix.postRotate(degrees);
+
+        Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if (rotated != bitmap) {
+            BitmapPool.getInstance().put(bitmap);
+        }
 
-        return Bitmap.createScaledBitmap(bitmap, resizedWidth, resizedHeight, false);
+        return rotated;
     }
 
 }
@@ -0,0 +1,206 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.utilities;
+
+/**
+ * Image size and EXIF orientation read from the header of a JPEG,
+ * without decoding any image data.
+ */
+public class JpegHeader {
+
+    // EXIF orientation values
+    public static final int ORIENTATION_UNDEFINED = 0;
+    public static final int ORIENTATION_NORMAL = 1;
+    public static final int ORIENTATION_ROTATE_180 = 3;
+    public static final int ORIENTATION_ROTATE_90 = 6;
+    public static final int ORIENTATION_ROTATE_270 = 8;
+
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_EOI = 0xD9;
+    private static final int MARKER_APP1 = 0xE1;
+
+    private static final int TAG_ORIENTATION = 0x0112;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mOrientation;
+
+    private JpegHeader(int width, int height, int orientation) {
+        mWidth = width;
+        mHeight = height;
+        mOrientation = orientation;
+    }
+
+    /**
+     * Read the header of a JPEG
+     *
+     * @param data The JPEG data
+     * @return header, or null if data is not a JPEG or has no frame header
+     */
+    public static JpegHeader read(byte[] data) {
+        if (data == null || data.length < 4 || u8(data, 0) != 0xFF || u8(data, 1) != MARKER_SOI) {
+            return null;
+        }
+
+        int orientation = ORIENTATION_UNDEFINED;
+        int offset = 2;
+
+        while (offset + 4 <= data.length) {
+            if (u8(data, offset) != 0xFF) {
+                return null;
+            }
+
+            int marker = u8(data, offset + 1);
+            offset += 2;
+
+            // Fill bytes and markers without a segment
+            if (marker == 0xFF) {
+                offset--;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                continue;
+            }
+            if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                return null;
+            }
+
+            int length = u16(data, offset, true);
+            if (length < 2 || offset + length > data.length) {
+                return null;
+            }
+
+            if (marker == MARKER_APP1) {
+                orientation = readExifOrientation(data, offset + 2, length - 2, orientation);
+            } else if (isStartOfFrame(marker) && length >= 7) {
+                int height = u16(data, offset + 3, true);
+                int width = u16(data, offset + 5, true);
+                return new JpegHeader(width, height, orientation);
+            }
+
+            offset += length;
+        }
+
+        return null;
+    }
+
+    private static boolean isStartOfFrame(int marker) {
+        // SOF0 - SOF15, except DHT (C4), JPG (C8) and DAC (CC)
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    private static int readExifOrientation(byte[] data, int start, int length, int fallback) {
+        // "Exif\0\0" followed by a TIFF header
+        if (length < 14 || data[start] != 'E' || data[start + 1] != 'x' || data[start + 2] != 'i'
+                || data[start + 3] != 'f' || data[start + 4] != 0 || data[start + 5] != 0) {
+            return fallback;
+        }
+
+        int tiff = start + 6;
+        int end = start + length;
+        boolean bigEndian;
+        if (data[tiff] == 'M' && data[tiff + 1] == 'M') {
+            bigEndian = true;
+        } else if (data[tiff] == 'I' && data[tiff + 1] == 'I') {
+            bigEndian = false;
+        } else {
+            return fallback;
+        }
+
+        // The offset is unsigned 32 bit, check it before it can overflow an int
+        long ifdOffset = u32(data, tiff + 4, bigEndian);
+        if (ifdOffset < 8 || ifdOffset > end - tiff - 2) {
+            return fallback;
+        }
+        int ifd = tiff + (int) ifdOffset;
+
+        int entries = u16(data, ifd, bigEndian);
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > end) {
+                break;
+            }
+            if (u16(data, entry, bigEndian) == TAG_ORIENTATION) {
+                // SHORT value stored in the first two bytes of the value field
+                return u16(data, entry + 8, bigEndian);
+            }
+        }
+
+        return fallback;
+    }
+
+    private static int u8(byte[] data, int offset) {
+        return data[offset] & 0xFF;
+    }
+
+    private static int u16(byte[] data, int offset, boolean bigEndian) {
+        return bigEndian
+                ? (u8(data, offset) << 8) | u8(data, offset + 1)
+                : (u8(data, offset + 1) << 8) | u8(data, offset);
+    }
+
+    private static long u32(byte[] data, int offset, boolean bigEndian) {
+        long high = u16(data, bigEndian ? offset : offset + 2, bigEndian);
+        long low = u16(data, bigEndian ? offset + 2 : offset, bigEndian);
+        return (high << 16) | low;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Get EXIF orientation
+     *
+     * @return orientation, {@link #ORIENTATION_UNDEFINED} if the JPEG has no EXIF orientation
+     */
+    public int getOrientation() {
+        return mOrientation;
+    }
+
+    /**
+     * Get clockwise rotation needed to display the image upright
+     *
+     * @return 0, 90, 180 or 270
+     */
+    public int getRotationDegrees() {
+        switch (mOrientation) {
+            case ORIENTATION_ROTATE_90:
+                return 90;
+            case ORIENTATION_ROTATE_180:
+                return 180;
+            case ORIENTATION_ROTATE_270:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Check if the image is stored upright, i.e. can be used as is.
+     * Mirrored orientations are treated as not upright.
+     *
+     * @return true if no rotation or mirroring is needed
+     */
+    public boolean isUpright() {
+        return mOrientation == ORIENTATION_UNDEFINED || mOrientation == ORIENTATION_NORMAL;
+    }
+}
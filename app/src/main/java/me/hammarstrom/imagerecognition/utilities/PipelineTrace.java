@@ -0,0 +1,234 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.utilities;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.hammarstrom.imagerecognition.core.LatencyHistogram;
+
+/**
+ * Traces where the time goes between the tap and the spoken result.
+ *
+ * Each stage of a capture is timed with {@link System#nanoTime()} and
+ * recorded into a lock-free {@link LatencyHistogram} of the stage, and
+ * into a ring of the most recent stage events of each capture. Stages
+ * running below the activity, ex. on the request thread, are attributed
+ * to the capture most recently started.
+ *
+ * Tracing is disabled by default. When disabled, {@link #start()} is a
+ * single volatile read and {@link #end(int, long)} returns right away.
+ *
+ * <pre>
+ * long start = PipelineTrace.start();
+ * decode();
+ * PipelineTrace.end(PipelineTrace.STAGE_DECODE, start);
+ * </pre>
+ */
+public final class PipelineTrace {
+
+    // Tap to picture callback
+    public static final int STAGE_SHUTTER = 0;
+    public static final int STAGE_DECODE = 1;
+    public static final int STAGE_SCALE = 2;
+    // JPEG compress and base64 encode, they are streamed into the request body together
+    public static final int STAGE_ENCODE = 3;
+    // Request sent to response received, including streaming the body
+    public static final int STAGE_HTTP = 4;
+    public static final int STAGE_PARSE = 5;
+    // Preparing the render plan, off the main thread
+    public static final int STAGE_PLAN = 6;
+    // Building the result views from the plan
+    public static final int STAGE_VIEWS = 7;
+    public static final int STAGE_ANIMATION = 8;
+    // Tap to handing the result to text to speech
+    public static final int STAGE_TAP_TO_SPEECH = 9;
+    public static final int STAGE_COUNT = 10;
+
+    private static final String[] STAGE_NAMES = {
+            "shutter", "decode", "scale", "encode", "http", "parse", "plan", "views", "animation", "tap_to_speech"
+    };
+
+    /**
+     * Returned by {@link #start()} when tracing is disabled
+     */
+    public static final long NOT_STARTED = Long.MIN_VALUE;
+
+    static final int EVENT_CAPACITY = 512;
+
+    private static volatile boolean sEnabled;
+
+    private static final LatencyHistogram[] sHistograms = new LatencyHistogram[STAGE_COUNT];
+    static {
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            sHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    private static final AtomicLong sCaptureIds = new AtomicLong();
+    private static volatile long sCurrentCapture;
+
+    // Ring of stage events, a slot is claimed by incrementing the event count
+    private static final AtomicLong sEventCount = new AtomicLong();
+    private static final long[] sEventCaptures = new long[EVENT_CAPACITY];
+    private static final int[] sEventStages = new int[EVENT_CAPACITY];
+    private static final long[] sEventStarts = new long[EVENT_CAPACITY];
+    private static final long[] sEventDurations = new long[EVENT_CAPACITY];
+
+    private PipelineTrace() {
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * Start a new capture, stages recorded after this are attributed to it
+     *
+     * @return the start of the capture, {@link #NOT_STARTED} if tracing is disabled
+     */
+    public static long beginCapture() {
+        if (!sEnabled) {
+            return NOT_STARTED;
+        }
+        sCurrentCapture = sCaptureIds.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Get the start of a stage
+     *
+     * @return monotonic timestamp, {@link #NOT_STARTED} if tracing is disabled
+     */
+    public static long start() {
+        return sEnabled ? System.nanoTime() : NOT_STARTED;
+    }
+
+    /**
+     * End a stage
+     *
+     * @param stage The stage, ex. {@link #STAGE_DECODE}
+     * @param start The start of the stage as returned by {@link #start()}
+     */
+    public static void end(int stage, long start) {
+        if (start == NOT_STARTED || !sEnabled) {
+            return;
+        }
+        record(stage, start, System.nanoTime() - start);
+    }
+
+    static void record(int stage, long start, long durationNs) {
+        sHistograms[stage].record(durationNs);
+
+        int slot = (int) (sEventCount.getAndIncrement() % EVENT_CAPACITY);
+        sEventCaptures[slot] = sCurrentCapture;
+        sEventStages[slot] = stage;
+        sEventStarts[slot] = start;
+        sEventDurations[slot] = durationNs;
+    }
+
+    public static LatencyHistogram getHistogram(int stage) {
+        return sHistograms[stage];
+    }
+
+    public static String getStageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    public static void reset() {
+        for (LatencyHistogram histogram : sHistograms) {
+            histogram.reset();
+        }
+        sEventCount.set(0);
+    }
+
+    /**
+     * Get a summary of all stages, one line each, ex. for a debug overlay
+     *
+     * @return summary
+     */
+    public static String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "%-13s %4s %7s %7s %7s", "stage", "n", "p50", "p90", "p99"));
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            LatencyHistogram histogram = sHistograms[i];
+            sb.append('\n').append(String.format(Locale.US, "%-13s %4d %7.1f %7.1f %7.1f",
+                    STAGE_NAMES[i], histogram.getCount(), histogram.getPercentileMs(50),
+                    histogram.getPercentileMs(90), histogram.getPercentileMs(99)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write the recent stage events as CSV, oldest first
+     *
+     * @param writer The writer, not closed
+     * @throws IOException
+     */
+    public static void writeCsv(Writer writer) throws IOException {
+        writer.write("capture,stage,start_ns,duration_ns\n");
+
+        long count = sEventCount.get();
+        for (long i = Math.max(0, count - EVENT_CAPACITY); i < count; i++) {
+            int slot = (int) (i % EVENT_CAPACITY);
+            writer.write(sEventCaptures[slot] + "," + STAGE_NAMES[sEventStages[slot]] + ","
+                    + sEventStarts[slot] + "," + sEventDurations[slot] + "\n");
+        }
+        writer.flush();
+    }
+
+    /**
+     * Write the stage histograms and the recent stage events as JSON
+     *
+     * @param writer The writer, not closed
+     * @throws IOException
+     */
+    public static void writeJson(Writer writer) throws IOException {
+        writer.write("{\"stages\":[");
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            LatencyHistogram histogram = sHistograms[i];
+            if (i > 0) {
+                writer.write(",");
+            }
+            writer.write(String.format(Locale.US,
+                    "{\"stage\":\"%s\",\"count\":%d,\"mean_ms\":%.3f,\"p50_ms\":%.3f,\"p90_ms\":%.3f,\"p99_ms\":%.3f,\"max_ms\":%.3f}",
+                    STAGE_NAMES[i], histogram.getCount(), histogram.getMeanMs(), histogram.getPercentileMs(50),
+                    histogram.getPercentileMs(90), histogram.getPercentileMs(99), histogram.getMaxMs()));
+        }
+
+        writer.write("],\"events\":[");
+        long count = sEventCount.get();
+        long first = Math.max(0, count - EVENT_CAPACITY);
+        for (long i = first; i < count; i++) {
+            int slot = (int) (i % EVENT_CAPACITY);
+            if (i > first) {
+                writer.write(",");
+            }
+            writer.write("{\"capture\":" + sEventCaptures[slot]
+                    + ",\"stage\":\"" + STAGE_NAMES[sEventStages[slot]] + "\""
+                    + ",\"start_ns\":" + sEventStarts[slot]
+                    + ",\"duration_ns\":" + sEventDurations[slot] + "}");
+        }
+        writer.write("]}");
+        writer.flush();
+    }
+}
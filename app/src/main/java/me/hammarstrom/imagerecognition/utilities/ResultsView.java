@@ -0,0 +1,329 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.utilities;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.support.v4.view.ViewCompat;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.animation.AnimationUtils;
+
+import java.text.DecimalFormatSymbols;
+
+import me.hammarstrom.imagerecognition.core.RenderPlan;
+import me.hammarstrom.imagerecognition.core.RenderPlanner;
+import me.hammarstrom.imagerecognition.core.ResultsTimeline;
+import me.hammarstrom.imagerecognition.core.ScoreGauge;
+
+/**
+ * Draws the labels of a result as a column of score gauges, each a
+ * circle with the score in it and the label to the right, on a single
+ * canvas.
+ *
+ * The labels are kept in arrays that are reused when new results arrive,
+ * and one animation clock drives every label through the
+ * {@link ResultsTimeline}, so showing a result neither adds views nor
+ * creates animators.
+ */
+public class ResultsView extends View {
+
+    private static final long NOT_ANIMATING = -1;
+
+    /**
+     * Listener for the end of the animation showing a result
+     */
+    public interface Listener {
+        void onResultsShown();
+    }
+
+    // The labels shown, only the first mLabelCount are in use
+    private String[] mLabels;
+    private int[] mLabelTextHeights;
+    private ScoreGauge[] mGauges;
+    private int mLabelCount;
+    private int mContentWidth;
+
+    private final char mZeroDigit;
+    private final char mDecimalSeparator;
+
+    private final Paint mOverflowPaint;
+    private final Paint mScorePaint;
+    private final Paint mLabelTextPaint;
+    private final Paint mScoreTextPaint;
+    private final int mOverflowAlpha;
+
+    // Each row is a gauge with the label to the right
+    private final int mRowPadding;
+    private final int mRowHeight;
+    private final int mRadius;
+    private final int mMinRowWidth;
+    private final RectF mArc;
+    private final float mScoreTextX;
+    private final float mScoreTextY;
+    private final float mLabelTextX;
+
+    // Labels slide in from the left, half the display width away
+    private final float mEnterDistance;
+
+    private long mAnimationStart = NOT_ANIMATING;
+    private Listener mListener;
+
+    public ResultsView(Context context) {
+        this(context, null);
+    }
+
+    public ResultsView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public ResultsView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+
+        mLabels = new String[0];
+        mLabelTextHeights = new int[0];
+        mGauges = new ScoreGauge[0];
+
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance();
+        mZeroDigit = symbols.getZeroDigit();
+        mDecimalSeparator = symbols.getDecimalSeparator();
+
+        mOverflowPaint = createArcPaint(Color.parseColor("#70FFFFFF"));
+        mOverflowAlpha = mOverflowPaint.getAlpha();
+        mScorePaint = createArcPaint(Color.parseColor("#2196F3"));
+        mLabelTextPaint = createLabelTextPaint(context);
+        mScoreTextPaint = createScoreTextPaint(context);
+
+        mRowPadding = (int) DeviceDimensionsHelper.convertDpToPixel(8, context);
+        mRowHeight = (int) DeviceDimensionsHelper.convertDpToPixel(50, context) + mRowPadding * 2;
+        mRadius = mRowHeight / 2 - mRowPadding;
+        mMinRowWidth = (int) DeviceDimensionsHelper.convertDpToPixel(160, context) + mRowPadding * 2;
+
+        // Rows are drawn translated to their place, so the gauge is at the same spot in each
+        float centerX = mRowPadding + mRadius;
+        float centerY = mRowHeight / 2f;
+        mArc = new RectF(centerX - mRadius, centerY - mRadius, centerX + mRadius, centerY + mRadius);
+
+        char[] zero = new char[ScoreGauge.MAX_TEXT_LENGTH];
+        int length = ScoreGauge.formatScore(0f, mZeroDigit, mDecimalSeparator, zero, 0);
+        Rect scoreTextBounds = new Rect();
+        mScoreTextPaint.getTextBounds(zero, 0, length, scoreTextBounds);
+        mScoreTextX = centerX - scoreTextBounds.width() / 2f;
+        mScoreTextY = centerY + scoreTextBounds.height() / 3f;
+        mLabelTextX = centerX + mRadius + mRowPadding;
+
+        mEnterDistance = DeviceDimensionsHelper.getDisplayWidth(context) / 2;
+    }
+
+    private static Paint createArcPaint(int color) {
+        Paint paint = new Paint();
+        paint.setColor(color);
+        paint.setAntiAlias(true);
+        paint.setStrokeWidth(10);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeJoin(Paint.Join.ROUND);
+        paint.setStrokeCap(Paint.Cap.ROUND);
+        return paint;
+    }
+
+    private static Paint createScoreTextPaint(Context context) {
+        Paint paint = new Paint();
+        paint.setColor(Color.WHITE);
+        paint.setAntiAlias(true);
+        paint.setTypeface(Typeface.create(Typeface.SANS_SERIF, Typeface.BOLD));
+        paint.setTextSize(DeviceDimensionsHelper.convertDpToPixel(16, context));
+        return paint;
+    }
+
+    private static Paint createLabelTextPaint(Context context) {
+        Paint paint = new Paint();
+        paint.setColor(Color.WHITE);
+        paint.setAntiAlias(true);
+        paint.setTypeface(Typeface.SANS_SERIF);
+        paint.setTextSize(DeviceDimensionsHelper.convertDpToPixel(14, context));
+        return paint;
+    }
+
+    /**
+     * Create a measurer for label texts, measuring them like a ResultsView
+     * draws them.
+     * Safe to use from any thread.
+     *
+     * @param context The context
+     * @return measurer for {@link RenderPlanner}
+     */
+    public static RenderPlanner.TextMeasurer createLabelMeasurer(Context context) {
+        final Paint paint = createLabelTextPaint(context);
+        final Rect bounds = new Rect();
+        return new RenderPlanner.TextMeasurer() {
+            @Override
+            public synchronized void measure(String text, int[] out, int offset) {
+                paint.getTextBounds(text, 0, text.length(), bounds);
+                out[offset] = bounds.width();
+                out[offset + 1] = bounds.height();
+            }
+        };
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Show the labels of a plan, replacing the labels shown
+     *
+     * @param plan The plan, with label texts measured by {@link #createLabelMeasurer(Context)}
+     * @param maxLabelCount Max number of labels to show
+     * @param animate true to slide the labels in and count up their scores,
+     *                false to show them directly, ex. when updating continuously
+     */
+    public void showResults(RenderPlan plan, int maxLabelCount, boolean animate) {
+        int labelCount = Math.min(plan.getLabelCount(), maxLabelCount);
+        ensureCapacity(labelCount);
+
+        int contentWidth = 0;
+        for (int i = 0; i < labelCount; i++) {
+            mLabels[i] = plan.getLabelDescription(i);
+            mLabelTextHeights[i] = plan.getLabelTextHeight(i);
+            mGauges[i].setScore(plan.getLabelScore(i));
+            mGauges[i].setProgress(animate ? 0f : 1f);
+            contentWidth = Math.max(contentWidth, (int) mLabelTextX + plan.getLabelTextWidth(i) + mRowPadding);
+        }
+        contentWidth = labelCount > 0 ? Math.max(contentWidth, mMinRowWidth) : 0;
+
+        // Only a new number of labels or longer or shorter labels need a new layout
+        if (labelCount != mLabelCount || contentWidth != mContentWidth) {
+            mLabelCount = labelCount;
+            mContentWidth = contentWidth;
+            requestLayout();
+        }
+
+        mAnimationStart = animate ? AnimationUtils.currentAnimationTimeMillis() : NOT_ANIMATING;
+        invalidate();
+    }
+
+    /**
+     * Remove all labels
+     */
+    public void clear() {
+        mAnimationStart = NOT_ANIMATING;
+        if (mLabelCount != 0) {
+            mLabelCount = 0;
+            mContentWidth = 0;
+            requestLayout();
+        }
+        invalidate();
+    }
+
+    public int getLabelCount() {
+        return mLabelCount;
+    }
+
+    public String getLabel(int label) {
+        return mLabels[label];
+    }
+
+    /**
+     * Grow the label arrays, they are never shrunk
+     */
+    private void ensureCapacity(int labelCount) {
+        if (labelCount <= mGauges.length) {
+            return;
+        }
+
+        String[] labels = new String[labelCount];
+        System.arraycopy(mLabels, 0, labels, 0, mLabels.length);
+        mLabels = labels;
+
+        int[] textHeights = new int[labelCount];
+        System.arraycopy(mLabelTextHeights, 0, textHeights, 0, mLabelTextHeights.length);
+        mLabelTextHeights = textHeights;
+
+        ScoreGauge[] gauges = new ScoreGauge[labelCount];
+        System.arraycopy(mGauges, 0, gauges, 0, mGauges.length);
+        for (int i = mGauges.length; i < labelCount; i++) {
+            gauges[i] = new ScoreGauge(mZeroDigit, mDecimalSeparator);
+        }
+        mGauges = gauges;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int w = getPaddingLeft() + getPaddingRight() + mContentWidth;
+        int h = getPaddingTop() + getPaddingBottom() + mLabelCount * mRowHeight;
+
+        setMeasuredDimension(resolveSize(w, widthMeasureSpec), resolveSize(h, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+
+        boolean animating = mAnimationStart != NOT_ANIMATING;
+        long elapsed = animating ? AnimationUtils.currentAnimationTimeMillis() - mAnimationStart : 0;
+        float scoreProgress = ResultsTimeline.accelerateDecelerate(ResultsTimeline.getScoreFraction(mLabelCount, elapsed));
+
+        for (int i = 0; i < mLabelCount; i++) {
+            float translationX = 0f;
+            float alpha = 1f;
+            if (animating) {
+                float enter = ResultsTimeline.getEnterFraction(i, elapsed);
+                if (enter == 0f) {
+                    // Labels after this one have not started entering either
+                    break;
+                }
+                translationX = -mEnterDistance * (1f - ResultsTimeline.overshoot(enter));
+                alpha = ResultsTimeline.accelerateDecelerate(enter);
+                mGauges[i].setProgress(scoreProgress);
+            }
+
+            int save = canvas.save();
+            canvas.translate(getPaddingLeft() + translationX, getPaddingTop() + i * mRowHeight);
+            drawRow(canvas, i, alpha);
+            canvas.restoreToCount(save);
+        }
+
+        if (animating) {
+            if (elapsed < ResultsTimeline.getDuration(mLabelCount)) {
+                ViewCompat.postInvalidateOnAnimation(this);
+            } else {
+                mAnimationStart = NOT_ANIMATING;
+                if (mListener != null) {
+                    mListener.onResultsShown();
+                }
+            }
+        }
+    }
+
+    private void drawRow(Canvas canvas, int label, float alpha) {
+        int textAlpha = (int) (255 * alpha);
+        mOverflowPaint.setAlpha((int) (mOverflowAlpha * alpha));
+        mScorePaint.setAlpha(textAlpha);
+        mLabelTextPaint.setAlpha(textAlpha);
+        mScoreTextPaint.setAlpha(textAlpha);
+
+        ScoreGauge gauge = mGauges[label];
+        canvas.drawCircle(mArc.centerX(), mArc.centerY(), mRadius, mOverflowPaint);
+        canvas.drawText(mLabels[label], mLabelTextX, mArc.centerY() + mLabelTextHeights[label] / 3f, mLabelTextPaint);
+        canvas.drawText(gauge.getText(), 0, gauge.getTextLength(), mScoreTextX, mScoreTextY, mScoreTextPaint);
+        canvas.drawArc(mArc, -90, gauge.getSweepAngle(), false, mScorePaint);
+    }
+}
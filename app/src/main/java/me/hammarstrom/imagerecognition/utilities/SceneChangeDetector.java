@@ -0,0 +1,206 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.utilities;
+
+/**
+ * Cheap detector telling if a frame differs enough from
+ * the last analyzed frame to be worth a new Vision request.
+ *
+ * Each frame is reduced to a small grid of mean luma values, which is
+ * compared with the grid of the last accepted frame. The frame is accepted
+ * when the mean absolute difference reaches the threshold. No memory is
+ * allocated per frame.
+ */
+public class SceneChangeDetector {
+
+    public static final int DEFAULT_GRID_WIDTH = 32;
+    public static final int DEFAULT_GRID_HEIGHT = 24;
+
+    // Mean absolute luma difference (0 - 255) needed to accept a frame
+    public static final float DEFAULT_THRESHOLD = 10f;
+
+    // Number of samples along each axis of a grid cell
+    private static final int CELL_SAMPLES = 4;
+
+    private final int mGridWidth;
+    private final int mGridHeight;
+    private final int[] mGrid;
+    private final int[] mReferenceGrid;
+
+    private volatile float mThreshold;
+    private boolean mHasReference;
+    private float mLastDifference;
+
+    private long mFrameCount;
+    private long mSuppressedCount;
+
+    public SceneChangeDetector() {
+        this(DEFAULT_GRID_WIDTH, DEFAULT_GRID_HEIGHT, DEFAULT_THRESHOLD);
+    }
+
+    public SceneChangeDetector(int gridWidth, int gridHeight, float threshold) {
+        if (gridWidth < 1 || gridHeight < 1) {
+            throw new IllegalArgumentException("Grid has to be at least 1x1");
+        }
+        mGridWidth = gridWidth;
+        mGridHeight = gridHeight;
+        mGrid = new int[gridWidth * gridHeight];
+        mReferenceGrid = new int[gridWidth * gridHeight];
+        setThreshold(threshold);
+    }
+
+    /**
+     * Set the mean absolute luma difference needed to accept a frame
+     *
+     * @param threshold between 0 and 255, 0 accepts every frame
+     */
+    public void setThreshold(float threshold) {
+        if (threshold < 0f || threshold > 255f) {
+            throw new IllegalArgumentException("Threshold has to be a value between 0 and 255");
+        }
+        mThreshold = threshold;
+    }
+
+    public float getThreshold() {
+        return mThreshold;
+    }
+
+    /**
+     * Check an NV21 frame, ex. a camera preview buffer. Only the Y plane is read.
+     *
+     * @param nv21 The frame
+     * @param width The frame width
+     * @param height The frame height
+     * @return true if the frame should be analyzed, it is then the new reference frame
+     */
+    public boolean hasChangedNv21(byte[] nv21, int width, int height) {
+        for (int gy = 0; gy < mGridHeight; gy++) {
+            int top = gy * height / mGridHeight;
+            int cellHeight = Math.max(1, (gy + 1) * height / mGridHeight - top);
+
+            for (int gx = 0; gx < mGridWidth; gx++) {
+                int left = gx * width / mGridWidth;
+                int cellWidth = Math.max(1, (gx + 1) * width / mGridWidth - left);
+
+                int sum = 0;
+                for (int sy = 0; sy < CELL_SAMPLES; sy++) {
+                    int row = (top + sy * cellHeight / CELL_SAMPLES) * width;
+                    for (int sx = 0; sx < CELL_SAMPLES; sx++) {
+                        sum += nv21[row + left + sx * cellWidth / CELL_SAMPLES] & 0xFF;
+                    }
+                }
+                mGrid[gy * mGridWidth + gx] = sum / (CELL_SAMPLES * CELL_SAMPLES);
+            }
+        }
+
+        return evaluate();
+    }
+
+    /**
+     * Check an ARGB frame, ex. pixels of a scaled bitmap
+     *
+     * @param argb The pixels
+     * @param width The frame width
+     * @param height The frame height
+     * @return true if the frame should be analyzed, it is then the new reference frame
+     */
+    public boolean hasChangedArgb(int[] argb, int width, int height) {
+        for (int gy = 0; gy < mGridHeight; gy++) {
+            int top = gy * height / mGridHeight;
+            int cellHeight = Math.max(1, (gy + 1) * height / mGridHeight - top);
+
+            for (int gx = 0; gx < mGridWidth; gx++) {
+                int left = gx * width / mGridWidth;
+                int cellWidth = Math.max(1, (gx + 1) * width / mGridWidth - left);
+
+                int sum = 0;
+                for (int sy = 0; sy < CELL_SAMPLES; sy++) {
+                    int row = (top + sy * cellHeight / CELL_SAMPLES) * width;
+                    for (int sx = 0; sx < CELL_SAMPLES; sx++) {
+                        int p = argb[row + left + sx * cellWidth / CELL_SAMPLES];
+                        // Integer approximation of BT.601 luma
+                        sum += (77 * ((p >> 16) & 0xFF) + 150 * ((p >> 8) & 0xFF) + 29 * (p & 0xFF)) >> 8;
+                    }
+                }
+                mGrid[gy * mGridWidth + gx] = sum / (CELL_SAMPLES * CELL_SAMPLES);
+            }
+        }
+
+        return evaluate();
+    }
+
+    private boolean evaluate() {
+        mFrameCount++;
+
+        if (!mHasReference) {
+            mLastDifference = 255f;
+            accept();
+            return true;
+        }
+
+        long total = 0;
+        for (int i = 0; i < mGrid.length; i++) {
+            total += Math.abs(mGrid[i] - mReferenceGrid[i]);
+        }
+        mLastDifference = (float) total / mGrid.length;
+
+        if (mLastDifference >= mThreshold) {
+            accept();
+            return true;
+        }
+
+        mSuppressedCount++;
+        return false;
+    }
+
+    private void accept() {
+        System.arraycopy(mGrid, 0, mReferenceGrid, 0, mGrid.length);
+        mHasReference = true;
+    }
+
+    /**
+     * Forget the reference frame, the next frame is always accepted
+     */
+    public void reset() {
+        mHasReference = false;
+    }
+
+    /**
+     * Get the difference of the last checked frame
+     *
+     * @return mean absolute luma difference, between 0 and 255
+     */
+    public float getLastDifference() {
+        return mLastDifference;
+    }
+
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    public long getSuppressedCount() {
+        return mSuppressedCount;
+    }
+
+    /**
+     * Get share of checked frames that were suppressed
+     *
+     * @return ratio between 0 and 1
+     */
+    public float getSuppressionRatio() {
+        return mFrameCount == 0 ? 0f : (float) mSuppressedCount / mFrameCount;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import com.google.api.client.http.HttpContent;
+import com.google.api.services.vision.v1.model.Feature;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import me.hammarstrom.imagerecognition.core.AnnotateRequestWriter;
+import me.hammarstrom.imagerecognition.utilities.PipelineTrace;
+
+/**
+ * Streaming body of an images:annotate request.
+ *
+ * The JSON of a {@link com.google.api.services.vision.v1.model.BatchAnnotateImagesRequest}
+ * is written by an {@link AnnotateRequestWriter}, with each image compressed by its
+ * {@link JpegSource} and base64 encoded straight into the HTTP output stream.
+ * Neither the JPEG nor its base64 string is ever held in memory.
+ */
+public class AnnotateRequestContent implements HttpContent {
+
+    private final List<AnnotateRequestWriter.Entry> mEntries;
+
+    public AnnotateRequestContent(List<Entry> entries) {
+        mEntries = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            mEntries.add(toWriterEntry(entry));
+        }
+    }
+
+    @Override
+    public long getLength() throws IOException {
+        // Unknown, the request is sent with chunked transfer encoding
+        return -1;
+    }
+
+    @Override
+    public String getType() {
+        return "application/json; charset=UTF-8";
+    }
+
+    @Override
+    public boolean retrySupported() {
+        return true;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        AnnotateRequestWriter.write(out, mEntries);
+    }
+
+    private static AnnotateRequestWriter.Entry toWriterEntry(final Entry entry) {
+        String[] types = new String[entry.features.size()];
+        int[] maxResults = new int[types.length];
+        for (int i = 0; i < types.length; i++) {
+            Feature feature = entry.features.get(i);
+            types[i] = feature.getType();
+            maxResults[i] = feature.getMaxResults() != null ? feature.getMaxResults() : 0;
+        }
+
+        AnnotateRequestWriter.JpegWriter jpeg = new AnnotateRequestWriter.JpegWriter() {
+            @Override
+            public void writeJpeg(OutputStream out) throws IOException {
+                long traceStart = PipelineTrace.start();
+                entry.source.writeTo(out);
+                PipelineTrace.end(PipelineTrace.STAGE_ENCODE, traceStart);
+            }
+        };
+
+        return new AnnotateRequestWriter.Entry(jpeg, types, maxResults);
+    }
+
+    /**
+     * One image of the request and the features to detect in it.
+     */
+    public static class Entry {
+        public final JpegSource source;
+        public final List<Feature> features;
+
+        public Entry(JpegSource source, List<Feature> features) {
+            this.source = source;
+            this.features = features;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import android.graphics.Bitmap;
+
+import me.hammarstrom.imagerecognition.utilities.BitmapPool;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * {@link JpegSource} compressing a {@link Bitmap} straight into the output stream.
+ */
+public class BitmapJpegSource implements JpegSource {
+
+    private final Bitmap mBitmap;
+    private final int mQuality;
+    private final boolean mPooled;
+    private String mCacheKey;
+
+    /**
+     * @param bitmap The bitmap
+     * @param quality The JPEG quality
+     * @param pooled true if the bitmap should be returned to {@link BitmapPool} when released
+     */
+    public BitmapJpegSource(Bitmap bitmap, int quality, boolean pooled) {
+        mBitmap = bitmap;
+        mQuality = quality;
+        mPooled = pooled;
+    }
+
+    public Bitmap getBitmap() {
+        return mBitmap;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        if (!mBitmap.compress(Bitmap.CompressFormat.JPEG, mQuality, out)) {
+            throw new IOException("Unable to compress bitmap");
+        }
+    }
+
+    /**
+     * The JPEG is never held in memory, so the key is a hash of
+     * the bitmap pixels, read one row at a time.
+     *
+     * @return cache key
+     */
+    @Override
+    public synchronized String getCacheKey() {
+        if (mCacheKey == null) {
+            int width = mBitmap.getWidth();
+            int height = mBitmap.getHeight();
+            int[] row = new int[width];
+            byte[] rowBytes = new byte[width * 4];
+
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-1");
+                for (int y = 0; y < height; y++) {
+                    mBitmap.getPixels(row, 0, width, 0, y, width, 1);
+                    for (int x = 0, i = 0; x < width; x++) {
+                        int p = row[x];
+                        rowBytes[i++] = (byte) (p >> 24);
+                        rowBytes[i++] = (byte) (p >> 16);
+                        rowBytes[i++] = (byte) (p >> 8);
+                        rowBytes[i++] = (byte) p;
+                    }
+                    digest.update(rowBytes);
+                }
+
+                mCacheKey = width + "x" + height + "-" + mQuality + "-" + VisionResultCache.toHex(digest.digest());
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-1 not available", e);
+            }
+        }
+        return mCacheKey;
+    }
+
+    @Override
+    public void release() {
+        if (mPooled) {
+            BitmapPool.getInstance().put(mBitmap);
+        }
+    }
+}
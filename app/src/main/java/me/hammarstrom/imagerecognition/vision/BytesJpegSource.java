@@ -0,0 +1,53 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@link JpegSource} writing already encoded JPEG bytes untouched.
+ */
+public class BytesJpegSource implements JpegSource {
+
+    private final byte[] mData;
+    private String mCacheKey;
+
+    public BytesJpegSource(byte[] data) {
+        mData = data;
+    }
+
+    public byte[] getData() {
+        return mData;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(mData);
+    }
+
+    @Override
+    public synchronized String getCacheKey() {
+        if (mCacheKey == null) {
+            mCacheKey = VisionResultCache.createKey(mData);
+        }
+        return mCacheKey;
+    }
+
+    @Override
+    public void release() {
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import me.hammarstrom.imagerecognition.core.VisionResult;
+import rx.Observable;
+
+/**
+ * {@link VisionBackend} sending requests to the Cloud Vision API
+ * through {@link CloudVisionRequest}.
+ */
+public class CloudVisionBackend implements VisionBackend {
+
+    public static final String NAME = "cloud";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean supports(int features) {
+        return true;
+    }
+
+    @Override
+    public Observable<VisionResult> analyze(VisionRequest request) {
+        // The result carries the capture descriptor of its own request
+        return CloudVisionRequest.doRequest(request.getJpeg(), request.hasFeature(VisionRequest.FEATURE_FACES));
+    }
+}
@@ -3,27 +3,24 @@ package me.hammarstrom.imagerecognition.vision;
 import android.graphics.Bitmap;
 import android.util.Log;
 
-import com.google.api.client.extensions.android.http.AndroidHttp;
-import com.google.api.client.googleapis.json.GoogleJsonResponseException;
-import com.google.api.client.http.HttpTransport;
-import com.google.api.client.json.JsonFactory;
-import com.google.api.client.json.gson.GsonFactory;
-import com.google.api.services.vision.v1.Vision;
-import com.google.api.services.vision.v1.VisionRequestInitializer;
-import com.google.api.services.vision.v1.model.AnnotateImageRequest;
-import com.google.api.services.vision.v1.model.BatchAnnotateImagesRequest;
-import com.google.api.services.vision.v1.model.BatchAnnotateImagesResponse;
 import com.google.api.services.vision.v1.model.Feature;
-import com.google.api.services.vision.v1.model.Image;
 
 import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import me.hammarstrom.imagerecognition.utilities.Constants;
+import me.hammarstrom.imagerecognition.core.CaptureDescriptor;
+import me.hammarstrom.imagerecognition.core.ImageSize;
+import me.hammarstrom.imagerecognition.core.VisionResult;
+import me.hammarstrom.imagerecognition.utilities.BitmapPool;
 import me.hammarstrom.imagerecognition.utilities.ImageHelper;
+import me.hammarstrom.imagerecognition.utilities.JpegHeader;
 import rx.Observable;
-import rx.Subscriber;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
 
 /**
  * Created by Fredrik Hammarström on 08/04/16.
@@ -38,80 +35,185 @@ public class CloudVisionRequest {
     private static final int LABEL_MAX_RESULT = 5;
     private static final int FACES_MAX_RESULT = 10;
 
-    public static Observable<BatchAnnotateImagesResponse> doRequest(final Bitmap b) {
-        return Observable.create(new Observable.OnSubscribe<BatchAnnotateImagesResponse>() {
+    private static final int JPEG_QUALITY = 90;
+
+    // JPEGs up to this size are uploaded without being decoded and re-encoded
+    private static final int PASS_THROUGH_MAX_DIMENSION = ImageHelper.VISION_MAX_DIMENSION * 5 / 4;
+    private static final int PASS_THROUGH_MAX_BYTES = 768 * 1024;
+
+    public static Observable<VisionResult> doRequest(final Bitmap b) {
+        return doRequest(b, true);
+    }
+
+    /**
+     * Analyze a bitmap
+     *
+     * @param b The bitmap
+     * @param detectFaces true to detect faces and their expressions as well as labels
+     * @return observable emitting the result, with the capture it was analyzed from
+     */
+    public static Observable<VisionResult> doRequest(final Bitmap b, final boolean detectFaces) {
+        return Observable.defer(new Func0<Observable<VisionResult>>() {
             @Override
-            public void call(Subscriber<? super BatchAnnotateImagesResponse> subscriber) {
-                subscriber.onNext(doVisionRequest(b));
+            public Observable<VisionResult> call() {
+                // The bitmap is compressed to JPEG while the request is written
+                Bitmap scaled = ImageHelper.scaleBitmapDown(b, ImageHelper.VISION_MAX_DIMENSION);
+                CaptureDescriptor capture = CaptureDescriptor.uncropped(sizeOf(b), 0, sizeOf(scaled));
+                return doRequest(new BitmapJpegSource(scaled, JPEG_QUALITY, scaled != b), detectFaces, capture);
             }
         });
     }
 
-    private static BatchAnnotateImagesResponse doVisionRequest(Bitmap b) {
-        final Bitmap bitmap = ImageHelper.scaleBitmapDown(b, 1100);
-
-        try {
-            HttpTransport httpTransport = AndroidHttp.newCompatibleTransport();
-            JsonFactory jsonFactory = GsonFactory.getDefaultInstance();
-
-            Vision vision = new Vision.Builder(httpTransport, jsonFactory, null)
-                    .setApplicationName(Constants.APPLICATION_NAME)
-                    .setVisionRequestInitializer(new VisionRequestInitializer(Constants.CLOUD_VISION_API_KEY))
-                    .build();
-
-            BatchAnnotateImagesRequest batchAnnotateImagesRequest = new BatchAnnotateImagesRequest();
-
-
-            batchAnnotateImagesRequest.setRequests(new ArrayList<AnnotateImageRequest>() {{
-                AnnotateImageRequest annotateImageRequest = new AnnotateImageRequest();
-
-                Image base64EncodedImage = new Image();
-
-                // Convert the bitmap to a JPEG
-                // Just in case it's a format that Android understands but Cloud Vision
-                ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-                bitmap.compress(Bitmap.CompressFormat.JPEG, 90, byteArrayOutputStream);
-                byte[] imageBytes = byteArrayOutputStream.toByteArray();
-
-                // Base64 encode the JPEG
-                base64EncodedImage.encodeContent(imageBytes);
-                annotateImageRequest.setImage(base64EncodedImage);
-
-                // add the features we want
-                annotateImageRequest.setFeatures(new ArrayList<Feature>() {{
-                    Feature labelDetection = new Feature();
-                    labelDetection.setType(VISION_TYPE_LABEL);
-                    labelDetection.setMaxResults(LABEL_MAX_RESULT);
-                    add(labelDetection);
-
-                    Feature faceDetection = new Feature();
-                    faceDetection.setType(VISION_TYPE_FACE);
-                    faceDetection.setMaxResults(FACES_MAX_RESULT);
-                    add(faceDetection);
-                }});
+    /**
+     * Analyze a JPEG, ex. as delivered by the camera.
+     *
+     * If the JPEG already is upright and within the size and byte budgets
+     * it is uploaded as is. Otherwise it is decoded, rotated and scaled
+     * down, and re-encoded while the request is written.
+     *
+     * @param jpeg The JPEG data
+     * @return observable emitting the result, with the capture it was analyzed from
+     */
+    public static Observable<VisionResult> doRequest(final byte[] jpeg) {
+        return doRequest(jpeg, true);
+    }
 
+    /**
+     * Analyze a JPEG, see {@link #doRequest(byte[])}
+     *
+     * @param jpeg The JPEG data
+     * @param detectFaces true to detect faces and their expressions as well as labels
+     * @return observable emitting the result, with the capture it was analyzed from
+     */
+    public static Observable<VisionResult> doRequest(final byte[] jpeg, final boolean detectFaces) {
+        return Observable.defer(new Func0<Observable<VisionResult>>() {
+            @Override
+            public Observable<VisionResult> call() {
+                JpegHeader header = JpegHeader.read(jpeg);
+
+                if (canPassThrough(header, jpeg.length)) {
+                    Log.d(TAG, "passing through " + header.getWidth() + "x" + header.getHeight() + " JPEG, " + jpeg.length + " bytes");
+                    CaptureDescriptor capture = CaptureDescriptor.unchanged(new ImageSize(header.getWidth(), header.getHeight()));
+                    return doRequest(new BytesJpegSource(jpeg), detectFaces, capture);
+                }
+
+                Bitmap bitmap = ImageHelper.decodeSampledBitmap(jpeg, ImageHelper.VISION_MAX_DIMENSION, Bitmap.Config.RGB_565);
+                if (bitmap == null) {
+                    return Observable.error(new IllegalArgumentException("Unable to decode JPEG"));
+                }
+
+                // Without a readable header the decoded JPEG is taken as the capture
+                ImageSize originalSize = header != null ? new ImageSize(header.getWidth(), header.getHeight()) : sizeOf(bitmap);
+                int rotation = header != null ? header.getRotationDegrees() : 0;
+                if (rotation != 0) {
+                    bitmap = ImageHelper.rotateBitmap(bitmap, rotation);
+                }
+
+                CaptureDescriptor capture = CaptureDescriptor.uncropped(originalSize, rotation, sizeOf(bitmap));
+                return doRequest(new BitmapJpegSource(bitmap, JPEG_QUALITY, true), detectFaces, capture);
+            }
+        });
+    }
 
+    /**
+     * Get a JPEG no larger than what would be uploaded for an image,
+     * ex. to store it for later. The JPEG is returned as is if it would
+     * be passed through, otherwise it is scaled down, rotated and re-encoded.
+     *
+     * @param jpeg The JPEG data
+     * @return JPEG data, or null if the JPEG can't be decoded
+     */
+    public static byte[] toAnalysisJpeg(byte[] jpeg) {
+        JpegHeader header = JpegHeader.read(jpeg);
+        if (canPassThrough(header, jpeg.length)) {
+            return jpeg;
+        }
 
-                // Add the list of one thing to the request
-                add(annotateImageRequest);
-            }});
+        Bitmap bitmap = ImageHelper.decodeSampledBitmap(jpeg, ImageHelper.VISION_MAX_DIMENSION, Bitmap.Config.RGB_565);
+        if (bitmap == null) {
+            return null;
+        }
 
-            final Vision.Images.Annotate annotateRequest = vision.images().annotate(batchAnnotateImagesRequest);
+        if (header != null && header.getRotationDegrees() != 0) {
+            bitmap = ImageHelper.rotateBitmap(bitmap, header.getRotationDegrees());
+        }
 
-            // Due to a bug: requests to Vision API containing large images fail when GZipped.
-            annotateRequest.setDisableGZipContent(true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bitmap.getWidth() * bitmap.getHeight() / 4);
+        bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        BitmapPool.getInstance().put(bitmap);
+        return out.toByteArray();
+    }
 
+    private static boolean canPassThrough(JpegHeader header, int length) {
+        return header != null
+                && header.isUpright()
+                && Math.max(header.getWidth(), header.getHeight()) <= PASS_THROUGH_MAX_DIMENSION
+                && length <= PASS_THROUGH_MAX_BYTES;
+    }
 
-            return annotateRequest.execute();
+    private static ImageSize sizeOf(Bitmap bitmap) {
+        return new ImageSize(bitmap.getWidth(), bitmap.getHeight());
+    }
 
-        } catch (GoogleJsonResponseException e) {
-            Log.d(TAG, "failed to make API request because " + e.getContent());
-        } catch (IOException e) {
-            Log.d(TAG, "failed to make API request because of other IOException " +
-                    e.getMessage());
+    /**
+     * Analyze an image, the result gets the capture of this request
+     * whether it comes from the cache or from the Vision API
+     */
+    private static Observable<VisionResult> doRequest(final JpegSource source, boolean detectFaces,
+                                                      final CaptureDescriptor capture) {
+        // Skip the network completely if this image has been analyzed before,
+        // a response without faces can't answer a request for faces
+        final String key = detectFaces ? source.getCacheKey() + "-faces" : source.getCacheKey();
+        VisionResult cached = VisionResultCache.getInstance().get(key);
+        if (cached != null) {
+            source.release();
+            return Observable.just(cached.withCapture(capture));
         }
 
-        return null;
+        final AtomicBoolean released = new AtomicBoolean();
+        Action0 release = new Action0() {
+            @Override
+            public void call() {
+                if (released.compareAndSet(false, true)) {
+                    source.release();
+                }
+            }
+        };
+
+        return VisionBatchDispatcher.getInstance()
+                .enqueue(source, createFeatures(detectFaces))
+                .doOnNext(new Action1<VisionResult>() {
+                    @Override
+                    public void call(VisionResult result) {
+                        VisionResultCache.getInstance().put(key, result);
+                    }
+                })
+                // Released once, whether the request ends or is unsubscribed from
+                .doOnTerminate(release)
+                .doOnUnsubscribe(release)
+                .map(new Func1<VisionResult, VisionResult>() {
+                    @Override
+                    public VisionResult call(VisionResult result) {
+                        return result.withCapture(capture);
+                    }
+                });
+    }
+
+    private static List<Feature> createFeatures(final boolean detectFaces) {
+        // add the features we want
+        return new ArrayList<Feature>() {{
+            Feature labelDetection = new Feature();
+            labelDetection.setType(VISION_TYPE_LABEL);
+            labelDetection.setMaxResults(LABEL_MAX_RESULT);
+            add(labelDetection);
+
+            if (detectFaces) {
+                Feature faceDetection = new Feature();
+                faceDetection.setType(VISION_TYPE_FACE);
+                faceDetection.setMaxResults(FACES_MAX_RESULT);
+                add(faceDetection);
+            }
+        }};
     }
 
 }
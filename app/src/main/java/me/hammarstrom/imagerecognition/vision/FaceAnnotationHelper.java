@@ -0,0 +1,131 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import com.google.api.services.vision.v1.model.BoundingPoly;
+import com.google.api.services.vision.v1.model.FaceAnnotation;
+import com.google.api.services.vision.v1.model.Vertex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helper class to create {@link FaceAnnotation}s for faces
+ * detected on the device.
+ */
+public class FaceAnnotationHelper {
+
+    public static final String LIKELIHOOD_UNKNOWN = "UNKNOWN";
+    public static final String LIKELIHOOD_VERY_UNLIKELY = "VERY_UNLIKELY";
+    public static final String LIKELIHOOD_UNLIKELY = "UNLIKELY";
+    public static final String LIKELIHOOD_POSSIBLE = "POSSIBLE";
+    public static final String LIKELIHOOD_LIKELY = "LIKELY";
+    public static final String LIKELIHOOD_VERY_LIKELY = "VERY_LIKELY";
+
+    /**
+     * Create a face annotation from a detected face
+     *
+     * @param left Left edge of the face
+     * @param top Top edge of the face
+     * @param width Face width
+     * @param height Face height
+     * @param smilingProbability Probability that the face is smiling, negative if not computed
+     * @return annotation with bounding poly and joy likelihood, other likelihoods are unknown
+     */
+    public static FaceAnnotation createFaceAnnotation(float left, float top, float width, float height, float smilingProbability) {
+        List<Vertex> vertices = new ArrayList<>(4);
+        vertices.add(vertex(left, top));
+        vertices.add(vertex(left + width, top));
+        vertices.add(vertex(left + width, top + height));
+        vertices.add(vertex(left, top + height));
+
+        BoundingPoly boundingPoly = new BoundingPoly();
+        boundingPoly.setVertices(vertices);
+
+        FaceAnnotation face = new FaceAnnotation();
+        face.setFdBoundingPoly(boundingPoly);
+        face.setBoundingPoly(boundingPoly);
+        face.setJoyLikelihood(toLikelihood(smilingProbability));
+        face.setSorrowLikelihood(LIKELIHOOD_UNKNOWN);
+        face.setAngerLikelihood(LIKELIHOOD_UNKNOWN);
+        face.setSurpriseLikelihood(LIKELIHOOD_UNKNOWN);
+
+        return face;
+    }
+
+    /**
+     * Convert a probability to a Vision API likelihood
+     *
+     * @param probability between 0 and 1, negative if not computed
+     * @return likelihood
+     */
+    public static String toLikelihood(float probability) {
+        if (probability < 0f) {
+            return LIKELIHOOD_UNKNOWN;
+        } else if (probability >= 0.85f) {
+            return LIKELIHOOD_VERY_LIKELY;
+        } else if (probability >= 0.6f) {
+            return LIKELIHOOD_LIKELY;
+        } else if (probability >= 0.4f) {
+            return LIKELIHOOD_POSSIBLE;
+        } else if (probability >= 0.15f) {
+            return LIKELIHOOD_UNLIKELY;
+        }
+        return LIKELIHOOD_VERY_UNLIKELY;
+    }
+
+    /**
+     * Scale the bounding polys of faces, ex. from a sampled bitmap to the original image
+     *
+     * @param faces The faces, changed in place
+     * @param scale The scale factor
+     */
+    public static void scale(List<FaceAnnotation> faces, float scale) {
+        if (scale == 1f) {
+            return;
+        }
+
+        for (FaceAnnotation f : faces) {
+            // fd and regular bounding poly may be the same instance
+            scale(f.getFdBoundingPoly(), scale);
+            if (f.getBoundingPoly() != f.getFdBoundingPoly()) {
+                scale(f.getBoundingPoly(), scale);
+            }
+        }
+    }
+
+    private static void scale(BoundingPoly boundingPoly, float scale) {
+        if (boundingPoly == null || boundingPoly.getVertices() == null) {
+            return;
+        }
+
+        for (Vertex v : boundingPoly.getVertices()) {
+            if (v.getX() != null) {
+                v.setX(Math.round(v.getX() * scale));
+            }
+            if (v.getY() != null) {
+                v.setY(Math.round(v.getY() * scale));
+            }
+        }
+    }
+
+    private static Vertex vertex(float x, float y) {
+        Vertex vertex = new Vertex();
+        vertex.setX(Math.round(x));
+        vertex.setY(Math.round(y));
+        return vertex;
+    }
+}
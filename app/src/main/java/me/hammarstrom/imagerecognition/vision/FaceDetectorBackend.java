@@ -0,0 +1,52 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import android.graphics.Bitmap;
+
+import com.google.api.services.vision.v1.model.FaceAnnotation;
+
+import java.util.List;
+
+/**
+ * Face detector running on the device.
+ *
+ * Detected faces are returned as {@link FaceAnnotation}s, the same
+ * model as the Vision API returns, so they can be drawn and described
+ * the same way as faces detected in the cloud.
+ */
+public interface FaceDetectorBackend {
+
+    /**
+     * Detect faces in a bitmap
+     *
+     * @param bitmap The bitmap
+     * @return detected faces in bitmap coordinates, empty if none were found
+     */
+    List<FaceAnnotation> detect(Bitmap bitmap);
+
+    /**
+     * Check if the detector can be used, it may still be downloading
+     *
+     * @return true if operational
+     */
+    boolean isOperational();
+
+    /**
+     * Release the detector
+     */
+    void release();
+}
@@ -0,0 +1,170 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.hammarstrom.imagerecognition.core.VisionResult;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.subjects.BehaviorSubject;
+
+/**
+ * {@link VisionBackend} hedging the requests of another backend.
+ *
+ * When a request has not been answered within the recent p90 latency,
+ * a duplicate request is sent and whichever answers first is used. The
+ * slower request is unsubscribed from. Hedging only starts once enough
+ * latencies have been recorded. A primary request failing in a way that
+ * isn't retryable fails the request right away, without a hedge.
+ */
+public class HedgingBackend implements VisionBackend {
+
+    public static final float DEFAULT_PERCENTILE = 90f;
+
+    // Samples needed before requests are hedged
+    public static final int MIN_SAMPLES = 10;
+
+    // Never hedge sooner than this, even if the backend is usually faster
+    public static final long MIN_HEDGE_DELAY_MS = 200;
+
+    private static final int WINNER_NONE = 0;
+    private static final int WINNER_PRIMARY = 1;
+    private static final int WINNER_HEDGE = 2;
+
+    private final VisionBackend mDelegate;
+    private final float mPercentile;
+    private final Scheduler mScheduler;
+    private final RequestOutcomeStats mStats;
+    private final LatencyTracker mTracker = new LatencyTracker();
+
+    public HedgingBackend(VisionBackend delegate, Scheduler scheduler, RequestOutcomeStats stats) {
+        this(delegate, DEFAULT_PERCENTILE, scheduler, stats);
+    }
+
+    public HedgingBackend(VisionBackend delegate, float percentile, Scheduler scheduler, RequestOutcomeStats stats) {
+        mDelegate = delegate;
+        mPercentile = percentile;
+        mScheduler = scheduler;
+        mStats = stats;
+    }
+
+    @Override
+    public String getName() {
+        return mDelegate.getName();
+    }
+
+    @Override
+    public boolean supports(int features) {
+        return mDelegate.supports(features);
+    }
+
+    /**
+     * Get the latencies of requests answered over the network, the hedge delay is based on these
+     *
+     * @return tracker
+     */
+    public LatencyTracker getTracker() {
+        return mTracker;
+    }
+
+    /**
+     * Get the time to wait for an answer before a hedge is sent
+     *
+     * @return delay in milliseconds, or -1 if requests are not hedged yet
+     */
+    public long getHedgeDelayMs() {
+        if (mTracker.getSampleCount() < MIN_SAMPLES) {
+            return -1;
+        }
+        return Math.max(MIN_HEDGE_DELAY_MS, mTracker.getPercentile(mPercentile));
+    }
+
+    @Override
+    public Observable<VisionResult> analyze(final VisionRequest request) {
+        return Observable.create(new Observable.OnSubscribe<VisionResult>() {
+            @Override
+            public void call(Subscriber<? super VisionResult> subscriber) {
+                final long start = mScheduler.now();
+                final AtomicInteger winner = new AtomicInteger(WINNER_NONE);
+                final AtomicBoolean subscribing = new AtomicBoolean(true);
+
+                // Replays to the hedge even if the primary failed before the hedge was subscribed
+                final BehaviorSubject<Void> primaryFailed = BehaviorSubject.create();
+                Observable<VisionResult> primary = mDelegate.analyze(request)
+                        .doOnNext(markWinner(winner, WINNER_PRIMARY))
+                        .doOnError(new Action1<Throwable>() {
+                            @Override
+                            public void call(Throwable t) {
+                                if (!RetryPolicy.isRetryable(t)) {
+                                    primaryFailed.onNext(null);
+                                }
+                            }
+                        });
+
+                long hedgeDelay = getHedgeDelayMs();
+                Observable<VisionResult> answer;
+                if (hedgeDelay < 0) {
+                    answer = primary;
+                } else {
+                    Observable<VisionResult> hedge = mDelegate.analyze(request)
+                            .doOnSubscribe(new Action0() {
+                                @Override
+                                public void call() {
+                                    mStats.record(RequestOutcomeStats.OUTCOME_HEDGE_SENT);
+                                }
+                            })
+                            .delaySubscription(hedgeDelay, TimeUnit.MILLISECONDS, mScheduler)
+                            .doOnNext(markWinner(winner, WINNER_HEDGE))
+                            .takeUntil(primaryFailed);
+
+                    // A retryable primary failure doesn't fail the request while the hedge may
+                    // still answer, any other failure ends the hedge so the error is delivered
+                    answer = Observable.mergeDelayError(primary, hedge).first();
+                }
+
+                answer.doOnNext(new Action1<VisionResult>() {
+                    @Override
+                    public void call(VisionResult result) {
+                        // Answers delivered while subscribing, ex. from the result cache,
+                        // never went to the network and would drag the hedge delay down
+                        if (!subscribing.get()) {
+                            mTracker.record(mScheduler.now() - start);
+                        }
+                        if (winner.get() == WINNER_HEDGE) {
+                            mStats.record(RequestOutcomeStats.OUTCOME_HEDGE_WON);
+                        }
+                    }
+                }).unsafeSubscribe(subscriber);
+                subscribing.set(false);
+            }
+        });
+    }
+
+    private static Action1<VisionResult> markWinner(final AtomicInteger winner, final int candidate) {
+        return new Action1<VisionResult>() {
+            @Override
+            public void call(VisionResult result) {
+                winner.compareAndSet(WINNER_NONE, candidate);
+            }
+        };
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An image that can write itself as JPEG to a stream, used to
+ * produce the image content of a Vision API request without
+ * keeping the encoded image in memory.
+ */
+public interface JpegSource {
+
+    /**
+     * Write the image as JPEG. May be called more than once if the request is retried.
+     *
+     * @param out stream to write the JPEG to
+     * @throws IOException
+     */
+    void writeTo(OutputStream out) throws IOException;
+
+    /**
+     * Get key identifying the image content, used by {@link VisionResultCache}
+     *
+     * @return cache key
+     */
+    String getCacheKey();
+
+    /**
+     * Release resources held by the image, called once the request is done.
+     */
+    void release();
+}
@@ -0,0 +1,157 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import me.hammarstrom.imagerecognition.core.VisionResult;
+import rx.Observable;
+import rx.functions.Action1;
+import rx.functions.Func0;
+
+/**
+ * {@link VisionBackend} sending each request to the backend
+ * with the lowest recent latency at a percentile, p95 by default.
+ *
+ * Backends with too few samples are tried first, and every
+ * {@link #EXPLORE_INTERVAL}th request goes to the next backend in turn so
+ * that a backend that was slow or failing gets a chance to recover.
+ * Failed requests are recorded as the slowest possible sample.
+ */
+public class LatencyRoutingBackend implements VisionBackend {
+
+    public static final float DEFAULT_PERCENTILE = 95f;
+
+    // Samples needed before a backend is judged by its latency
+    public static final int MIN_SAMPLES = 5;
+    public static final int EXPLORE_INTERVAL = 20;
+
+    private static final long FAILURE_LATENCY_MS = Long.MAX_VALUE;
+
+    private final String mName;
+    private final float mPercentile;
+    private final Map<VisionBackend, LatencyTracker> mTrackers = new LinkedHashMap<>();
+
+    private long mRequestCount;
+
+    public LatencyRoutingBackend(String name, VisionBackend... backends) {
+        this(name, DEFAULT_PERCENTILE, backends);
+    }
+
+    public LatencyRoutingBackend(String name, float percentile, VisionBackend... backends) {
+        mName = name;
+        mPercentile = percentile;
+        for (VisionBackend backend : backends) {
+            mTrackers.put(backend, new LatencyTracker());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    @Override
+    public boolean supports(int features) {
+        for (VisionBackend backend : mTrackers.keySet()) {
+            if (backend.supports(features)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the latencies recorded for a backend
+     *
+     * @param backend One of the routed backends
+     * @return tracker
+     */
+    public LatencyTracker getTracker(VisionBackend backend) {
+        return mTrackers.get(backend);
+    }
+
+    /**
+     * Choose the backend for a request
+     *
+     * @param features {@link VisionRequest} FEATURE flags
+     * @return backend, or null if none supports the features
+     */
+    public synchronized VisionBackend choose(int features) {
+        List<VisionBackend> candidates = new ArrayList<>(mTrackers.size());
+        for (VisionBackend backend : mTrackers.keySet()) {
+            if (backend.supports(features)) {
+                candidates.add(backend);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        mRequestCount++;
+        if (mRequestCount % EXPLORE_INTERVAL == 0) {
+            return candidates.get((int) ((mRequestCount / EXPLORE_INTERVAL - 1) % candidates.size()));
+        }
+
+        VisionBackend best = null;
+        long bestLatency = 0;
+        for (VisionBackend backend : candidates) {
+            LatencyTracker tracker = mTrackers.get(backend);
+            if (tracker.getSampleCount() < MIN_SAMPLES) {
+                return backend;
+            }
+
+            long latency = tracker.getPercentile(mPercentile);
+            if (best == null || latency < bestLatency) {
+                best = backend;
+                bestLatency = latency;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public Observable<VisionResult> analyze(final VisionRequest request) {
+        return Observable.defer(new Func0<Observable<VisionResult>>() {
+            @Override
+            public Observable<VisionResult> call() {
+                final VisionBackend backend = choose(request.getFeatures());
+                if (backend == null) {
+                    return Observable.error(new IllegalStateException("No backend supports features " + request.getFeatures()));
+                }
+
+                final LatencyTracker tracker = mTrackers.get(backend);
+                final long start = System.nanoTime();
+                return backend.analyze(request)
+                        .doOnNext(new Action1<VisionResult>() {
+                            @Override
+                            public void call(VisionResult result) {
+                                tracker.record((System.nanoTime() - start) / 1000000);
+                            }
+                        })
+                        .doOnError(new Action1<Throwable>() {
+                            @Override
+                            public void call(Throwable throwable) {
+                                tracker.record(FAILURE_LATENCY_MS);
+                            }
+                        });
+            }
+        });
+    }
+}
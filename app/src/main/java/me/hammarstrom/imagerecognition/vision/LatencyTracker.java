@@ -0,0 +1,94 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Keeps the most recent latency samples of a backend
+ * and answers percentile queries over them.
+ */
+public class LatencyTracker {
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private final long[] mSamples;
+    private final long[] mSorted;
+    private int mCount;
+    private int mNext;
+
+    public LatencyTracker() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LatencyTracker(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity has to be at least 1");
+        }
+        mSamples = new long[capacity];
+        mSorted = new long[capacity];
+    }
+
+    /**
+     * Record a sample, replacing the oldest one when full
+     *
+     * @param latencyMs The latency
+     */
+    public synchronized void record(long latencyMs) {
+        mSamples[mNext] = latencyMs;
+        mNext = (mNext + 1) % mSamples.length;
+        if (mCount < mSamples.length) {
+            mCount++;
+        }
+    }
+
+    /**
+     * Get a percentile of the recorded samples, nearest rank
+     *
+     * @param percentile between 0 and 100
+     * @return latency, or -1 if nothing has been recorded
+     */
+    public synchronized long getPercentile(float percentile) {
+        if (percentile < 0f || percentile > 100f) {
+            throw new IllegalArgumentException("Percentile has to be a value between 0 and 100");
+        }
+        if (mCount == 0) {
+            return -1;
+        }
+
+        System.arraycopy(mSamples, 0, mSorted, 0, mCount);
+        Arrays.sort(mSorted, 0, mCount);
+
+        int rank = (int) Math.ceil(percentile / 100f * mCount);
+        return mSorted[Math.max(0, Math.min(mCount - 1, rank - 1))];
+    }
+
+    public synchronized int getSampleCount() {
+        return mCount;
+    }
+
+    public synchronized void reset() {
+        mCount = 0;
+        mNext = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "samples: %d, p50: %d ms, p95: %d ms",
+                mCount, getPercentile(50f), getPercentile(95f));
+    }
+}
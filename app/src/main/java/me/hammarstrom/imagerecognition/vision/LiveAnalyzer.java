@@ -0,0 +1,294 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.hardware.Camera;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+
+import me.hammarstrom.imagerecognition.core.VisionResult;
+import me.hammarstrom.imagerecognition.utilities.SceneChangeDetector;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.schedulers.Schedulers;
+
+/**
+ * Continuously analyzes camera preview frames.
+ *
+ * Frames are delivered into a small ring of preallocated NV21 buffers
+ * and handed over to a single worker thread. Only the latest frame is
+ * kept while the worker is busy, older frames are given straight back to
+ * the camera. At most one Vision request is in flight at a time, new
+ * requests are not sent more often than the min request interval, and
+ * frames that look the same as the last analyzed frame are suppressed
+ * by a {@link SceneChangeDetector}.
+ */
+public class LiveAnalyzer implements Camera.PreviewCallback {
+
+    private static final String TAG = "LiveAnalyzer";
+
+    public static final long DEFAULT_MIN_REQUEST_INTERVAL_MS = 1500;
+
+    private static final int BUFFER_COUNT = 3;
+    private static final int JPEG_QUALITY = 80;
+
+    private static final int MSG_RETURN_FRAME = 1;
+
+    /**
+     * Listener for results, called on the main thread.
+     */
+    public interface Listener {
+        void onLiveResult(VisionResult result);
+    }
+
+    private final Camera mCamera;
+    private final VisionBackend mBackend;
+    private final Listener mListener;
+    private final long mMinRequestIntervalMs;
+    private final SceneChangeDetector mSceneChangeDetector;
+
+    private final Object mLock = new Object();
+
+    private HandlerThread mWorkerThread;
+    private Handler mWorker;
+    // The thread that opened the camera, the only one allowed to use it
+    private Handler mCameraThread;
+
+    private int mPreviewWidth;
+    private int mPreviewHeight;
+    private Rect mPreviewRect;
+    private ByteArrayOutputStream mJpegStream;
+
+    private byte[] mPendingFrame;
+    private boolean mWorkerBusy;
+    private boolean mRunning;
+
+    private volatile boolean mRequestInFlight;
+    private long mLastRequestTime;
+
+    private long mFrameCount;
+    private long mDroppedFrameCount;
+    private long mRateLimitedFrameCount;
+    private long mRequestCount;
+
+    public LiveAnalyzer(Camera camera, VisionBackend backend, Listener listener, long minRequestIntervalMs) {
+        mCamera = camera;
+        mBackend = backend;
+        mListener = listener;
+        mMinRequestIntervalMs = minRequestIntervalMs;
+        mSceneChangeDetector = new SceneChangeDetector();
+    }
+
+    /**
+     * Get the detector deciding which frames are sent, ex. to change its threshold
+     *
+     * @return scene change detector
+     */
+    public SceneChangeDetector getSceneChangeDetector() {
+        return mSceneChangeDetector;
+    }
+
+    /**
+     * Start receiving preview frames. Must be called on the thread that opened the camera.
+     */
+    public void start() {
+        Camera.Size previewSize = mCamera.getParameters().getPreviewSize();
+        mPreviewWidth = previewSize.width;
+        mPreviewHeight = previewSize.height;
+        mPreviewRect = new Rect(0, 0, mPreviewWidth, mPreviewHeight);
+        mJpegStream = new ByteArrayOutputStream(mPreviewWidth * mPreviewHeight / 4);
+
+        mWorkerThread = new HandlerThread(TAG);
+        mWorkerThread.start();
+        mWorker = new Handler(mWorkerThread.getLooper());
+        mCameraThread = new Handler(mReturnFrames);
+
+        synchronized (mLock) {
+            mRunning = true;
+            mPendingFrame = null;
+            mWorkerBusy = false;
+        }
+
+        // Preview frames are NV21 unless another format is set
+        int bufferSize = mPreviewWidth * mPreviewHeight * ImageFormat.getBitsPerPixel(ImageFormat.NV21) / 8;
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            mCamera.addCallbackBuffer(new byte[bufferSize]);
+        }
+        mCamera.setPreviewCallbackWithBuffer(this);
+    }
+
+    /**
+     * Stop receiving preview frames. Must be called before the camera is released.
+     */
+    public void stop() {
+        synchronized (mLock) {
+            mRunning = false;
+            mPendingFrame = null;
+        }
+
+        mCamera.setPreviewCallbackWithBuffer(null);
+
+        if (mWorkerThread != null) {
+            mWorkerThread.quit();
+            mWorkerThread = null;
+            mWorker = null;
+        }
+
+        Log.d(TAG, "frames: " + mFrameCount + ", dropped: " + mDroppedFrameCount
+                + ", rate limited: " + mRateLimitedFrameCount + ", requests: " + mRequestCount
+                + ", scene change suppression: " + mSceneChangeDetector.getSuppressionRatio());
+    }
+
+    @Override
+    public void onPreviewFrame(byte[] data, Camera camera) {
+        synchronized (mLock) {
+            if (!mRunning) {
+                return;
+            }
+
+            mFrameCount++;
+
+            // Latest frame wins, a frame still waiting for the worker is given back
+            if (mPendingFrame != null) {
+                camera.addCallbackBuffer(mPendingFrame);
+                mDroppedFrameCount++;
+            }
+            mPendingFrame = data;
+
+            if (!mWorkerBusy) {
+                mWorkerBusy = true;
+                mWorker.post(mProcessFrames);
+            }
+        }
+    }
+
+    private final Runnable mProcessFrames = new Runnable() {
+        @Override
+        public void run() {
+            while (true) {
+                byte[] frame;
+                synchronized (mLock) {
+                    frame = mPendingFrame;
+                    mPendingFrame = null;
+                    if (frame == null || !mRunning) {
+                        mWorkerBusy = false;
+                        return;
+                    }
+                }
+
+                processFrame(frame);
+                returnFrame(frame);
+            }
+        }
+    };
+
+    /**
+     * Give a frame back to the camera, on the camera thread. Uses a pooled
+     * message so that returning a frame doesn't allocate.
+     *
+     * @param frame NV21 frame
+     */
+    private void returnFrame(byte[] frame) {
+        mCameraThread.obtainMessage(MSG_RETURN_FRAME, frame).sendToTarget();
+    }
+
+    private final Handler.Callback mReturnFrames = new Handler.Callback() {
+        @Override
+        public boolean handleMessage(Message msg) {
+            if (msg.what != MSG_RETURN_FRAME) {
+                return false;
+            }
+            synchronized (mLock) {
+                if (mRunning) {
+                    mCamera.addCallbackBuffer((byte[]) msg.obj);
+                }
+            }
+            return true;
+        }
+    };
+
+    /**
+     * Process one frame on the worker thread
+     *
+     * @param frame NV21 frame
+     */
+    private void processFrame(byte[] frame) {
+        long now = SystemClock.elapsedRealtime();
+        if (mRequestInFlight || now - mLastRequestTime < mMinRequestIntervalMs) {
+            mRateLimitedFrameCount++;
+            return;
+        }
+
+        // Don't pay for a request if nothing has changed since the last one
+        if (!mSceneChangeDetector.hasChangedNv21(frame, mPreviewWidth, mPreviewHeight)) {
+            return;
+        }
+
+        mRequestInFlight = true;
+        mLastRequestTime = now;
+        mRequestCount++;
+
+        mJpegStream.reset();
+        YuvImage yuvImage = new YuvImage(frame, ImageFormat.NV21, mPreviewWidth, mPreviewHeight, null);
+        yuvImage.compressToJpeg(mPreviewRect, JPEG_QUALITY, mJpegStream);
+
+        mBackend.analyze(new VisionRequest(mJpegStream.toByteArray(), VisionRequest.FEATURE_LABELS))
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .doOnTerminate(new Action0() {
+                    @Override
+                    public void call() {
+                        mRequestInFlight = false;
+                    }
+                })
+                .subscribe(new Action1<VisionResult>() {
+                    @Override
+                    public void call(VisionResult result) {
+                        mListener.onLiveResult(result);
+                    }
+                }, new Action1<Throwable>() {
+                    @Override
+                    public void call(Throwable throwable) {
+                        Log.d(TAG, "live request failed: " + throwable.getMessage());
+                    }
+                });
+    }
+
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    public long getDroppedFrameCount() {
+        return mDroppedFrameCount;
+    }
+
+    public long getRateLimitedFrameCount() {
+        return mRateLimitedFrameCount;
+    }
+
+    public long getRequestCount() {
+        return mRequestCount;
+    }
+}
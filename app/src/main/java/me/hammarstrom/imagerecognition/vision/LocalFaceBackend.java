@@ -0,0 +1,75 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import com.google.api.services.vision.v1.model.BatchAnnotateImagesResponse;
+
+import me.hammarstrom.imagerecognition.core.CaptureDescriptor;
+import me.hammarstrom.imagerecognition.core.ImageSize;
+import me.hammarstrom.imagerecognition.core.VisionResult;
+import me.hammarstrom.imagerecognition.utilities.JpegHeader;
+import rx.Observable;
+import rx.functions.Func0;
+import rx.functions.Func1;
+
+/**
+ * {@link VisionBackend} detecting faces on the device, see {@link LocalFaceRequest}.
+ * Labels are not supported.
+ */
+public class LocalFaceBackend implements VisionBackend {
+
+    public static final String NAME = "local-faces";
+
+    private final FaceDetectorBackend mDetector;
+
+    public LocalFaceBackend(FaceDetectorBackend detector) {
+        mDetector = detector;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean supports(int features) {
+        return features == VisionRequest.FEATURE_FACES && mDetector.isOperational();
+    }
+
+    @Override
+    public Observable<VisionResult> analyze(final VisionRequest request) {
+        return Observable.defer(new Func0<Observable<VisionResult>>() {
+            @Override
+            public Observable<VisionResult> call() {
+                final JpegHeader header = JpegHeader.read(request.getJpeg());
+                if (header == null) {
+                    return Observable.error(new IllegalArgumentException("Not a JPEG"));
+                }
+
+                return LocalFaceRequest.doRequest(mDetector, request.getJpeg())
+                        .map(new Func1<BatchAnnotateImagesResponse, VisionResult>() {
+                            @Override
+                            public VisionResult call(BatchAnnotateImagesResponse response) {
+                                // Faces are detected in the JPEG as stored, before any rotation
+                                CaptureDescriptor capture = CaptureDescriptor.unchanged(new ImageSize(header.getWidth(), header.getHeight()));
+                                return VisionResultConverter.fromResponse(response, header.getWidth(), header.getHeight())
+                                        .withCapture(capture);
+                            }
+                        });
+            }
+        });
+    }
+}
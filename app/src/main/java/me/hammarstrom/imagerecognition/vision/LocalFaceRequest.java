@@ -0,0 +1,102 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import android.graphics.Bitmap;
+
+import com.google.api.services.vision.v1.model.AnnotateImageResponse;
+import com.google.api.services.vision.v1.model.BatchAnnotateImagesResponse;
+import com.google.api.services.vision.v1.model.FaceAnnotation;
+
+import java.util.Collections;
+import java.util.List;
+
+import me.hammarstrom.imagerecognition.utilities.BitmapPool;
+import me.hammarstrom.imagerecognition.utilities.ImageHelper;
+import me.hammarstrom.imagerecognition.utilities.JpegHeader;
+import rx.Observable;
+import rx.functions.Func0;
+
+/**
+ * Face detection on the device, answering with the same
+ * {@link BatchAnnotateImagesResponse} as {@link CloudVisionRequest}
+ * but holding face annotations only.
+ */
+public class LocalFaceRequest {
+
+    // Faces are detected on a smaller image than the one sent to the cloud
+    public static final int FACE_DETECTION_MAX_DIMENSION = 640;
+
+    /**
+     * Detect faces in a JPEG. The face coordinates are in the
+     * coordinates of the JPEG, not of the decoded bitmap.
+     *
+     * @param detector The detector
+     * @param jpeg The JPEG data
+     * @return observable emitting the response
+     */
+    public static Observable<BatchAnnotateImagesResponse> doRequest(final FaceDetectorBackend detector, final byte[] jpeg) {
+        return Observable.defer(new Func0<Observable<BatchAnnotateImagesResponse>>() {
+            @Override
+            public Observable<BatchAnnotateImagesResponse> call() {
+                Bitmap bitmap = ImageHelper.decodeSampledBitmap(jpeg, FACE_DETECTION_MAX_DIMENSION, Bitmap.Config.RGB_565);
+                if (bitmap == null) {
+                    return Observable.error(new IllegalArgumentException("Unable to decode JPEG"));
+                }
+
+                JpegHeader header = JpegHeader.read(jpeg);
+                float scale = header != null ? header.getWidth() / (float) bitmap.getWidth() : 1f;
+                try {
+                    return Observable.just(detect(detector, bitmap, scale));
+                } finally {
+                    BitmapPool.getInstance().put(bitmap);
+                }
+            }
+        });
+    }
+
+    /**
+     * Detect faces in a bitmap
+     *
+     * @param detector The detector
+     * @param bitmap The bitmap
+     * @param scale Scale from bitmap coordinates to the coordinates of the response
+     * @return observable emitting the response
+     */
+    public static Observable<BatchAnnotateImagesResponse> doRequest(final FaceDetectorBackend detector, final Bitmap bitmap, final float scale) {
+        return Observable.defer(new Func0<Observable<BatchAnnotateImagesResponse>>() {
+            @Override
+            public Observable<BatchAnnotateImagesResponse> call() {
+                return Observable.just(detect(detector, bitmap, scale));
+            }
+        });
+    }
+
+    private static BatchAnnotateImagesResponse detect(FaceDetectorBackend detector, Bitmap bitmap, float scale) {
+        List<FaceAnnotation> faces = detector.isOperational()
+                ? detector.detect(bitmap)
+                : Collections.<FaceAnnotation>emptyList();
+
+        FaceAnnotationHelper.scale(faces, scale);
+
+        AnnotateImageResponse response = new AnnotateImageResponse();
+        response.setFaceAnnotations(faces.isEmpty() ? null : faces);
+
+        BatchAnnotateImagesResponse batchResponse = new BatchAnnotateImagesResponse();
+        batchResponse.setResponses(Collections.singletonList(response));
+        return batchResponse;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.hammarstrom.imagerecognition.core.VisionResult;
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Func0;
+
+/**
+ * {@link VisionBackend} answering every request with the same result
+ * or error after a fixed latency, to run the pipeline without network.
+ */
+public class MockVisionBackend implements VisionBackend {
+
+    private final String mName;
+    private final VisionResult mResult;
+    private final Throwable mError;
+    private final long mLatencyMs;
+    private final Scheduler mScheduler;
+
+    private final AtomicLong mRequestCount = new AtomicLong();
+
+    public MockVisionBackend(String name, VisionResult result, long latencyMs, Scheduler scheduler) {
+        this(name, result, null, latencyMs, scheduler);
+    }
+
+    public MockVisionBackend(String name, Throwable error, long latencyMs, Scheduler scheduler) {
+        this(name, null, error, latencyMs, scheduler);
+    }
+
+    private MockVisionBackend(String name, VisionResult result, Throwable error, long latencyMs, Scheduler scheduler) {
+        mName = name;
+        mResult = result;
+        mError = error;
+        mLatencyMs = latencyMs;
+        mScheduler = scheduler;
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    @Override
+    public boolean supports(int features) {
+        return true;
+    }
+
+    @Override
+    public Observable<VisionResult> analyze(VisionRequest request) {
+        // Only requests that are subscribed to are counted as sent
+        return Observable.defer(new Func0<Observable<VisionResult>>() {
+            @Override
+            public Observable<VisionResult> call() {
+                mRequestCount.incrementAndGet();
+                Observable<VisionResult> answer = mError != null
+                        ? Observable.<VisionResult>error(mError)
+                        : Observable.just(mResult);
+
+                // Errors are delayed as well, delaying the subscription covers both
+                return answer.delaySubscription(mLatencyMs, TimeUnit.MILLISECONDS, mScheduler);
+            }
+        });
+    }
+
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.SparseArray;
+
+import com.google.android.gms.vision.Frame;
+import com.google.android.gms.vision.face.Face;
+import com.google.android.gms.vision.face.FaceDetector;
+import com.google.api.services.vision.v1.model.FaceAnnotation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link FaceDetectorBackend} using the Google Play services {@link FaceDetector}.
+ */
+public class PlayServicesFaceDetector implements FaceDetectorBackend {
+
+    private final FaceDetector mDetector;
+
+    public PlayServicesFaceDetector(Context context) {
+        mDetector = new FaceDetector.Builder(context)
+                .setTrackingEnabled(false)
+                .setLandmarkType(FaceDetector.NO_LANDMARKS)
+                .setClassificationType(FaceDetector.ALL_CLASSIFICATIONS)
+                .setMode(FaceDetector.FAST_MODE)
+                .build();
+    }
+
+    @Override
+    public synchronized List<FaceAnnotation> detect(Bitmap bitmap) {
+        SparseArray<Face> faces = mDetector.detect(new Frame.Builder().setBitmap(bitmap).build());
+
+        List<FaceAnnotation> annotations = new ArrayList<>(faces.size());
+        for (int i = 0; i < faces.size(); i++) {
+            Face face = faces.valueAt(i);
+            annotations.add(FaceAnnotationHelper.createFaceAnnotation(
+                    face.getPosition().x,
+                    face.getPosition().y,
+                    face.getWidth(),
+                    face.getHeight(),
+                    face.getIsSmilingProbability()));
+        }
+
+        return annotations;
+    }
+
+    @Override
+    public boolean isOperational() {
+        return mDetector.isOperational();
+    }
+
+    @Override
+    public synchronized void release() {
+        mDetector.release();
+    }
+}
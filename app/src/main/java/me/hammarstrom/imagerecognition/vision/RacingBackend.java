@@ -0,0 +1,107 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import me.hammarstrom.imagerecognition.core.VisionResult;
+import rx.Observable;
+import rx.functions.Action1;
+import rx.functions.Func0;
+
+/**
+ * {@link VisionBackend} sending each request to all of its backends
+ * and answering with the first result. The other requests are
+ * unsubscribed from. A backend failing doesn't end the race, the
+ * request only fails when all backends have failed.
+ */
+public class RacingBackend implements VisionBackend {
+
+    private final String mName;
+    private final VisionBackend[] mBackends;
+    private final Map<VisionBackend, Long> mWins = new HashMap<>();
+
+    public RacingBackend(String name, VisionBackend... backends) {
+        mName = name;
+        mBackends = backends;
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    @Override
+    public boolean supports(int features) {
+        for (VisionBackend backend : mBackends) {
+            if (backend.supports(features)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Observable<VisionResult> analyze(final VisionRequest request) {
+        return Observable.defer(new Func0<Observable<VisionResult>>() {
+            @Override
+            public Observable<VisionResult> call() {
+                final AtomicReference<VisionBackend> winner = new AtomicReference<>();
+
+                List<Observable<VisionResult>> racers = new ArrayList<>(mBackends.length);
+                for (final VisionBackend backend : mBackends) {
+                    if (!backend.supports(request.getFeatures())) {
+                        continue;
+                    }
+                    racers.add(backend.analyze(request).doOnNext(new Action1<VisionResult>() {
+                        @Override
+                        public void call(VisionResult result) {
+                            if (winner.compareAndSet(null, backend)) {
+                                addWin(backend);
+                            }
+                        }
+                    }));
+                }
+
+                if (racers.isEmpty()) {
+                    return Observable.error(new IllegalStateException("No backend supports features " + request.getFeatures()));
+                }
+
+                return Observable.mergeDelayError(Observable.from(racers)).first();
+            }
+        });
+    }
+
+    private synchronized void addWin(VisionBackend backend) {
+        Long wins = mWins.get(backend);
+        mWins.put(backend, wins == null ? 1 : wins + 1);
+    }
+
+    /**
+     * Get the number of races a backend has won
+     *
+     * @param backend One of the racing backends
+     * @return wins
+     */
+    public synchronized long getWinCount(VisionBackend backend) {
+        Long wins = mWins.get(backend);
+        return wins == null ? 0 : wins;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how Vision requests end, and keeps the time from
+ * shutter to speech, to see how retries, deadlines and hedging
+ * affect the tail latency.
+ */
+public class RequestOutcomeStats {
+
+    public static final int OUTCOME_SUCCESS = 0;
+    public static final int OUTCOME_RETRIED_SUCCESS = 1;
+    public static final int OUTCOME_TIMED_OUT = 2;
+    public static final int OUTCOME_FAILED = 3;
+    public static final int OUTCOME_HEDGE_SENT = 4;
+    public static final int OUTCOME_HEDGE_WON = 5;
+    private static final int OUTCOME_COUNT = 6;
+
+    private static final String[] OUTCOME_NAMES = {
+            "success", "retried success", "timed out", "failed", "hedges sent", "hedges won"
+    };
+
+    private static final int SHUTTER_TO_SPEECH_SAMPLES = 256;
+
+    private static RequestOutcomeStats sInstance;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(OUTCOME_COUNT);
+    private final AtomicLong mRetries = new AtomicLong();
+    private final LatencyTracker mShutterToSpeech = new LatencyTracker(SHUTTER_TO_SPEECH_SAMPLES);
+
+    /**
+     * Get the stats shared by the application
+     *
+     * @return stats
+     */
+    public static synchronized RequestOutcomeStats getInstance() {
+        if (sInstance == null) {
+            sInstance = new RequestOutcomeStats();
+        }
+        return sInstance;
+    }
+
+    public void record(int outcome) {
+        mCounts.incrementAndGet(outcome);
+    }
+
+    public void recordRetry() {
+        mRetries.incrementAndGet();
+    }
+
+    public long getCount(int outcome) {
+        return mCounts.get(outcome);
+    }
+
+    public long getRetryCount() {
+        return mRetries.get();
+    }
+
+    /**
+     * Record the time from the shutter to the result being spoken
+     *
+     * @param latencyMs The time
+     */
+    public void recordShutterToSpeech(long latencyMs) {
+        mShutterToSpeech.record(latencyMs);
+    }
+
+    public LatencyTracker getShutterToSpeech() {
+        return mShutterToSpeech;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < OUTCOME_COUNT; i++) {
+            sb.append(OUTCOME_NAMES[i]).append(": ").append(mCounts.get(i)).append(", ");
+        }
+        sb.append("retries: ").append(mRetries.get());
+        sb.append(", shutter to speech p50: ").append(mShutterToSpeech.getPercentile(50f));
+        sb.append(" ms, p90: ").append(mShutterToSpeech.getPercentile(90f));
+        sb.append(" ms, p99: ").append(mShutterToSpeech.getPercentile(99f)).append(" ms");
+        return sb.toString();
+    }
+}
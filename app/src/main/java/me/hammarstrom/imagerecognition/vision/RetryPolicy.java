@@ -0,0 +1,125 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import com.google.api.client.http.HttpResponseException;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Decides which failed requests are retried and how long to wait
+ * before each retry.
+ *
+ * Delays grow exponentially from the base delay up to the max delay.
+ * Each delay is jittered to a random value between half and all of
+ * it, so that clients failing at the same time don't retry in lockstep.
+ */
+public class RetryPolicy {
+
+    public static final int DEFAULT_MAX_RETRIES = 2;
+    public static final long DEFAULT_BASE_DELAY_MS = 250;
+    public static final long DEFAULT_MAX_DELAY_MS = 2000;
+
+    private final int mMaxRetries;
+    private final long mBaseDelayMs;
+    private final long mMaxDelayMs;
+    private final Random mRandom;
+
+    public RetryPolicy() {
+        this(DEFAULT_MAX_RETRIES, DEFAULT_BASE_DELAY_MS, DEFAULT_MAX_DELAY_MS, new Random());
+    }
+
+    public RetryPolicy(int maxRetries, long baseDelayMs, long maxDelayMs, Random random) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("Max retries can not be negative");
+        }
+        if (baseDelayMs < 1 || maxDelayMs < baseDelayMs) {
+            throw new IllegalArgumentException("Delays have to be positive and max delay at least base delay");
+        }
+        mMaxRetries = maxRetries;
+        mBaseDelayMs = baseDelayMs;
+        mMaxDelayMs = maxDelayMs;
+        mRandom = random;
+    }
+
+    public int getMaxRetries() {
+        return mMaxRetries;
+    }
+
+    /**
+     * Check if a request should be retried
+     *
+     * @param t The error of the failed attempt
+     * @param retry Number of retries already made
+     * @return true to retry
+     */
+    public boolean shouldRetry(Throwable t, int retry) {
+        return retry < mMaxRetries && isRetryable(t);
+    }
+
+    /**
+     * Get the delay before a retry
+     *
+     * @param retry Number of retries already made
+     * @return delay in milliseconds
+     */
+    public long getDelayMs(int retry) {
+        long delay = mMaxDelayMs;
+        if (retry < 62 && mBaseDelayMs << retry > 0) {
+            delay = Math.min(mMaxDelayMs, mBaseDelayMs << retry);
+        }
+
+        long half = delay / 2;
+        return half + (long) (mRandom.nextDouble() * (delay - half + 1));
+    }
+
+    /**
+     * Check if an error is worth retrying: timeouts, network errors,
+     * rate limiting and server errors. Other HTTP errors, ex. a bad
+     * API key, and responses that can't be read fail the same way again.
+     *
+     * @param t The error
+     * @return true if retryable
+     */
+    public static boolean isRetryable(Throwable t) {
+        if (t instanceof HttpResponseException) {
+            return isRetryableStatus(((HttpResponseException) t).getStatusCode());
+        }
+        return t instanceof TimeoutException
+                || t instanceof SocketTimeoutException
+                || t instanceof ConnectException
+                || t instanceof UnknownHostException
+                || t instanceof TransportException;
+    }
+
+    public static boolean isRetryableStatus(int statusCode) {
+        switch (statusCode) {
+            case 408: // Request timeout
+            case 429: // Too many requests
+            case 500:
+            case 502:
+            case 503:
+            case 504:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.hammarstrom.imagerecognition.core.VisionResult;
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+
+/**
+ * {@link VisionBackend} bounding the requests of another backend in time.
+ *
+ * Each attempt has to answer within the attempt timeout. Failed attempts
+ * are retried as decided by a {@link RetryPolicy}, and the request as a
+ * whole, retries and backoff included, fails with a
+ * {@link TimeoutException} when the deadline has passed.
+ */
+public class RetryingBackend implements VisionBackend {
+
+    public static final long DEFAULT_ATTEMPT_TIMEOUT_MS = 12000;
+    public static final long DEFAULT_DEADLINE_MS = 20000;
+
+    private final VisionBackend mDelegate;
+    private final RetryPolicy mPolicy;
+    private final long mAttemptTimeoutMs;
+    private final long mDeadlineMs;
+    private final Scheduler mScheduler;
+    private final RequestOutcomeStats mStats;
+
+    public RetryingBackend(VisionBackend delegate, RetryPolicy policy, long attemptTimeoutMs, long deadlineMs,
+                           Scheduler scheduler, RequestOutcomeStats stats) {
+        mDelegate = delegate;
+        mPolicy = policy;
+        mAttemptTimeoutMs = attemptTimeoutMs;
+        mDeadlineMs = deadlineMs;
+        mScheduler = scheduler;
+        mStats = stats;
+    }
+
+    @Override
+    public String getName() {
+        return mDelegate.getName();
+    }
+
+    @Override
+    public boolean supports(int features) {
+        return mDelegate.supports(features);
+    }
+
+    @Override
+    public Observable<VisionResult> analyze(final VisionRequest request) {
+        return Observable.defer(new Func0<Observable<VisionResult>>() {
+            @Override
+            public Observable<VisionResult> call() {
+                final AtomicInteger attempts = new AtomicInteger();
+
+                return mDelegate.analyze(request)
+                        .doOnSubscribe(new Action0() {
+                            @Override
+                            public void call() {
+                                attempts.incrementAndGet();
+                            }
+                        })
+                        .timeout(mAttemptTimeoutMs, TimeUnit.MILLISECONDS, mScheduler)
+                        .retryWhen(new Func1<Observable<? extends Throwable>, Observable<?>>() {
+                            @Override
+                            public Observable<?> call(Observable<? extends Throwable> errors) {
+                                return errors.flatMap(new Func1<Throwable, Observable<Long>>() {
+                                    @Override
+                                    public Observable<Long> call(Throwable t) {
+                                        int retry = attempts.get() - 1;
+                                        if (!mPolicy.shouldRetry(t, retry)) {
+                                            return Observable.error(t);
+                                        }
+
+                                        mStats.recordRetry();
+                                        return Observable.timer(mPolicy.getDelayMs(retry), TimeUnit.MILLISECONDS, mScheduler);
+                                    }
+                                });
+                            }
+                        }, mScheduler)
+                        .timeout(mDeadlineMs, TimeUnit.MILLISECONDS, mScheduler)
+                        .doOnNext(new Action1<VisionResult>() {
+                            @Override
+                            public void call(VisionResult result) {
+                                mStats.record(attempts.get() > 1
+                                        ? RequestOutcomeStats.OUTCOME_RETRIED_SUCCESS
+                                        : RequestOutcomeStats.OUTCOME_SUCCESS);
+                            }
+                        })
+                        .doOnError(new Action1<Throwable>() {
+                            @Override
+                            public void call(Throwable throwable) {
+                                mStats.record(throwable instanceof TimeoutException
+                                        ? RequestOutcomeStats.OUTCOME_TIMED_OUT
+                                        : RequestOutcomeStats.OUTCOME_FAILED);
+                            }
+                        });
+            }
+        });
+    }
+}
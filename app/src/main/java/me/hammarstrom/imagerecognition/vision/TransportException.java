@@ -0,0 +1,30 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request to the Vision API fails before any response
+ * arrives, ex. the connection drops. Unlike errors in the response
+ * itself, these are worth retrying.
+ */
+public class TransportException extends IOException {
+
+    public TransportException(IOException cause) {
+        super(cause.getMessage(), cause);
+    }
+}
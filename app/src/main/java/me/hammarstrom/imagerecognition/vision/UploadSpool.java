@@ -0,0 +1,472 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import android.content.Context;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.hammarstrom.imagerecognition.core.VisionResult;
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.functions.Func1;
+
+/**
+ * Disk spool of captures that could not be analyzed, ex. while offline.
+ *
+ * Each capture is written to its own file, JPEG and requested features,
+ * first to a temp file that is then renamed, so a crash never leaves a
+ * half written entry behind. Entries are never changed, only added and
+ * deleted. The spool is capped in bytes, the oldest entries are dropped
+ * first. The directory is only created on first use.
+ *
+ * Spooled captures are replayed oldest first, a batch at a time. The
+ * requests of a batch are sent together so the {@link VisionBatchDispatcher}
+ * can put them in one HTTP request. Replay stops at the first retryable
+ * failure, entries failing for good are dropped.
+ */
+public class UploadSpool {
+
+    private static final String DIRECTORY_NAME = "upload-spool";
+    private static final String FILE_SUFFIX = ".spool";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final int MAGIC = 0x53504f4c;
+    private static final int VERSION = 1;
+
+    public static final long DEFAULT_MAX_BYTES = 20 * 1024 * 1024;
+    public static final int DEFAULT_BATCH_SIZE = 4;
+    public static final int HISTORY_SIZE = 20;
+
+    /**
+     * Listener for results of replayed captures
+     */
+    public interface Listener {
+        void onSpooledResult(SpooledResult result);
+    }
+
+    /**
+     * Result of a replayed capture
+     */
+    public static class SpooledResult {
+        private final long mCapturedAt;
+        private final VisionResult mResult;
+
+        SpooledResult(long capturedAt, VisionResult result) {
+            mCapturedAt = capturedAt;
+            mResult = result;
+        }
+
+        /**
+         * @return wall clock time of the capture, in milliseconds
+         */
+        public long getCapturedAt() {
+            return mCapturedAt;
+        }
+
+        public VisionResult getResult() {
+            return mResult;
+        }
+    }
+
+    private static UploadSpool sInstance;
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+    private final Object mLock = new Object();
+    private final AtomicInteger mSequence = new AtomicInteger();
+    private final AtomicBoolean mReplaying = new AtomicBoolean();
+    private final ArrayDeque<SpooledResult> mHistory = new ArrayDeque<>();
+    private boolean mOpened;
+
+    private volatile Listener mListener;
+    private volatile Scheduler mListenerScheduler;
+
+    private final AtomicLong mSpooledCount = new AtomicLong();
+    private final AtomicLong mReplayedCount = new AtomicLong();
+    private final AtomicLong mDroppedCount = new AtomicLong();
+
+    /**
+     * Create the spool shared by the application, in its files dir
+     *
+     * @param context any context
+     */
+    public static synchronized void init(Context context) {
+        if (sInstance == null) {
+            sInstance = new UploadSpool(new File(context.getFilesDir(), DIRECTORY_NAME), DEFAULT_MAX_BYTES);
+        }
+    }
+
+    /**
+     * Get the spool shared by the application, {@link #init(Context)} has to be called first
+     *
+     * @return spool
+     */
+    public static synchronized UploadSpool getInstance() {
+        if (sInstance == null) {
+            throw new IllegalStateException("UploadSpool.init has not been called");
+        }
+        return sInstance;
+    }
+
+    public UploadSpool(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Set listener for results of replayed captures
+     *
+     * @param listener The listener, or null
+     * @param scheduler The scheduler the listener is called on
+     */
+    public void setListener(Listener listener, Scheduler scheduler) {
+        mListenerScheduler = scheduler;
+        mListener = listener;
+    }
+
+    /**
+     * Add a capture to the spool
+     *
+     * @param request The capture and wanted features
+     * @param capturedAt Wall clock time of the capture
+     * @return true if the capture was written
+     */
+    public boolean add(VisionRequest request, long capturedAt) {
+        String name = String.format(Locale.US, "%013d-%05d", capturedAt, mSequence.getAndIncrement() % 100000);
+
+        synchronized (mLock) {
+            open();
+            File temp = new File(mDirectory, name + TEMP_SUFFIX);
+            DataOutputStream out = null;
+            try {
+                FileOutputStream file = new FileOutputStream(temp);
+                out = new DataOutputStream(new BufferedOutputStream(file));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(capturedAt);
+                out.writeInt(request.getFeatures());
+                out.writeInt(request.getJpeg().length);
+                out.write(request.getJpeg());
+
+                // The rename must not reach the disk before the data does
+                out.flush();
+                file.getFD().sync();
+                out.close();
+                out = null;
+
+                if (!temp.renameTo(new File(mDirectory, name + FILE_SUFFIX))) {
+                    temp.delete();
+                    return false;
+                }
+            } catch (IOException e) {
+                closeQuietly(out);
+                temp.delete();
+                return false;
+            }
+
+            mSpooledCount.incrementAndGet();
+            trimToSize();
+            return true;
+        }
+    }
+
+    /**
+     * Get number of captures waiting in the spool
+     *
+     * @return count
+     */
+    public int size() {
+        synchronized (mLock) {
+            return listEntries().length;
+        }
+    }
+
+    /**
+     * Replay spooled captures through a backend until the spool is empty
+     * or a request fails with a retryable error. Does nothing if a replay
+     * is already running.
+     *
+     * @param backend The backend
+     * @param batchSize Number of captures sent at a time
+     * @param scheduler The scheduler to replay on, replay blocks while waiting for results
+     */
+    public void replay(final VisionBackend backend, final int batchSize, Scheduler scheduler) {
+        if (!mReplaying.compareAndSet(false, true)) {
+            return;
+        }
+
+        final Scheduler.Worker worker = scheduler.createWorker();
+        worker.schedule(new Action0() {
+            @Override
+            public void call() {
+                try {
+                    while (replayBatch(backend, batchSize)) {
+                        // Next batch
+                    }
+                } finally {
+                    mReplaying.set(false);
+                    worker.unsubscribe();
+                }
+            }
+        });
+    }
+
+    /**
+     * Replay one batch
+     *
+     * @return true if the whole batch succeeded and more captures may be waiting.
+     *         False if an entry could not be deleted, it would be replayed again.
+     */
+    private boolean replayBatch(VisionBackend backend, int batchSize) {
+        List<File> files = new ArrayList<>(batchSize);
+        synchronized (mLock) {
+            File[] entries = listEntries();
+            files.addAll(Arrays.asList(entries).subList(0, Math.min(batchSize, entries.length)));
+        }
+        if (files.isEmpty()) {
+            return false;
+        }
+
+        boolean allDeleted = true;
+        List<Observable<Outcome>> answers = new ArrayList<>(files.size());
+        for (final File file : files) {
+            final long capturedAt;
+            final VisionRequest request;
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                try {
+                    if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                        throw new IOException("Unknown spool entry format");
+                    }
+                    capturedAt = in.readLong();
+                    int features = in.readInt();
+                    int length = in.readInt();
+                    // A corrupt length must not allocate more than the spool can hold
+                    if (length < 0 || length > mMaxBytes || length > file.length()) {
+                        throw new IOException("Invalid spool entry length " + length);
+                    }
+                    byte[] jpeg = new byte[length];
+                    in.readFully(jpeg);
+                    request = new VisionRequest(jpeg, features);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                // Can never be replayed
+                allDeleted &= delete(file);
+                mDroppedCount.incrementAndGet();
+                continue;
+            }
+
+            answers.add(backend.analyze(request)
+                    .map(new Func1<VisionResult, Outcome>() {
+                        @Override
+                        public Outcome call(VisionResult result) {
+                            return new Outcome(file, capturedAt, result, null);
+                        }
+                    })
+                    .onErrorReturn(new Func1<Throwable, Outcome>() {
+                        @Override
+                        public Outcome call(Throwable throwable) {
+                            return new Outcome(file, capturedAt, null, throwable);
+                        }
+                    }));
+        }
+
+        // All requests of the batch are subscribed to at once
+        List<Outcome> outcomes = Observable.merge(answers).toList().toBlocking().single();
+
+        boolean allSucceeded = true;
+        for (Outcome outcome : outcomes) {
+            if (outcome.error == null) {
+                allDeleted &= delete(outcome.file);
+                mReplayedCount.incrementAndGet();
+                deliver(new SpooledResult(outcome.capturedAt, outcome.result));
+            } else if (RetryPolicy.isRetryable(outcome.error)) {
+                allSucceeded = false;
+            } else {
+                allDeleted &= delete(outcome.file);
+                mDroppedCount.incrementAndGet();
+            }
+        }
+
+        return allSucceeded && allDeleted;
+    }
+
+    private void deliver(final SpooledResult result) {
+        synchronized (mHistory) {
+            mHistory.addFirst(result);
+            while (mHistory.size() > HISTORY_SIZE) {
+                mHistory.removeLast();
+            }
+        }
+
+        final Listener listener = mListener;
+        Scheduler scheduler = mListenerScheduler;
+        if (listener == null || scheduler == null) {
+            return;
+        }
+
+        final Scheduler.Worker worker = scheduler.createWorker();
+        worker.schedule(new Action0() {
+            @Override
+            public void call() {
+                listener.onSpooledResult(result);
+                worker.unsubscribe();
+            }
+        });
+    }
+
+    /**
+     * Get results of the most recently replayed captures
+     *
+     * @return results, newest first
+     */
+    public List<SpooledResult> getHistory() {
+        synchronized (mHistory) {
+            return Collections.unmodifiableList(new ArrayList<>(mHistory));
+        }
+    }
+
+    private boolean delete(File file) {
+        synchronized (mLock) {
+            return file.delete();
+        }
+    }
+
+    /**
+     * Drop the oldest entries until the spool fits. Must be called holding mLock.
+     */
+    private void trimToSize() {
+        File[] entries = listEntries();
+
+        long total = 0;
+        for (File f : entries) {
+            total += f.length();
+        }
+
+        for (int i = 0; i < entries.length && total > mMaxBytes; i++) {
+            long length = entries[i].length();
+            if (entries[i].delete()) {
+                total -= length;
+                mDroppedCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Create the directory and clean up after a crash, if not done yet. Must be called holding mLock.
+     */
+    private void open() {
+        if (mOpened) {
+            return;
+        }
+        mOpened = true;
+        mDirectory.mkdirs();
+
+        // Left over from writes interrupted by a crash
+        File[] temps = mDirectory.listFiles(filter(TEMP_SUFFIX));
+        if (temps != null) {
+            for (File f : temps) {
+                f.delete();
+            }
+        }
+    }
+
+    /**
+     * List entries oldest first. Must be called holding mLock.
+     */
+    private File[] listEntries() {
+        open();
+        File[] entries = mDirectory.listFiles(filter(FILE_SUFFIX));
+        if (entries == null) {
+            return new File[0];
+        }
+
+        // Names start with the zero padded capture time
+        Arrays.sort(entries);
+        return entries;
+    }
+
+    private static FilenameFilter filter(final String suffix) {
+        return new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String filename) {
+                return filename.endsWith(suffix);
+            }
+        };
+    }
+
+    private static void closeQuietly(DataOutputStream out) {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    public long getSpooledCount() {
+        return mSpooledCount.get();
+    }
+
+    public long getReplayedCount() {
+        return mReplayedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "waiting: %d, spooled: %d, replayed: %d, dropped: %d",
+                size(), mSpooledCount.get(), mReplayedCount.get(), mDroppedCount.get());
+    }
+
+    private static class Outcome {
+        final File file;
+        final long capturedAt;
+        final VisionResult result;
+        final Throwable error;
+
+        Outcome(File file, long capturedAt, VisionResult result, Throwable error) {
+            this.file = file;
+            this.capturedAt = capturedAt;
+            this.result = result;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import me.hammarstrom.imagerecognition.core.VisionResult;
+import rx.Observable;
+
+/**
+ * Something that can analyze an image, ex. the Vision API,
+ * a detector on the device or a router choosing between others.
+ */
+public interface VisionBackend {
+
+    /**
+     * Get a short name, used in logs and statistics
+     *
+     * @return name
+     */
+    String getName();
+
+    /**
+     * Check if the backend can answer requests for the features right now
+     *
+     * @param features {@link VisionRequest} FEATURE flags
+     * @return true if supported
+     */
+    boolean supports(int features);
+
+    /**
+     * Analyze an image. Nothing is done until the observable is subscribed to.
+     *
+     * @param request The request
+     * @return observable emitting one result
+     */
+    Observable<VisionResult> analyze(VisionRequest request);
+}
@@ -0,0 +1,385 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import android.util.Log;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.services.vision.v1.Vision;
+import com.google.api.services.vision.v1.model.BatchAnnotateImagesRequest;
+import com.google.api.services.vision.v1.model.Feature;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import me.hammarstrom.imagerecognition.core.VisionResponseParser;
+import me.hammarstrom.imagerecognition.core.VisionResult;
+import me.hammarstrom.imagerecognition.utilities.Constants;
+import me.hammarstrom.imagerecognition.utilities.PipelineTrace;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Collects images for a short time window and sends them to the
+ * Vision API in a single {@link BatchAnnotateImagesRequest}, streamed
+ * by {@link AnnotateRequestContent}.
+ *
+ * A request is sent right away when no other batch is in flight, so a
+ * single capture never waits for the window. Requests arriving while a
+ * batch is in flight are collected, and sent when the window has passed
+ * since the first of them or when the batch holds the max number of
+ * requests, whichever comes first. The response is streamed through a
+ * {@link VisionResponseParser} and each caller gets the {@link VisionResult}
+ * of its own image back.
+ */
+public class VisionBatchDispatcher {
+
+    private static final String TAG = "VisionBatchDispatcher";
+
+    public static final long DEFAULT_WINDOW_MS = 100;
+
+    // The Vision API accepts at most 16 images per request
+    public static final int DEFAULT_MAX_BATCH_SIZE = 16;
+
+    private static VisionBatchDispatcher sInstance;
+
+    /**
+     * Sends a batch and reads the result of each image, in the order of the entries
+     */
+    public interface BatchExecutor {
+        List<VisionResult> execute(List<AnnotateRequestContent.Entry> entries) throws IOException;
+    }
+
+    private final Object mLock = new Object();
+    private final Scheduler mScheduler;
+    private final BatchExecutor mExecutor;
+
+    private volatile long mWindowMs;
+    private volatile int mMaxBatchSize;
+
+    private List<PendingRequest> mPending;
+    private Subscription mScheduledFlush;
+    // Batches taken but not answered yet
+    private int mInFlightBatches;
+
+    /**
+     * Get the dispatcher shared by the application
+     *
+     * @return dispatcher
+     */
+    public static synchronized VisionBatchDispatcher getInstance() {
+        if (sInstance == null) {
+            sInstance = new VisionBatchDispatcher(DEFAULT_WINDOW_MS, DEFAULT_MAX_BATCH_SIZE);
+        }
+        return sInstance;
+    }
+
+    public VisionBatchDispatcher(long windowMs, int maxBatchSize) {
+        this(windowMs, maxBatchSize, Schedulers.io(), new HttpBatchExecutor());
+    }
+
+    /**
+     * @param windowMs How long to collect requests arriving while a batch is in flight
+     * @param maxBatchSize Max number of requests in one batch
+     * @param scheduler Scheduler of the window timer, the batch is sent on its thread
+     * @param executor Sends the batches
+     */
+    public VisionBatchDispatcher(long windowMs, int maxBatchSize, Scheduler scheduler, BatchExecutor executor) {
+        mScheduler = scheduler;
+        mExecutor = executor;
+        setWindow(windowMs);
+        setMaxBatchSize(maxBatchSize);
+        mPending = new ArrayList<>();
+    }
+
+    /**
+     * Set how long to wait for more requests before a batch is sent
+     *
+     * @param windowMs window in milliseconds, 0 sends every request directly
+     */
+    public void setWindow(long windowMs) {
+        if (windowMs < 0) {
+            throw new IllegalArgumentException("Window can not be negative");
+        }
+        mWindowMs = windowMs;
+    }
+
+    /**
+     * Set max number of requests in one batch
+     *
+     * @param maxBatchSize between 1 and {@link #DEFAULT_MAX_BATCH_SIZE}
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 1 || maxBatchSize > DEFAULT_MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch size has to be a value between 1 and " + DEFAULT_MAX_BATCH_SIZE);
+        }
+        mMaxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Add an image to the current batch. The image is added when the
+     * returned observable is subscribed to.
+     *
+     * @param source the image
+     * @param features the features to detect
+     * @return observable emitting the result for this image only, without an image size
+     */
+    public Observable<VisionResult> enqueue(final JpegSource source, final List<Feature> features) {
+        return Observable.create(new Observable.OnSubscribe<VisionResult>() {
+            @Override
+            public void call(Subscriber<? super VisionResult> subscriber) {
+                add(new PendingRequest(new AnnotateRequestContent.Entry(source, features), subscriber));
+            }
+        });
+    }
+
+    private void add(final PendingRequest pendingRequest) {
+        if (pendingRequest.subscriber.isUnsubscribed()) {
+            return;
+        }
+
+        List<PendingRequest> batch = null;
+
+        synchronized (mLock) {
+            mPending.add(pendingRequest);
+
+            if (mPending.size() >= mMaxBatchSize || mWindowMs == 0
+                    || (mPending.size() == 1 && mInFlightBatches == 0)) {
+                // Nothing else is being sent, a lone request does not wait for company
+                batch = takePending();
+            } else if (mPending.size() == 1) {
+                // A burst is collecting, start the window
+                mScheduledFlush = Observable.timer(mWindowMs, TimeUnit.MILLISECONDS, mScheduler)
+                        .subscribe(new Action1<Long>() {
+                            @Override
+                            public void call(Long aLong) {
+                                List<PendingRequest> batch;
+                                synchronized (mLock) {
+                                    batch = takePending();
+                                }
+                                send(batch);
+                            }
+                        }, new Action1<Throwable>() {
+                            @Override
+                            public void call(Throwable throwable) {
+                                Log.d(TAG, "failed to flush batch: " + throwable.getMessage());
+                            }
+                        });
+            }
+        }
+
+        // Hedge losers and timed out attempts are not uploaded if they are still waiting
+        pendingRequest.subscriber.add(Subscriptions.create(new Action0() {
+            @Override
+            public void call() {
+                remove(pendingRequest);
+            }
+        }));
+
+        // Batch is full, send it on the calling thread
+        if (batch != null) {
+            send(batch);
+        }
+    }
+
+    private void remove(PendingRequest pendingRequest) {
+        synchronized (mLock) {
+            if (mPending.remove(pendingRequest) && mPending.isEmpty() && mScheduledFlush != null) {
+                mScheduledFlush.unsubscribe();
+                mScheduledFlush = null;
+            }
+        }
+    }
+
+    /**
+     * Take all pending requests and cancel the scheduled flush. Must be called holding mLock.
+     *
+     * @return pending requests
+     */
+    private List<PendingRequest> takePending() {
+        if (mScheduledFlush != null) {
+            mScheduledFlush.unsubscribe();
+            mScheduledFlush = null;
+        }
+
+        List<PendingRequest> batch = mPending;
+        mPending = new ArrayList<>();
+        if (!batch.isEmpty()) {
+            mInFlightBatches++;
+        }
+        return batch;
+    }
+
+    private void send(List<PendingRequest> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            sendBatch(batch);
+        } finally {
+            synchronized (mLock) {
+                mInFlightBatches--;
+            }
+        }
+    }
+
+    private void sendBatch(List<PendingRequest> pending) {
+        // Requests may have been unsubscribed from after the batch was taken
+        List<PendingRequest> batch = new ArrayList<>(pending.size());
+        for (PendingRequest p : pending) {
+            if (!p.subscriber.isUnsubscribed()) {
+                batch.add(p);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<AnnotateRequestContent.Entry> entries = new ArrayList<>(batch.size());
+        for (PendingRequest p : batch) {
+            entries.add(p.entry);
+        }
+
+        try {
+            deliver(batch, mExecutor.execute(entries));
+
+        } catch (GoogleJsonResponseException e) {
+            Log.d(TAG, "failed to make API request because " + e.getContent());
+            deliverError(batch, e);
+        } catch (IOException e) {
+            Log.d(TAG, "failed to make API request because of other IOException " +
+                    e.getMessage());
+            deliverError(batch, e);
+        } catch (RuntimeException e) {
+            // Ex. a source failing to write its image, the callers must not wait for a deadline
+            Log.d(TAG, "failed to make API request because " + e);
+            deliverError(batch, e);
+        }
+    }
+
+    private void deliver(List<PendingRequest> batch, List<VisionResult> results) {
+        int count = results.size();
+
+        for (int i = 0; i < batch.size(); i++) {
+            Subscriber<? super VisionResult> subscriber = batch.get(i).subscriber;
+            if (subscriber.isUnsubscribed()) {
+                continue;
+            }
+
+            if (i >= count) {
+                subscriber.onError(new IOException("Missing response for image " + i + " of " + batch.size()));
+                continue;
+            }
+
+            // Responses are returned in the same order as the requests
+            subscriber.onNext(results.get(i));
+            subscriber.onCompleted();
+        }
+    }
+
+    private void deliverError(List<PendingRequest> batch, Throwable t) {
+        for (PendingRequest p : batch) {
+            if (!p.subscriber.isUnsubscribed()) {
+                p.subscriber.onError(t);
+            }
+        }
+    }
+
+    /**
+     * Posts the streamed request to images:annotate. The request is built from the
+     * shared client's request factory, so it goes through the same transport,
+     * connection pool and interceptors as any other Vision request.
+     */
+    private static class HttpBatchExecutor implements BatchExecutor {
+
+        // Batches are sent from the calling thread or a timer thread, each gets its own parser
+        private static final ThreadLocal<VisionResponseParser> sParser = new ThreadLocal<VisionResponseParser>() {
+            @Override
+            protected VisionResponseParser initialValue() {
+                return new VisionResponseParser();
+            }
+        };
+
+        @Override
+        public List<VisionResult> execute(List<AnnotateRequestContent.Entry> entries) throws IOException {
+            List<VisionResult> results = post(new AnnotateRequestContent(entries));
+            Log.d(TAG, "batch of " + entries.size()
+                    + ", requests: " + VisionClientHolder.getRequestCount()
+                    + ", reused connections: " + VisionClientHolder.getReusedConnectionCount()
+                    + ", handshakes: " + VisionClientHolder.getHandshakeCount());
+            return results;
+        }
+
+        private List<VisionResult> post(AnnotateRequestContent content) throws IOException {
+            Vision vision = VisionClientHolder.getVision();
+
+            GenericUrl url = new GenericUrl(vision.getBaseUrl() + "images:annotate");
+            url.put("key", Constants.CLOUD_VISION_API_KEY);
+
+            // The content is never GZipped: requests to Vision API containing large images fail when GZipped.
+            HttpRequest request = vision.getRequestFactory().buildPostRequest(url, content);
+            request.setThrowExceptionOnExecuteError(false);
+
+            long traceStart = PipelineTrace.start();
+            HttpResponse response;
+            try {
+                response = request.execute();
+            } catch (IOException e) {
+                throw new TransportException(e);
+            }
+            PipelineTrace.end(PipelineTrace.STAGE_HTTP, traceStart);
+            if (!response.isSuccessStatusCode()) {
+                throw GoogleJsonResponseException.from(vision.getJsonFactory(), response);
+            }
+
+            // Only the fields in VisionResult are read, straight from the response stream
+            traceStart = PipelineTrace.start();
+            InputStream in = response.getContent();
+            if (in == null) {
+                throw new IOException("Empty response");
+            }
+            try {
+                return sParser.get().parse(in);
+            } finally {
+                in.close();
+                PipelineTrace.end(PipelineTrace.STAGE_PARSE, traceStart);
+            }
+        }
+    }
+
+    private static class PendingRequest {
+        final AnnotateRequestContent.Entry entry;
+        final Subscriber<? super VisionResult> subscriber;
+
+        PendingRequest(AnnotateRequestContent.Entry entry, Subscriber<? super VisionResult> subscriber) {
+            this.entry = entry;
+            this.subscriber = subscriber;
+        }
+    }
+}
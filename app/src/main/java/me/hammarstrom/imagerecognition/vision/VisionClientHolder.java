@@ -0,0 +1,283 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import android.util.Log;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpExecuteInterceptor;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.vision.v1.Vision;
+import com.google.api.services.vision.v1.VisionRequestInitializer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import me.hammarstrom.imagerecognition.BuildConfig;
+import me.hammarstrom.imagerecognition.utilities.Constants;
+import rx.Observable;
+import rx.Subscriber;
+import rx.functions.Action1;
+import rx.schedulers.Schedulers;
+
+/**
+ * Holds the one {@link Vision} client used by the application.
+ *
+ * The client, its {@link NetHttpTransport} and the underlying
+ * connection pool are created once and shared between requests,
+ * so consecutive captures can reuse an already open TLS connection
+ * instead of doing a new handshake every time.
+ */
+public class VisionClientHolder {
+
+    private static final String TAG = "VisionClientHolder";
+
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+
+    // A stalled connection fails instead of blocking the request forever
+    public static final int CONNECT_TIMEOUT_MS = 5000;
+    public static final int READ_TIMEOUT_MS = 10000;
+
+    private static final AtomicInteger sRequestCount = new AtomicInteger();
+    private static final AtomicInteger sConnectionCount = new AtomicInteger();
+    private static final AtomicInteger sHandshakeCount = new AtomicInteger();
+
+    private static NetHttpTransport sTransport;
+    private static Vision sVision;
+
+    /**
+     * Get the shared {@link Vision} client, creating it if needed
+     *
+     * @return vision client
+     */
+    public static synchronized Vision getVision() {
+        if (sVision == null) {
+            // HttpURLConnection only pools connections while keep-alive is enabled
+            System.setProperty("http.keepAlive", "true");
+            System.setProperty("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+
+            // The same socket factory instance has to be used for every request,
+            // connections are only reused between requests with equal factories
+            sTransport = new NetHttpTransport.Builder()
+                    .setSslSocketFactory(new CountingSocketFactory(HttpsURLConnection.getDefaultSSLSocketFactory()))
+                    .build();
+
+            sVision = new Vision.Builder(sTransport, getJsonFactory(), new HttpRequestInitializer() {
+                @Override
+                public void initialize(HttpRequest request) throws IOException {
+                    request.setConnectTimeout(CONNECT_TIMEOUT_MS);
+                    request.setReadTimeout(READ_TIMEOUT_MS);
+
+                    // Retries are done by RetryingBackend, with backoff and a deadline
+                    request.setNumberOfRetries(0);
+
+                    request.setInterceptor(new HttpExecuteInterceptor() {
+                        @Override
+                        public void intercept(HttpRequest request) throws IOException {
+                            sRequestCount.incrementAndGet();
+                        }
+                    });
+                }
+            })
+                    .setRootUrl(BuildConfig.VISION_ROOT_URL)
+                    .setApplicationName(Constants.APPLICATION_NAME)
+                    .setVisionRequestInitializer(new VisionRequestInitializer(Constants.CLOUD_VISION_API_KEY))
+                    .build();
+        }
+
+        return sVision;
+    }
+
+    /**
+     * Get the shared {@link JsonFactory}
+     *
+     * @return json factory
+     */
+    public static JsonFactory getJsonFactory() {
+        return GsonFactory.getDefaultInstance();
+    }
+
+    /**
+     * Create the client and open a connection to the Vision API host
+     * in the background, so the first capture does not have to pay
+     * for the DNS lookup and TLS handshake.
+     */
+    public static void warmUp() {
+        Observable.create(new Observable.OnSubscribe<Void>() {
+            @Override
+            public void call(Subscriber<? super Void> subscriber) {
+                try {
+                    Vision vision = getVision();
+                    HttpRequest request = vision.getRequestFactory()
+                            .buildHeadRequest(new GenericUrl(vision.getRootUrl()));
+                    request.setThrowExceptionOnExecuteError(false);
+
+                    // Consume the response so the connection goes back to the pool
+                    HttpResponse response = request.execute();
+                    response.ignore();
+
+                    subscriber.onCompleted();
+                } catch (IOException e) {
+                    subscriber.onError(e);
+                }
+            }
+        })
+                .subscribeOn(Schedulers.io())
+                .subscribe(new Action1<Void>() {
+                    @Override
+                    public void call(Void aVoid) {
+                    }
+                }, new Action1<Throwable>() {
+                    @Override
+                    public void call(Throwable throwable) {
+                        Log.d(TAG, "failed to warm up connection because " + throwable.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * Release the client and its transport. A new client
+     * is created on the next call to {@link #getVision()}.
+     */
+    public static synchronized void shutdown() {
+        if (sTransport != null) {
+            try {
+                sTransport.shutdown();
+            } catch (IOException e) {
+                Log.d(TAG, "failed to shut down transport because " + e.getMessage());
+            }
+        }
+
+        sTransport = null;
+        sVision = null;
+    }
+
+    /**
+     * Get number of requests executed through the shared client
+     *
+     * @return request count
+     */
+    public static int getRequestCount() {
+        return sRequestCount.get();
+    }
+
+    /**
+     * Get number of new connections opened by the shared client
+     *
+     * @return connection count
+     */
+    public static int getConnectionCount() {
+        return sConnectionCount.get();
+    }
+
+    /**
+     * Get number of completed TLS handshakes
+     *
+     * @return handshake count
+     */
+    public static int getHandshakeCount() {
+        return sHandshakeCount.get();
+    }
+
+    /**
+     * Get number of requests that were sent over an already open connection
+     *
+     * @return reused connection count
+     */
+    public static int getReusedConnectionCount() {
+        return Math.max(0, sRequestCount.get() - sConnectionCount.get());
+    }
+
+    /**
+     * {@link SSLSocketFactory} counting every new socket and completed handshake.
+     */
+    private static class CountingSocketFactory extends SSLSocketFactory {
+
+        private final SSLSocketFactory mDelegate;
+
+        private final HandshakeCompletedListener mHandshakeListener = new HandshakeCompletedListener() {
+            @Override
+            public void handshakeCompleted(HandshakeCompletedEvent event) {
+                sHandshakeCount.incrementAndGet();
+            }
+        };
+
+        CountingSocketFactory(SSLSocketFactory delegate) {
+            mDelegate = delegate;
+        }
+
+        private Socket count(Socket socket) {
+            sConnectionCount.incrementAndGet();
+            if (socket instanceof SSLSocket) {
+                ((SSLSocket) socket).addHandshakeCompletedListener(mHandshakeListener);
+            }
+            return socket;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return mDelegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return mDelegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+            return count(mDelegate.createSocket(s, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return count(mDelegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return count(mDelegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return count(mDelegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return count(mDelegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            return count(mDelegate.createSocket(address, port, localAddress, localPort));
+        }
+    }
+}
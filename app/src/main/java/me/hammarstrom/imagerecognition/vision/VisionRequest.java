@@ -0,0 +1,49 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+/**
+ * An image to analyze and the features wanted, passed to a {@link VisionBackend}.
+ */
+public class VisionRequest {
+
+    public static final int FEATURE_LABELS = 1;
+    public static final int FEATURE_FACES = 1 << 1;
+
+    private final byte[] mJpeg;
+    private final int mFeatures;
+
+    /**
+     * @param jpeg The JPEG data, not copied
+     * @param features FEATURE flags
+     */
+    public VisionRequest(byte[] jpeg, int features) {
+        mJpeg = jpeg;
+        mFeatures = features;
+    }
+
+    public byte[] getJpeg() {
+        return mJpeg;
+    }
+
+    public int getFeatures() {
+        return mFeatures;
+    }
+
+    public boolean hasFeature(int feature) {
+        return (mFeatures & feature) != 0;
+    }
+}
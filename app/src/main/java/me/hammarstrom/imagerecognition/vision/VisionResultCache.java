@@ -0,0 +1,431 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.hammarstrom.imagerecognition.core.VisionResult;
+import me.hammarstrom.imagerecognition.core.VisionResultCodec;
+
+/**
+ * Two tier cache of {@link VisionResult}s keyed by
+ * a hash of the image content sent to the Vision API.
+ *
+ * The first tier is a small in-memory LRU, the second tier is a size
+ * capped directory in the application cache dir holding the results
+ * in the binary form of {@link VisionResultCodec}. Entries older than
+ * the TTL are treated as misses in both tiers. The directory is only
+ * created and scanned on first use, never on the thread calling
+ * {@link #init(Context)}.
+ */
+public class VisionResultCache {
+
+    private static final String TAG = "VisionResultCache";
+
+    private static final String DIRECTORY_NAME = "vision-results";
+    private static final String FILE_SUFFIX = ".bin";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    public static final int DEFAULT_MEMORY_ENTRIES = 32;
+    public static final long DEFAULT_DISK_BYTES = 2 * 1024 * 1024;
+    public static final long DEFAULT_TTL_MS = TimeUnit.HOURS.toMillis(24);
+
+    private static VisionResultCache sInstance;
+
+    private final LruCache<String, Entry> mMemoryCache;
+    private final Object mDiskLock = new Object();
+    private final long mMaxDiskBytes;
+    private final long mTtlMs;
+
+    private File mDirectory;
+    private boolean mDirectoryOpened;
+    // Bytes in the directory, only known once opened
+    private long mDiskBytes;
+
+    private final AtomicLong mMemoryHits = new AtomicLong();
+    private final AtomicLong mDiskHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mEvictions = new AtomicLong();
+
+    /**
+     * Get the cache shared by the application
+     *
+     * @return cache
+     */
+    public static synchronized VisionResultCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new VisionResultCache(DEFAULT_MEMORY_ENTRIES, DEFAULT_DISK_BYTES, DEFAULT_TTL_MS);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Enable the disk tier of the shared cache
+     *
+     * @param context any context
+     */
+    public static void init(Context context) {
+        getInstance().setDirectory(new File(context.getCacheDir(), DIRECTORY_NAME));
+    }
+
+    public VisionResultCache(int maxMemoryEntries, long maxDiskBytes, long ttlMs) {
+        mMaxDiskBytes = maxDiskBytes;
+        mTtlMs = ttlMs;
+        mMemoryCache = new LruCache<String, Entry>(maxMemoryEntries) {
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Entry oldValue, Entry newValue) {
+                if (evicted) {
+                    mEvictions.incrementAndGet();
+                }
+            }
+        };
+    }
+
+    /**
+     * Set directory used by the disk tier, the disk tier is disabled while null.
+     * The directory is created when the disk tier is first used.
+     *
+     * @param directory cache directory
+     */
+    public void setDirectory(File directory) {
+        synchronized (mDiskLock) {
+            mDirectory = directory;
+            mDirectoryOpened = false;
+            mDiskBytes = 0;
+        }
+    }
+
+    /**
+     * Create cache key for image content
+     *
+     * @param content the image bytes
+     * @return hex encoded SHA-1 of content
+     */
+    public static String createKey(byte[] content) {
+        return createKey(content, 0, content.length);
+    }
+
+    /**
+     * Create cache key for part of an image buffer
+     *
+     * @param content the image buffer
+     * @param offset start of image
+     * @param length length of image
+     * @return hex encoded SHA-1 of content
+     */
+    public static String createKey(byte[] content, int offset, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(content, offset, length);
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    static String toHex(byte[] hash) {
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = Character.forDigit((hash[i] >> 4) & 0xF, 16);
+            hex[i * 2 + 1] = Character.forDigit(hash[i] & 0xF, 16);
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Get cached result
+     *
+     * @param key key from {@link #createKey(byte[])}
+     * @return result or null if not cached or expired
+     */
+    public VisionResult get(String key) {
+        long now = System.currentTimeMillis();
+
+        Entry entry = mMemoryCache.get(key);
+        if (entry != null) {
+            if (now - entry.createdAt <= mTtlMs) {
+                mMemoryHits.incrementAndGet();
+                return entry.result;
+            }
+            mMemoryCache.remove(key);
+        }
+
+        // The entry keeps the age of the file, so promoting it does not restart the TTL
+        entry = readFromDisk(key, now);
+        if (entry != null) {
+            mDiskHits.incrementAndGet();
+            mMemoryCache.put(key, entry);
+            return entry.result;
+        }
+
+        mMisses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Add result to the cache. Results holding an error are not cached.
+     *
+     * @param key key from {@link #createKey(byte[])}
+     * @param result the result
+     */
+    public void put(String key, VisionResult result) {
+        if (result == null || result.hasError()) {
+            return;
+        }
+
+        mMemoryCache.put(key, new Entry(result, System.currentTimeMillis()));
+        writeToDisk(key, result);
+    }
+
+    /**
+     * Remove all entries from both tiers
+     */
+    public void clear() {
+        mMemoryCache.evictAll();
+        synchronized (mDiskLock) {
+            if (!openDirectory()) {
+                return;
+            }
+
+            File[] files = mDirectory.listFiles();
+            if (files != null) {
+                for (File f : files) {
+                    deleteFile(f);
+                }
+            }
+        }
+    }
+
+    public long getMemoryHitCount() {
+        return mMemoryHits.get();
+    }
+
+    public long getDiskHitCount() {
+        return mDiskHits.get();
+    }
+
+    public long getMissCount() {
+        return mMisses.get();
+    }
+
+    public long getEvictionCount() {
+        return mEvictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "memory hits: " + mMemoryHits.get()
+                + ", disk hits: " + mDiskHits.get()
+                + ", misses: " + mMisses.get()
+                + ", evictions: " + mEvictions.get();
+    }
+
+    /**
+     * Get number of bytes held by the disk tier
+     *
+     * @return bytes, 0 if the disk tier is disabled
+     */
+    public long getDiskBytes() {
+        synchronized (mDiskLock) {
+            return openDirectory() ? mDiskBytes : 0;
+        }
+    }
+
+    /**
+     * Create the directory and count the bytes in it, if not done yet. Must be called holding mDiskLock.
+     *
+     * @return true if the disk tier can be used
+     */
+    private boolean openDirectory() {
+        if (mDirectory == null) {
+            return false;
+        }
+        if (mDirectoryOpened) {
+            return true;
+        }
+
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.d(TAG, "unable to create cache directory " + mDirectory);
+            mDirectory = null;
+            return false;
+        }
+
+        mDiskBytes = 0;
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                // Left over from writes interrupted by a crash
+                if (f.getName().endsWith(TEMP_SUFFIX)) {
+                    f.delete();
+                } else {
+                    mDiskBytes += f.length();
+                }
+            }
+        }
+        mDirectoryOpened = true;
+        return true;
+    }
+
+    /**
+     * Delete a file of the disk tier. Must be called holding mDiskLock.
+     *
+     * @return true if deleted
+     */
+    private boolean deleteFile(File file) {
+        long length = file.length();
+        if (!file.delete()) {
+            return false;
+        }
+        mDiskBytes = Math.max(0, mDiskBytes - length);
+        return true;
+    }
+
+    private Entry readFromDisk(String key, long now) {
+        synchronized (mDiskLock) {
+            if (!openDirectory()) {
+                return null;
+            }
+
+            File file = new File(mDirectory, key + FILE_SUFFIX);
+            if (!file.exists()) {
+                return null;
+            }
+
+            long createdAt = file.lastModified();
+            if (now - createdAt > mTtlMs) {
+                deleteFile(file);
+                mEvictions.incrementAndGet();
+                return null;
+            }
+
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                return new Entry(VisionResultCodec.read(in), createdAt);
+            } catch (IOException e) {
+                Log.d(TAG, "failed to read cached result because " + e.getMessage());
+                deleteFile(file);
+                return null;
+            } finally {
+                closeQuietly(in);
+            }
+        }
+    }
+
+    private void writeToDisk(String key, VisionResult result) {
+        synchronized (mDiskLock) {
+            if (!openDirectory()) {
+                return;
+            }
+
+            // Write to a temporary file first so a crash never leaves a half written entry
+            File temp = new File(mDirectory, key + TEMP_SUFFIX);
+            File file = new File(mDirectory, key + FILE_SUFFIX);
+
+            DataOutputStream out = null;
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+                VisionResultCodec.write(result, out);
+                out.close();
+                out = null;
+
+                // An entry written again replaces the old file
+                long replaced = file.length();
+                if (!temp.renameTo(file)) {
+                    temp.delete();
+                    return;
+                }
+                mDiskBytes += file.length() - replaced;
+            } catch (IOException e) {
+                Log.d(TAG, "failed to write cached result because " + e.getMessage());
+                temp.delete();
+                return;
+            } finally {
+                closeQuietly(out);
+            }
+
+            trimDisk();
+        }
+    }
+
+    /**
+     * Delete the oldest entries until the disk tier is below its size cap. Must be called holding mDiskLock.
+     */
+    private void trimDisk() {
+        // The directory is only listed when the running total is over the cap
+        if (mDiskBytes <= mMaxDiskBytes) {
+            return;
+        }
+
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+
+        for (int i = 0; i < files.length && mDiskBytes > mMaxDiskBytes; i++) {
+            if (deleteFile(files[i])) {
+                mEvictions.incrementAndGet();
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private static class Entry {
+        final VisionResult result;
+        final long createdAt;
+
+        Entry(VisionResult result, long createdAt) {
+            this.result = result;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.vision;
+
+import com.google.api.services.vision.v1.model.AnnotateImageResponse;
+import com.google.api.services.vision.v1.model.BatchAnnotateImagesResponse;
+import com.google.api.services.vision.v1.model.BoundingPoly;
+import com.google.api.services.vision.v1.model.EntityAnnotation;
+import com.google.api.services.vision.v1.model.FaceAnnotation;
+import com.google.api.services.vision.v1.model.Vertex;
+
+import java.util.List;
+
+import me.hammarstrom.imagerecognition.core.VisionResult;
+
+/**
+ * Converts Vision API responses to {@link VisionResult}s.
+ */
+public class VisionResultConverter {
+
+    /**
+     * Convert the first image response of a batch response
+     *
+     * @param response The response
+     * @param imageWidth Width of the image the face coordinates refer to
+     * @param imageHeight Height of the image the face coordinates refer to
+     * @return result
+     */
+    public static VisionResult fromResponse(BatchAnnotateImagesResponse response, int imageWidth, int imageHeight) {
+        VisionResult.Builder builder = new VisionResult.Builder().setImageSize(imageWidth, imageHeight);
+
+        if (response.getResponses() == null || response.getResponses().isEmpty()) {
+            return builder.build();
+        }
+
+        AnnotateImageResponse imageResponse = response.getResponses().get(0);
+
+        List<EntityAnnotation> labels = imageResponse.getLabelAnnotations();
+        if (labels != null) {
+            for (EntityAnnotation l : labels) {
+                builder.addLabel(l.getDescription(), l.getScore() != null ? l.getScore() : 0f);
+            }
+        }
+
+        List<FaceAnnotation> faces = imageResponse.getFaceAnnotations();
+        if (faces != null) {
+            float[] vertices = new float[VisionResult.VERTICES_PER_FACE * 2];
+            for (FaceAnnotation f : faces) {
+                if (!readVertices(f.getFdBoundingPoly(), vertices)) {
+                    continue;
+                }
+                builder.addFace(vertices,
+                        VisionResult.likelihoodFromName(f.getJoyLikelihood()),
+                        VisionResult.likelihoodFromName(f.getSorrowLikelihood()),
+                        VisionResult.likelihoodFromName(f.getAngerLikelihood()),
+                        VisionResult.likelihoodFromName(f.getSurpriseLikelihood()));
+            }
+        }
+
+        return builder.build();
+    }
+
+    private static boolean readVertices(BoundingPoly boundingPoly, float[] out) {
+        if (boundingPoly == null || boundingPoly.getVertices() == null
+                || boundingPoly.getVertices().size() != VisionResult.VERTICES_PER_FACE) {
+            return false;
+        }
+
+        for (int i = 0; i < VisionResult.VERTICES_PER_FACE; i++) {
+            // The API leaves out coordinates that are 0
+            Vertex v = boundingPoly.getVertices().get(i);
+            out[i * 2] = v.getX() != null ? v.getX() : 0;
+            out[i * 2 + 1] = v.getY() != null ? v.getY() : 0;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,143 @@
+package me.hammarstrom.imagerecognition.utilities;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+public class JpegHeaderTest {
+
+    @Test
+    public void readsSizeWithoutExif() throws Exception {
+        JpegHeader header = JpegHeader.read(jpeg(null, 1280, 960));
+
+        assertNotNull(header);
+        assertEquals(1280, header.getWidth());
+        assertEquals(960, header.getHeight());
+        assertEquals(JpegHeader.ORIENTATION_UNDEFINED, header.getOrientation());
+        assertTrue(header.isUpright());
+    }
+
+    @Test
+    public void readsBigEndianExifOrientation() throws Exception {
+        JpegHeader header = JpegHeader.read(jpeg(exif(true, JpegHeader.ORIENTATION_ROTATE_90), 4160, 3120));
+
+        assertNotNull(header);
+        assertEquals(4160, header.getWidth());
+        assertEquals(3120, header.getHeight());
+        assertEquals(90, header.getRotationDegrees());
+        assertFalse(header.isUpright());
+    }
+
+    @Test
+    public void readsLittleEndianExifOrientation() throws Exception {
+        JpegHeader header = JpegHeader.read(jpeg(exif(false, JpegHeader.ORIENTATION_ROTATE_270), 640, 480));
+
+        assertNotNull(header);
+        assertEquals(270, header.getRotationDegrees());
+    }
+
+    @Test
+    public void rejectsNonJpeg() throws Exception {
+        assertNull(JpegHeader.read(null));
+        assertNull(JpegHeader.read(new byte[]{(byte) 0x89, 'P', 'N', 'G', 0, 0}));
+    }
+
+    @Test
+    public void rejectsTruncatedJpeg() throws Exception {
+        byte[] data = jpeg(null, 1280, 960);
+        byte[] truncated = new byte[8];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+
+        assertNull(JpegHeader.read(truncated));
+    }
+
+    @Test
+    public void ignoresExifWithIfdOffsetOutOfRange() throws Exception {
+        JpegHeader header = JpegHeader.read(jpeg(exif(true, JpegHeader.ORIENTATION_ROTATE_90, 0x80000000), 640, 480));
+
+        assertNotNull(header);
+        assertEquals(640, header.getWidth());
+        assertEquals(0, header.getRotationDegrees());
+    }
+
+    private static byte[] jpeg(byte[] app1, int width, int height) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+
+        if (app1 != null) {
+            out.write(0xFF);
+            out.write(0xE1);
+            writeU16(out, app1.length + 2);
+            out.write(app1, 0, app1.length);
+        }
+
+        // SOF0: length, precision, height, width, 3 components
+        out.write(0xFF);
+        out.write(0xC0);
+        writeU16(out, 17);
+        out.write(8);
+        writeU16(out, height);
+        writeU16(out, width);
+        out.write(3);
+        for (int i = 1; i <= 3; i++) {
+            out.write(i);
+            out.write(0x11);
+            out.write(0);
+        }
+
+        out.write(0xFF);
+        out.write(0xDA);
+        return out.toByteArray();
+    }
+
+    private static byte[] exif(boolean bigEndian, int orientation) {
+        return exif(bigEndian, orientation, 8);
+    }
+
+    private static byte[] exif(boolean bigEndian, int orientation, int ifdOffset) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('E');
+        out.write('x');
+        out.write('i');
+        out.write('f');
+        out.write(0);
+        out.write(0);
+
+        out.write(bigEndian ? 'M' : 'I');
+        out.write(bigEndian ? 'M' : 'I');
+        write16(out, 42, bigEndian);
+        write32(out, ifdOffset, bigEndian);
+
+        // IFD0 with a single orientation entry
+        write16(out, 1, bigEndian);
+        write16(out, 0x0112, bigEndian);
+        write16(out, 3, bigEndian);
+        write32(out, 1, bigEndian);
+        write16(out, orientation, bigEndian);
+        write16(out, 0, bigEndian);
+        write32(out, 0, bigEndian);
+        return out.toByteArray();
+    }
+
+    private static void writeU16(ByteArrayOutputStream out, int value) {
+        write16(out, value, true);
+    }
+
+    private static void write32(ByteArrayOutputStream out, int value, boolean bigEndian) {
+        write16(out, bigEndian ? value >>> 16 : value & 0xFFFF, bigEndian);
+        write16(out, bigEndian ? value & 0xFFFF : value >>> 16, bigEndian);
+    }
+
+    private static void write16(ByteArrayOutputStream out, int value, boolean bigEndian) {
+        if (bigEndian) {
+            out.write((value >> 8) & 0xFF);
+            out.write(value & 0xFF);
+        } else {
+            out.write(value & 0xFF);
+            out.write((value >> 8) & 0xFF);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package me.hammarstrom.imagerecognition.utilities;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class PipelineTraceTest {
+
+    @Before
+    public void setUp() throws Exception {
+        PipelineTrace.reset();
+        PipelineTrace.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        PipelineTrace.setEnabled(false);
+        PipelineTrace.reset();
+    }
+
+    @Test
+    public void nothingIsRecordedWhenDisabled() throws Exception {
+        PipelineTrace.setEnabled(false);
+
+        assertEquals(PipelineTrace.NOT_STARTED, PipelineTrace.beginCapture());
+        long start = PipelineTrace.start();
+        assertEquals(PipelineTrace.NOT_STARTED, start);
+        PipelineTrace.end(PipelineTrace.STAGE_DECODE, start);
+
+        assertEquals(0, PipelineTrace.getHistogram(PipelineTrace.STAGE_DECODE).getCount());
+    }
+
+    @Test
+    public void stageStartedBeforeDisablingIsDropped() throws Exception {
+        long start = PipelineTrace.start();
+        PipelineTrace.setEnabled(false);
+        PipelineTrace.end(PipelineTrace.STAGE_HTTP, start);
+
+        assertEquals(0, PipelineTrace.getHistogram(PipelineTrace.STAGE_HTTP).getCount());
+    }
+
+    @Test
+    public void stagesAreRecordedPerCapture() throws Exception {
+        long capture = PipelineTrace.beginCapture();
+        PipelineTrace.end(PipelineTrace.STAGE_SHUTTER, capture);
+        PipelineTrace.end(PipelineTrace.STAGE_DECODE, PipelineTrace.start());
+        PipelineTrace.beginCapture();
+        PipelineTrace.end(PipelineTrace.STAGE_DECODE, PipelineTrace.start());
+
+        assertEquals(1, PipelineTrace.getHistogram(PipelineTrace.STAGE_SHUTTER).getCount());
+        assertEquals(2, PipelineTrace.getHistogram(PipelineTrace.STAGE_DECODE).getCount());
+
+        StringWriter csv = new StringWriter();
+        PipelineTrace.writeCsv(csv);
+        String[] lines = csv.toString().split("\n");
+        assertEquals(4, lines.length);
+        assertEquals("capture,stage,start_ns,duration_ns", lines[0]);
+        assertTrue(lines[1].contains(",shutter,"));
+        assertEquals(lines[1].split(",")[0], lines[2].split(",")[0]);
+        assertNotEquals(lines[2].split(",")[0], lines[3].split(",")[0]);
+    }
+
+    @Test
+    public void onlyTheMostRecentEventsAreKept() throws Exception {
+        PipelineTrace.beginCapture();
+        for (int i = 0; i < PipelineTrace.EVENT_CAPACITY + 10; i++) {
+            PipelineTrace.record(PipelineTrace.STAGE_PARSE, 0, i);
+        }
+
+        StringWriter csv = new StringWriter();
+        PipelineTrace.writeCsv(csv);
+        String[] lines = csv.toString().split("\n");
+        assertEquals(PipelineTrace.EVENT_CAPACITY + 1, lines.length);
+        assertTrue(lines[1].endsWith(",10"));
+        assertEquals(PipelineTrace.EVENT_CAPACITY + 10, PipelineTrace.getHistogram(PipelineTrace.STAGE_PARSE).getCount());
+    }
+
+    @Test
+    public void jsonHasEveryStageAndEvent() throws Exception {
+        PipelineTrace.beginCapture();
+        PipelineTrace.record(PipelineTrace.STAGE_HTTP, 100, 2000000);
+        PipelineTrace.record(PipelineTrace.STAGE_PARSE, 200, 3000000);
+
+        StringWriter json = new StringWriter();
+        PipelineTrace.writeJson(json);
+        String s = json.toString();
+
+        assertTrue(s.startsWith("{\"stages\":[{\"stage\":\"shutter\""));
+        assertTrue(s.contains("{\"stage\":\"http\",\"count\":1,\"mean_ms\":2.000"));
+        assertTrue(s.contains("\"events\":[{\"capture\":"));
+        assertTrue(s.contains("\"stage\":\"parse\",\"start_ns\":200,\"duration_ns\":3000000}]}"));
+        for (int i = 0; i < PipelineTrace.STAGE_COUNT; i++) {
+            assertTrue(s.contains("\"" + PipelineTrace.getStageName(i) + "\""));
+        }
+    }
+
+    @Test
+    public void summaryHasOneLinePerStage() throws Exception {
+        assertEquals(PipelineTrace.STAGE_COUNT + 1, PipelineTrace.getSummary().split("\n").length);
+    }
+}
@@ -0,0 +1,83 @@
+package me.hammarstrom.imagerecognition.utilities;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SceneChangeDetectorTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+
+    @Test
+    public void firstFrameIsAccepted() throws Exception {
+        SceneChangeDetector detector = new SceneChangeDetector();
+
+        assertTrue(detector.hasChangedNv21(frame(100), WIDTH, HEIGHT));
+        assertEquals(0f, detector.getSuppressionRatio(), 0f);
+    }
+
+    @Test
+    public void sameFrameIsSuppressed() throws Exception {
+        SceneChangeDetector detector = new SceneChangeDetector();
+        byte[] frame = frame(100);
+
+        assertTrue(detector.hasChangedNv21(frame, WIDTH, HEIGHT));
+        assertFalse(detector.hasChangedNv21(frame, WIDTH, HEIGHT));
+        assertFalse(detector.hasChangedNv21(frame(102), WIDTH, HEIGHT));
+
+        assertEquals(2, detector.getSuppressedCount());
+        assertEquals(2f / 3f, detector.getSuppressionRatio(), 0.0001f);
+    }
+
+    @Test
+    public void changedFrameIsAcceptedAndBecomesReference() throws Exception {
+        SceneChangeDetector detector = new SceneChangeDetector();
+
+        assertTrue(detector.hasChangedNv21(frame(100), WIDTH, HEIGHT));
+        assertTrue(detector.hasChangedNv21(frame(160), WIDTH, HEIGHT));
+        assertEquals(60f, detector.getLastDifference(), 0.0001f);
+        assertFalse(detector.hasChangedNv21(frame(160), WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void chromaIsIgnored() throws Exception {
+        SceneChangeDetector detector = new SceneChangeDetector();
+        byte[] frame = frame(100);
+
+        assertTrue(detector.hasChangedNv21(frame, WIDTH, HEIGHT));
+        Arrays.fill(frame, WIDTH * HEIGHT, frame.length, (byte) 0);
+        assertFalse(detector.hasChangedNv21(frame, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void argbFramesAreCompared() throws Exception {
+        SceneChangeDetector detector = new SceneChangeDetector(8, 6, 5f);
+        int[] gray = new int[WIDTH * HEIGHT];
+        Arrays.fill(gray, 0xFF808080);
+        int[] white = new int[WIDTH * HEIGHT];
+        Arrays.fill(white, 0xFFFFFFFF);
+
+        assertTrue(detector.hasChangedArgb(gray, WIDTH, HEIGHT));
+        assertFalse(detector.hasChangedArgb(gray, WIDTH, HEIGHT));
+        assertTrue(detector.hasChangedArgb(white, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void zeroThresholdAcceptsEveryFrame() throws Exception {
+        SceneChangeDetector detector = new SceneChangeDetector(16, 16, 0f);
+        byte[] frame = frame(100);
+
+        assertTrue(detector.hasChangedNv21(frame, WIDTH, HEIGHT));
+        assertTrue(detector.hasChangedNv21(frame, WIDTH, HEIGHT));
+    }
+
+    private static byte[] frame(int luma) {
+        byte[] nv21 = new byte[WIDTH * HEIGHT * 3 / 2];
+        Arrays.fill(nv21, 0, WIDTH * HEIGHT, (byte) luma);
+        Arrays.fill(nv21, WIDTH * HEIGHT, nv21.length, (byte) 128);
+        return nv21;
+    }
+}
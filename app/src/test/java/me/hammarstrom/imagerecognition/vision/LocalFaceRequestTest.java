@@ -0,0 +1,142 @@
+package me.hammarstrom.imagerecognition.vision;
+
+import android.graphics.Bitmap;
+
+import com.google.api.services.vision.v1.model.BatchAnnotateImagesResponse;
+import com.google.api.services.vision.v1.model.FaceAnnotation;
+import com.google.api.services.vision.v1.model.Vertex;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LocalFaceRequestTest {
+
+    @Test
+    public void facesAreReturnedInResponse() throws Exception {
+        StandInDetector detector = new StandInDetector(true,
+                FaceAnnotationHelper.createFaceAnnotation(10f, 20f, 100f, 120f, 0.9f),
+                FaceAnnotationHelper.createFaceAnnotation(300f, 40f, 80f, 90f, 0.05f));
+
+        BatchAnnotateImagesResponse response = LocalFaceRequest.doRequest(detector, null, 1f)
+                .toBlocking()
+                .single();
+
+        List<FaceAnnotation> faces = response.getResponses().get(0).getFaceAnnotations();
+        assertEquals(2, faces.size());
+        assertEquals(FaceAnnotationHelper.LIKELIHOOD_VERY_LIKELY, faces.get(0).getJoyLikelihood());
+        assertEquals(FaceAnnotationHelper.LIKELIHOOD_VERY_UNLIKELY, faces.get(1).getJoyLikelihood());
+        assertNull(response.getResponses().get(0).getLabelAnnotations());
+        assertEquals(1, detector.mDetectCount);
+    }
+
+    @Test
+    public void facesAreScaledToResponseCoordinates() throws Exception {
+        StandInDetector detector = new StandInDetector(true,
+                FaceAnnotationHelper.createFaceAnnotation(10f, 20f, 100f, 120f, 0.5f));
+
+        BatchAnnotateImagesResponse response = LocalFaceRequest.doRequest(detector, null, 2f)
+                .toBlocking()
+                .single();
+
+        List<Vertex> vertices = response.getResponses().get(0).getFaceAnnotations().get(0)
+                .getFdBoundingPoly().getVertices();
+        assertVertex(vertices.get(0), 20, 40);
+        assertVertex(vertices.get(1), 220, 40);
+        assertVertex(vertices.get(2), 220, 280);
+        assertVertex(vertices.get(3), 20, 280);
+    }
+
+    @Test
+    public void noFacesGivesNoFaceAnnotations() throws Exception {
+        StandInDetector detector = new StandInDetector(true);
+
+        BatchAnnotateImagesResponse response = LocalFaceRequest.doRequest(detector, null, 1f)
+                .toBlocking()
+                .single();
+
+        assertNull(response.getResponses().get(0).getFaceAnnotations());
+    }
+
+    @Test
+    public void detectorThatIsNotOperationalIsNotCalled() throws Exception {
+        StandInDetector detector = new StandInDetector(false,
+                FaceAnnotationHelper.createFaceAnnotation(10f, 20f, 100f, 120f, 0.5f));
+
+        BatchAnnotateImagesResponse response = LocalFaceRequest.doRequest(detector, null, 1f)
+                .toBlocking()
+                .single();
+
+        assertNull(response.getResponses().get(0).getFaceAnnotations());
+        assertEquals(0, detector.mDetectCount);
+    }
+
+    @Test
+    public void detectionIsDeferredUntilSubscribed() throws Exception {
+        StandInDetector detector = new StandInDetector(true);
+
+        LocalFaceRequest.doRequest(detector, null, 1f);
+
+        assertEquals(0, detector.mDetectCount);
+    }
+
+    @Test
+    public void probabilitiesAreConvertedToLikelihoods() throws Exception {
+        assertEquals(FaceAnnotationHelper.LIKELIHOOD_UNKNOWN, FaceAnnotationHelper.toLikelihood(-1f));
+        assertEquals(FaceAnnotationHelper.LIKELIHOOD_VERY_UNLIKELY, FaceAnnotationHelper.toLikelihood(0f));
+        assertEquals(FaceAnnotationHelper.LIKELIHOOD_UNLIKELY, FaceAnnotationHelper.toLikelihood(0.2f));
+        assertEquals(FaceAnnotationHelper.LIKELIHOOD_POSSIBLE, FaceAnnotationHelper.toLikelihood(0.5f));
+        assertEquals(FaceAnnotationHelper.LIKELIHOOD_LIKELY, FaceAnnotationHelper.toLikelihood(0.7f));
+        assertEquals(FaceAnnotationHelper.LIKELIHOOD_VERY_LIKELY, FaceAnnotationHelper.toLikelihood(1f));
+    }
+
+    @Test
+    public void unknownExpressionsAreSetOnLocalFaces() throws Exception {
+        FaceAnnotation face = FaceAnnotationHelper.createFaceAnnotation(0f, 0f, 10f, 10f, -1f);
+
+        assertEquals(FaceAnnotationHelper.LIKELIHOOD_UNKNOWN, face.getJoyLikelihood());
+        assertEquals(FaceAnnotationHelper.LIKELIHOOD_UNKNOWN, face.getSorrowLikelihood());
+        assertEquals(FaceAnnotationHelper.LIKELIHOOD_UNKNOWN, face.getAngerLikelihood());
+        assertEquals(FaceAnnotationHelper.LIKELIHOOD_UNKNOWN, face.getSurpriseLikelihood());
+        assertSame(face.getBoundingPoly(), face.getFdBoundingPoly());
+    }
+
+    private static void assertVertex(Vertex vertex, int x, int y) {
+        assertEquals(Integer.valueOf(x), vertex.getX());
+        assertEquals(Integer.valueOf(y), vertex.getY());
+    }
+
+    /**
+     * Detector returning the same faces for every bitmap
+     */
+    private static class StandInDetector implements FaceDetectorBackend {
+
+        private final boolean mOperational;
+        private final List<FaceAnnotation> mFaces;
+        private int mDetectCount;
+
+        StandInDetector(boolean operational, FaceAnnotation... faces) {
+            mOperational = operational;
+            mFaces = Arrays.asList(faces);
+        }
+
+        @Override
+        public List<FaceAnnotation> detect(Bitmap bitmap) {
+            mDetectCount++;
+            return new ArrayList<>(mFaces);
+        }
+
+        @Override
+        public boolean isOperational() {
+            return mOperational;
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package me.hammarstrom.imagerecognition.vision;
+
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import me.hammarstrom.imagerecognition.core.VisionResult;
+import rx.Observable;
+import rx.functions.Func0;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
+import static org.junit.Assert.*;
+
+public class RetryingBackendTest {
+
+    private static final VisionRequest REQUEST = new VisionRequest(new byte[0], VisionRequest.FEATURE_LABELS);
+
+    private TestScheduler mScheduler;
+    private RequestOutcomeStats mStats;
+    private ScriptedBackend mBackend;
+    private VisionResult mCat;
+
+    @Before
+    public void setUp() throws Exception {
+        mScheduler = new TestScheduler();
+        mStats = new RequestOutcomeStats();
+        mBackend = new ScriptedBackend();
+        mCat = new VisionResult.Builder().addLabel("cat", 0.9f).build();
+    }
+
+    @Test
+    public void onlyTransientErrorsAreRetryable() throws Exception {
+        assertTrue(RetryPolicy.isRetryable(httpError(429)));
+        assertTrue(RetryPolicy.isRetryable(httpError(503)));
+        assertTrue(RetryPolicy.isRetryable(new TransportException(new SocketException("connection reset"))));
+        assertTrue(RetryPolicy.isRetryable(new SocketTimeoutException()));
+        assertTrue(RetryPolicy.isRetryable(new ConnectException()));
+        assertTrue(RetryPolicy.isRetryable(new UnknownHostException()));
+        assertTrue(RetryPolicy.isRetryable(new TimeoutException()));
+        assertFalse(RetryPolicy.isRetryable(httpError(400)));
+        assertFalse(RetryPolicy.isRetryable(httpError(403)));
+        assertFalse(RetryPolicy.isRetryable(new IllegalArgumentException()));
+        assertFalse(RetryPolicy.isRetryable(new IOException("Empty response")));
+        assertFalse(RetryPolicy.isRetryable(new IOException("Missing response for image 1 of 2")));
+    }
+
+    @Test
+    public void delaysGrowWithJitterUpToMax() throws Exception {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000, new Random(42));
+
+        for (int i = 0; i < 100; i++) {
+            long first = policy.getDelayMs(0);
+            assertTrue(first >= 50 && first <= 100);
+
+            long third = policy.getDelayMs(2);
+            assertTrue(third >= 200 && third <= 400);
+
+            long capped = policy.getDelayMs(9);
+            assertTrue(capped >= 500 && capped <= 1000);
+        }
+        assertFalse(policy.shouldRetry(new ConnectException(), 10));
+    }
+
+    @Test
+    public void retryableErrorIsRetried() throws Exception {
+        mBackend.add(Observable.<VisionResult>error(httpError(503)));
+        mBackend.add(Observable.just(mCat));
+
+        TestSubscriber<VisionResult> subscriber = analyze(retrying(2, 1000, 5000));
+        mScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        subscriber.assertValue(mCat);
+        subscriber.assertCompleted();
+        assertEquals(2, mBackend.mSubscriptions);
+        assertEquals(1, mStats.getRetryCount());
+        assertEquals(1, mStats.getCount(RequestOutcomeStats.OUTCOME_RETRIED_SUCCESS));
+    }
+
+    @Test
+    public void permanentErrorIsNotRetried() throws Exception {
+        mBackend.add(Observable.<VisionResult>error(httpError(400)));
+
+        TestSubscriber<VisionResult> subscriber = analyze(retrying(2, 1000, 5000));
+        mScheduler.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+
+        subscriber.assertError(HttpResponseException.class);
+        assertEquals(1, mBackend.mSubscriptions);
+        assertEquals(1, mStats.getCount(RequestOutcomeStats.OUTCOME_FAILED));
+    }
+
+    @Test
+    public void retriesStopAtMax() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            mBackend.add(Observable.<VisionResult>error(new UnknownHostException("offline")));
+        }
+
+        TestSubscriber<VisionResult> subscriber = analyze(retrying(2, 1000, 5000));
+        mScheduler.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+
+        subscriber.assertError(UnknownHostException.class);
+        assertEquals(3, mBackend.mSubscriptions);
+    }
+
+    @Test
+    public void stalledRequestEndsAtDeadline() throws Exception {
+        TestSubscriber<VisionResult> subscriber = analyze(retrying(5, 1000, 2500));
+
+        mScheduler.advanceTimeBy(2499, TimeUnit.MILLISECONDS);
+        subscriber.assertNoTerminalEvent();
+
+        mScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        subscriber.assertError(TimeoutException.class);
+        assertEquals(3, mBackend.mSubscriptions);
+        assertEquals(1, mStats.getCount(RequestOutcomeStats.OUTCOME_TIMED_OUT));
+    }
+
+    @Test
+    public void slowRequestIsHedged() throws Exception {
+        HedgingBackend hedging = new HedgingBackend(mBackend, mScheduler, mStats);
+        seed(hedging.getTracker(), 100);
+        assertEquals(HedgingBackend.MIN_HEDGE_DELAY_MS, hedging.getHedgeDelayMs());
+
+        mBackend.add(Observable.<VisionResult>never());
+        mBackend.add(Observable.just(mCat));
+
+        TestSubscriber<VisionResult> subscriber = analyze(hedging);
+        mScheduler.advanceTimeBy(HedgingBackend.MIN_HEDGE_DELAY_MS, TimeUnit.MILLISECONDS);
+
+        subscriber.assertValue(mCat);
+        subscriber.assertCompleted();
+        assertEquals(1, mStats.getCount(RequestOutcomeStats.OUTCOME_HEDGE_SENT));
+        assertEquals(1, mStats.getCount(RequestOutcomeStats.OUTCOME_HEDGE_WON));
+    }
+
+    @Test
+    public void permanentErrorIsNotHedged() throws Exception {
+        HedgingBackend hedging = new HedgingBackend(mBackend, mScheduler, mStats);
+        seed(hedging.getTracker(), 100);
+
+        mBackend.add(Observable.<VisionResult>error(httpError(400)));
+        mBackend.add(Observable.just(mCat));
+
+        TestSubscriber<VisionResult> subscriber = analyze(hedging);
+        subscriber.assertError(HttpResponseException.class);
+
+        mScheduler.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+        assertEquals(1, mBackend.mSubscriptions);
+        assertEquals(0, mStats.getCount(RequestOutcomeStats.OUTCOME_HEDGE_SENT));
+    }
+
+    @Test
+    public void fastRequestIsNotHedged() throws Exception {
+        HedgingBackend hedging = new HedgingBackend(mBackend, mScheduler, mStats);
+        seed(hedging.getTracker(), 300);
+
+        mBackend.add(Observable.just(mCat).delay(50, TimeUnit.MILLISECONDS, mScheduler));
+
+        TestSubscriber<VisionResult> subscriber = analyze(hedging);
+        mScheduler.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+
+        subscriber.assertValue(mCat);
+        assertEquals(1, mBackend.mSubscriptions);
+        assertEquals(0, mStats.getCount(RequestOutcomeStats.OUTCOME_HEDGE_SENT));
+    }
+
+    @Test
+    public void onlyNetworkAnswersAreTracked() throws Exception {
+        HedgingBackend hedging = new HedgingBackend(mBackend, mScheduler, mStats);
+
+        mBackend.add(Observable.just(mCat));
+        mBackend.add(Observable.just(mCat).delay(50, TimeUnit.MILLISECONDS, mScheduler));
+
+        analyze(hedging).assertValue(mCat);
+        TestSubscriber<VisionResult> subscriber = analyze(hedging);
+        mScheduler.advanceTimeBy(50, TimeUnit.MILLISECONDS);
+
+        subscriber.assertValue(mCat);
+        assertEquals(1, hedging.getTracker().getSampleCount());
+    }
+
+    @Test
+    public void requestsAreNotHedgedWithoutSamples() throws Exception {
+        HedgingBackend hedging = new HedgingBackend(mBackend, mScheduler, mStats);
+        assertEquals(-1, hedging.getHedgeDelayMs());
+
+        mBackend.add(Observable.<VisionResult>never());
+
+        analyze(hedging);
+        mScheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+
+        assertEquals(1, mBackend.mSubscriptions);
+    }
+
+    private RetryingBackend retrying(int maxRetries, long attemptTimeoutMs, long deadlineMs) {
+        RetryPolicy policy = new RetryPolicy(maxRetries, 50, 50, new Random(42));
+        return new RetryingBackend(mBackend, policy, attemptTimeoutMs, deadlineMs, mScheduler, mStats);
+    }
+
+    private TestSubscriber<VisionResult> analyze(VisionBackend backend) {
+        TestSubscriber<VisionResult> subscriber = new TestSubscriber<>();
+        backend.analyze(REQUEST).subscribe(subscriber);
+        return subscriber;
+    }
+
+    private static void seed(LatencyTracker tracker, long latencyMs) {
+        for (int i = 0; i < HedgingBackend.MIN_SAMPLES; i++) {
+            tracker.record(latencyMs);
+        }
+    }
+
+    private static HttpResponseException httpError(int statusCode) {
+        return new HttpResponseException.Builder(statusCode, null, new HttpHeaders()).build();
+    }
+
+    /**
+     * Backend answering each subscription with the next scripted answer,
+     * and never answering when the script has run out
+     */
+    private static class ScriptedBackend implements VisionBackend {
+
+        private final Queue<Observable<VisionResult>> mAnswers = new ArrayDeque<>();
+        private int mSubscriptions;
+
+        void add(Observable<VisionResult> answer) {
+            mAnswers.add(answer);
+        }
+
+        @Override
+        public String getName() {
+            return "scripted";
+        }
+
+        @Override
+        public boolean supports(int features) {
+            return true;
+        }
+
+        @Override
+        public Observable<VisionResult> analyze(VisionRequest request) {
+            return Observable.defer(new Func0<Observable<VisionResult>>() {
+                @Override
+                public Observable<VisionResult> call() {
+                    mSubscriptions++;
+                    Observable<VisionResult> answer = mAnswers.poll();
+                    return answer != null ? answer : Observable.<VisionResult>never();
+                }
+            });
+        }
+    }
+}
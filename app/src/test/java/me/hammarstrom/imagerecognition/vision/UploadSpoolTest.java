@@ -0,0 +1,220 @@
+package me.hammarstrom.imagerecognition.vision;
+
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+
+import me.hammarstrom.imagerecognition.core.VisionResult;
+import rx.Observable;
+import rx.schedulers.Schedulers;
+
+import static org.junit.Assert.*;
+
+public class UploadSpoolTest {
+
+    private File mDirectory;
+    private VisionResult mCat;
+    private List<UploadSpool.SpooledResult> mDelivered;
+    private UploadSpool.Listener mListener;
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = File.createTempFile("spool", "");
+        assertTrue(mDirectory.delete());
+
+        mCat = new VisionResult.Builder().addLabel("cat", 0.9f).build();
+        mDelivered = new ArrayList<>();
+        mListener = new UploadSpool.Listener() {
+            @Override
+            public void onSpooledResult(UploadSpool.SpooledResult result) {
+                mDelivered.add(result);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void capturesAreReplayedOldestFirst() throws Exception {
+        UploadSpool spool = new UploadSpool(mDirectory, UploadSpool.DEFAULT_MAX_BYTES);
+        spool.setListener(mListener, Schedulers.immediate());
+        assertTrue(spool.add(request(100), 2000));
+        assertTrue(spool.add(request(100), 1000));
+        assertEquals(2, spool.size());
+
+        spool.replay(backend(mCat), 1, Schedulers.immediate());
+
+        assertEquals(0, spool.size());
+        assertEquals(2, mDelivered.size());
+        assertEquals(1000, mDelivered.get(0).getCapturedAt());
+        assertEquals(2000, mDelivered.get(1).getCapturedAt());
+        assertSame(mCat, mDelivered.get(0).getResult());
+        assertEquals(2000, spool.getHistory().get(0).getCapturedAt());
+        assertEquals(2, spool.getReplayedCount());
+    }
+
+    @Test
+    public void requestIsReadBackAsWritten() throws Exception {
+        UploadSpool spool = new UploadSpool(mDirectory, UploadSpool.DEFAULT_MAX_BYTES);
+        byte[] jpeg = new byte[]{(byte) 0xFF, (byte) 0xD8, 1, 2, 3, (byte) 0xFF, (byte) 0xD9};
+        spool.add(new VisionRequest(jpeg, VisionRequest.FEATURE_LABELS | VisionRequest.FEATURE_FACES), 1000);
+
+        final List<VisionRequest> received = new ArrayList<>();
+        spool.replay(new MockVisionBackend("mock", mCat, 0, Schedulers.immediate()) {
+            @Override
+            public Observable<VisionResult> analyze(VisionRequest request) {
+                received.add(request);
+                return super.analyze(request);
+            }
+        }, UploadSpool.DEFAULT_BATCH_SIZE, Schedulers.immediate());
+
+        assertEquals(1, received.size());
+        assertArrayEquals(jpeg, received.get(0).getJpeg());
+        assertTrue(received.get(0).hasFeature(VisionRequest.FEATURE_FACES));
+    }
+
+    @Test
+    public void retryableFailureKeepsCaptures() throws Exception {
+        UploadSpool spool = new UploadSpool(mDirectory, UploadSpool.DEFAULT_MAX_BYTES);
+        spool.add(request(100), 1000);
+        spool.add(request(100), 2000);
+
+        spool.replay(new MockVisionBackend("offline", new ConnectException("offline"), 0, Schedulers.immediate()),
+                UploadSpool.DEFAULT_BATCH_SIZE, Schedulers.immediate());
+
+        assertEquals(2, spool.size());
+        assertEquals(0, spool.getReplayedCount());
+        assertEquals(0, spool.getDroppedCount());
+
+        // Replay can run again once the first one is done
+        spool.replay(backend(mCat), UploadSpool.DEFAULT_BATCH_SIZE, Schedulers.immediate());
+        assertEquals(0, spool.size());
+    }
+
+    @Test
+    public void permanentFailureDropsCaptures() throws Exception {
+        UploadSpool spool = new UploadSpool(mDirectory, UploadSpool.DEFAULT_MAX_BYTES);
+        spool.add(request(100), 1000);
+
+        HttpResponseException badRequest = new HttpResponseException.Builder(400, null, new HttpHeaders()).build();
+        spool.replay(new MockVisionBackend("bad", badRequest, 0, Schedulers.immediate()),
+                UploadSpool.DEFAULT_BATCH_SIZE, Schedulers.immediate());
+
+        assertEquals(0, spool.size());
+        assertEquals(1, spool.getDroppedCount());
+    }
+
+    @Test
+    public void oldestCapturesAreDroppedOverCap() throws Exception {
+        UploadSpool spool = new UploadSpool(mDirectory, 2500);
+        spool.setListener(mListener, Schedulers.immediate());
+        spool.add(request(1000), 1000);
+        spool.add(request(1000), 2000);
+        spool.add(request(1000), 3000);
+
+        assertEquals(2, spool.size());
+        assertEquals(1, spool.getDroppedCount());
+
+        spool.replay(backend(mCat), UploadSpool.DEFAULT_BATCH_SIZE, Schedulers.immediate());
+        assertEquals(2000, mDelivered.get(0).getCapturedAt());
+        assertEquals(3000, mDelivered.get(1).getCapturedAt());
+    }
+
+    @Test
+    public void directoryIsCreatedOnFirstUse() throws Exception {
+        UploadSpool spool = new UploadSpool(mDirectory, UploadSpool.DEFAULT_MAX_BYTES);
+        assertFalse(mDirectory.exists());
+
+        assertTrue(spool.add(request(100), 1000));
+        assertTrue(mDirectory.isDirectory());
+    }
+
+    @Test
+    public void interruptedAndCorruptEntriesAreRemoved() throws Exception {
+        assertTrue(mDirectory.mkdirs());
+        File temp = new File(mDirectory, "0000000001000-00000.tmp");
+        write(temp, new byte[]{1, 2, 3});
+        write(new File(mDirectory, "0000000002000-00000.spool"), new byte[]{1, 2, 3});
+
+        UploadSpool spool = new UploadSpool(mDirectory, UploadSpool.DEFAULT_MAX_BYTES);
+        assertTrue(temp.exists());
+        assertEquals(1, spool.size());
+        assertFalse(temp.exists());
+
+        spool.replay(backend(mCat), UploadSpool.DEFAULT_BATCH_SIZE, Schedulers.immediate());
+        assertEquals(0, spool.size());
+        assertEquals(1, spool.getDroppedCount());
+    }
+
+    @Test
+    public void entryWithInvalidLengthIsDropped() throws Exception {
+        assertTrue(mDirectory.mkdirs());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x53504f4c);
+        out.writeInt(1);
+        out.writeLong(1000);
+        out.writeInt(VisionRequest.FEATURE_LABELS);
+        out.writeInt(Integer.MAX_VALUE);
+        write(new File(mDirectory, "0000000001000-00000.spool"), bytes.toByteArray());
+
+        UploadSpool spool = new UploadSpool(mDirectory, UploadSpool.DEFAULT_MAX_BYTES);
+        spool.replay(backend(mCat), UploadSpool.DEFAULT_BATCH_SIZE, Schedulers.immediate());
+
+        assertEquals(0, spool.size());
+        assertEquals(1, spool.getDroppedCount());
+    }
+
+    @Test
+    public void replayStopsWhenAnEntryCanNotBeDeleted() throws Exception {
+        // A directory that isn't empty can neither be read nor deleted as an entry
+        File stuck = new File(mDirectory, "0000000001000-00000.spool");
+        assertTrue(stuck.mkdirs());
+        File inside = new File(stuck, "inside");
+        write(inside, new byte[]{1, 2, 3});
+
+        UploadSpool spool = new UploadSpool(mDirectory, UploadSpool.DEFAULT_MAX_BYTES);
+        spool.replay(backend(mCat), UploadSpool.DEFAULT_BATCH_SIZE, Schedulers.immediate());
+
+        assertEquals(1, spool.size());
+        assertTrue(inside.delete());
+    }
+
+    private static VisionRequest request(int jpegLength) {
+        return new VisionRequest(new byte[jpegLength], VisionRequest.FEATURE_LABELS);
+    }
+
+    private static VisionBackend backend(VisionResult result) {
+        return new MockVisionBackend("mock", result, 0, Schedulers.immediate());
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package me.hammarstrom.imagerecognition.vision;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import me.hammarstrom.imagerecognition.core.VisionResult;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
+import static org.junit.Assert.*;
+
+public class VisionBackendTest {
+
+    private static final VisionRequest REQUEST = new VisionRequest(new byte[0], VisionRequest.FEATURE_LABELS);
+
+    private TestScheduler mScheduler;
+    private VisionResult mCat;
+    private VisionResult mDog;
+
+    @Before
+    public void setUp() throws Exception {
+        mScheduler = new TestScheduler();
+        mCat = new VisionResult.Builder().addLabel("cat", 0.9f).build();
+        mDog = new VisionResult.Builder().addLabel("dog", 0.8f).build();
+    }
+
+    @Test
+    public void trackerReturnsNearestRankPercentile() throws Exception {
+        LatencyTracker tracker = new LatencyTracker(100);
+        assertEquals(-1, tracker.getPercentile(95f));
+
+        for (int i = 100; i >= 1; i--) {
+            tracker.record(i);
+        }
+
+        assertEquals(50, tracker.getPercentile(50f));
+        assertEquals(95, tracker.getPercentile(95f));
+        assertEquals(100, tracker.getPercentile(100f));
+        assertEquals(1, tracker.getPercentile(0f));
+    }
+
+    @Test
+    public void trackerForgetsOldestSamples() throws Exception {
+        LatencyTracker tracker = new LatencyTracker(4);
+        tracker.record(1000);
+        for (int i = 0; i < 4; i++) {
+            tracker.record(10);
+        }
+
+        assertEquals(4, tracker.getSampleCount());
+        assertEquals(10, tracker.getPercentile(100f));
+    }
+
+    @Test
+    public void mockCountsRequestsWhenSubscribed() throws Exception {
+        MockVisionBackend mock = new MockVisionBackend("mock", mCat, 0, mScheduler);
+
+        Observable<VisionResult> answer = mock.analyze(REQUEST);
+        assertEquals(0, mock.getRequestCount());
+
+        answer.subscribe(new TestSubscriber<VisionResult>());
+        answer.subscribe(new TestSubscriber<VisionResult>());
+        assertEquals(2, mock.getRequestCount());
+    }
+
+    @Test
+    public void routerTriesBackendsWithoutSamplesFirst() throws Exception {
+        MockVisionBackend a = new MockVisionBackend("a", mCat, 0, mScheduler);
+        MockVisionBackend b = new MockVisionBackend("b", mDog, 0, mScheduler);
+        LatencyRoutingBackend router = new LatencyRoutingBackend("router", a, b);
+
+        record(router.getTracker(a), 100, LatencyRoutingBackend.MIN_SAMPLES);
+
+        assertSame(b, router.choose(VisionRequest.FEATURE_LABELS));
+    }
+
+    @Test
+    public void routerChoosesLowestPercentile() throws Exception {
+        MockVisionBackend a = new MockVisionBackend("a", mCat, 0, mScheduler);
+        MockVisionBackend b = new MockVisionBackend("b", mDog, 0, mScheduler);
+        LatencyRoutingBackend router = new LatencyRoutingBackend("router", a, b);
+
+        record(router.getTracker(a), 100, LatencyRoutingBackend.MIN_SAMPLES);
+        record(router.getTracker(b), 50, LatencyRoutingBackend.MIN_SAMPLES);
+
+        for (int i = 1; i < LatencyRoutingBackend.EXPLORE_INTERVAL; i++) {
+            assertSame(b, router.choose(VisionRequest.FEATURE_LABELS));
+        }
+
+        // Every now and then the slower backend gets a chance
+        assertSame(a, router.choose(VisionRequest.FEATURE_LABELS));
+    }
+
+    @Test
+    public void routerRecordsFailuresAsSlowest() throws Exception {
+        MockVisionBackend failing = new MockVisionBackend("failing", new IOException("offline"), 10, mScheduler);
+        LatencyRoutingBackend router = new LatencyRoutingBackend("router", failing);
+
+        TestSubscriber<VisionResult> subscriber = new TestSubscriber<>();
+        router.analyze(REQUEST).subscribe(subscriber);
+        mScheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+
+        subscriber.assertError(IOException.class);
+        assertEquals(Long.MAX_VALUE, router.getTracker(failing).getPercentile(95f));
+    }
+
+    @Test
+    public void routerRecordsLatencyOfAnswers() throws Exception {
+        MockVisionBackend a = new MockVisionBackend("a", mCat, 10, mScheduler);
+        LatencyRoutingBackend router = new LatencyRoutingBackend("router", a);
+
+        TestSubscriber<VisionResult> subscriber = new TestSubscriber<>();
+        router.analyze(REQUEST).subscribe(subscriber);
+        mScheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+
+        subscriber.assertValue(mCat);
+        subscriber.assertCompleted();
+        assertEquals(1, router.getTracker(a).getSampleCount());
+    }
+
+    @Test
+    public void raceIsWonByFirstAnswer() throws Exception {
+        MockVisionBackend slow = new MockVisionBackend("slow", mCat, 500, mScheduler);
+        MockVisionBackend fast = new MockVisionBackend("fast", mDog, 100, mScheduler);
+        RacingBackend racing = new RacingBackend("race", slow, fast);
+
+        TestSubscriber<VisionResult> subscriber = new TestSubscriber<>();
+        racing.analyze(REQUEST).subscribe(subscriber);
+        mScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        subscriber.assertValue(mDog);
+        subscriber.assertCompleted();
+        assertEquals(1, racing.getWinCount(fast));
+        assertEquals(0, racing.getWinCount(slow));
+
+        // The slow request was unsubscribed from
+        mScheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+        subscriber.assertValueCount(1);
+    }
+
+    @Test
+    public void raceContinuesWhenOneBackendFails() throws Exception {
+        MockVisionBackend slow = new MockVisionBackend("slow", mCat, 500, mScheduler);
+        MockVisionBackend failing = new MockVisionBackend("failing", new IOException("offline"), 100, mScheduler);
+        RacingBackend racing = new RacingBackend("race", slow, failing);
+
+        TestSubscriber<VisionResult> subscriber = new TestSubscriber<>();
+        racing.analyze(REQUEST).subscribe(subscriber);
+        mScheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+
+        subscriber.assertNoErrors();
+        subscriber.assertValue(mCat);
+        assertEquals(1, racing.getWinCount(slow));
+    }
+
+    @Test
+    public void raceFailsWhenAllBackendsFail() throws Exception {
+        RacingBackend racing = new RacingBackend("race",
+                new MockVisionBackend("a", new IOException("offline"), 100, mScheduler),
+                new MockVisionBackend("b", new IOException("offline"), 200, mScheduler));
+
+        TestSubscriber<VisionResult> subscriber = new TestSubscriber<>();
+        racing.analyze(REQUEST).subscribe(subscriber);
+        mScheduler.advanceTimeBy(200, TimeUnit.MILLISECONDS);
+
+        assertEquals(1, subscriber.getOnErrorEvents().size());
+        subscriber.assertNoValues();
+    }
+
+    @Test
+    public void resultBuilderKeepsLabelsAndFaces() throws Exception {
+        VisionResult result = new VisionResult.Builder()
+                .addLabel("person", 0.95f)
+                .addFace(new float[]{1, 2, 3, 2, 3, 4, 1, 4},
+                        VisionResult.LIKELIHOOD_LIKELY,
+                        VisionResult.LIKELIHOOD_UNKNOWN,
+                        VisionResult.likelihoodFromName("VERY_UNLIKELY"),
+                        VisionResult.likelihoodFromName("POSSIBLE"))
+                .setImageSize(640, 480)
+                .build();
+
+        assertEquals(1, result.getLabelCount());
+        assertEquals("person", result.getLabelDescription(0));
+        assertEquals(1, result.getFaceCount());
+        assertEquals(3f, result.getFaceVertexX(0, 2), 0f);
+        assertEquals(4f, result.getFaceVertexY(0, 2), 0f);
+        assertTrue(VisionResult.isLikely(result.getLikelihood(0, VisionResult.EXPRESSION_JOY)));
+        assertFalse(VisionResult.isLikely(result.getLikelihood(0, VisionResult.EXPRESSION_SORROW)));
+        assertFalse(VisionResult.isLikely(result.getLikelihood(0, VisionResult.EXPRESSION_ANGER)));
+        assertTrue(VisionResult.isLikely(result.getLikelihood(0, VisionResult.EXPRESSION_SURPRISE)));
+        assertEquals(640, result.getImageWidth());
+    }
+
+    private static void record(LatencyTracker tracker, long latencyMs, int count) {
+        for (int i = 0; i < count; i++) {
+            tracker.record(latencyMs);
+        }
+    }
+}
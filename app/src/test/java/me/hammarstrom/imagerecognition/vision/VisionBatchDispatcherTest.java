@@ -0,0 +1,219 @@
+package me.hammarstrom.imagerecognition.vision;
+
+import com.google.api.services.vision.v1.model.Feature;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import me.hammarstrom.imagerecognition.core.VisionResult;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
+import static org.junit.Assert.*;
+
+public class VisionBatchDispatcherTest {
+
+    private static final long WINDOW_MS = 100;
+    private static final List<Feature> FEATURES = Collections.singletonList(new Feature().setType("LABEL_DETECTION"));
+
+    private TestScheduler mScheduler;
+    private ScriptedExecutor mExecutor;
+    private VisionBatchDispatcher mDispatcher;
+
+    @Before
+    public void setUp() throws Exception {
+        mScheduler = new TestScheduler();
+        mExecutor = new ScriptedExecutor();
+        mDispatcher = new VisionBatchDispatcher(WINDOW_MS, 3, mScheduler, mExecutor);
+    }
+
+    @Test
+    public void loneRequestIsSentRightAway() throws Exception {
+        mExecutor.answers.add(results("cat"));
+
+        TestSubscriber<VisionResult> subscriber = enqueue();
+
+        assertEquals(Collections.singletonList(1), mExecutor.batchSizes);
+        assertEquals("cat", subscriber.getOnNextEvents().get(0).getLabelDescription(0));
+        subscriber.assertCompleted();
+    }
+
+    @Test
+    public void requestsArrivingDuringABatchWaitForTheWindow() throws Exception {
+        final List<TestSubscriber<VisionResult>> burst = new ArrayList<>();
+        mExecutor.answers.add(new Answer() {
+            @Override
+            public List<VisionResult> answer(List<AnnotateRequestContent.Entry> entries) throws IOException {
+                burst.add(enqueue());
+                burst.add(enqueue());
+                return results("first").answer(entries);
+            }
+        });
+        mExecutor.answers.add(results("dog", "bird"));
+
+        enqueue();
+        assertEquals(Collections.singletonList(1), mExecutor.batchSizes);
+
+        mScheduler.advanceTimeBy(WINDOW_MS - 1, TimeUnit.MILLISECONDS);
+        assertEquals(1, mExecutor.batchSizes.size());
+
+        mScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        assertEquals(2, (int) mExecutor.batchSizes.get(1));
+
+        // Results go back to the request of the same index
+        assertEquals("dog", burst.get(0).getOnNextEvents().get(0).getLabelDescription(0));
+        assertEquals("bird", burst.get(1).getOnNextEvents().get(0).getLabelDescription(0));
+    }
+
+    @Test
+    public void fullBatchIsSentWithoutWaiting() throws Exception {
+        mExecutor.answers.add(new Answer() {
+            @Override
+            public List<VisionResult> answer(List<AnnotateRequestContent.Entry> entries) throws IOException {
+                for (int i = 0; i < 3; i++) {
+                    enqueue();
+                }
+                return results("first").answer(entries);
+            }
+        });
+        mExecutor.answers.add(results("a", "b", "c"));
+
+        enqueue();
+
+        assertEquals(2, mExecutor.batchSizes.size());
+        assertEquals(3, (int) mExecutor.batchSizes.get(1));
+    }
+
+    @Test
+    public void missingResultsFailTheirRequests() throws Exception {
+        final List<TestSubscriber<VisionResult>> burst = new ArrayList<>();
+        mExecutor.answers.add(new Answer() {
+            @Override
+            public List<VisionResult> answer(List<AnnotateRequestContent.Entry> entries) throws IOException {
+                burst.add(enqueue());
+                burst.add(enqueue());
+                return results("first").answer(entries);
+            }
+        });
+        mExecutor.answers.add(results("dog"));
+
+        enqueue();
+        mScheduler.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+
+        burst.get(0).assertNoErrors();
+        assertEquals(1, burst.get(1).getOnErrorEvents().size());
+        assertTrue(burst.get(1).getOnErrorEvents().get(0) instanceof IOException);
+    }
+
+    @Test
+    public void errorsAreDeliveredToEveryRequest() throws Exception {
+        final List<TestSubscriber<VisionResult>> burst = new ArrayList<>();
+        mExecutor.answers.add(new Answer() {
+            @Override
+            public List<VisionResult> answer(List<AnnotateRequestContent.Entry> entries) throws IOException {
+                burst.add(enqueue(new FailingSource()));
+                burst.add(enqueue());
+                throw new IOException("connection reset");
+            }
+        });
+        mExecutor.answers.add(new Answer() {
+            @Override
+            public List<VisionResult> answer(List<AnnotateRequestContent.Entry> entries) throws IOException {
+                // Ex. a source failing to write its image
+                entries.get(0).source.writeTo(new ByteArrayOutputStream());
+                return results("unreachable").answer(entries);
+            }
+        });
+
+        TestSubscriber<VisionResult> first = enqueue();
+        mScheduler.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+
+        assertEquals("connection reset", first.getOnErrorEvents().get(0).getMessage());
+        for (TestSubscriber<VisionResult> subscriber : burst) {
+            assertTrue(subscriber.getOnErrorEvents().get(0) instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void unsubscribedRequestsAreNotSent() throws Exception {
+        final List<TestSubscriber<VisionResult>> burst = new ArrayList<>();
+        mExecutor.answers.add(new Answer() {
+            @Override
+            public List<VisionResult> answer(List<AnnotateRequestContent.Entry> entries) throws IOException {
+                burst.add(enqueue());
+                burst.add(enqueue());
+                return results("first").answer(entries);
+            }
+        });
+        mExecutor.answers.add(results("bird"));
+
+        enqueue();
+        burst.get(0).unsubscribe();
+        mScheduler.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+
+        assertEquals(1, (int) mExecutor.batchSizes.get(1));
+        assertEquals("bird", burst.get(1).getOnNextEvents().get(0).getLabelDescription(0));
+    }
+
+    private TestSubscriber<VisionResult> enqueue() {
+        return enqueue(new BytesJpegSource(new byte[]{1, 2, 3}));
+    }
+
+    private TestSubscriber<VisionResult> enqueue(JpegSource source) {
+        TestSubscriber<VisionResult> subscriber = new TestSubscriber<>();
+        mDispatcher.enqueue(source, FEATURES).subscribe(subscriber);
+        return subscriber;
+    }
+
+    private static Answer results(final String... labels) {
+        return new Answer() {
+            @Override
+            public List<VisionResult> answer(List<AnnotateRequestContent.Entry> entries) {
+                List<VisionResult> results = new ArrayList<>();
+                for (String label : labels) {
+                    results.add(new VisionResult.Builder().addLabel(label, 0.9f).build());
+                }
+                return results;
+            }
+        };
+    }
+
+    private interface Answer {
+        List<VisionResult> answer(List<AnnotateRequestContent.Entry> entries) throws IOException;
+    }
+
+    /**
+     * Answers each batch with the next scripted answer
+     */
+    private static class ScriptedExecutor implements VisionBatchDispatcher.BatchExecutor {
+        final Queue<Answer> answers = new ArrayDeque<>();
+        final List<Integer> batchSizes = new ArrayList<>();
+
+        @Override
+        public List<VisionResult> execute(List<AnnotateRequestContent.Entry> entries) throws IOException {
+            batchSizes.add(entries.size());
+            return answers.remove().answer(entries);
+        }
+    }
+
+    private static class FailingSource extends BytesJpegSource {
+        FailingSource() {
+            super(new byte[0]);
+        }
+
+        @Override
+        public void writeTo(OutputStream out) {
+            throw new IllegalStateException("Bitmap was recycled");
+        }
+    }
+}
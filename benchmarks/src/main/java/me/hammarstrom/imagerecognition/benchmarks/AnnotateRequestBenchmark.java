@@ -0,0 +1,120 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.benchmarks;
+
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.JsonGenerator;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.vision.v1.model.AnnotateImageRequest;
+import com.google.api.services.vision.v1.model.BatchAnnotateImagesRequest;
+import com.google.api.services.vision.v1.model.Feature;
+import com.google.api.services.vision.v1.model.Image;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import me.hammarstrom.imagerecognition.core.AnnotateRequestWriter;
+
+/**
+ * Building and serializing an images:annotate request for a JPEG,
+ * with the streaming writer the app uses and with the Vision API
+ * model classes and Gson.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnnotateRequestBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String[] FEATURE_TYPES = {"LABEL_DETECTION", "FACE_DETECTION"};
+    private static final int[] MAX_RESULTS = {5, 10};
+
+    @Param({"640x480", "1100x825"})
+    public String size;
+
+    private final CountingOutputStream mOut = new CountingOutputStream();
+    private final JsonFactory mJsonFactory = GsonFactory.getDefaultInstance();
+    private byte[] mJpeg;
+    private List<Feature> mFeatures;
+
+    @Setup
+    public void setUp() {
+        int[] wh = BenchmarkImages.parseSize(size);
+        mJpeg = BenchmarkImages.jpeg(wh[0], wh[1], 90);
+
+        mFeatures = new ArrayList<>();
+        for (int i = 0; i < FEATURE_TYPES.length; i++) {
+            Feature feature = new Feature();
+            feature.setType(FEATURE_TYPES[i]);
+            feature.setMaxResults(MAX_RESULTS[i]);
+            mFeatures.add(feature);
+        }
+    }
+
+    @Benchmark
+    public long streaming() throws IOException {
+        mOut.reset();
+        AnnotateRequestWriter.JpegWriter jpeg = new AnnotateRequestWriter.JpegWriter() {
+            @Override
+            public void writeJpeg(OutputStream out) throws IOException {
+                out.write(mJpeg);
+            }
+        };
+        AnnotateRequestWriter.write(mOut, Arrays.asList(new AnnotateRequestWriter.Entry(jpeg, FEATURE_TYPES, MAX_RESULTS)));
+        return mOut.getCount();
+    }
+
+    @Benchmark
+    public long model() throws IOException {
+        mOut.reset();
+
+        Image image = new Image();
+        image.encodeContent(mJpeg);
+        AnnotateImageRequest request = new AnnotateImageRequest();
+        request.setImage(image);
+        request.setFeatures(mFeatures);
+        BatchAnnotateImagesRequest batch = new BatchAnnotateImagesRequest();
+        batch.setRequests(Collections.singletonList(request));
+
+        // Same as JsonHttpContent.writeTo
+        JsonGenerator generator = mJsonFactory.createJsonGenerator(mOut, UTF_8);
+        generator.serialize(batch);
+        generator.flush();
+        return mOut.getCount();
+    }
+}
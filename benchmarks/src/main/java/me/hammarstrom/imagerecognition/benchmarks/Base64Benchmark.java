@@ -0,0 +1,81 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import me.hammarstrom.imagerecognition.core.Base64OutputStream;
+
+/**
+ * Base64 encoding of JPEG sized data, written in one go like a pass
+ * through JPEG and in 8 KB chunks like a JPEG being compressed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Base64Benchmark {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    @Param({"65536", "262144", "786432"})
+    public int bytes;
+
+    private final CountingOutputStream mOut = new CountingOutputStream();
+    private byte[] mData;
+
+    @Setup
+    public void setUp() {
+        mData = new byte[bytes];
+        new Random(bytes).nextBytes(mData);
+    }
+
+    @Benchmark
+    public long whole() throws IOException {
+        mOut.reset();
+        Base64OutputStream base64 = new Base64OutputStream(mOut);
+        base64.write(mData);
+        base64.finish();
+        return mOut.getCount();
+    }
+
+    @Benchmark
+    public long chunked() throws IOException {
+        mOut.reset();
+        Base64OutputStream base64 = new Base64OutputStream(mOut);
+        for (int off = 0; off < mData.length; off += CHUNK_SIZE) {
+            base64.write(mData, off, Math.min(CHUNK_SIZE, mData.length - off));
+        }
+        base64.finish();
+        return mOut.getCount();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import me.hammarstrom.imagerecognition.core.JpegEncoder;
+
+/**
+ * Synthetic images for the benchmarks. Smooth gradients with a bit of
+ * noise, so they compress roughly like camera pictures do, and always
+ * the same for a given size so runs can be compared.
+ */
+final class BenchmarkImages {
+
+    private BenchmarkImages() {
+    }
+
+    /**
+     * @param width The width
+     * @param height The height
+     * @return ARGB pixels
+     */
+    static int[] argb(int width, int height) {
+        Random random = new Random(width * 31L + height);
+        int[] argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(16);
+                int r = (x * 255 / width + noise) & 0xFF;
+                int g = (y * 255 / height + noise) & 0xFF;
+                int b = ((x ^ y) & 0x3F) + noise + 96;
+                argb[y * width + x] = 0xFF000000 | r << 16 | g << 8 | b;
+            }
+        }
+        return argb;
+    }
+
+    /**
+     * @param width The width
+     * @param height The height
+     * @param quality The JPEG quality
+     * @return a JPEG of the synthetic image
+     */
+    static byte[] jpeg(int width, int height, int quality) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            new JpegEncoder().encode(argb(width, height), width, height, quality, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Parse a size like "1600x1200"
+     *
+     * @param size The size
+     * @return width and height
+     */
+    static int[] parseSize(String size) {
+        int x = size.indexOf('x');
+        return new int[]{Integer.parseInt(size.substring(0, x)), Integer.parseInt(size.substring(x + 1))};
+    }
+}
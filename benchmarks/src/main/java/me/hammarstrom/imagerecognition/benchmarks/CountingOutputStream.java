@@ -0,0 +1,45 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.benchmarks;
+
+import java.io.OutputStream;
+
+/**
+ * Discards everything written to it, counting the bytes. Stands in for
+ * the HTTP output stream, so only the encoding is measured.
+ */
+final class CountingOutputStream extends OutputStream {
+
+    private long mCount;
+
+    @Override
+    public void write(int b) {
+        mCount++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        mCount += len;
+    }
+
+    long getCount() {
+        return mCount;
+    }
+
+    void reset() {
+        mCount = 0;
+    }
+}
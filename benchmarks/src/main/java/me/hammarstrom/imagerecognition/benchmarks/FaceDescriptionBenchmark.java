@@ -0,0 +1,71 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import me.hammarstrom.imagerecognition.core.FaceDescriptionBuilder;
+import me.hammarstrom.imagerecognition.core.VisionResult;
+
+/**
+ * Building the text spoken about the faces of a result, as FaceFoundHelper does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FaceDescriptionBenchmark {
+
+    private static final float[] VERTICES = {0, 0, 100, 0, 100, 100, 0, 100};
+
+    @Param({"1", "5"})
+    public int faces;
+
+    private final FaceDescriptionBuilder mBuilder = new FaceDescriptionBuilder(
+            "... seems to be %s", "happy", "sad", "angry", "surprised", "... has no detected expression.");
+    private VisionResult mResult;
+
+    @Setup
+    public void setUp() {
+        VisionResult.Builder builder = new VisionResult.Builder();
+        for (int i = 0; i < faces; i++) {
+            // Every other face without any likely expression
+            byte joy = i % 2 == 0 ? VisionResult.LIKELIHOOD_VERY_LIKELY : VisionResult.LIKELIHOOD_UNLIKELY;
+            builder.addFace(VERTICES, joy, VisionResult.LIKELIHOOD_VERY_UNLIKELY,
+                    VisionResult.LIKELIHOOD_VERY_UNLIKELY, VisionResult.LIKELIHOOD_UNLIKELY);
+        }
+        mResult = builder.build();
+    }
+
+    @Benchmark
+    public String build() {
+        return mBuilder.build(mResult);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import me.hammarstrom.imagerecognition.core.JpegEncoder;
+
+/**
+ * JPEG encoding at the sizes and qualities used by the app: live
+ * preview frames at 80 and captures at 90, sent as base64.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JpegEncodeBenchmark {
+
+    @Param({"640x480", "1100x825"})
+    public String size;
+
+    @Param({"50", "80", "90"})
+    public int quality;
+
+    private final JpegEncoder mEncoder = new JpegEncoder();
+    private final CountingOutputStream mOut = new CountingOutputStream();
+    private int[] mArgb;
+    private int mWidth;
+    private int mHeight;
+
+    @Setup
+    public void setUp() {
+        int[] wh = BenchmarkImages.parseSize(size);
+        mWidth = wh[0];
+        mHeight = wh[1];
+        mArgb = BenchmarkImages.argb(mWidth, mHeight);
+    }
+
+    @Benchmark
+    public long encode() throws IOException {
+        mOut.reset();
+        mEncoder.encode(mArgb, mWidth, mHeight, quality, mOut);
+        return mOut.getCount();
+    }
+
+    @Benchmark
+    public long encodeBase64() throws IOException {
+        mOut.reset();
+        mEncoder.encodeBase64(mArgb, mWidth, mHeight, quality, mOut);
+        return mOut.getCount();
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.benchmarks;
+
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.vision.v1.model.BatchAnnotateImagesResponse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import me.hammarstrom.imagerecognition.core.VisionResponseParser;
+import me.hammarstrom.imagerecognition.core.VisionResult;
+
+/**
+ * Parsing a recorded images:annotate response, five labels and two
+ * faces with all their landmarks, into the Vision API model built by
+ * reflection, and streaming only the used fields into {@link VisionResult}s.
+ * Compare the allocation rate of the two from the GC profiler.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseParseBenchmark {
+
+    // Also served by the mock server of the load test
+    static final String RECORDED_RESPONSE = "/annotate-response.json";
+
+    private final JsonFactory mJsonFactory = GsonFactory.getDefaultInstance();
+    private final VisionResponseParser mParser = new VisionResponseParser();
+    private byte[] mJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        mJson = readResource(RECORDED_RESPONSE);
+    }
+
+    @Benchmark
+    public BatchAnnotateImagesResponse model() throws IOException {
+        return mJsonFactory.createJsonParser(new ByteArrayInputStream(mJson))
+                .parseAndClose(BatchAnnotateImagesResponse.class);
+    }
+
+    @Benchmark
+    public List<VisionResult> streaming() throws IOException {
+        return mParser.parse(new ByteArrayInputStream(mJson));
+    }
+
+    static byte[] readResource(String name) throws IOException {
+        InputStream in = ResponseParseBenchmark.class.getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("Missing resource " + name);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.benchmarks;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH JSON result files, ex. from the last release and from
+ * the current build, and exits with status 1 if any benchmark lost
+ * throughput or allocates more per operation than allowed.
+ *
+ * <pre>
+ * ResultComparator baseline.json results.json [max throughput loss] [max allocation growth]
+ * </pre>
+ *
+ * The limits are fractions, 0.1 by default. Allocation growth below
+ * {@link #ALLOCATION_SLACK_BYTES} bytes per operation is ignored, it is
+ * within the noise of the GC profiler.
+ */
+public class ResultComparator {
+
+    static final double DEFAULT_MAX_THROUGHPUT_LOSS = 0.1;
+    static final double DEFAULT_MAX_ALLOCATION_GROWTH = 0.1;
+    static final double ALLOCATION_SLACK_BYTES = 64;
+
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: ResultComparator baseline.json results.json [max throughput loss] [max allocation growth]");
+            System.exit(2);
+        }
+
+        double maxThroughputLoss = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_MAX_THROUGHPUT_LOSS;
+        double maxAllocationGrowth = args.length > 3 ? Double.parseDouble(args[3]) : DEFAULT_MAX_ALLOCATION_GROWTH;
+
+        Map<String, Result> baseline = read(new File(args[0]));
+        Map<String, Result> current = read(new File(args[1]));
+
+        int regressions = 0;
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result before = baseline.get(entry.getKey());
+            Result after = entry.getValue();
+            if (before == null) {
+                System.out.println(String.format(Locale.US, "  new   %s %.1f %s", entry.getKey(), after.score, after.unit));
+                continue;
+            }
+
+            boolean slower = after.score < before.score * (1 - maxThroughputLoss);
+            boolean allocates = after.allocation > before.allocation * (1 + maxAllocationGrowth)
+                    && after.allocation - before.allocation > ALLOCATION_SLACK_BYTES;
+            if (slower || allocates) {
+                regressions++;
+            }
+
+            System.out.println(String.format(Locale.US, "%s %s %.1f -> %.1f %s (%+.1f%%), %.0f -> %.0f B/op",
+                    slower || allocates ? "  FAIL " : "  ok   ", entry.getKey(),
+                    before.score, after.score, after.unit, (after.score / before.score - 1) * 100,
+                    before.allocation, after.allocation));
+        }
+
+        if (regressions > 0) {
+            System.out.println(regressions + " benchmark(s) regressed");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Read a JMH JSON result file
+     *
+     * @param file The file
+     * @return results by benchmark and parameters, sorted
+     * @throws IOException
+     */
+    static Map<String, Result> read(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            JsonArray runs = new JsonParser().parse(reader).getAsJsonArray();
+            Map<String, Result> results = new TreeMap<>();
+
+            for (JsonElement element : runs) {
+                JsonObject run = element.getAsJsonObject();
+                JsonObject primary = run.getAsJsonObject("primaryMetric");
+
+                Result result = new Result();
+                result.score = primary.get("score").getAsDouble();
+                result.unit = primary.get("scoreUnit").getAsString();
+
+                JsonObject secondary = run.getAsJsonObject("secondaryMetrics");
+                if (secondary != null) {
+                    for (Map.Entry<String, JsonElement> metric : secondary.entrySet()) {
+                        // The GC profiler prefixes its metrics with a middle dot
+                        if (metric.getKey().endsWith(ALLOCATION_METRIC)) {
+                            result.allocation = metric.getValue().getAsJsonObject().get("score").getAsDouble();
+                        }
+                    }
+                }
+
+                results.put(key(run), result);
+            }
+            return results;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static String key(JsonObject run) {
+        String key = run.get("benchmark").getAsString();
+        JsonObject params = run.getAsJsonObject("params");
+        if (params == null) {
+            return key;
+        }
+
+        Map<String, String> sorted = new TreeMap<>();
+        for (Map.Entry<String, JsonElement> param : params.entrySet()) {
+            sorted.put(param.getKey(), param.getValue().getAsString());
+        }
+        return key + sorted;
+    }
+
+    static class Result {
+        double score;
+        String unit;
+        double allocation;
+    }
+}
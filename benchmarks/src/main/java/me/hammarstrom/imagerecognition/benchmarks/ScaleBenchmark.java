@@ -0,0 +1,84 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import me.hammarstrom.imagerecognition.core.ImageSize;
+import me.hammarstrom.imagerecognition.core.Resampler;
+
+/**
+ * Scaling a capture down to the size sent to the Vision API,
+ * same sizes as ImageHelper.scaleBitmapDown.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScaleBenchmark {
+
+    private static final int VISION_MAX_DIMENSION = 1100;
+
+    // Camera picture sizes, the second after in-sample-size decoding of an 8 MP picture
+    @Param({"1600x1200", "1632x1224", "3264x2448"})
+    public String size;
+
+    private int[] mSrc;
+    private int mSrcWidth;
+    private int mSrcHeight;
+    private int[] mDst;
+    private int mDstWidth;
+    private int mDstHeight;
+
+    @Setup
+    public void setUp() {
+        int[] wh = BenchmarkImages.parseSize(size);
+        mSrcWidth = wh[0];
+        mSrcHeight = wh[1];
+        mSrc = BenchmarkImages.argb(mSrcWidth, mSrcHeight);
+
+        ImageSize scaled = new ImageSize(mSrcWidth, mSrcHeight).scaleToMax(VISION_MAX_DIMENSION);
+        mDstWidth = scaled.getWidth();
+        mDstHeight = scaled.getHeight();
+        mDst = new int[mDstWidth * mDstHeight];
+    }
+
+    @Benchmark
+    public int[] area() {
+        Resampler.downscaleArea(mSrc, mSrcWidth, mSrcHeight, mDst, mDstWidth, mDstHeight);
+        return mDst;
+    }
+
+    @Benchmark
+    public int[] bilinear() {
+        Resampler.scaleBilinear(mSrc, mSrcWidth, mSrcHeight, mDst, mDstWidth, mDstHeight);
+        return mDst;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Writes the JSON of an images:annotate request by hand, with each image
+ * written as JPEG and base64 encoded straight into the output stream.
+ * Neither the JPEG nor its base64 string is ever held in memory.
+ */
+public final class AnnotateRequestWriter {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte[] REQUESTS_START = "{\"requests\":[".getBytes(UTF_8);
+    private static final byte[] REQUESTS_END = "]}".getBytes(UTF_8);
+    private static final byte[] IMAGE_START = "{\"image\":{\"content\":\"".getBytes(UTF_8);
+    private static final byte[] IMAGE_END = "\"},\"features\":[".getBytes(UTF_8);
+    private static final byte[] FEATURES_END = "]}".getBytes(UTF_8);
+    private static final byte[] SEPARATOR = ",".getBytes(UTF_8);
+
+    /**
+     * An image that can write itself as JPEG
+     */
+    public interface JpegWriter {
+
+        /**
+         * Write the image as JPEG. May be called more than once if the request is retried.
+         *
+         * @param out stream to write the JPEG to
+         * @throws IOException
+         */
+        void writeJpeg(OutputStream out) throws IOException;
+    }
+
+    private AnnotateRequestWriter() {
+    }
+
+    /**
+     * Write a request
+     *
+     * @param out The stream to write to, flushed but not closed
+     * @param entries The images and their features
+     * @throws IOException
+     */
+    public static void write(OutputStream out, List<Entry> entries) throws IOException {
+        out.write(REQUESTS_START);
+
+        for (int i = 0; i < entries.size(); i++) {
+            if (i > 0) {
+                out.write(SEPARATOR);
+            }
+            writeEntry(out, entries.get(i));
+        }
+
+        out.write(REQUESTS_END);
+        out.flush();
+    }
+
+    private static void writeEntry(OutputStream out, Entry entry) throws IOException {
+        out.write(IMAGE_START);
+
+        // Finishing the encoder only writes the last base64 block, the request continues
+        Base64OutputStream base64 = new Base64OutputStream(out);
+        entry.jpeg.writeJpeg(base64);
+        base64.finish();
+
+        out.write(IMAGE_END);
+        out.write(entry.featuresJson);
+        out.write(FEATURES_END);
+    }
+
+    /**
+     * One image of the request and the features to detect in it.
+     */
+    public static final class Entry {
+        final JpegWriter jpeg;
+        final byte[] featuresJson;
+
+        /**
+         * @param jpeg The image
+         * @param featureTypes The features to detect, ex. "LABEL_DETECTION"
+         * @param maxResults The max number of results of each feature, 0 to leave it to the API
+         */
+        public Entry(JpegWriter jpeg, String[] featureTypes, int[] maxResults) {
+            if (featureTypes.length != maxResults.length) {
+                throw new IllegalArgumentException("One max results per feature type expected");
+            }
+            this.jpeg = jpeg;
+
+            // The features are the same every time the request is written
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < featureTypes.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append("{\"type\":\"").append(featureTypes[i]).append('"');
+                if (maxResults[i] > 0) {
+                    sb.append(",\"maxResults\":").append(maxResults[i]);
+                }
+                sb.append('}');
+            }
+            this.featuresJson = sb.toString().getBytes(UTF_8);
+        }
+    }
+}
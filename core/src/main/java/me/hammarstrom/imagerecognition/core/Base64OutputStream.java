@@ -0,0 +1,165 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.core;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Base64 encodes everything written to it into the underlying stream,
+ * without line breaks, using the standard alphabet and padding.
+ *
+ * Encoded bytes are collected in a small buffer and written in chunks.
+ * {@link #finish()} writes the last, padded, block without closing the
+ * underlying stream, ex. when the base64 is a part of a JSON document.
+ */
+public class Base64OutputStream extends FilterOutputStream {
+
+    private static final byte[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+    private static final byte PAD = '=';
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+    private int mBufferCount;
+
+    // Bytes waiting for a complete three byte group
+    private int mPending;
+    private int mPendingCount;
+
+    private boolean mFinished;
+
+    public Base64OutputStream(OutputStream out) {
+        super(out);
+    }
+
+    /**
+     * Get the length of the base64 encoding of some data
+     *
+     * @param length The length of the data
+     * @return number of base64 characters, including padding
+     */
+    public static long encodedLength(long length) {
+        return (length + 2) / 3 * 4;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkNotFinished();
+        mPending = mPending << 8 | (b & 0xFF);
+        if (++mPendingCount == 3) {
+            encodeGroup(mPending);
+            mPending = 0;
+            mPendingCount = 0;
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkNotFinished();
+        int end = off + len;
+
+        // Complete the pending group first
+        while (mPendingCount != 0 && off < end) {
+            write(b[off++]);
+        }
+
+        // Then whole groups straight from the array
+        while (end - off >= 3) {
+            encodeGroup((b[off] & 0xFF) << 16 | (b[off + 1] & 0xFF) << 8 | (b[off + 2] & 0xFF));
+            off += 3;
+        }
+
+        while (off < end) {
+            write(b[off++]);
+        }
+    }
+
+    /**
+     * Write the last block, padded, and flush. The underlying stream is not closed.
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        if (mFinished) {
+            return;
+        }
+        mFinished = true;
+
+        if (mBufferCount + 4 > BUFFER_SIZE) {
+            flushBuffer();
+        }
+        if (mPendingCount == 1) {
+            int group = mPending << 16;
+            mBuffer[mBufferCount++] = ALPHABET[group >>> 18];
+            mBuffer[mBufferCount++] = ALPHABET[group >>> 12 & 0x3F];
+            mBuffer[mBufferCount++] = PAD;
+            mBuffer[mBufferCount++] = PAD;
+        } else if (mPendingCount == 2) {
+            int group = mPending << 8;
+            mBuffer[mBufferCount++] = ALPHABET[group >>> 18];
+            mBuffer[mBufferCount++] = ALPHABET[group >>> 12 & 0x3F];
+            mBuffer[mBufferCount++] = ALPHABET[group >>> 6 & 0x3F];
+            mBuffer[mBufferCount++] = PAD;
+        }
+        mPendingCount = 0;
+
+        flush();
+    }
+
+    /**
+     * Flush the encoded bytes. A pending partial block is kept until more data or {@link #finish()}.
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void encodeGroup(int group) throws IOException {
+        if (mBufferCount + 4 > BUFFER_SIZE) {
+            flushBuffer();
+        }
+        mBuffer[mBufferCount++] = ALPHABET[group >>> 18];
+        mBuffer[mBufferCount++] = ALPHABET[group >>> 12 & 0x3F];
+        mBuffer[mBufferCount++] = ALPHABET[group >>> 6 & 0x3F];
+        mBuffer[mBufferCount++] = ALPHABET[group & 0x3F];
+    }
+
+    private void flushBuffer() throws IOException {
+        if (mBufferCount > 0) {
+            out.write(mBuffer, 0, mBufferCount);
+            mBufferCount = 0;
+        }
+    }
+
+    private void checkNotFinished() throws IOException {
+        if (mFinished) {
+            throw new IOException("Base64 stream already finished");
+        }
+    }
+}
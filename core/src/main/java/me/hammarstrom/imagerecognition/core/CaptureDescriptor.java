@@ -0,0 +1,161 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.core;
+
+/**
+ * Immutable description of how a capture became the image that was
+ * analyzed: its original size, the clockwise rotation making it upright,
+ * the crop offset and the size it was scaled to. Coordinates in a
+ * {@link VisionResult} refer to the scaled image.
+ *
+ * Each request carries its own descriptor through the pipeline, so
+ * results of captures in flight at the same time can't mix up their
+ * image sizes. Crops are centered, as when a capture is cut to another
+ * aspect ratio, so the crop offset is the margin on both sides.
+ */
+public final class CaptureDescriptor {
+
+    private final ImageSize mOriginalSize;
+    private final int mRotationDegrees;
+    private final int mCropLeft;
+    private final int mCropTop;
+    private final ImageSize mScaledSize;
+
+    /**
+     * @param originalSize Size of the capture, as delivered by the camera
+     * @param rotationDegrees Clockwise rotation making the capture upright, 0, 90, 180 or 270
+     * @param cropLeft Margin cropped from the left and right of the upright capture
+     * @param cropTop Margin cropped from the top and bottom of the upright capture
+     * @param scaledSize Size of the image analyzed
+     */
+    public CaptureDescriptor(ImageSize originalSize, int rotationDegrees, int cropLeft, int cropTop,
+                             ImageSize scaledSize) {
+        if (rotationDegrees != 0 && rotationDegrees != 90 && rotationDegrees != 180 && rotationDegrees != 270) {
+            throw new IllegalArgumentException("Rotation has to be 0, 90, 180 or 270 degrees, was " + rotationDegrees);
+        }
+        ImageSize upright = originalSize.rotate(rotationDegrees);
+        if (cropLeft < 0 || cropTop < 0 || cropLeft * 2 >= upright.getWidth() || cropTop * 2 >= upright.getHeight()) {
+            throw new IllegalArgumentException("Crop " + cropLeft + "," + cropTop + " does not fit in " + upright);
+        }
+        if (scaledSize.getWidth() <= 0 || scaledSize.getHeight() <= 0) {
+            throw new IllegalArgumentException("Invalid scaled size " + scaledSize);
+        }
+
+        mOriginalSize = originalSize;
+        mRotationDegrees = rotationDegrees;
+        mCropLeft = cropLeft;
+        mCropTop = cropTop;
+        mScaledSize = scaledSize;
+    }
+
+    /**
+     * Describe a capture that was rotated and scaled, but not cropped
+     */
+    public static CaptureDescriptor uncropped(ImageSize originalSize, int rotationDegrees, ImageSize scaledSize) {
+        return new CaptureDescriptor(originalSize, rotationDegrees, 0, 0, scaledSize);
+    }
+
+    /**
+     * Describe a capture that was analyzed as is
+     */
+    public static CaptureDescriptor unchanged(ImageSize size) {
+        return new CaptureDescriptor(size, 0, 0, 0, size);
+    }
+
+    public ImageSize getOriginalSize() {
+        return mOriginalSize;
+    }
+
+    public int getRotationDegrees() {
+        return mRotationDegrees;
+    }
+
+    public int getCropLeft() {
+        return mCropLeft;
+    }
+
+    public int getCropTop() {
+        return mCropTop;
+    }
+
+    public ImageSize getScaledSize() {
+        return mScaledSize;
+    }
+
+    /**
+     * @return size of the capture after rotation, before cropping
+     */
+    public ImageSize getUprightSize() {
+        return mOriginalSize.rotate(mRotationDegrees);
+    }
+
+    /**
+     * @return size of the part of the upright capture that was scaled
+     */
+    public ImageSize getCropSize() {
+        ImageSize upright = getUprightSize();
+        return new ImageSize(upright.getWidth() - mCropLeft * 2, upright.getHeight() - mCropTop * 2);
+    }
+
+    /**
+     * Map points from the scaled image to the upright capture, in place
+     *
+     * @param points x, y pairs
+     * @param offset Index of the first x
+     * @param pointCount Number of points
+     */
+    public void mapToUpright(float[] points, int offset, int pointCount) {
+        ImageSize crop = getCropSize();
+        float scaleX = crop.getWidth() / (float) mScaledSize.getWidth();
+        float scaleY = crop.getHeight() / (float) mScaledSize.getHeight();
+
+        for (int i = offset; i < offset + pointCount * 2; i += 2) {
+            points[i] = points[i] * scaleX + mCropLeft;
+            points[i + 1] = points[i + 1] * scaleY + mCropTop;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CaptureDescriptor)) {
+            return false;
+        }
+        CaptureDescriptor other = (CaptureDescriptor) o;
+        return mOriginalSize.equals(other.mOriginalSize)
+                && mRotationDegrees == other.mRotationDegrees
+                && mCropLeft == other.mCropLeft
+                && mCropTop == other.mCropTop
+                && mScaledSize.equals(other.mScaledSize);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mOriginalSize.hashCode();
+        result = 31 * result + mRotationDegrees;
+        result = 31 * result + mCropLeft;
+        result = 31 * result + mCropTop;
+        return 31 * result + mScaledSize.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "CaptureDescriptor{" + mOriginalSize + ", rotated " + mRotationDegrees
+                + ", cropped " + mCropLeft + "," + mCropTop + ", scaled to " + mScaledSize + "}";
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.core;
+
+/**
+ * Keeps track of captures analyzed at the same time and decides when
+ * their results are delivered.
+ *
+ * Each capture gets an increasing tag when submitted. At most the max
+ * pending number of captures can be in flight or waiting to be delivered,
+ * further captures are refused until one of them settles. Results are
+ * either delivered in the order the captures were taken, holding back a
+ * result until every earlier capture has a result or failed, or the
+ * latest result wins and results of older captures are dropped.
+ *
+ * The last captures are kept with their state, to show the queue. Not
+ * thread safe, all calls are expected on one thread.
+ *
+ * @param <T> type of the results
+ */
+public final class CaptureQueue<T> {
+
+    public static final int ORDER_IN_ORDER = 0;
+    public static final int ORDER_LATEST_WINS = 1;
+
+    public static final int STATE_IN_FLIGHT = 0;
+    // Has a result, held back for an earlier capture
+    public static final int STATE_WAITING = 1;
+    public static final int STATE_DELIVERED = 2;
+    public static final int STATE_FAILED = 3;
+    // Superseded by the result of a later capture
+    public static final int STATE_DROPPED = 4;
+
+    /**
+     * Listener for results as they are delivered
+     *
+     * @param <T> type of the results
+     */
+    public interface Listener<T> {
+        void onCaptureDelivered(int tag, T result);
+    }
+
+    private final int mMaxPending;
+    private final int mOrder;
+    private final Listener<T> mListener;
+
+    // Ring of the last captures, indexed by tag
+    private final int[] mStates;
+    private final Object[] mResults;
+
+    private int mNextTag;
+    private int mPendingCount;
+    // Oldest capture not yet delivered or failed, when in order
+    private int mNextToDeliver;
+
+    /**
+     * @param maxPending Max number of captures in flight or waiting
+     * @param order {@link #ORDER_IN_ORDER} or {@link #ORDER_LATEST_WINS}
+     * @param listener Listener for the results
+     */
+    public CaptureQueue(int maxPending, int order, Listener<T> listener) {
+        if (maxPending < 1) {
+            throw new IllegalArgumentException("Max pending has to be at least 1, was " + maxPending);
+        }
+        if (order != ORDER_IN_ORDER && order != ORDER_LATEST_WINS) {
+            throw new IllegalArgumentException("Unknown order " + order);
+        }
+
+        mMaxPending = maxPending;
+        mOrder = order;
+        mListener = listener;
+
+        // Room for as many settled captures as pending ones
+        mStates = new int[maxPending * 2];
+        mResults = new Object[maxPending * 2];
+    }
+
+    public int getMaxPending() {
+        return mMaxPending;
+    }
+
+    public int getOrder() {
+        return mOrder;
+    }
+
+    /**
+     * @return number of captures in flight or waiting
+     */
+    public int getPendingCount() {
+        return mPendingCount;
+    }
+
+    /**
+     * @return true if a capture can be submitted now
+     */
+    public boolean canSubmit() {
+        // The oldest capture kept is replaced, it has to be settled
+        return mPendingCount < mMaxPending
+                && (mNextTag < mStates.length || isSettled(mStates[slot(mNextTag)]));
+    }
+
+    /**
+     * Add a capture that is about to be analyzed
+     *
+     * @return the tag of the capture
+     * @throws IllegalStateException if {@link #canSubmit()} is false
+     */
+    public int submit() {
+        if (!canSubmit()) {
+            throw new IllegalStateException("Queue is full, " + mPendingCount + " captures pending");
+        }
+
+        int tag = mNextTag++;
+        mStates[slot(tag)] = STATE_IN_FLIGHT;
+        mResults[slot(tag)] = null;
+        mPendingCount++;
+        return tag;
+    }
+
+    /**
+     * Set the result of a capture. Results of unknown or already settled
+     * captures are ignored.
+     *
+     * @param tag The tag of the capture
+     * @param result The result
+     */
+    public void complete(int tag, T result) {
+        if (getState(tag) != STATE_IN_FLIGHT) {
+            return;
+        }
+
+        if (mOrder == ORDER_IN_ORDER) {
+            mStates[slot(tag)] = STATE_WAITING;
+            mResults[slot(tag)] = result;
+            deliverInOrder();
+            return;
+        }
+
+        // Older captures still in flight would only replace a newer result
+        for (int t = Math.max(0, mNextTag - mStates.length); t < tag; t++) {
+            if (mStates[slot(t)] == STATE_IN_FLIGHT) {
+                settle(t, STATE_DROPPED);
+            }
+        }
+        settle(tag, STATE_DELIVERED);
+        mListener.onCaptureDelivered(tag, result);
+    }
+
+    /**
+     * Mark a capture as failed, it will not get a result.
+     * Unknown or already settled captures are ignored.
+     *
+     * @param tag The tag of the capture
+     */
+    public void fail(int tag) {
+        if (getState(tag) != STATE_IN_FLIGHT) {
+            return;
+        }
+
+        settle(tag, STATE_FAILED);
+        if (mOrder == ORDER_IN_ORDER) {
+            deliverInOrder();
+        }
+    }
+
+    /**
+     * @param tag The tag of a capture
+     * @return state of the capture, -1 if it is not kept
+     */
+    public int getState(int tag) {
+        if (tag < 0 || tag >= mNextTag || tag < mNextTag - mStates.length) {
+            return -1;
+        }
+        return mStates[slot(tag)];
+    }
+
+    /**
+     * @return number of captures kept, the latest ones
+     */
+    public int getCaptureCount() {
+        return Math.min(mNextTag, mStates.length);
+    }
+
+    /**
+     * @return max number of captures kept
+     */
+    public int getCaptureCapacity() {
+        return mStates.length;
+    }
+
+    /**
+     * @param index Index of a kept capture, 0 is the oldest
+     * @return the tag of the capture
+     */
+    public int getCaptureTag(int index) {
+        return mNextTag - getCaptureCount() + index;
+    }
+
+    private void deliverInOrder() {
+        while (mNextToDeliver < mNextTag) {
+            int tag = mNextToDeliver;
+            int state = mStates[slot(tag)];
+            if (state == STATE_IN_FLIGHT) {
+                return;
+            }
+
+            mNextToDeliver++;
+            if (state == STATE_WAITING) {
+                @SuppressWarnings("unchecked")
+                T result = (T) mResults[slot(tag)];
+                settle(tag, STATE_DELIVERED);
+                mListener.onCaptureDelivered(tag, result);
+            }
+        }
+    }
+
+    private void settle(int tag, int state) {
+        mStates[slot(tag)] = state;
+        mResults[slot(tag)] = null;
+        mPendingCount--;
+    }
+
+    private int slot(int tag) {
+        return tag % mStates.length;
+    }
+
+    private static boolean isSettled(int state) {
+        return state != STATE_IN_FLIGHT && state != STATE_WAITING;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.core;
+
+/**
+ * Builds the text spoken about the faces of a {@link VisionResult}.
+ *
+ * The expression phrases are formatted once, when the builder is created,
+ * so building a description only appends strings.
+ */
+public class FaceDescriptionBuilder {
+
+    private final String[] mExpressionPhrases;
+    private final String mNoExpressionPhrase;
+
+    /**
+     * @param expressionFormat Format of a phrase about an expression, ex. "... seems to be %s"
+     * @param joy The joy expression, ex. "happy"
+     * @param sorrow The sorrow expression
+     * @param anger The anger expression
+     * @param surprise The surprise expression
+     * @param noExpressionPhrase Phrase about a face without any likely expression
+     */
+    public FaceDescriptionBuilder(String expressionFormat, String joy, String sorrow, String anger,
+                                  String surprise, String noExpressionPhrase) {
+        mExpressionPhrases = new String[VisionResult.EXPRESSION_COUNT];
+        mExpressionPhrases[VisionResult.EXPRESSION_JOY] = String.format(expressionFormat, joy);
+        mExpressionPhrases[VisionResult.EXPRESSION_SORROW] = String.format(expressionFormat, sorrow);
+        mExpressionPhrases[VisionResult.EXPRESSION_ANGER] = String.format(expressionFormat, anger);
+        mExpressionPhrases[VisionResult.EXPRESSION_SURPRISE] = String.format(expressionFormat, surprise);
+        mNoExpressionPhrase = noExpressionPhrase;
+    }
+
+    /**
+     * Describe the faces of a result, ex. "I think the image contains 2 faces... Face 1... seems to be happy"
+     *
+     * @param result The result, with at least one face
+     * @return description
+     */
+    public String build(VisionResult result) {
+        int faceCount = result.getFaceCount();
+        StringBuilder sb = new StringBuilder(64 + faceCount * 48);
+
+        sb.append("I think the image contains ");
+        if (faceCount > 1) {
+            sb.append(faceCount).append(" faces");
+        } else {
+            sb.append(" 1 face.");
+        }
+
+        for (int i = 0; i < faceCount; i++) {
+            sb.append("... Face ").append(i + 1);
+            appendFace(sb, result, i);
+        }
+
+        return sb.toString();
+    }
+
+    private void appendFace(StringBuilder sb, VisionResult result, int face) {
+        boolean foundExpression = false;
+
+        // Joy, sorrow, anger and surprise, in that order
+        for (int expression = 0; expression < VisionResult.EXPRESSION_COUNT; expression++) {
+            if (VisionResult.isLikely(result.getLikelihood(face, expression))) {
+                sb.append(mExpressionPhrases[expression]);
+                foundExpression = true;
+            }
+        }
+
+        if (!foundExpression) {
+            sb.append(mNoExpressionPhrase);
+        }
+    }
+}
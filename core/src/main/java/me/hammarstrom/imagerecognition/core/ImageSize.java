@@ -0,0 +1,110 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.core;
+
+/**
+ * Immutable width and height of an image, with the size math
+ * used when images are prepared for analysis.
+ */
+public final class ImageSize {
+
+    private final int mWidth;
+    private final int mHeight;
+
+    public ImageSize(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Get the size with the longest side set to max dimension, keeping the aspect ratio
+     *
+     * @param maxDimension The maximum dimension (height or width)
+     * @return the scaled size
+     */
+    public ImageSize scaleToMax(int maxDimension) {
+        int resizedWidth = maxDimension;
+        int resizedHeight = maxDimension;
+
+        if (mHeight > mWidth) {
+            resizedWidth = (int) (resizedHeight * (float) mWidth / (float) mHeight);
+        } else if (mWidth > mHeight) {
+            resizedHeight = (int) (resizedWidth * (float) mHeight / (float) mWidth);
+        }
+
+        return new ImageSize(resizedWidth, resizedHeight);
+    }
+
+    /**
+     * Get the size after a rotation
+     *
+     * @param degrees 0, 90, 180 or 270
+     * @return the rotated size
+     */
+    public ImageSize rotate(int degrees) {
+        return degrees % 180 == 0 ? this : new ImageSize(mHeight, mWidth);
+    }
+
+    /**
+     * Calculate the largest power of two sample size that
+     * keeps the image larger than or equal to max dimension
+     *
+     * @param width The image width
+     * @param height The image height
+     * @param maxDimension The maximum dimension (height or width)
+     * @return sample size, 1 if image already is smaller than max dimension
+     */
+    public static int calculateInSampleSize(int width, int height, int maxDimension) {
+        int largest = Math.max(width, height);
+        int inSampleSize = 1;
+
+        while (largest / (inSampleSize * 2) >= maxDimension) {
+            inSampleSize *= 2;
+        }
+
+        return inSampleSize;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ImageSize)) {
+            return false;
+        }
+        ImageSize other = (ImageSize) o;
+        return mWidth == other.mWidth && mHeight == other.mHeight;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * mWidth + mHeight;
+    }
+
+    @Override
+    public String toString() {
+        return mWidth + "x" + mHeight;
+    }
+}
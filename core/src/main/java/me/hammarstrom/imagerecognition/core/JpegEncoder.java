@@ -0,0 +1,532 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Baseline JPEG encoder for ARGB rasters.
+ *
+ * Writes a JFIF with 4:2:0 chroma subsampling, the standard quantization
+ * tables scaled by quality the same way as libjpeg, and the standard
+ * Huffman tables. The image is encoded one 16x16 block at a time straight
+ * into the output stream, ex. a {@link Base64OutputStream}, so the JPEG is
+ * never held in memory.
+ *
+ * An encoder keeps its tables and block buffers between images, and is
+ * not thread safe.
+ */
+public class JpegEncoder {
+
+    private static final int[] ZIGZAG = {
+            0, 1, 8, 16, 9, 2, 3, 10,
+            17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34,
+            27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36,
+            29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46,
+            53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    private static final int[] LUMINANCE_QUANTIZATION = {
+            16, 11, 10, 16, 24, 40, 51, 61,
+            12, 12, 14, 19, 26, 58, 60, 55,
+            14, 13, 16, 24, 40, 57, 69, 56,
+            14, 17, 22, 29, 51, 87, 80, 62,
+            18, 22, 37, 56, 68, 109, 103, 77,
+            24, 35, 55, 64, 81, 104, 113, 92,
+            49, 64, 78, 87, 103, 121, 120, 101,
+            72, 92, 95, 98, 112, 100, 103, 99
+    };
+
+    private static final int[] CHROMINANCE_QUANTIZATION = {
+            17, 18, 24, 47, 99, 99, 99, 99,
+            18, 21, 26, 66, 99, 99, 99, 99,
+            24, 26, 56, 99, 99, 99, 99, 99,
+            47, 66, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99
+    };
+
+    // Standard Huffman tables: number of codes of each length 1-16, then the symbols
+    private static final int[] DC_LUMINANCE_BITS = {0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0};
+    private static final int[] DC_LUMINANCE_VALUES = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11};
+    private static final int[] DC_CHROMINANCE_BITS = {0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0};
+    private static final int[] DC_CHROMINANCE_VALUES = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11};
+    private static final int[] AC_LUMINANCE_BITS = {0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 0x7d};
+    private static final int[] AC_LUMINANCE_VALUES = {
+            0x01, 0x02, 0x03, 0x00, 0x04, 0x11, 0x05, 0x12, 0x21, 0x31, 0x41, 0x06, 0x13, 0x51, 0x61, 0x07,
+            0x22, 0x71, 0x14, 0x32, 0x81, 0x91, 0xa1, 0x08, 0x23, 0x42, 0xb1, 0xc1, 0x15, 0x52, 0xd1, 0xf0,
+            0x24, 0x33, 0x62, 0x72, 0x82, 0x09, 0x0a, 0x16, 0x17, 0x18, 0x19, 0x1a, 0x25, 0x26, 0x27, 0x28,
+            0x29, 0x2a, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49,
+            0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69,
+            0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89,
+            0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7,
+            0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5,
+            0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda, 0xe1, 0xe2,
+            0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf1, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+            0xf9, 0xfa
+    };
+    private static final int[] AC_CHROMINANCE_BITS = {0, 2, 1, 2, 4, 4, 3, 4, 7, 5, 4, 4, 0, 1, 2, 0x77};
+    private static final int[] AC_CHROMINANCE_VALUES = {
+            0x00, 0x01, 0x02, 0x03, 0x11, 0x04, 0x05, 0x21, 0x31, 0x06, 0x12, 0x41, 0x51, 0x07, 0x61, 0x71,
+            0x13, 0x22, 0x32, 0x81, 0x08, 0x14, 0x42, 0x91, 0xa1, 0xb1, 0xc1, 0x09, 0x23, 0x33, 0x52, 0xf0,
+            0x15, 0x62, 0x72, 0xd1, 0x0a, 0x16, 0x24, 0x34, 0xe1, 0x25, 0xf1, 0x17, 0x18, 0x19, 0x1a, 0x26,
+            0x27, 0x28, 0x29, 0x2a, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48,
+            0x49, 0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68,
+            0x69, 0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x82, 0x83, 0x84, 0x85, 0x86, 0x87,
+            0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5,
+            0xa6, 0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3,
+            0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda,
+            0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+            0xf9, 0xfa
+    };
+
+    // Scale factors of the AAN forward DCT
+    private static final float[] AAN_SCALE = {
+            1.0f, 1.387039845f, 1.306562965f, 1.175875602f, 1.0f, 0.785694958f, 0.541196100f, 0.275899379f
+    };
+
+    private static final int[] DC_LUMINANCE_CODES = huffmanCodes(DC_LUMINANCE_BITS, DC_LUMINANCE_VALUES);
+    private static final int[] DC_LUMINANCE_SIZES = huffmanSizes(DC_LUMINANCE_BITS, DC_LUMINANCE_VALUES);
+    private static final int[] DC_CHROMINANCE_CODES = huffmanCodes(DC_CHROMINANCE_BITS, DC_CHROMINANCE_VALUES);
+    private static final int[] DC_CHROMINANCE_SIZES = huffmanSizes(DC_CHROMINANCE_BITS, DC_CHROMINANCE_VALUES);
+    private static final int[] AC_LUMINANCE_CODES = huffmanCodes(AC_LUMINANCE_BITS, AC_LUMINANCE_VALUES);
+    private static final int[] AC_LUMINANCE_SIZES = huffmanSizes(AC_LUMINANCE_BITS, AC_LUMINANCE_VALUES);
+    private static final int[] AC_CHROMINANCE_CODES = huffmanCodes(AC_CHROMINANCE_BITS, AC_CHROMINANCE_VALUES);
+    private static final int[] AC_CHROMINANCE_SIZES = huffmanSizes(AC_CHROMINANCE_BITS, AC_CHROMINANCE_VALUES);
+
+    private int mQuality = -1;
+    private final int[] mLuminanceTable = new int[64];
+    private final int[] mChrominanceTable = new int[64];
+    private final float[] mLuminanceDivisors = new float[64];
+    private final float[] mChrominanceDivisors = new float[64];
+
+    // Y, Cb and Cr of one 16x16 block of pixels
+    private final float[] mY = new float[256];
+    private final float[] mCb = new float[256];
+    private final float[] mCr = new float[256];
+
+    private final float[] mBlock = new float[64];
+    private final int[] mQuantized = new int[64];
+
+    private OutputStream mOut;
+    private final byte[] mOutBuffer = new byte[4096];
+    private int mOutCount;
+    private int mBitBuffer;
+    private int mBitCount;
+
+    /**
+     * Encode pixels as JPEG
+     *
+     * @param argb The pixels, alpha is ignored
+     * @param width The width
+     * @param height The height
+     * @param quality The quality, 1-100
+     * @param out The stream to write to, flushed but not closed
+     * @throws IOException
+     */
+    public void encode(int[] argb, int width, int height, int quality, OutputStream out) throws IOException {
+        Resampler.checkSize(argb, width, height);
+        if (width > 0xFFFF || height > 0xFFFF) {
+            throw new IllegalArgumentException("Image too large for JPEG " + width + "x" + height);
+        }
+        setQuality(quality);
+
+        mOut = out;
+        mOutCount = 0;
+        mBitBuffer = 0;
+        mBitCount = 0;
+
+        try {
+            writeHeaders(width, height);
+
+            int dcY = 0, dcCb = 0, dcCr = 0;
+            for (int mcuY = 0; mcuY < height; mcuY += 16) {
+                for (int mcuX = 0; mcuX < width; mcuX += 16) {
+                    loadMcu(argb, width, height, mcuX, mcuY);
+
+                    dcY = encodeBlock(mY, 0, 16, mLuminanceDivisors, dcY, DC_LUMINANCE_CODES, DC_LUMINANCE_SIZES,
+                            AC_LUMINANCE_CODES, AC_LUMINANCE_SIZES);
+                    dcY = encodeBlock(mY, 8, 16, mLuminanceDivisors, dcY, DC_LUMINANCE_CODES, DC_LUMINANCE_SIZES,
+                            AC_LUMINANCE_CODES, AC_LUMINANCE_SIZES);
+                    dcY = encodeBlock(mY, 128, 16, mLuminanceDivisors, dcY, DC_LUMINANCE_CODES, DC_LUMINANCE_SIZES,
+                            AC_LUMINANCE_CODES, AC_LUMINANCE_SIZES);
+                    dcY = encodeBlock(mY, 136, 16, mLuminanceDivisors, dcY, DC_LUMINANCE_CODES, DC_LUMINANCE_SIZES,
+                            AC_LUMINANCE_CODES, AC_LUMINANCE_SIZES);
+
+                    subsample(mCb);
+                    dcCb = encodeBlock(mCb, 0, 8, mChrominanceDivisors, dcCb, DC_CHROMINANCE_CODES, DC_CHROMINANCE_SIZES,
+                            AC_CHROMINANCE_CODES, AC_CHROMINANCE_SIZES);
+                    subsample(mCr);
+                    dcCr = encodeBlock(mCr, 0, 8, mChrominanceDivisors, dcCr, DC_CHROMINANCE_CODES, DC_CHROMINANCE_SIZES,
+                            AC_CHROMINANCE_CODES, AC_CHROMINANCE_SIZES);
+                }
+            }
+
+            // Pad the last byte with ones
+            if (mBitCount > 0) {
+                writeBits(0xFF, 8 - mBitCount);
+            }
+            writeMarker(0xD9);
+            flushOut();
+            out.flush();
+        } finally {
+            mOut = null;
+        }
+    }
+
+    /**
+     * Encode pixels as base64 encoded JPEG, ex. straight into a JSON request body
+     *
+     * @param argb The pixels, alpha is ignored
+     * @param width The width
+     * @param height The height
+     * @param quality The quality, 1-100
+     * @param out The stream to write the base64 to, flushed but not closed
+     * @throws IOException
+     */
+    public void encodeBase64(int[] argb, int width, int height, int quality, OutputStream out) throws IOException {
+        Base64OutputStream base64 = new Base64OutputStream(out);
+        encode(argb, width, height, quality, base64);
+        base64.finish();
+    }
+
+    private void setQuality(int quality) {
+        if (quality < 1 || quality > 100) {
+            throw new IllegalArgumentException("Quality has to be 1-100, was " + quality);
+        }
+        if (quality == mQuality) {
+            return;
+        }
+        mQuality = quality;
+
+        // Same scaling as libjpeg's jpeg_quality_scaling
+        int scale = quality < 50 ? 5000 / quality : 200 - quality * 2;
+        for (int i = 0; i < 64; i++) {
+            mLuminanceTable[i] = Math.max(1, Math.min(255, (LUMINANCE_QUANTIZATION[i] * scale + 50) / 100));
+            mChrominanceTable[i] = Math.max(1, Math.min(255, (CHROMINANCE_QUANTIZATION[i] * scale + 50) / 100));
+        }
+
+        // The AAN DCT leaves its output scaled, the scale is folded into the divisors
+        for (int row = 0, i = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++, i++) {
+                float aan = AAN_SCALE[row] * AAN_SCALE[col] * 8f;
+                mLuminanceDivisors[i] = 1f / (mLuminanceTable[i] * aan);
+                mChrominanceDivisors[i] = 1f / (mChrominanceTable[i] * aan);
+            }
+        }
+    }
+
+    /**
+     * Convert a 16x16 block of pixels to Y, Cb and Cr, repeating the edge pixels outside of the image
+     */
+    private void loadMcu(int[] argb, int width, int height, int left, int top) {
+        for (int y = 0, i = 0; y < 16; y++) {
+            int row = Math.min(top + y, height - 1) * width;
+            for (int x = 0; x < 16; x++, i++) {
+                int p = argb[row + Math.min(left + x, width - 1)];
+                int r = p >> 16 & 0xFF;
+                int g = p >> 8 & 0xFF;
+                int b = p & 0xFF;
+
+                // Level shifted by -128 for the DCT
+                mY[i] = 0.299f * r + 0.587f * g + 0.114f * b - 128f;
+                mCb[i] = -0.168736f * r - 0.331264f * g + 0.5f * b;
+                mCr[i] = 0.5f * r - 0.418688f * g - 0.081312f * b;
+            }
+        }
+    }
+
+    /**
+     * Average each 2x2 block of a 16x16 chroma block into the first 64 values
+     */
+    private static void subsample(float[] chroma) {
+        for (int y = 0, i = 0; y < 8; y++) {
+            int row = y * 32;
+            for (int x = 0; x < 8; x++, i++) {
+                int j = row + x * 2;
+                chroma[i] = (chroma[j] + chroma[j + 1] + chroma[j + 16] + chroma[j + 17]) * 0.25f;
+            }
+        }
+    }
+
+    /**
+     * Transform, quantize and entropy code one 8x8 block
+     *
+     * @return the DC value of the block, for the next block of the component
+     */
+    private int encodeBlock(float[] samples, int offset, int stride, float[] divisors, int previousDc,
+                            int[] dcCodes, int[] dcSizes, int[] acCodes, int[] acSizes) throws IOException {
+        float[] block = mBlock;
+        for (int y = 0; y < 8; y++) {
+            System.arraycopy(samples, offset + y * stride, block, y * 8, 8);
+        }
+
+        forwardDct(block);
+
+        for (int i = 0; i < 64; i++) {
+            mQuantized[i] = Math.round(block[i] * divisors[i]);
+        }
+
+        int dc = mQuantized[0];
+        int diff = dc - previousDc;
+        int dcSize = bitLength(diff);
+        writeBits(dcCodes[dcSize], dcSizes[dcSize]);
+        if (dcSize > 0) {
+            writeBits(diff < 0 ? diff - 1 : diff, dcSize);
+        }
+
+        int run = 0;
+        for (int k = 1; k < 64; k++) {
+            int value = mQuantized[ZIGZAG[k]];
+            if (value == 0) {
+                run++;
+                continue;
+            }
+
+            while (run > 15) {
+                // Sixteen zeros
+                writeBits(acCodes[0xF0], acSizes[0xF0]);
+                run -= 16;
+            }
+
+            int size = bitLength(value);
+            int symbol = run << 4 | size;
+            writeBits(acCodes[symbol], acSizes[symbol]);
+            writeBits(value < 0 ? value - 1 : value, size);
+            run = 0;
+        }
+
+        if (run > 0) {
+            // End of block
+            writeBits(acCodes[0x00], acSizes[0x00]);
+        }
+
+        return dc;
+    }
+
+    /**
+     * In place AAN forward DCT, same as libjpeg's jfdctflt
+     */
+    private static void forwardDct(float[] d) {
+        for (int pass = 0; pass < 2; pass++) {
+            // Rows in the first pass, columns in the second
+            int step = pass == 0 ? 1 : 8;
+            int next = pass == 0 ? 8 : 1;
+
+            for (int line = 0, o = 0; line < 8; line++, o += next) {
+                float tmp0 = d[o] + d[o + 7 * step];
+                float tmp7 = d[o] - d[o + 7 * step];
+                float tmp1 = d[o + step] + d[o + 6 * step];
+                float tmp6 = d[o + step] - d[o + 6 * step];
+                float tmp2 = d[o + 2 * step] + d[o + 5 * step];
+                float tmp5 = d[o + 2 * step] - d[o + 5 * step];
+                float tmp3 = d[o + 3 * step] + d[o + 4 * step];
+                float tmp4 = d[o + 3 * step] - d[o + 4 * step];
+
+                // Even part
+                float tmp10 = tmp0 + tmp3;
+                float tmp13 = tmp0 - tmp3;
+                float tmp11 = tmp1 + tmp2;
+                float tmp12 = tmp1 - tmp2;
+
+                d[o] = tmp10 + tmp11;
+                d[o + 4 * step] = tmp10 - tmp11;
+
+                float z1 = (tmp12 + tmp13) * 0.707106781f;
+                d[o + 2 * step] = tmp13 + z1;
+                d[o + 6 * step] = tmp13 - z1;
+
+                // Odd part
+                tmp10 = tmp4 + tmp5;
+                tmp11 = tmp5 + tmp6;
+                tmp12 = tmp6 + tmp7;
+
+                float z5 = (tmp10 - tmp12) * 0.382683433f;
+                float z2 = 0.541196100f * tmp10 + z5;
+                float z4 = 1.306562965f * tmp12 + z5;
+                float z3 = tmp11 * 0.707106781f;
+
+                float z11 = tmp7 + z3;
+                float z13 = tmp7 - z3;
+
+                d[o + 5 * step] = z13 + z2;
+                d[o + 3 * step] = z13 - z2;
+                d[o + step] = z11 + z4;
+                d[o + 7 * step] = z11 - z4;
+            }
+        }
+    }
+
+    private static int bitLength(int value) {
+        return 32 - Integer.numberOfLeadingZeros(value < 0 ? -value : value);
+    }
+
+    private void writeHeaders(int width, int height) throws IOException {
+        writeMarker(0xD8);
+
+        // JFIF 1.01, no density, no thumbnail
+        writeMarker(0xE0);
+        writeShort(16);
+        writeByte('J');
+        writeByte('F');
+        writeByte('I');
+        writeByte('F');
+        writeByte(0);
+        writeByte(1);
+        writeByte(1);
+        writeByte(0);
+        writeShort(1);
+        writeShort(1);
+        writeByte(0);
+        writeByte(0);
+
+        // Quantization tables in zigzag order
+        writeMarker(0xDB);
+        writeShort(2 + 2 * 65);
+        writeByte(0);
+        for (int k = 0; k < 64; k++) {
+            writeByte(mLuminanceTable[ZIGZAG[k]]);
+        }
+        writeByte(1);
+        for (int k = 0; k < 64; k++) {
+            writeByte(mChrominanceTable[ZIGZAG[k]]);
+        }
+
+        // Baseline frame, Y sampled 2x2, Cb and Cr 1x1
+        writeMarker(0xC0);
+        writeShort(17);
+        writeByte(8);
+        writeShort(height);
+        writeShort(width);
+        writeByte(3);
+        writeByte(1);
+        writeByte(0x22);
+        writeByte(0);
+        writeByte(2);
+        writeByte(0x11);
+        writeByte(1);
+        writeByte(3);
+        writeByte(0x11);
+        writeByte(1);
+
+        writeMarker(0xC4);
+        writeShort(2 + tableLength(DC_LUMINANCE_VALUES) + tableLength(AC_LUMINANCE_VALUES)
+                + tableLength(DC_CHROMINANCE_VALUES) + tableLength(AC_CHROMINANCE_VALUES));
+        writeHuffmanTable(0x00, DC_LUMINANCE_BITS, DC_LUMINANCE_VALUES);
+        writeHuffmanTable(0x10, AC_LUMINANCE_BITS, AC_LUMINANCE_VALUES);
+        writeHuffmanTable(0x01, DC_CHROMINANCE_BITS, DC_CHROMINANCE_VALUES);
+        writeHuffmanTable(0x11, AC_CHROMINANCE_BITS, AC_CHROMINANCE_VALUES);
+
+        // Start of scan, Y with tables 0, Cb and Cr with tables 1
+        writeMarker(0xDA);
+        writeShort(12);
+        writeByte(3);
+        writeByte(1);
+        writeByte(0x00);
+        writeByte(2);
+        writeByte(0x11);
+        writeByte(3);
+        writeByte(0x11);
+        writeByte(0);
+        writeByte(63);
+        writeByte(0);
+    }
+
+    private static int tableLength(int[] values) {
+        return 1 + 16 + values.length;
+    }
+
+    private void writeHuffmanTable(int id, int[] bits, int[] values) throws IOException {
+        writeByte(id);
+        for (int b : bits) {
+            writeByte(b);
+        }
+        for (int v : values) {
+            writeByte(v);
+        }
+    }
+
+    private void writeMarker(int marker) throws IOException {
+        writeByte(0xFF);
+        writeByte(marker);
+    }
+
+    private void writeShort(int value) throws IOException {
+        writeByte(value >> 8);
+        writeByte(value);
+    }
+
+    private void writeByte(int value) throws IOException {
+        if (mOutCount == mOutBuffer.length) {
+            flushOut();
+        }
+        mOutBuffer[mOutCount++] = (byte) value;
+    }
+
+    /**
+     * Write the lowest bits of a value, most significant bit first,
+     * stuffing a zero byte after each 0xFF in the entropy coded data
+     */
+    private void writeBits(int value, int count) throws IOException {
+        mBitBuffer = mBitBuffer << count | (value & ((1 << count) - 1));
+        mBitCount += count;
+
+        while (mBitCount >= 8) {
+            int b = mBitBuffer >> (mBitCount - 8) & 0xFF;
+            writeByte(b);
+            if (b == 0xFF) {
+                writeByte(0);
+            }
+            mBitCount -= 8;
+        }
+        mBitBuffer &= (1 << mBitCount) - 1;
+    }
+
+    private void flushOut() throws IOException {
+        if (mOutCount > 0) {
+            mOut.write(mOutBuffer, 0, mOutCount);
+            mOutCount = 0;
+        }
+    }
+
+    private static int[] huffmanCodes(int[] bits, int[] values) {
+        int[] codes = new int[256];
+        int code = 0;
+        for (int length = 1, k = 0; length <= 16; length++) {
+            for (int i = 0; i < bits[length - 1]; i++, k++) {
+                codes[values[k]] = code++;
+            }
+            code <<= 1;
+        }
+        return codes;
+    }
+
+    private static int[] huffmanSizes(int[] bits, int[] values) {
+        int[] sizes = new int[256];
+        for (int length = 1, k = 0; length <= 16; length++) {
+            for (int i = 0; i < bits[length - 1]; i++, k++) {
+                sizes[values[k]] = length;
+            }
+        }
+        return sizes;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.core;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations.
+ *
+ * Durations are counted in log-linear buckets: every power of two of
+ * microseconds is split into four buckets, so a percentile is never
+ * more than 25% above the true value. Recording is a few atomic adds
+ * and never blocks or allocates, so it can be called from any thread.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Highest power of two of microseconds with its own buckets, about 33 s
+    private static final int MAX_EXPONENT = 25;
+
+    static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSumNs = new AtomicLong();
+    private final AtomicLong mMaxNs = new AtomicLong();
+
+    /**
+     * Record a duration
+     *
+     * @param durationNs The duration in nanoseconds, negative durations are ignored
+     */
+    public void record(long durationNs) {
+        if (durationNs < 0) {
+            return;
+        }
+
+        mBuckets.incrementAndGet(bucketIndex(durationNs / 1000));
+        mCount.incrementAndGet();
+        mSumNs.addAndGet(durationNs);
+
+        long max = mMaxNs.get();
+        while (durationNs > max && !mMaxNs.compareAndSet(max, durationNs)) {
+            max = mMaxNs.get();
+        }
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * @return mean duration in milliseconds, 0 if nothing has been recorded
+     */
+    public float getMeanMs() {
+        long count = mCount.get();
+        return count == 0 ? 0f : mSumNs.get() / (float) count / 1000000f;
+    }
+
+    public float getMaxMs() {
+        return mMaxNs.get() / 1000000f;
+    }
+
+    /**
+     * Get a percentile of the recorded durations, as the upper bound of
+     * the bucket holding the nearest rank, but never above the max
+     *
+     * @param percentile The percentile, ex. 99
+     * @return duration in milliseconds, -1 if nothing has been recorded
+     */
+    public float getPercentileMs(float percentile) {
+        long count = 0;
+        long[] buckets = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = mBuckets.get(i);
+            count += buckets[i];
+        }
+        if (count == 0) {
+            return -1f;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100f * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBoundUs(i) / 1000f, getMaxMs());
+            }
+        }
+        return getMaxMs();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets.set(i, 0);
+        }
+        mCount.set(0);
+        mSumNs.set(0);
+        mMaxNs.set(0);
+    }
+
+    static int bucketIndex(long us) {
+        if (us < SUB_BUCKETS) {
+            return (int) Math.max(0, us);
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(us);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+
+        int subBucket = (int) (us >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @param index The bucket
+     * @return the smallest duration in microseconds above the bucket
+     */
+    static long bucketUpperBoundUs(int index) {
+        if (index < SUB_BUCKETS) {
+            return index + 1;
+        }
+
+        int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "n=%d mean=%.1f p50=%.1f p90=%.1f p99=%.1f max=%.1f ms",
+                getCount(), getMeanMs(), getPercentileMs(50), getPercentileMs(90),
+                getPercentileMs(99), getMaxMs());
+    }
+}
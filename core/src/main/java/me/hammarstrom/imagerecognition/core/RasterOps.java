@@ -0,0 +1,96 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.core;
+
+/**
+ * Crops and rotates ARGB rasters.
+ */
+public final class RasterOps {
+
+    private RasterOps() {
+    }
+
+    /**
+     * Copy a rectangle of a raster
+     *
+     * @param src The source pixels
+     * @param srcWidth The source width
+     * @param srcHeight The source height
+     * @param left The left edge of the rectangle
+     * @param top The top edge of the rectangle
+     * @param dst The cropped pixels, at least width * height
+     * @param width The width of the rectangle
+     * @param height The height of the rectangle
+     */
+    public static void crop(int[] src, int srcWidth, int srcHeight, int left, int top, int[] dst, int width, int height) {
+        Resampler.checkSize(src, srcWidth, srcHeight);
+        Resampler.checkSize(dst, width, height);
+        if (left < 0 || top < 0 || left + width > srcWidth || top + height > srcHeight) {
+            throw new IllegalArgumentException("Crop " + width + "x" + height + " at " + left + "," + top
+                    + " is outside of " + srcWidth + "x" + srcHeight);
+        }
+
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(src, (top + y) * srcWidth + left, dst, y * width, width);
+        }
+    }
+
+    /**
+     * Rotate a raster clockwise. The rotated raster is height wide and
+     * width high when rotated 90 or 270 degrees.
+     *
+     * @param src The source pixels
+     * @param width The source width
+     * @param height The source height
+     * @param degrees 0, 90, 180 or 270
+     * @param dst The rotated pixels, at least width * height, not the same array as src
+     */
+    public static void rotate(int[] src, int width, int height, int degrees, int[] dst) {
+        Resampler.checkSize(src, width, height);
+        Resampler.checkSize(dst, width, height);
+
+        int n = width * height;
+        switch ((degrees % 360 + 360) % 360) {
+            case 0:
+                System.arraycopy(src, 0, dst, 0, n);
+                break;
+            case 90:
+                // Source row y becomes destination column height - 1 - y
+                for (int y = 0; y < height; y++) {
+                    int column = height - 1 - y;
+                    for (int x = 0, i = y * width; x < width; x++, i++) {
+                        dst[x * height + column] = src[i];
+                    }
+                }
+                break;
+            case 180:
+                for (int i = 0; i < n; i++) {
+                    dst[n - 1 - i] = src[i];
+                }
+                break;
+            case 270:
+                // Source row y becomes destination column y, bottom up
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0, i = y * width; x < width; x++, i++) {
+                        dst[(width - 1 - x) * height + y] = src[i];
+                    }
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported rotation " + degrees);
+        }
+    }
+}
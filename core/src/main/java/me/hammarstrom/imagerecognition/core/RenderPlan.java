@@ -0,0 +1,134 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.core;
+
+/**
+ * What to show and say for a {@link VisionResult}, prepared off the main thread
+ * by a {@link RenderPlanner} so applying it only binds values to views.
+ *
+ * Holds the labels above the minimum score with their measured text, the faces
+ * to draw and the utterances for text to speech.
+ */
+public class RenderPlan {
+
+    private final VisionResult mResult;
+
+    private final String[] mLabelDescriptions;
+    private final float[] mLabelScores;
+    // Width and height of each label text, as pairs
+    private final int[] mLabelTextSizes;
+
+    // Faces to draw in image coordinates, as x, y pairs
+    private final float[] mFaceVertices;
+    private final int mFaceCount;
+
+    private final String mLabelUtterance;
+    private final String mFacesUtterance;
+
+    RenderPlan(VisionResult result, String[] labelDescriptions, float[] labelScores, int[] labelTextSizes,
+               float[] faceVertices, int faceCount, String labelUtterance, String facesUtterance) {
+        mResult = result;
+        mLabelDescriptions = labelDescriptions;
+        mLabelScores = labelScores;
+        mLabelTextSizes = labelTextSizes;
+        mFaceVertices = faceVertices;
+        mFaceCount = faceCount;
+        mLabelUtterance = labelUtterance;
+        mFacesUtterance = facesUtterance;
+    }
+
+    /**
+     * @return the result the plan was prepared for
+     */
+    public VisionResult getResult() {
+        return mResult;
+    }
+
+    /**
+     * @return true if the result has any labels, shown or not
+     */
+    public boolean hasLabels() {
+        return mResult.getLabelCount() > 0;
+    }
+
+    /**
+     * @return number of labels to show
+     */
+    public int getLabelCount() {
+        return mLabelScores.length;
+    }
+
+    public String getLabelDescription(int label) {
+        return mLabelDescriptions[label];
+    }
+
+    public float getLabelScore(int label) {
+        return mLabelScores[label];
+    }
+
+    public int getLabelTextWidth(int label) {
+        return mLabelTextSizes[label * 2];
+    }
+
+    public int getLabelTextHeight(int label) {
+        return mLabelTextSizes[label * 2 + 1];
+    }
+
+    /**
+     * @return number of faces to draw, faces used only for speech are not drawn
+     */
+    public int getFaceCount() {
+        return mFaceCount;
+    }
+
+    /**
+     * Get the faces to draw, in the scaled image of {@link #getCapture()}
+     *
+     * @return copy of the x, y pairs in image coordinates
+     */
+    public float[] getFaceVertices() {
+        return mFaceVertices.clone();
+    }
+
+    /**
+     * @return the capture the faces were detected in, null if unknown
+     */
+    public CaptureDescriptor getCapture() {
+        return mResult.getCapture();
+    }
+
+    /**
+     * @return what to say about the labels, empty if nothing
+     */
+    public String getLabelUtterance() {
+        return mLabelUtterance;
+    }
+
+    /**
+     * @return what to say about the faces, empty if nothing
+     */
+    public String getFacesUtterance() {
+        return mFacesUtterance;
+    }
+
+    @Override
+    public String toString() {
+        return "RenderPlan{labels=" + getLabelCount() + "/" + mResult.getLabelCount()
+                + ", faces=" + getFaceCount()
+                + ", labelUtterance='" + mLabelUtterance + "'"
+                + ", facesUtterance='" + mFacesUtterance + "'}";
+    }
+}
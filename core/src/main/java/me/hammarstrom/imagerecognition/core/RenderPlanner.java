@@ -0,0 +1,117 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.core;
+
+/**
+ * Prepares a {@link RenderPlan} for a {@link VisionResult}. Everything that
+ * does not need a view is done here: filtering labels, measuring their text,
+ * picking the faces to draw and building the text to speak.
+ *
+ * Planning does not touch any views, it is meant to run on a background thread.
+ */
+public class RenderPlanner {
+
+    /**
+     * Measures text the way the view drawing it will
+     */
+    public interface TextMeasurer {
+
+        /**
+         * @param text The text
+         * @param out Receives the width at offset and the height at offset + 1
+         * @param offset Where to put the size
+         */
+        void measure(String text, int[] out, int offset);
+    }
+
+    private final float mMinLabelScore;
+    private final String mLabelIntro;
+    private final TextMeasurer mLabelMeasurer;
+    private final FaceDescriptionBuilder mFaceDescriptions;
+
+    /**
+     * @param minLabelScore Labels with a lower score are not shown or spoken
+     * @param labelIntro Spoken before the labels, ex. "The image may contain "
+     * @param labelMeasurer Measures the label texts
+     * @param faceDescriptions Builds the text spoken about faces
+     */
+    public RenderPlanner(float minLabelScore, String labelIntro, TextMeasurer labelMeasurer,
+                         FaceDescriptionBuilder faceDescriptions) {
+        mMinLabelScore = minLabelScore;
+        mLabelIntro = labelIntro;
+        mLabelMeasurer = labelMeasurer;
+        mFaceDescriptions = faceDescriptions;
+    }
+
+    /**
+     * Prepare the plan for a result. The faces of the result are drawn, when it has
+     * none the faces detected elsewhere are only spoken about, as they are drawn already.
+     *
+     * @param result The result
+     * @param otherFaces Faces detected elsewhere, ex. on the device, or null
+     * @return the plan
+     */
+    public RenderPlan plan(VisionResult result, VisionResult otherFaces) {
+        int shown = 0;
+        for (int i = 0; i < result.getLabelCount(); i++) {
+            if (result.getLabelScore(i) >= mMinLabelScore) {
+                shown++;
+            }
+        }
+
+        String[] descriptions = new String[shown];
+        float[] scores = new float[shown];
+        int[] textSizes = new int[shown * 2];
+        StringBuilder labelUtterance = new StringBuilder();
+        if (result.getLabelCount() > 0) {
+            labelUtterance.append(mLabelIntro);
+        }
+
+        int label = 0;
+        for (int i = 0; i < result.getLabelCount(); i++) {
+            if (result.getLabelScore(i) < mMinLabelScore) {
+                continue;
+            }
+
+            String description = result.getLabelDescription(i);
+            if (description == null) {
+                description = "";
+            }
+            descriptions[label] = description;
+            scores[label] = result.getLabelScore(i);
+            mLabelMeasurer.measure(description, textSizes, label * 2);
+            labelUtterance.append(description).append(", ");
+            label++;
+        }
+
+        // Faces detected elsewhere are already drawn
+        float[] faceVertices;
+        int faceCount = result.getFaceCount();
+        String facesUtterance = "";
+        if (faceCount > 0) {
+            faceVertices = result.getFaceVertices();
+            facesUtterance = mFaceDescriptions.build(result);
+        } else {
+            faceVertices = new float[0];
+            if (otherFaces != null && otherFaces.getFaceCount() > 0) {
+                facesUtterance = mFaceDescriptions.build(otherFaces);
+            }
+        }
+
+        return new RenderPlan(result, descriptions, scores, textSizes, faceVertices, faceCount,
+                labelUtterance.toString(), facesUtterance);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.core;
+
+import java.util.Arrays;
+
+/**
+ * Resizes ARGB rasters, i.e. {@code int[]} pixels in row order as
+ * returned by {@code Bitmap.getPixels()}.
+ *
+ * Resampling is separable: each source row is resampled horizontally
+ * once into a float row, and the rows are then blended vertically into
+ * the destination row. Only a few rows of floats are allocated, never
+ * an intermediate image.
+ */
+public final class Resampler {
+
+    private Resampler() {
+    }
+
+    /**
+     * Scale down by averaging the source pixels covered by each destination pixel.
+     * Gives the best quality when scaling down by large factors.
+     *
+     * @param src The source pixels
+     * @param srcWidth The source width
+     * @param srcHeight The source height
+     * @param dst The destination pixels, at least dstWidth * dstHeight
+     * @param dstWidth The destination width
+     * @param dstHeight The destination height
+     */
+    public static void downscaleArea(int[] src, int srcWidth, int srcHeight, int[] dst, int dstWidth, int dstHeight) {
+        resample(src, srcWidth, srcHeight, dst, dstWidth, dstHeight,
+                Weights.area(srcWidth, dstWidth), Weights.area(srcHeight, dstHeight));
+    }
+
+    /**
+     * Scale by interpolating between the four nearest source pixels
+     *
+     * @param src The source pixels
+     * @param srcWidth The source width
+     * @param srcHeight The source height
+     * @param dst The destination pixels, at least dstWidth * dstHeight
+     * @param dstWidth The destination width
+     * @param dstHeight The destination height
+     */
+    public static void scaleBilinear(int[] src, int srcWidth, int srcHeight, int[] dst, int dstWidth, int dstHeight) {
+        resample(src, srcWidth, srcHeight, dst, dstWidth, dstHeight,
+                Weights.bilinear(srcWidth, dstWidth), Weights.bilinear(srcHeight, dstHeight));
+    }
+
+    private static void resample(int[] src, int srcWidth, int srcHeight, int[] dst, int dstWidth, int dstHeight,
+                                 Weights horizontal, Weights vertical) {
+        checkSize(src, srcWidth, srcHeight);
+        checkSize(dst, dstWidth, dstHeight);
+
+        float[] row = new float[dstWidth * 4];
+        float[] sum = new float[dstWidth * 4];
+
+        // The last resampled source row is kept, neighbouring destination rows share source rows
+        int rowY = -1;
+
+        for (int y = 0; y < dstHeight; y++) {
+            Arrays.fill(sum, 0f);
+
+            int first = vertical.first[y];
+            for (int k = 0; k < vertical.count[y]; k++) {
+                int sy = first + k;
+                float w = vertical.weights[y * vertical.stride + k];
+                if (sy != rowY) {
+                    resampleRow(src, sy * srcWidth, horizontal, row, dstWidth);
+                    rowY = sy;
+                }
+                for (int i = 0; i < sum.length; i++) {
+                    sum[i] += row[i] * w;
+                }
+            }
+
+            int offset = y * dstWidth;
+            for (int x = 0, i = 0; x < dstWidth; x++, i += 4) {
+                dst[offset + x] = clamp(sum[i]) << 24 | clamp(sum[i + 1]) << 16
+                        | clamp(sum[i + 2]) << 8 | clamp(sum[i + 3]);
+            }
+        }
+    }
+
+    private static void resampleRow(int[] src, int offset, Weights horizontal, float[] row, int dstWidth) {
+        for (int x = 0, i = 0; x < dstWidth; x++, i += 4) {
+            float a = 0f, r = 0f, g = 0f, b = 0f;
+            int first = horizontal.first[x];
+            for (int k = 0; k < horizontal.count[x]; k++) {
+                int p = src[offset + first + k];
+                float w = horizontal.weights[x * horizontal.stride + k];
+                a += (p >>> 24) * w;
+                r += (p >> 16 & 0xFF) * w;
+                g += (p >> 8 & 0xFF) * w;
+                b += (p & 0xFF) * w;
+            }
+            row[i] = a;
+            row[i + 1] = r;
+            row[i + 2] = g;
+            row[i + 3] = b;
+        }
+    }
+
+    private static int clamp(float value) {
+        int v = (int) (value + 0.5f);
+        return v < 0 ? 0 : v > 255 ? 255 : v;
+    }
+
+    static void checkSize(int[] pixels, int width, int height) {
+        if (width <= 0 || height <= 0 || pixels.length < width * height) {
+            throw new IllegalArgumentException("Invalid raster " + width + "x" + height + " with " + pixels.length + " pixels");
+        }
+    }
+
+    /**
+     * Source pixels, and their weights, contributing to each destination pixel of one dimension
+     */
+    static final class Weights {
+        final int[] first;
+        final int[] count;
+        final float[] weights;
+        final int stride;
+
+        private Weights(int dstSize, int stride) {
+            this.first = new int[dstSize];
+            this.count = new int[dstSize];
+            this.weights = new float[dstSize * stride];
+            this.stride = stride;
+        }
+
+        static Weights area(int srcSize, int dstSize) {
+            if (dstSize >= srcSize) {
+                // Not a downscale, every destination pixel covers less than a source pixel
+                return bilinear(srcSize, dstSize);
+            }
+
+            float scale = (float) srcSize / dstSize;
+            Weights weights = new Weights(dstSize, (int) Math.ceil(scale) + 1);
+
+            for (int i = 0; i < dstSize; i++) {
+                float start = i * scale;
+                float end = Math.min(srcSize, start + scale);
+                int first = (int) start;
+                int last = Math.min(srcSize - 1, (int) Math.ceil(end) - 1);
+
+                weights.first[i] = first;
+                weights.count[i] = last - first + 1;
+                for (int s = first; s <= last; s++) {
+                    float covered = Math.min(end, s + 1) - Math.max(start, s);
+                    weights.weights[i * weights.stride + s - first] = covered / scale;
+                }
+            }
+            return weights;
+        }
+
+        static Weights bilinear(int srcSize, int dstSize) {
+            float scale = (float) srcSize / dstSize;
+            Weights weights = new Weights(dstSize, 2);
+
+            for (int i = 0; i < dstSize; i++) {
+                // Sample at the center of the destination pixel
+                float center = Math.max(0f, (i + 0.5f) * scale - 0.5f);
+                int first = Math.min((int) center, srcSize - 1);
+                float fraction = center - first;
+
+                weights.first[i] = first;
+                if (first + 1 < srcSize && fraction > 0f) {
+                    weights.count[i] = 2;
+                    weights.weights[i * 2] = 1f - fraction;
+                    weights.weights[i * 2 + 1] = fraction;
+                } else {
+                    weights.count[i] = 1;
+                    weights.weights[i * 2] = 1f;
+                }
+            }
+            return weights;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.core;
+
+/**
+ * Timing of the animation showing a set of results, as a function of the
+ * time since it started, so a single clock can drive every label.
+ *
+ * The labels enter one after another, sliding in and fading in, then the
+ * scores of all labels count up together.
+ */
+public final class ResultsTimeline {
+
+    public static final long ENTER_DURATION_MS = 300;
+    public static final long SCORE_DURATION_MS = 300;
+
+    // Tension of the overshoot when a label slides in
+    private static final float OVERSHOOT_TENSION = 2.0f;
+
+    private ResultsTimeline() {
+    }
+
+    /**
+     * @param labelCount Number of labels shown
+     * @return duration of the whole animation
+     */
+    public static long getDuration(int labelCount) {
+        return labelCount * ENTER_DURATION_MS + SCORE_DURATION_MS;
+    }
+
+    /**
+     * How far a label has entered, before interpolation
+     *
+     * @param label The label
+     * @param elapsedMs Time since the animation started
+     * @return between 0 and 1
+     */
+    public static float getEnterFraction(int label, long elapsedMs) {
+        return fraction(elapsedMs - label * ENTER_DURATION_MS, ENTER_DURATION_MS);
+    }
+
+    /**
+     * How far the scores have counted up, before interpolation
+     *
+     * @param labelCount Number of labels shown
+     * @param elapsedMs Time since the animation started
+     * @return between 0 and 1
+     */
+    public static float getScoreFraction(int labelCount, long elapsedMs) {
+        return fraction(elapsedMs - labelCount * ENTER_DURATION_MS, SCORE_DURATION_MS);
+    }
+
+    /**
+     * Overshoot interpolation, going past 1 and back like Android's OvershootInterpolator
+     */
+    public static float overshoot(float t) {
+        t -= 1.0f;
+        return t * t * ((OVERSHOOT_TENSION + 1) * t + OVERSHOOT_TENSION) + 1.0f;
+    }
+
+    /**
+     * Accelerate decelerate interpolation, the default of Android's animators
+     */
+    public static float accelerateDecelerate(float t) {
+        return (float) (Math.cos((t + 1) * Math.PI) / 2.0) + 0.5f;
+    }
+
+    private static float fraction(long elapsedMs, long durationMs) {
+        if (elapsedMs <= 0) {
+            return 0f;
+        }
+        if (elapsedMs >= durationMs) {
+            return 1f;
+        }
+        return elapsedMs / (float) durationMs;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.core;
+
+/**
+ * State of an animated score gauge: the sweep of its arc and its score
+ * text, ex. "0.93", counting up together as the animation progresses.
+ *
+ * The text is formatted into a reused char array, so animating a gauge
+ * does not allocate.
+ */
+public class ScoreGauge {
+
+    // "1.00"
+    public static final int MAX_TEXT_LENGTH = 4;
+
+    private final char mZeroDigit;
+    private final char mDecimalSeparator;
+    private final char[] mText = new char[MAX_TEXT_LENGTH];
+    private int mTextLength;
+
+    private float mScore;
+    private float mProgress;
+    private float mSweepAngle;
+
+    /**
+     * @param zeroDigit The digit zero of the locale, the other digits follow it
+     * @param decimalSeparator The decimal separator of the locale
+     */
+    public ScoreGauge(char zeroDigit, char decimalSeparator) {
+        mZeroDigit = zeroDigit;
+        mDecimalSeparator = decimalSeparator;
+        setProgress(0f);
+    }
+
+    /**
+     * Set the score the gauge animates to, the progress is kept
+     *
+     * @param score between 0 and 1
+     */
+    public void setScore(float score) {
+        if (score < 0.0f || score > 1.0f) {
+            throw new IllegalArgumentException("Score has to be a value between 0.0 and 1.0");
+        }
+        mScore = score;
+        setProgress(mProgress);
+    }
+
+    public float getScore() {
+        return mScore;
+    }
+
+    /**
+     * Set how far the gauge has animated towards its score
+     *
+     * @param fraction 0 shows nothing, 1 shows the score
+     */
+    public void setProgress(float fraction) {
+        mProgress = fraction;
+        float value = mScore * fraction;
+        mSweepAngle = 360.0f * value;
+        mTextLength = formatScore(value, mZeroDigit, mDecimalSeparator, mText, 0);
+    }
+
+    /**
+     * @return sweep of the arc in degrees
+     */
+    public float getSweepAngle() {
+        return mSweepAngle;
+    }
+
+    /**
+     * @return the score text, valid up to {@link #getTextLength()}
+     */
+    public char[] getText() {
+        return mText;
+    }
+
+    public int getTextLength() {
+        return mTextLength;
+    }
+
+    /**
+     * Format a value with two decimals, rounded half up like "%.2f"
+     *
+     * @param value between 0 and 1
+     * @param zeroDigit The digit zero
+     * @param decimalSeparator The decimal separator
+     * @param out Receives the text, at least {@link #MAX_TEXT_LENGTH} chars from offset
+     * @param offset Where to put the text
+     * @return length of the text
+     */
+    public static int formatScore(float value, char zeroDigit, char decimalSeparator, char[] out, int offset) {
+        // Rounded in double, as the float is exact there
+        int hundredths = (int) Math.round(value * 100.0);
+        if (hundredths < 0) {
+            hundredths = 0;
+        } else if (hundredths > 100) {
+            hundredths = 100;
+        }
+
+        out[offset] = (char) (zeroDigit + hundredths / 100);
+        out[offset + 1] = decimalSeparator;
+        out[offset + 2] = (char) (zeroDigit + hundredths / 10 % 10);
+        out[offset + 3] = (char) (zeroDigit + hundredths % 10);
+        return MAX_TEXT_LENGTH;
+    }
+}
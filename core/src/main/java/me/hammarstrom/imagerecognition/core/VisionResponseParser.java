@@ -0,0 +1,629 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming parser of images:annotate responses into {@link VisionResult}s.
+ *
+ * Only the fields the app uses are read: the description and score of each
+ * label, the fd bounding poly and four likelihoods of each face, and the
+ * error message of images that failed. Everything else, like landmarks
+ * and angles, is skipped byte by byte without being decoded. Names and
+ * likelihoods are matched in a reused char buffer, so the only objects
+ * allocated are the label descriptions and the results themselves.
+ *
+ * A parser can be reused but not shared between threads.
+ */
+public class VisionResponseParser {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // Float parsing is exact as long as the digits fit a double without rounding
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final String[] LIKELIHOOD_NAMES = {
+            "UNKNOWN", "VERY_UNLIKELY", "UNLIKELY", "POSSIBLE", "LIKELY", "VERY_LIKELY"
+    };
+
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+    private int mPosition;
+    private int mLimit;
+    private long mOffset;
+    private InputStream mIn;
+
+    private char[] mChars = new char[64];
+    private int mCharCount;
+
+    private final VisionResult.Builder mBuilder = new VisionResult.Builder();
+    private final float[] mVertices = new float[VisionResult.VERTICES_PER_FACE * 2];
+
+    /**
+     * Parse a batch response. The stream is read to the end of the
+     * response object but not closed.
+     *
+     * @param in UTF-8 encoded BatchAnnotateImagesResponse JSON
+     * @return one result per image, in the order of the request
+     * @throws IOException if the stream fails or does not hold a response
+     */
+    public List<VisionResult> parse(InputStream in) throws IOException {
+        mIn = in;
+        mPosition = 0;
+        mLimit = 0;
+        mOffset = 0;
+
+        List<VisionResult> results = new ArrayList<>();
+        try {
+            expect('{');
+            while (nextMember()) {
+                if (nameEquals("responses")) {
+                    if (beginArray()) {
+                        while (nextElement()) {
+                            results.add(parseImageResponse());
+                        }
+                    }
+                } else {
+                    skipValue();
+                }
+            }
+        } finally {
+            mIn = null;
+        }
+        return results;
+    }
+
+    private VisionResult parseImageResponse() throws IOException {
+        VisionResult.Builder builder = mBuilder.reset();
+        if (!beginObject()) {
+            return builder.build();
+        }
+
+        while (nextMember()) {
+            if (nameEquals("labelAnnotations")) {
+                if (beginArray()) {
+                    while (nextElement()) {
+                        parseLabel(builder);
+                    }
+                }
+            } else if (nameEquals("faceAnnotations")) {
+                if (beginArray()) {
+                    while (nextElement()) {
+                        parseFace(builder);
+                    }
+                }
+            } else if (nameEquals("error")) {
+                parseError(builder);
+            } else {
+                skipValue();
+            }
+        }
+        return builder.build();
+    }
+
+    private void parseLabel(VisionResult.Builder builder) throws IOException {
+        if (!beginObject()) {
+            return;
+        }
+
+        String description = null;
+        float score = 0f;
+        while (nextMember()) {
+            if (nameEquals("description")) {
+                description = readStringOrNull();
+            } else if (nameEquals("score")) {
+                score = readFloat();
+            } else {
+                skipValue();
+            }
+        }
+        builder.addLabel(description, score);
+    }
+
+    private void parseFace(VisionResult.Builder builder) throws IOException {
+        if (!beginObject()) {
+            return;
+        }
+
+        boolean hasVertices = false;
+        byte joy = VisionResult.LIKELIHOOD_UNKNOWN;
+        byte sorrow = VisionResult.LIKELIHOOD_UNKNOWN;
+        byte anger = VisionResult.LIKELIHOOD_UNKNOWN;
+        byte surprise = VisionResult.LIKELIHOOD_UNKNOWN;
+        while (nextMember()) {
+            if (nameEquals("fdBoundingPoly")) {
+                hasVertices = parseBoundingPoly(mVertices);
+            } else if (nameEquals("joyLikelihood")) {
+                joy = readLikelihood();
+            } else if (nameEquals("sorrowLikelihood")) {
+                sorrow = readLikelihood();
+            } else if (nameEquals("angerLikelihood")) {
+                anger = readLikelihood();
+            } else if (nameEquals("surpriseLikelihood")) {
+                surprise = readLikelihood();
+            } else {
+                skipValue();
+            }
+        }
+
+        // Faces without a complete bounding poly can't be drawn
+        if (hasVertices) {
+            builder.addFace(mVertices, joy, sorrow, anger, surprise);
+        }
+    }
+
+    private boolean parseBoundingPoly(float[] out) throws IOException {
+        if (!beginObject()) {
+            return false;
+        }
+
+        int count = 0;
+        while (nextMember()) {
+            if (nameEquals("vertices")) {
+                count = 0;
+                if (!beginArray()) {
+                    continue;
+                }
+                while (nextElement()) {
+                    if (!beginObject()) {
+                        continue;
+                    }
+
+                    // The API leaves out coordinates that are 0
+                    float x = 0f;
+                    float y = 0f;
+                    while (nextMember()) {
+                        if (nameEquals("x")) {
+                            x = readFloat();
+                        } else if (nameEquals("y")) {
+                            y = readFloat();
+                        } else {
+                            skipValue();
+                        }
+                    }
+
+                    if (count < VisionResult.VERTICES_PER_FACE) {
+                        out[count * 2] = x;
+                        out[count * 2 + 1] = y;
+                    }
+                    count++;
+                }
+            } else {
+                skipValue();
+            }
+        }
+        return count == VisionResult.VERTICES_PER_FACE;
+    }
+
+    private void parseError(VisionResult.Builder builder) throws IOException {
+        if (!beginObject()) {
+            return;
+        }
+
+        String message = null;
+        while (nextMember()) {
+            if (nameEquals("message")) {
+                message = readStringOrNull();
+            } else {
+                skipValue();
+            }
+        }
+        builder.setError(message != null ? message : "Unknown error");
+    }
+
+    private byte readLikelihood() throws IOException {
+        if (peek() != '"') {
+            skipValue();
+            return VisionResult.LIKELIHOOD_UNKNOWN;
+        }
+
+        readString();
+        for (byte i = 0; i < LIKELIHOOD_NAMES.length; i++) {
+            if (nameEquals(LIKELIHOOD_NAMES[i])) {
+                return i;
+            }
+        }
+        return VisionResult.LIKELIHOOD_UNKNOWN;
+    }
+
+    // Structure
+
+    /**
+     * Start reading an object
+     *
+     * @return true if an object follows, false if the value was null and has been skipped
+     * @throws IOException if something else follows
+     */
+    private boolean beginObject() throws IOException {
+        return begin('{');
+    }
+
+    private boolean beginArray() throws IOException {
+        return begin('[');
+    }
+
+    private boolean begin(char open) throws IOException {
+        int c = peek();
+        if (c == open) {
+            mPosition++;
+            return true;
+        }
+        if (c == 'n') {
+            skipValue();
+            return false;
+        }
+        throw syntaxError("Expected '" + open + "'");
+    }
+
+    /**
+     * Move to the next member of the current object and read its name
+     *
+     * @return true if a member follows, its name is in the char buffer,
+     * false if the end of the object has been consumed
+     * @throws IOException
+     */
+    private boolean nextMember() throws IOException {
+        int c = peek();
+        if (c == ',') {
+            mPosition++;
+            c = peek();
+        }
+        if (c == '}') {
+            mPosition++;
+            return false;
+        }
+        if (c != '"') {
+            throw syntaxError("Expected a name");
+        }
+        readString();
+        expect(':');
+        return true;
+    }
+
+    /**
+     * Move to the next element of the current array
+     *
+     * @return true if an element follows, false if the end of the array has been consumed
+     * @throws IOException
+     */
+    private boolean nextElement() throws IOException {
+        int c = peek();
+        if (c == ',') {
+            mPosition++;
+            c = peek();
+        }
+        if (c == ']') {
+            mPosition++;
+            return false;
+        }
+        if (c == -1) {
+            throw syntaxError("Unterminated array");
+        }
+        return true;
+    }
+
+    private void expect(char expected) throws IOException {
+        if (peek() != expected) {
+            throw syntaxError("Expected '" + expected + "'");
+        }
+        mPosition++;
+    }
+
+    /**
+     * Skip the next value, whatever it is, without decoding it
+     *
+     * @throws IOException
+     */
+    private void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            int c = peek();
+            switch (c) {
+                case '{':
+                case '[':
+                    mPosition++;
+                    depth++;
+                    break;
+                case '}':
+                case ']':
+                    mPosition++;
+                    depth--;
+                    break;
+                case ',':
+                case ':':
+                    mPosition++;
+                    break;
+                case '"':
+                    mPosition++;
+                    skipStringContent();
+                    break;
+                case -1:
+                    throw syntaxError("Unexpected end of input");
+                default:
+                    skipLiteral();
+                    break;
+            }
+        } while (depth > 0);
+    }
+
+    private void skipStringContent() throws IOException {
+        while (true) {
+            if (mPosition == mLimit && !fill()) {
+                throw syntaxError("Unterminated string");
+            }
+            byte b = mBuffer[mPosition++];
+            if (b == '"') {
+                return;
+            }
+            if (b == '\\') {
+                if (mPosition == mLimit && !fill()) {
+                    throw syntaxError("Unterminated string");
+                }
+                mPosition++;
+            }
+        }
+    }
+
+    private void skipLiteral() throws IOException {
+        boolean empty = true;
+        while (mPosition < mLimit || fill()) {
+            if (isDelimiter(mBuffer[mPosition])) {
+                break;
+            }
+            mPosition++;
+            empty = false;
+        }
+        if (empty) {
+            throw syntaxError("Expected a value");
+        }
+    }
+
+    // Values
+
+    /**
+     * Read a string into the char buffer, decoding UTF-8 and escapes
+     *
+     * @throws IOException
+     */
+    private void readString() throws IOException {
+        expect('"');
+        mCharCount = 0;
+        while (true) {
+            if (mPosition == mLimit && !fill()) {
+                throw syntaxError("Unterminated string");
+            }
+            int b = mBuffer[mPosition++] & 0xFF;
+            if (b == '"') {
+                return;
+            }
+            if (b == '\\') {
+                appendChar(readEscape());
+            } else if (b < 0x80) {
+                appendChar((char) b);
+            } else {
+                appendCodePoint(readMultiByte(b));
+            }
+        }
+    }
+
+    private String readStringOrNull() throws IOException {
+        if (peek() != '"') {
+            skipValue();
+            return null;
+        }
+        readString();
+        return new String(mChars, 0, mCharCount);
+    }
+
+    private char readEscape() throws IOException {
+        int c = readByte();
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(readByte(), 16);
+                    if (digit < 0) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+                    value = value << 4 | digit;
+                }
+                return (char) value;
+            default:
+                // '"', '\\' and '/' stand for themselves
+                return (char) c;
+        }
+    }
+
+    private int readMultiByte(int first) throws IOException {
+        int count;
+        int codePoint;
+        if ((first & 0xE0) == 0xC0) {
+            count = 1;
+            codePoint = first & 0x1F;
+        } else if ((first & 0xF0) == 0xE0) {
+            count = 2;
+            codePoint = first & 0x0F;
+        } else if ((first & 0xF8) == 0xF0) {
+            count = 3;
+            codePoint = first & 0x07;
+        } else {
+            throw syntaxError("Invalid UTF-8");
+        }
+
+        for (int i = 0; i < count; i++) {
+            int next = readByte();
+            if ((next & 0xC0) != 0x80) {
+                throw syntaxError("Invalid UTF-8");
+            }
+            codePoint = codePoint << 6 | next & 0x3F;
+        }
+        return codePoint;
+    }
+
+    private float readFloat() throws IOException {
+        int c = peek();
+        if (c != '-' && (c < '0' || c > '9')) {
+            skipValue();
+            return 0f;
+        }
+
+        boolean negative = false;
+        if (c == '-') {
+            negative = true;
+            mPosition++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean fraction = false;
+        boolean exact = true;
+        mCharCount = 0;
+        while (mPosition < mLimit || fill()) {
+            int b = mBuffer[mPosition];
+            if (b >= '0' && b <= '9') {
+                if (digits < MAX_EXACT_DIGITS) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    if (fraction) {
+                        exponent--;
+                    }
+                } else {
+                    exact = false;
+                    if (!fraction) {
+                        exponent++;
+                    }
+                }
+            } else if (b == '.') {
+                fraction = true;
+            } else if (b == 'e' || b == 'E' || b == '+' || b == '-') {
+                exact = false;
+            } else {
+                break;
+            }
+            appendChar((char) b);
+            mPosition++;
+        }
+
+        if (!exact || exponent < -22) {
+            // Rare, leave the rounding to the platform
+            try {
+                float value = Float.parseFloat(new String(mChars, 0, mCharCount));
+                return negative ? -value : value;
+            } catch (NumberFormatException e) {
+                throw syntaxError("Invalid number");
+            }
+        }
+
+        double value = mantissa / POWERS_OF_TEN[-exponent];
+        return (float) (negative ? -value : value);
+    }
+
+    private boolean nameEquals(String name) {
+        if (name.length() != mCharCount) {
+            return false;
+        }
+        for (int i = 0; i < mCharCount; i++) {
+            if (mChars[i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void appendChar(char c) {
+        if (mCharCount == mChars.length) {
+            char[] chars = new char[mChars.length * 2];
+            System.arraycopy(mChars, 0, chars, 0, mCharCount);
+            mChars = chars;
+        }
+        mChars[mCharCount++] = c;
+    }
+
+    private void appendCodePoint(int codePoint) {
+        if (Character.isSupplementaryCodePoint(codePoint)) {
+            appendChar(Character.highSurrogate(codePoint));
+            appendChar(Character.lowSurrogate(codePoint));
+        } else {
+            appendChar((char) codePoint);
+        }
+    }
+
+    // Input
+
+    /**
+     * Get the next byte that is not whitespace, without consuming it
+     *
+     * @return the byte, -1 at the end of the input
+     * @throws IOException
+     */
+    private int peek() throws IOException {
+        while (mPosition < mLimit || fill()) {
+            byte b = mBuffer[mPosition];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return b;
+            }
+            mPosition++;
+        }
+        return -1;
+    }
+
+    private int readByte() throws IOException {
+        if (mPosition == mLimit && !fill()) {
+            throw syntaxError("Unexpected end of input");
+        }
+        return mBuffer[mPosition++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        mOffset += mLimit;
+        mPosition = 0;
+        mLimit = 0;
+        int read = mIn.read(mBuffer, 0, mBuffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        mLimit = read;
+        return true;
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return b == ',' || b == '}' || b == ']' || b == ':' || b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(message + " at byte " + (mOffset + mPosition) + " of the response");
+    }
+}
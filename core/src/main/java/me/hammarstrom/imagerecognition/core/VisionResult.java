@@ -0,0 +1,368 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.core;
+
+import java.util.Arrays;
+
+/**
+ * Result of an image analysis, independent of the backend that produced it.
+ *
+ * Labels and faces are kept in flat primitive arrays. Face vertices are
+ * stored as x, y pairs, {@link #VERTICES_PER_FACE} vertices per face, in
+ * the coordinates of an image of {@link #getImageWidth()} x
+ * {@link #getImageHeight()} pixels. Expressions are stored as likelihood
+ * codes, {@link #EXPRESSION_COUNT} per face. A result can carry the
+ * error the backend returned for the image, next to whatever it found,
+ * and the {@link CaptureDescriptor} of the capture it was analyzed from.
+ */
+public class VisionResult {
+
+    public static final byte LIKELIHOOD_UNKNOWN = 0;
+    public static final byte LIKELIHOOD_VERY_UNLIKELY = 1;
+    public static final byte LIKELIHOOD_UNLIKELY = 2;
+    public static final byte LIKELIHOOD_POSSIBLE = 3;
+    public static final byte LIKELIHOOD_LIKELY = 4;
+    public static final byte LIKELIHOOD_VERY_LIKELY = 5;
+
+    private static final String[] LIKELIHOOD_NAMES = {
+            "UNKNOWN", "VERY_UNLIKELY", "UNLIKELY", "POSSIBLE", "LIKELY", "VERY_LIKELY"
+    };
+
+    public static final int EXPRESSION_JOY = 0;
+    public static final int EXPRESSION_SORROW = 1;
+    public static final int EXPRESSION_ANGER = 2;
+    public static final int EXPRESSION_SURPRISE = 3;
+    public static final int EXPRESSION_COUNT = 4;
+
+    public static final int VERTICES_PER_FACE = 4;
+
+    public static final VisionResult EMPTY = new Builder().build();
+
+    private final String[] mLabelDescriptions;
+    private final float[] mLabelScores;
+    private final float[] mFaceVertices;
+    private final byte[] mFaceLikelihoods;
+    private final int mImageWidth;
+    private final int mImageHeight;
+    private final String mError;
+    private final CaptureDescriptor mCapture;
+
+    private VisionResult(Builder builder) {
+        mLabelDescriptions = Arrays.copyOf(builder.mLabelDescriptions, builder.mLabelCount);
+        mLabelScores = Arrays.copyOf(builder.mLabelScores, builder.mLabelCount);
+        mFaceVertices = Arrays.copyOf(builder.mFaceVertices, builder.mFaceCount * VERTICES_PER_FACE * 2);
+        mFaceLikelihoods = Arrays.copyOf(builder.mFaceLikelihoods, builder.mFaceCount * EXPRESSION_COUNT);
+        mImageWidth = builder.mImageWidth;
+        mImageHeight = builder.mImageHeight;
+        mError = builder.mError;
+        mCapture = null;
+    }
+
+    private VisionResult(VisionResult result, int imageWidth, int imageHeight, CaptureDescriptor capture) {
+        // The arrays are never modified, so they can be shared
+        mLabelDescriptions = result.mLabelDescriptions;
+        mLabelScores = result.mLabelScores;
+        mFaceVertices = result.mFaceVertices;
+        mFaceLikelihoods = result.mFaceLikelihoods;
+        mImageWidth = imageWidth;
+        mImageHeight = imageHeight;
+        mError = result.mError;
+        mCapture = capture;
+    }
+
+    /**
+     * Get this result for another image size, without copying it.
+     * A capture descriptor of another size is dropped.
+     *
+     * @param imageWidth Width of the image the face vertices refer to
+     * @param imageHeight Height of the image the face vertices refer to
+     * @return result with the given image size
+     */
+    public VisionResult withImageSize(int imageWidth, int imageHeight) {
+        if (imageWidth == mImageWidth && imageHeight == mImageHeight) {
+            return this;
+        }
+        return new VisionResult(this, imageWidth, imageHeight, null);
+    }
+
+    /**
+     * Get this result for a capture, without copying it. The image size
+     * is set to the scaled size of the capture.
+     *
+     * @param capture The capture the result was analyzed from
+     * @return result with the given capture
+     */
+    public VisionResult withCapture(CaptureDescriptor capture) {
+        if (capture.equals(mCapture)) {
+            return this;
+        }
+        ImageSize scaled = capture.getScaledSize();
+        return new VisionResult(this, scaled.getWidth(), scaled.getHeight(), capture);
+    }
+
+    public int getLabelCount() {
+        return mLabelScores.length;
+    }
+
+    public String getLabelDescription(int label) {
+        return mLabelDescriptions[label];
+    }
+
+    public float getLabelScore(int label) {
+        return mLabelScores[label];
+    }
+
+    public int getFaceCount() {
+        return mFaceLikelihoods.length / EXPRESSION_COUNT;
+    }
+
+    public float getFaceVertexX(int face, int vertex) {
+        return mFaceVertices[(face * VERTICES_PER_FACE + vertex) * 2];
+    }
+
+    public float getFaceVertexY(int face, int vertex) {
+        return mFaceVertices[(face * VERTICES_PER_FACE + vertex) * 2 + 1];
+    }
+
+    /**
+     * Get the vertices of all faces
+     *
+     * @return copy of the x, y pairs
+     */
+    public float[] getFaceVertices() {
+        return mFaceVertices.clone();
+    }
+
+    /**
+     * Copy the vertices of all faces without allocating
+     *
+     * @param out Array to copy the x, y pairs to
+     * @param offset Where in out to start
+     * @return number of values copied
+     */
+    public int getFaceVertices(float[] out, int offset) {
+        System.arraycopy(mFaceVertices, 0, out, offset, mFaceVertices.length);
+        return mFaceVertices.length;
+    }
+
+    /**
+     * Get the likelihood of an expression
+     *
+     * @param face The face
+     * @param expression One of the EXPRESSION constants
+     * @return one of the LIKELIHOOD constants
+     */
+    public byte getLikelihood(int face, int expression) {
+        return mFaceLikelihoods[face * EXPRESSION_COUNT + expression];
+    }
+
+    /**
+     * Get the width of the image the face vertices refer to
+     *
+     * @return width, 0 if unknown
+     */
+    public int getImageWidth() {
+        return mImageWidth;
+    }
+
+    /**
+     * Get the height of the image the face vertices refer to
+     *
+     * @return height, 0 if unknown
+     */
+    public int getImageHeight() {
+        return mImageHeight;
+    }
+
+    /**
+     * Get the capture the result was analyzed from
+     *
+     * @return capture, null if unknown
+     */
+    public CaptureDescriptor getCapture() {
+        return mCapture;
+    }
+
+    /**
+     * Get the error the backend returned for the image
+     *
+     * @return error message, null if the image was analyzed
+     */
+    public String getError() {
+        return mError;
+    }
+
+    public boolean hasError() {
+        return mError != null;
+    }
+
+    /**
+     * Check if a likelihood says that the expression may be there
+     *
+     * @param likelihood The likelihood
+     * @return true if possible or more likely
+     */
+    public static boolean isLikely(byte likelihood) {
+        return likelihood >= LIKELIHOOD_POSSIBLE;
+    }
+
+    /**
+     * Convert a Vision API likelihood name, ex. "VERY_LIKELY"
+     *
+     * @param name The name
+     * @return likelihood code, unknown if the name is not known
+     */
+    public static byte likelihoodFromName(String name) {
+        if (name != null) {
+            for (byte i = 0; i < LIKELIHOOD_NAMES.length; i++) {
+                if (LIKELIHOOD_NAMES[i].equals(name)) {
+                    return i;
+                }
+            }
+        }
+        return LIKELIHOOD_UNKNOWN;
+    }
+
+    public static String likelihoodName(byte likelihood) {
+        return LIKELIHOOD_NAMES[likelihood];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("VisionResult{labels=[");
+        for (int i = 0; i < getLabelCount(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(mLabelDescriptions[i]).append('=').append(mLabelScores[i]);
+        }
+        sb.append("], faces=").append(getFaceCount());
+        if (mError != null) {
+            sb.append(", error=").append(mError);
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Builder collecting labels and faces into the flat arrays
+     */
+    public static class Builder {
+
+        private String[] mLabelDescriptions = new String[0];
+        private float[] mLabelScores = new float[0];
+        private int mLabelCount;
+
+        private float[] mFaceVertices = new float[0];
+        private byte[] mFaceLikelihoods = new byte[0];
+        private int mFaceCount;
+
+        private int mImageWidth;
+        private int mImageHeight;
+        private String mError;
+
+        public Builder addLabel(String description, float score) {
+            if (mLabelCount == mLabelScores.length) {
+                int capacity = Math.max(8, mLabelCount * 2);
+                mLabelDescriptions = Arrays.copyOf(mLabelDescriptions, capacity);
+                mLabelScores = Arrays.copyOf(mLabelScores, capacity);
+            }
+            mLabelDescriptions[mLabelCount] = description;
+            mLabelScores[mLabelCount] = score;
+            mLabelCount++;
+            return this;
+        }
+
+        /**
+         * Add a face
+         *
+         * @param vertices x, y pairs of {@link #VERTICES_PER_FACE} vertices
+         * @param joy Joy likelihood
+         * @param sorrow Sorrow likelihood
+         * @param anger Anger likelihood
+         * @param surprise Surprise likelihood
+         * @return this builder
+         */
+        public Builder addFace(float[] vertices, byte joy, byte sorrow, byte anger, byte surprise) {
+            if (vertices.length != VERTICES_PER_FACE * 2) {
+                throw new IllegalArgumentException("A face needs " + VERTICES_PER_FACE + " vertices");
+            }
+
+            if (mFaceCount * EXPRESSION_COUNT == mFaceLikelihoods.length) {
+                int capacity = Math.max(4, mFaceCount * 2);
+                mFaceVertices = Arrays.copyOf(mFaceVertices, capacity * VERTICES_PER_FACE * 2);
+                mFaceLikelihoods = Arrays.copyOf(mFaceLikelihoods, capacity * EXPRESSION_COUNT);
+            }
+
+            System.arraycopy(vertices, 0, mFaceVertices, mFaceCount * VERTICES_PER_FACE * 2, vertices.length);
+            int offset = mFaceCount * EXPRESSION_COUNT;
+            mFaceLikelihoods[offset + EXPRESSION_JOY] = joy;
+            mFaceLikelihoods[offset + EXPRESSION_SORROW] = sorrow;
+            mFaceLikelihoods[offset + EXPRESSION_ANGER] = anger;
+            mFaceLikelihoods[offset + EXPRESSION_SURPRISE] = surprise;
+            mFaceCount++;
+            return this;
+        }
+
+        /**
+         * Add the faces of another result, ex. to merge local faces with cloud labels
+         *
+         * @param result The result
+         * @return this builder
+         */
+        public Builder addFaces(VisionResult result) {
+            float[] vertices = new float[VERTICES_PER_FACE * 2];
+            for (int i = 0; i < result.getFaceCount(); i++) {
+                System.arraycopy(result.mFaceVertices, i * vertices.length, vertices, 0, vertices.length);
+                addFace(vertices,
+                        result.getLikelihood(i, EXPRESSION_JOY),
+                        result.getLikelihood(i, EXPRESSION_SORROW),
+                        result.getLikelihood(i, EXPRESSION_ANGER),
+                        result.getLikelihood(i, EXPRESSION_SURPRISE));
+            }
+            return this;
+        }
+
+        public Builder setImageSize(int width, int height) {
+            mImageWidth = width;
+            mImageHeight = height;
+            return this;
+        }
+
+        public Builder setError(String error) {
+            mError = error;
+            return this;
+        }
+
+        /**
+         * Clear the builder so it can build another result, keeping its arrays
+         *
+         * @return this builder
+         */
+        public Builder reset() {
+            Arrays.fill(mLabelDescriptions, 0, mLabelCount, null);
+            mLabelCount = 0;
+            mFaceCount = 0;
+            mImageWidth = 0;
+            mImageHeight = 0;
+            mError = null;
+            return this;
+        }
+
+        public VisionResult build() {
+            return new VisionResult(this);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Compact binary form of a {@link VisionResult}, ex. for storing results on disk.
+ */
+public final class VisionResultCodec {
+
+    private static final int VERSION = 1;
+
+    private VisionResultCodec() {
+    }
+
+    public static void write(VisionResult result, DataOutput out) throws IOException {
+        out.writeByte(VERSION);
+        out.writeInt(result.getImageWidth());
+        out.writeInt(result.getImageHeight());
+
+        out.writeShort(result.getLabelCount());
+        for (int i = 0; i < result.getLabelCount(); i++) {
+            writeNullableString(result.getLabelDescription(i), out);
+            out.writeFloat(result.getLabelScore(i));
+        }
+
+        out.writeShort(result.getFaceCount());
+        for (int i = 0; i < result.getFaceCount(); i++) {
+            for (int v = 0; v < VisionResult.VERTICES_PER_FACE; v++) {
+                out.writeFloat(result.getFaceVertexX(i, v));
+                out.writeFloat(result.getFaceVertexY(i, v));
+            }
+            for (int e = 0; e < VisionResult.EXPRESSION_COUNT; e++) {
+                out.writeByte(result.getLikelihood(i, e));
+            }
+        }
+
+        writeNullableString(result.getError(), out);
+    }
+
+    /**
+     * Read a result written by {@link #write(VisionResult, DataOutput)}
+     *
+     * @param in The input
+     * @return the result
+     * @throws IOException if the input is not a result of this version
+     */
+    public static VisionResult read(DataInput in) throws IOException {
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version);
+        }
+
+        VisionResult.Builder builder = new VisionResult.Builder();
+        builder.setImageSize(in.readInt(), in.readInt());
+
+        int labelCount = in.readShort();
+        for (int i = 0; i < labelCount; i++) {
+            String description = readNullableString(in);
+            builder.addLabel(description, in.readFloat());
+        }
+
+        int faceCount = in.readShort();
+        float[] vertices = new float[VisionResult.VERTICES_PER_FACE * 2];
+        for (int i = 0; i < faceCount; i++) {
+            for (int v = 0; v < vertices.length; v++) {
+                vertices[v] = in.readFloat();
+            }
+            builder.addFace(vertices, readLikelihood(in), readLikelihood(in), readLikelihood(in), readLikelihood(in));
+        }
+
+        return builder.setError(readNullableString(in)).build();
+    }
+
+    private static byte readLikelihood(DataInput in) throws IOException {
+        byte likelihood = in.readByte();
+        if (likelihood < VisionResult.LIKELIHOOD_UNKNOWN || likelihood > VisionResult.LIKELIHOOD_VERY_LIKELY) {
+            throw new IOException("Invalid likelihood " + likelihood);
+        }
+        return likelihood;
+    }
+
+    private static void writeNullableString(String s, DataOutput out) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String readNullableString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
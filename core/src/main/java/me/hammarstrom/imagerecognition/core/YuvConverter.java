@@ -0,0 +1,115 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.core;
+
+/**
+ * Converts NV21 camera preview frames, the default preview format of
+ * {@code android.hardware.Camera}: a full resolution Y plane followed by
+ * interleaved V and U samples for each 2x2 block of pixels.
+ */
+public final class YuvConverter {
+
+    private YuvConverter() {
+    }
+
+    /**
+     * Get the size of an NV21 frame
+     *
+     * @param width The frame width
+     * @param height The frame height
+     * @return number of bytes
+     */
+    public static int nv21Size(int width, int height) {
+        return width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+    }
+
+    /**
+     * Convert an NV21 frame to ARGB, using the BT.601 video range coefficients
+     *
+     * @param nv21 The frame
+     * @param width The frame width
+     * @param height The frame height
+     * @param argb The converted pixels, at least width * height
+     */
+    public static void nv21ToArgb(byte[] nv21, int width, int height, int[] argb) {
+        checkFrame(nv21, width, height);
+        Resampler.checkSize(argb, width, height);
+
+        int chromaStart = width * height;
+        int chromaStride = (width + 1) / 2 * 2;
+
+        for (int y = 0; y < height; y++) {
+            int lumaRow = y * width;
+            int chromaRow = chromaStart + (y >> 1) * chromaStride;
+
+            for (int x = 0; x < width; x++) {
+                int c = chromaRow + (x & ~1);
+                int v = (nv21[c] & 0xFF) - 128;
+                int u = (nv21[c + 1] & 0xFF) - 128;
+                int l = Math.max(0, (nv21[lumaRow + x] & 0xFF) - 16) * 1192;
+
+                // 10 bit fixed point, 1.164 * 1024 = 1192 etc.
+                int r = l + 1634 * v;
+                int g = l - 833 * v - 400 * u;
+                int b = l + 2066 * u;
+
+                argb[lumaRow + x] = 0xFF000000 | clamp(r) << 16 | clamp(g) << 8 | clamp(b);
+            }
+        }
+    }
+
+    /**
+     * Copy the luma (Y) plane of an NV21 frame
+     *
+     * @param nv21 The frame
+     * @param width The frame width
+     * @param height The frame height
+     * @param luma The luma, at least width * height
+     */
+    public static void nv21ToLuma(byte[] nv21, int width, int height, byte[] luma) {
+        checkFrame(nv21, width, height);
+        System.arraycopy(nv21, 0, luma, 0, width * height);
+    }
+
+    /**
+     * Get the luma of ARGB pixels, using the BT.601 full range coefficients
+     *
+     * @param argb The pixels
+     * @param width The width
+     * @param height The height
+     * @param luma The luma, at least width * height
+     */
+    public static void argbToLuma(int[] argb, int width, int height, byte[] luma) {
+        Resampler.checkSize(argb, width, height);
+
+        for (int i = 0, n = width * height; i < n; i++) {
+            int p = argb[i];
+            // 0.299, 0.587 and 0.114 in 8 bit fixed point
+            luma[i] = (byte) ((77 * (p >> 16 & 0xFF) + 150 * (p >> 8 & 0xFF) + 29 * (p & 0xFF) + 128) >> 8);
+        }
+    }
+
+    private static int clamp(int fixed) {
+        int v = (fixed + 512) >> 10;
+        return v < 0 ? 0 : v > 255 ? 255 : v;
+    }
+
+    private static void checkFrame(byte[] nv21, int width, int height) {
+        if (width <= 0 || height <= 0 || nv21.length < nv21Size(width, height)) {
+            throw new IllegalArgumentException("Invalid NV21 frame " + width + "x" + height + " with " + nv21.length + " bytes");
+        }
+    }
+}
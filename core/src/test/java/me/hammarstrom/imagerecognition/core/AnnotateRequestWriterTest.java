@@ -0,0 +1,52 @@
+package me.hammarstrom.imagerecognition.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class AnnotateRequestWriterTest {
+
+    private static final AnnotateRequestWriter.JpegWriter FOO = new AnnotateRequestWriter.JpegWriter() {
+        @Override
+        public void writeJpeg(OutputStream out) throws IOException {
+            out.write("foo".getBytes("US-ASCII"));
+        }
+    };
+
+    @Test
+    public void requestWithOneImage() throws Exception {
+        AnnotateRequestWriter.Entry entry = new AnnotateRequestWriter.Entry(FOO,
+                new String[]{"LABEL_DETECTION", "FACE_DETECTION"}, new int[]{5, 0});
+
+        assertEquals("{\"requests\":[{\"image\":{\"content\":\"Zm9v\"},\"features\":["
+                        + "{\"type\":\"LABEL_DETECTION\",\"maxResults\":5},{\"type\":\"FACE_DETECTION\"}]}]}",
+                write(entry));
+    }
+
+    @Test
+    public void requestsAreSeparated() throws Exception {
+        AnnotateRequestWriter.Entry entry = new AnnotateRequestWriter.Entry(FOO,
+                new String[]{"LABEL_DETECTION"}, new int[]{1});
+
+        String json = write(entry, entry);
+
+        assertTrue(json.contains("]},{\"image\""));
+        assertTrue(json.endsWith("}]}]}"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void featureMismatchIsRejected() throws Exception {
+        new AnnotateRequestWriter.Entry(FOO, new String[]{"LABEL_DETECTION"}, new int[0]);
+    }
+
+    private static String write(AnnotateRequestWriter.Entry... entries) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AnnotateRequestWriter.write(out, Arrays.asList(entries));
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,79 @@
+package me.hammarstrom.imagerecognition.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class Base64OutputStreamTest {
+
+    @Test
+    public void rfc4648TestVectors() throws Exception {
+        assertEquals("", encode(""));
+        assertEquals("Zg==", encode("f"));
+        assertEquals("Zm8=", encode("fo"));
+        assertEquals("Zm9v", encode("foo"));
+        assertEquals("Zm9vYg==", encode("foob"));
+        assertEquals("Zm9vYmE=", encode("fooba"));
+        assertEquals("Zm9vYmFy", encode("foobar"));
+    }
+
+    @Test
+    public void chunkedWritesGiveSameOutput() throws Exception {
+        byte[] data = new byte[10007];
+        new Random(7).nextBytes(data);
+
+        ByteArrayOutputStream whole = new ByteArrayOutputStream();
+        Base64OutputStream base64 = new Base64OutputStream(whole);
+        base64.write(data);
+        base64.finish();
+
+        ByteArrayOutputStream chunked = new ByteArrayOutputStream();
+        base64 = new Base64OutputStream(chunked);
+        Random random = new Random(11);
+        int off = 0;
+        while (off < data.length) {
+            int len = Math.min(data.length - off, random.nextInt(9));
+            if (len == 1) {
+                base64.write(data[off]);
+            } else {
+                base64.write(data, off, len);
+            }
+            off += len;
+        }
+        base64.finish();
+
+        assertEquals(whole.toString("US-ASCII"), chunked.toString("US-ASCII"));
+        assertEquals(Base64OutputStream.encodedLength(data.length), whole.size());
+    }
+
+    @Test
+    public void finishDoesNotCloseUnderlyingStream() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Base64OutputStream base64 = new Base64OutputStream(out);
+        out.write('"');
+        base64.write("foo".getBytes("US-ASCII"));
+        base64.finish();
+        out.write('"');
+
+        assertEquals("\"Zm9v\"", out.toString("US-ASCII"));
+    }
+
+    @Test(expected = IOException.class)
+    public void writeAfterFinishIsRejected() throws Exception {
+        Base64OutputStream base64 = new Base64OutputStream(new ByteArrayOutputStream());
+        base64.finish();
+        base64.write(1);
+    }
+
+    private static String encode(String s) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Base64OutputStream base64 = new Base64OutputStream(out);
+        base64.write(s.getBytes("US-ASCII"));
+        base64.finish();
+        return out.toString("US-ASCII");
+    }
+}
@@ -0,0 +1,56 @@
+package me.hammarstrom.imagerecognition.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CaptureDescriptorTest {
+
+    @Test
+    public void rotationSwapsTheUprightSize() throws Exception {
+        CaptureDescriptor capture = CaptureDescriptor.uncropped(
+                new ImageSize(3264, 2448), 90, new ImageSize(825, 1100));
+
+        assertEquals(new ImageSize(2448, 3264), capture.getUprightSize());
+        assertEquals(new ImageSize(2448, 3264), capture.getCropSize());
+    }
+
+    @Test
+    public void pointsAreMappedBackToTheUprightCapture() throws Exception {
+        // 1200x1000 cropped to 1000x1000 and scaled to 500x500
+        CaptureDescriptor capture = new CaptureDescriptor(
+                new ImageSize(1200, 1000), 0, 100, 0, new ImageSize(500, 500));
+        float[] points = {-1, 0, 0, 250, 500, 500};
+
+        capture.mapToUpright(points, 2, 2);
+
+        assertArrayEquals(new float[]{-1, 0, 100, 500, 1100, 1000}, points, 0f);
+    }
+
+    @Test
+    public void resultTakesTheScaledSizeOfItsCapture() throws Exception {
+        VisionResult result = new VisionResult.Builder().setImageSize(640, 480).addLabel("dog", 0.9f).build();
+        CaptureDescriptor capture = CaptureDescriptor.uncropped(new ImageSize(4000, 3000), 0, new ImageSize(1100, 825));
+
+        VisionResult captured = result.withCapture(capture);
+
+        assertSame(capture, captured.getCapture());
+        assertEquals(1100, captured.getImageWidth());
+        assertEquals(825, captured.getImageHeight());
+        assertEquals("dog", captured.getLabelDescription(0));
+        assertNull(result.getCapture());
+        assertSame(captured, captured.withCapture(CaptureDescriptor.uncropped(
+                new ImageSize(4000, 3000), 0, new ImageSize(1100, 825))));
+        assertNull(captured.withImageSize(640, 480).getCapture());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void oddRotationFails() throws Exception {
+        CaptureDescriptor.uncropped(new ImageSize(640, 480), 45, new ImageSize(640, 480));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cropLargerThanCaptureFails() throws Exception {
+        new CaptureDescriptor(new ImageSize(640, 480), 90, 240, 0, new ImageSize(100, 100));
+    }
+}
@@ -0,0 +1,127 @@
+package me.hammarstrom.imagerecognition.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CaptureQueueTest {
+
+    private final List<String> mDelivered = new ArrayList<>();
+
+    private final CaptureQueue.Listener<String> mListener = new CaptureQueue.Listener<String>() {
+        @Override
+        public void onCaptureDelivered(int tag, String result) {
+            mDelivered.add(tag + ":" + result);
+        }
+    };
+
+    @Test
+    public void resultsAreHeldBackForEarlierCaptures() throws Exception {
+        CaptureQueue<String> queue = new CaptureQueue<>(4, CaptureQueue.ORDER_IN_ORDER, mListener);
+        int first = queue.submit();
+        int second = queue.submit();
+        int third = queue.submit();
+
+        queue.complete(third, "c");
+        queue.complete(second, "b");
+        assertTrue(mDelivered.isEmpty());
+        assertEquals(CaptureQueue.STATE_WAITING, queue.getState(second));
+
+        queue.complete(first, "a");
+        assertEquals(3, mDelivered.size());
+        assertEquals("0:a", mDelivered.get(0));
+        assertEquals("1:b", mDelivered.get(1));
+        assertEquals("2:c", mDelivered.get(2));
+        assertEquals(0, queue.getPendingCount());
+    }
+
+    @Test
+    public void failedCapturesAreSkippedInOrder() throws Exception {
+        CaptureQueue<String> queue = new CaptureQueue<>(4, CaptureQueue.ORDER_IN_ORDER, mListener);
+        int first = queue.submit();
+        int second = queue.submit();
+
+        queue.complete(second, "b");
+        queue.fail(first);
+
+        assertEquals(1, mDelivered.size());
+        assertEquals("1:b", mDelivered.get(0));
+        assertEquals(CaptureQueue.STATE_FAILED, queue.getState(first));
+    }
+
+    @Test
+    public void latestResultDropsOlderCaptures() throws Exception {
+        CaptureQueue<String> queue = new CaptureQueue<>(4, CaptureQueue.ORDER_LATEST_WINS, mListener);
+        int first = queue.submit();
+        int second = queue.submit();
+        int third = queue.submit();
+
+        queue.complete(second, "b");
+        queue.complete(first, "a");
+        queue.complete(third, "c");
+
+        assertEquals(2, mDelivered.size());
+        assertEquals("1:b", mDelivered.get(0));
+        assertEquals("2:c", mDelivered.get(1));
+        assertEquals(CaptureQueue.STATE_DROPPED, queue.getState(first));
+        assertEquals(0, queue.getPendingCount());
+    }
+
+    @Test
+    public void pendingCapturesAreBounded() throws Exception {
+        CaptureQueue<String> queue = new CaptureQueue<>(2, CaptureQueue.ORDER_IN_ORDER, mListener);
+        int first = queue.submit();
+        int second = queue.submit();
+        assertFalse(queue.canSubmit());
+
+        // A result waiting for an earlier capture still counts
+        queue.complete(second, "b");
+        assertFalse(queue.canSubmit());
+
+        queue.complete(first, "a");
+        assertTrue(queue.canSubmit());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void submittingToAFullQueueFails() throws Exception {
+        CaptureQueue<String> queue = new CaptureQueue<>(1, CaptureQueue.ORDER_IN_ORDER, mListener);
+        queue.submit();
+        queue.submit();
+    }
+
+    @Test
+    public void unsettledCapturesAreNotForgotten() throws Exception {
+        CaptureQueue<String> queue = new CaptureQueue<>(2, CaptureQueue.ORDER_LATEST_WINS, mListener);
+        int slow = queue.submit();
+        for (int i = 0; i < 3; i++) {
+            queue.fail(queue.submit());
+        }
+
+        // The next capture would take the place of the slow one
+        assertFalse(queue.canSubmit());
+        queue.complete(slow, "a");
+        assertTrue(queue.canSubmit());
+
+        queue.submit();
+        assertEquals(4, queue.getCaptureCount());
+        assertEquals(1, queue.getCaptureTag(0));
+        assertEquals(-1, queue.getState(slow));
+    }
+
+    @Test
+    public void unknownAndSettledCapturesAreIgnored() throws Exception {
+        CaptureQueue<String> queue = new CaptureQueue<>(2, CaptureQueue.ORDER_IN_ORDER, mListener);
+        int tag = queue.submit();
+        queue.complete(tag, "a");
+
+        queue.complete(tag, "again");
+        queue.fail(tag);
+        queue.complete(42, "unknown");
+
+        assertEquals(1, mDelivered.size());
+        assertEquals(CaptureQueue.STATE_DELIVERED, queue.getState(tag));
+    }
+}
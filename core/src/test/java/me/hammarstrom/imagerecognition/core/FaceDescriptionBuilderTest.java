@@ -0,0 +1,39 @@
+package me.hammarstrom.imagerecognition.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FaceDescriptionBuilderTest {
+
+    private static final float[] VERTICES = {0, 0, 10, 0, 10, 10, 0, 10};
+
+    private final FaceDescriptionBuilder mBuilder = new FaceDescriptionBuilder(
+            "... seems to be %s", "happy", "sad", "angry", "surprised", "... has no detected expression.");
+
+    @Test
+    public void singleFaceWithoutExpression() throws Exception {
+        VisionResult result = new VisionResult.Builder()
+                .addFace(VERTICES, VisionResult.LIKELIHOOD_UNLIKELY, VisionResult.LIKELIHOOD_UNKNOWN,
+                        VisionResult.LIKELIHOOD_VERY_UNLIKELY, VisionResult.LIKELIHOOD_UNLIKELY)
+                .build();
+
+        assertEquals("I think the image contains  1 face.... Face 1... has no detected expression.",
+                mBuilder.build(result));
+    }
+
+    @Test
+    public void expressionsAreListedInOrder() throws Exception {
+        VisionResult result = new VisionResult.Builder()
+                .addFace(VERTICES, VisionResult.LIKELIHOOD_VERY_LIKELY, VisionResult.LIKELIHOOD_UNLIKELY,
+                        VisionResult.LIKELIHOOD_UNLIKELY, VisionResult.LIKELIHOOD_POSSIBLE)
+                .addFace(VERTICES, VisionResult.LIKELIHOOD_UNLIKELY, VisionResult.LIKELIHOOD_LIKELY,
+                        VisionResult.LIKELIHOOD_UNLIKELY, VisionResult.LIKELIHOOD_UNLIKELY)
+                .build();
+
+        assertEquals("I think the image contains 2 faces"
+                        + "... Face 1... seems to be happy... seems to be surprised"
+                        + "... Face 2... seems to be sad",
+                mBuilder.build(result));
+    }
+}
@@ -0,0 +1,34 @@
+package me.hammarstrom.imagerecognition.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ImageSizeTest {
+
+    @Test
+    public void longestSideIsScaledToMax() throws Exception {
+        assertEquals(new ImageSize(1100, 825), new ImageSize(4000, 3000).scaleToMax(1100));
+        assertEquals(new ImageSize(825, 1100), new ImageSize(3000, 4000).scaleToMax(1100));
+        assertEquals(new ImageSize(1100, 1100), new ImageSize(500, 500).scaleToMax(1100));
+    }
+
+    @Test
+    public void rotationSwapsSides() throws Exception {
+        ImageSize size = new ImageSize(640, 480);
+
+        assertSame(size, size.rotate(0));
+        assertSame(size, size.rotate(180));
+        assertEquals(new ImageSize(480, 640), size.rotate(90));
+        assertEquals(new ImageSize(480, 640), size.rotate(270));
+    }
+
+    @Test
+    public void sampleSizeKeepsImageAboveMax() throws Exception {
+        assertEquals(1, ImageSize.calculateInSampleSize(1000, 800, 1100));
+        assertEquals(1, ImageSize.calculateInSampleSize(2199, 1000, 1100));
+        assertEquals(2, ImageSize.calculateInSampleSize(2200, 1000, 1100));
+        assertEquals(2, ImageSize.calculateInSampleSize(3000, 4000, 1100));
+        assertEquals(4, ImageSize.calculateInSampleSize(4400, 3300, 1100));
+    }
+}
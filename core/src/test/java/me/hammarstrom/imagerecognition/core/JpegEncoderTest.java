@@ -0,0 +1,115 @@
+package me.hammarstrom.imagerecognition.core;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+public class JpegEncoderTest {
+
+    @Test
+    public void encodedImageDecodesCloseToOriginal() throws Exception {
+        // Odd size, so the last blocks are padded
+        int width = 75;
+        int height = 41;
+        int[] argb = gradient(width, height);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JpegEncoder().encode(argb, width, height, 90, out);
+        byte[] jpeg = out.toByteArray();
+
+        assertEquals(0xFF, jpeg[0] & 0xFF);
+        assertEquals(0xD8, jpeg[1] & 0xFF);
+        assertEquals(0xFF, jpeg[jpeg.length - 2] & 0xFF);
+        assertEquals(0xD9, jpeg[jpeg.length - 1] & 0xFF);
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(jpeg));
+        assertNotNull(decoded);
+        assertEquals(width, decoded.getWidth());
+        assertEquals(height, decoded.getHeight());
+        assertTrue(psnr(argb, decoded) > 30);
+    }
+
+    @Test
+    public void lowerQualityGivesSmallerJpeg() throws Exception {
+        int[] argb = gradient(128, 96);
+        JpegEncoder encoder = new JpegEncoder();
+
+        ByteArrayOutputStream high = new ByteArrayOutputStream();
+        encoder.encode(argb, 128, 96, 95, high);
+        ByteArrayOutputStream low = new ByteArrayOutputStream();
+        encoder.encode(argb, 128, 96, 30, low);
+
+        assertTrue(low.size() < high.size());
+        assertNotNull(ImageIO.read(new ByteArrayInputStream(low.toByteArray())));
+    }
+
+    @Test
+    public void headerIsReadableByJpegHeaderParsers() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JpegEncoder().encode(gradient(33, 17), 33, 17, 80, out);
+        byte[] jpeg = out.toByteArray();
+
+        // SOF0 after SOI, APP0, DQT: 2 + 18 + 134 bytes
+        int sof = 2 + 18 + 134;
+        assertEquals(0xC0, jpeg[sof + 1] & 0xFF);
+        assertEquals(17, (jpeg[sof + 5] & 0xFF) << 8 | jpeg[sof + 6] & 0xFF);
+        assertEquals(33, (jpeg[sof + 7] & 0xFF) << 8 | jpeg[sof + 8] & 0xFF);
+    }
+
+    @Test
+    public void base64PathEncodesTheSameJpeg() throws Exception {
+        int[] argb = gradient(40, 30);
+        JpegEncoder encoder = new JpegEncoder();
+
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        encoder.encode(argb, 40, 30, 85, jpeg);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        Base64OutputStream base64 = new Base64OutputStream(expected);
+        base64.write(jpeg.toByteArray());
+        base64.finish();
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        encoder.encodeBase64(argb, 40, 30, 85, actual);
+
+        assertEquals(expected.toString("US-ASCII"), actual.toString("US-ASCII"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidQualityIsRejected() throws Exception {
+        new JpegEncoder().encode(new int[4], 2, 2, 0, new ByteArrayOutputStream());
+    }
+
+    private static int[] gradient(int width, int height) {
+        int[] argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = x * 255 / width;
+                int g = y * 255 / height;
+                int b = (x + y) * 255 / (width + height);
+                argb[y * width + x] = 0xFF000000 | r << 16 | g << 8 | b;
+            }
+        }
+        return argb;
+    }
+
+    private static double psnr(int[] argb, BufferedImage image) {
+        double sum = 0;
+        int width = image.getWidth();
+        for (int i = 0; i < argb.length; i++) {
+            int a = argb[i];
+            int b = image.getRGB(i % width, i / width);
+            for (int shift = 0; shift <= 16; shift += 8) {
+                int d = (a >> shift & 0xFF) - (b >> shift & 0xFF);
+                sum += d * d;
+            }
+        }
+        double mse = sum / (argb.length * 3);
+        return 10 * Math.log10(255 * 255 / mse);
+    }
+}
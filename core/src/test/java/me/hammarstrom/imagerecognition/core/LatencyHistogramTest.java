@@ -0,0 +1,91 @@
+package me.hammarstrom.imagerecognition.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void emptyHistogram() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(-1f, histogram.getPercentileMs(50), 0f);
+        assertEquals(0f, histogram.getMeanMs(), 0f);
+    }
+
+    @Test
+    public void bucketsCoverEveryDuration() throws Exception {
+        int last = -1;
+        for (long us = 0; us < 1 << 20; us += 1 + us / 64) {
+            int index = LatencyHistogram.bucketIndex(us);
+            assertTrue(index >= last);
+            assertTrue(us < LatencyHistogram.bucketUpperBoundUs(index));
+            last = index;
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE / 1000));
+    }
+
+    @Test
+    public void percentilesAreWithinBucketResolution() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * MS);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50.5f, histogram.getMeanMs(), 0.001f);
+        assertEquals(100f, histogram.getMaxMs(), 0f);
+
+        float p50 = histogram.getPercentileMs(50);
+        assertTrue(p50 >= 50f && p50 <= 50f * 1.25f);
+        float p90 = histogram.getPercentileMs(90);
+        assertTrue(p90 >= 90f && p90 <= 90f * 1.25f);
+        assertEquals(100f, histogram.getPercentileMs(99), 0f);
+    }
+
+    @Test
+    public void negativeDurationsAreIgnored() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    public void concurrentRecordsAreCounted() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.record(i * 1000L);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40000, histogram.getCount());
+        assertEquals(9.999f, histogram.getMaxMs(), 0.0001f);
+    }
+
+    @Test
+    public void resetClearsEverything() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(3 * MS);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0f, histogram.getMaxMs(), 0f);
+        assertEquals(-1f, histogram.getPercentileMs(99), 0f);
+    }
+}
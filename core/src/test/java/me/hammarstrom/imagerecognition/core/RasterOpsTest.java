@@ -0,0 +1,61 @@
+package me.hammarstrom.imagerecognition.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RasterOpsTest {
+
+    // 3x2
+    private static final int[] SRC = {
+            1, 2, 3,
+            4, 5, 6
+    };
+
+    @Test
+    public void cropCopiesRectangle() throws Exception {
+        int[] dst = new int[2];
+
+        RasterOps.crop(SRC, 3, 2, 1, 1, dst, 2, 1);
+
+        assertArrayEquals(new int[]{5, 6}, dst);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cropOutsideIsRejected() throws Exception {
+        RasterOps.crop(SRC, 3, 2, 2, 0, new int[4], 2, 2);
+    }
+
+    @Test
+    public void rotateClockwise() throws Exception {
+        int[] dst = new int[6];
+
+        RasterOps.rotate(SRC, 3, 2, 90, dst);
+        assertArrayEquals(new int[]{
+                4, 1,
+                5, 2,
+                6, 3
+        }, dst);
+
+        RasterOps.rotate(SRC, 3, 2, 180, dst);
+        assertArrayEquals(new int[]{
+                6, 5, 4,
+                3, 2, 1
+        }, dst);
+
+        RasterOps.rotate(SRC, 3, 2, 270, dst);
+        assertArrayEquals(new int[]{
+                3, 6,
+                2, 5,
+                1, 4
+        }, dst);
+
+        RasterOps.rotate(SRC, 3, 2, 0, dst);
+        assertArrayEquals(SRC, dst);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void oddRotationIsRejected() throws Exception {
+        RasterOps.rotate(SRC, 3, 2, 45, new int[6]);
+    }
+}
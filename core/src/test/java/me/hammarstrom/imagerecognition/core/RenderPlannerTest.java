@@ -0,0 +1,93 @@
+package me.hammarstrom.imagerecognition.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RenderPlannerTest {
+
+    private static final float[] VERTICES = {100, 50, 300, 50, 300, 250, 100, 250};
+
+    // Every character is 10 px wide and the text 20 px high
+    private static final RenderPlanner.TextMeasurer MEASURER = new RenderPlanner.TextMeasurer() {
+        @Override
+        public void measure(String text, int[] out, int offset) {
+            out[offset] = text.length() * 10;
+            out[offset + 1] = 20;
+        }
+    };
+
+    private final RenderPlanner mPlanner = new RenderPlanner(0.6f, "The image may contain ", MEASURER,
+            new FaceDescriptionBuilder("... seems to be %s", "happy", "sad", "angry", "surprised", "... no expression."));
+
+    @Test
+    public void labelsBelowMinScoreAreLeftOut() throws Exception {
+        VisionResult result = new VisionResult.Builder()
+                .addLabel("person", 0.93f)
+                .addLabel("chair", 0.4f)
+                .addLabel("laptop", 0.6f)
+                .build();
+
+        RenderPlan plan = mPlanner.plan(result, null);
+
+        assertTrue(plan.hasLabels());
+        assertEquals(2, plan.getLabelCount());
+        assertEquals("person", plan.getLabelDescription(0));
+        assertEquals(0.93f, plan.getLabelScore(0), 0f);
+        assertEquals(60, plan.getLabelTextWidth(0));
+        assertEquals(20, plan.getLabelTextHeight(0));
+        assertEquals("laptop", plan.getLabelDescription(1));
+        assertEquals("The image may contain person, laptop, ", plan.getLabelUtterance());
+        assertEquals("", plan.getFacesUtterance());
+        assertEquals(0, plan.getFaceCount());
+    }
+
+    @Test
+    public void nothingIsSaidWithoutLabels() throws Exception {
+        RenderPlan plan = mPlanner.plan(VisionResult.EMPTY, null);
+
+        assertFalse(plan.hasLabels());
+        assertEquals("", plan.getLabelUtterance());
+        assertEquals("", plan.getFacesUtterance());
+    }
+
+    @Test
+    public void lowScoresStillGetTheIntro() throws Exception {
+        RenderPlan plan = mPlanner.plan(new VisionResult.Builder().addLabel("chair", 0.1f).build(), null);
+
+        assertTrue(plan.hasLabels());
+        assertEquals(0, plan.getLabelCount());
+        assertEquals("The image may contain ", plan.getLabelUtterance());
+    }
+
+    @Test
+    public void facesOfTheResultAreDrawnAndSpoken() throws Exception {
+        VisionResult result = new VisionResult.Builder()
+                .setImageSize(400, 500)
+                .addFace(VERTICES, VisionResult.LIKELIHOOD_LIKELY, VisionResult.LIKELIHOOD_UNLIKELY,
+                        VisionResult.LIKELIHOOD_UNLIKELY, VisionResult.LIKELIHOOD_UNLIKELY)
+                .build()
+                .withCapture(CaptureDescriptor.uncropped(new ImageSize(2000, 1600), 90, new ImageSize(400, 500)));
+
+        RenderPlan plan = mPlanner.plan(result, null);
+
+        assertEquals(result.getCapture(), plan.getCapture());
+        assertEquals(1, plan.getFaceCount());
+        assertArrayEquals(VERTICES, plan.getFaceVertices(), 0f);
+        assertEquals("I think the image contains  1 face.... Face 1... seems to be happy", plan.getFacesUtterance());
+    }
+
+    @Test
+    public void otherFacesAreSpokenButNotDrawn() throws Exception {
+        VisionResult localFaces = new VisionResult.Builder()
+                .setImageSize(400, 500)
+                .addFace(VERTICES, VisionResult.LIKELIHOOD_UNLIKELY, VisionResult.LIKELIHOOD_UNLIKELY,
+                        VisionResult.LIKELIHOOD_UNLIKELY, VisionResult.LIKELIHOOD_UNLIKELY)
+                .build();
+
+        RenderPlan plan = mPlanner.plan(VisionResult.EMPTY, localFaces);
+
+        assertEquals(0, plan.getFaceCount());
+        assertEquals("I think the image contains  1 face.... Face 1... no expression.", plan.getFacesUtterance());
+    }
+}
@@ -0,0 +1,72 @@
+package me.hammarstrom.imagerecognition.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ResamplerTest {
+
+    @Test
+    public void areaDownscaleAveragesBlocks() throws Exception {
+        // 4x2 with two 2x2 blocks, black and white
+        int black = 0xFF000000;
+        int white = 0xFFFFFFFF;
+        int[] src = {
+                black, black, white, white,
+                black, black, white, white
+        };
+        int[] dst = new int[2];
+
+        Resampler.downscaleArea(src, 4, 2, dst, 2, 1);
+
+        assertArrayEquals(new int[]{black, white}, dst);
+    }
+
+    @Test
+    public void areaDownscaleHandlesFractionalCoverage() throws Exception {
+        int[] src = {0xFF000000, 0xFF000000, 0xFFFFFFFF};
+        int[] dst = new int[2];
+
+        Resampler.downscaleArea(src, 3, 1, dst, 2, 1);
+
+        // The first pixel covers 1.5 black pixels, the second half a black and a white pixel
+        assertEquals(0xFF000000, dst[0]);
+        assertEquals(0xFFAAAAAA, dst[1]);
+    }
+
+    @Test
+    public void uniformImageStaysUniform() throws Exception {
+        int[] src = new int[97 * 61];
+        Arrays.fill(src, 0xFF336699);
+        int[] area = new int[40 * 25];
+        int[] bilinear = new int[40 * 25];
+
+        Resampler.downscaleArea(src, 97, 61, area, 40, 25);
+        Resampler.scaleBilinear(src, 97, 61, bilinear, 40, 25);
+
+        for (int i = 0; i < area.length; i++) {
+            assertEquals(0xFF336699, area[i]);
+            assertEquals(0xFF336699, bilinear[i]);
+        }
+    }
+
+    @Test
+    public void bilinearInterpolatesBetweenPixels() throws Exception {
+        int[] src = {0xFF000000, 0xFF0000FF};
+        int[] dst = new int[4];
+
+        Resampler.scaleBilinear(src, 2, 1, dst, 4, 1);
+
+        assertEquals(0x00, dst[0] & 0xFF);
+        assertEquals(0x40, dst[1] & 0xFF);
+        assertEquals(0xBF, dst[2] & 0xFF);
+        assertEquals(0xFF, dst[3] & 0xFF);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooSmallDestinationIsRejected() throws Exception {
+        Resampler.downscaleArea(new int[16], 4, 4, new int[3], 2, 2);
+    }
+}
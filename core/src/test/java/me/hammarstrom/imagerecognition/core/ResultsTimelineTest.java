@@ -0,0 +1,37 @@
+package me.hammarstrom.imagerecognition.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ResultsTimelineTest {
+
+    @Test
+    public void labelsEnterOneAfterAnother() throws Exception {
+        assertEquals(0.5f, ResultsTimeline.getEnterFraction(0, 150), 0f);
+        assertEquals(0f, ResultsTimeline.getEnterFraction(1, 150), 0f);
+
+        assertEquals(1f, ResultsTimeline.getEnterFraction(0, 450), 0f);
+        assertEquals(0.5f, ResultsTimeline.getEnterFraction(1, 450), 0f);
+        assertEquals(0f, ResultsTimeline.getEnterFraction(2, 450), 0f);
+    }
+
+    @Test
+    public void scoresCountUpWhenAllLabelsHaveEntered() throws Exception {
+        assertEquals(0f, ResultsTimeline.getScoreFraction(3, 900), 0f);
+        assertEquals(0.5f, ResultsTimeline.getScoreFraction(3, 1050), 0f);
+        assertEquals(1f, ResultsTimeline.getScoreFraction(3, 1200), 0f);
+        assertEquals(1200, ResultsTimeline.getDuration(3));
+    }
+
+    @Test
+    public void interpolationsStartAndEndInPlace() throws Exception {
+        assertEquals(0f, ResultsTimeline.overshoot(0f), 0.0001f);
+        assertEquals(1f, ResultsTimeline.overshoot(1f), 0.0001f);
+        assertTrue(ResultsTimeline.overshoot(0.8f) > 1f);
+
+        assertEquals(0f, ResultsTimeline.accelerateDecelerate(0f), 0.0001f);
+        assertEquals(0.5f, ResultsTimeline.accelerateDecelerate(0.5f), 0.0001f);
+        assertEquals(1f, ResultsTimeline.accelerateDecelerate(1f), 0.0001f);
+    }
+}
@@ -0,0 +1,93 @@
+package me.hammarstrom.imagerecognition.core;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ScoreGaugeTest {
+
+    // A 300 ms animation at 60 frames per second
+    private static final int FRAMES_PER_ANIMATION = 18;
+
+    @Test
+    public void scoresAreFormattedLikeStringFormat() throws Exception {
+        char[] text = new char[ScoreGauge.MAX_TEXT_LENGTH];
+        Random random = new Random(42);
+        for (int i = 0; i <= 20000; i++) {
+            float value = i <= 10000 ? i / 10000f : random.nextFloat();
+            int length = ScoreGauge.formatScore(value, '0', '.', text, 0);
+            assertEquals(String.format(Locale.US, "%.2f", value), new String(text, 0, length));
+        }
+    }
+
+    @Test
+    public void localeSymbolsAreUsed() throws Exception {
+        char[] text = new char[ScoreGauge.MAX_TEXT_LENGTH];
+        int length = ScoreGauge.formatScore(0.93f, '٠', '٫', text, 0);
+
+        assertEquals("٠٫٩٣", new String(text, 0, length));
+    }
+
+    @Test
+    public void progressDrivesSweepAndText() throws Exception {
+        ScoreGauge gauge = new ScoreGauge('0', ',');
+        gauge.setScore(0.8f);
+
+        assertEquals("0,00", text(gauge));
+        assertEquals(0f, gauge.getSweepAngle(), 0f);
+
+        gauge.setProgress(0.5f);
+        assertEquals("0,40", text(gauge));
+        assertEquals(144f, gauge.getSweepAngle(), 0.001f);
+
+        gauge.setProgress(1f);
+        assertEquals("0,80", text(gauge));
+        assertEquals(288f, gauge.getSweepAngle(), 0.001f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void scoreOutOfRangeFails() throws Exception {
+        new ScoreGauge('0', '.').setScore(1.5f);
+    }
+
+    @Test
+    public void animatingDoesNotAllocate() throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        if (!allocations.isThreadAllocatedMemorySupported() || !allocations.isThreadAllocatedMemoryEnabled()) {
+            return;
+        }
+
+        ScoreGauge gauge = new ScoreGauge('0', '.');
+        animate(gauge, 1000);
+
+        long threadId = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        animate(gauge, 1000);
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        // Reading the counter may allocate a little itself, a format per frame would be ~1 MB
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static void animate(ScoreGauge gauge, int animations) {
+        for (int a = 0; a < animations; a++) {
+            gauge.setScore((a % 100) / 100f);
+            for (int frame = 0; frame <= FRAMES_PER_ANIMATION; frame++) {
+                gauge.setProgress(frame / (float) FRAMES_PER_ANIMATION);
+            }
+        }
+    }
+
+    private static String text(ScoreGauge gauge) {
+        return new String(gauge.getText(), 0, gauge.getTextLength());
+    }
+}
@@ -0,0 +1,167 @@
+package me.hammarstrom.imagerecognition.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class VisionResponseParserTest {
+
+    private static final String FACE = "{\"boundingPoly\":{\"vertices\":[{\"x\":1},{\"x\":2},{\"x\":3},{\"x\":4}]},"
+            + "\"fdBoundingPoly\":{\"vertices\":[{\"x\":120,\"y\":80},{\"x\":260,\"y\":80},{\"x\":260,\"y\":230},{\"y\":230}]},"
+            + "\"landmarks\":[{\"type\":\"LEFT_EYE\",\"position\":{\"x\":150.5,\"y\":120.25,\"z\":-0.5}}],"
+            + "\"rollAngle\":-3.25,\"detectionConfidence\":0.98,"
+            + "\"joyLikelihood\":\"VERY_LIKELY\",\"sorrowLikelihood\":\"VERY_UNLIKELY\","
+            + "\"angerLikelihood\":\"UNLIKELY\",\"surpriseLikelihood\":\"POSSIBLE\",\"headwearLikelihood\":\"LIKELY\"}";
+
+    private final VisionResponseParser mParser = new VisionResponseParser();
+
+    @Test
+    public void labelsAndFacesAreRead() throws Exception {
+        List<VisionResult> results = parse("{\n  \"responses\": [\n    {\n"
+                + "      \"labelAnnotations\": [\n"
+                + "        {\"mid\": \"/m/079d67\", \"description\": \"person\", \"score\": 0.93},\n"
+                + "        {\"mid\": \"/m/0bd6ac\", \"description\": \"laptop\", \"score\": 0.8412}\n"
+                + "      ],\n"
+                + "      \"faceAnnotations\": [" + FACE + "]\n"
+                + "    }\n  ]\n}\n");
+
+        assertEquals(1, results.size());
+        VisionResult result = results.get(0);
+        assertEquals(2, result.getLabelCount());
+        assertEquals("person", result.getLabelDescription(0));
+        assertEquals(0.93f, result.getLabelScore(0), 0f);
+        assertEquals("laptop", result.getLabelDescription(1));
+        assertEquals(0.8412f, result.getLabelScore(1), 0f);
+
+        assertEquals(1, result.getFaceCount());
+        assertArrayEquals(new float[]{120, 80, 260, 80, 260, 230, 0, 230}, result.getFaceVertices(), 0f);
+        assertEquals(VisionResult.LIKELIHOOD_VERY_LIKELY, result.getLikelihood(0, VisionResult.EXPRESSION_JOY));
+        assertEquals(VisionResult.LIKELIHOOD_VERY_UNLIKELY, result.getLikelihood(0, VisionResult.EXPRESSION_SORROW));
+        assertEquals(VisionResult.LIKELIHOOD_UNLIKELY, result.getLikelihood(0, VisionResult.EXPRESSION_ANGER));
+        assertEquals(VisionResult.LIKELIHOOD_POSSIBLE, result.getLikelihood(0, VisionResult.EXPRESSION_SURPRISE));
+        assertFalse(result.hasError());
+    }
+
+    @Test
+    public void everyImageGetsAResultInOrder() throws Exception {
+        List<VisionResult> results = parse("{\"responses\":[{\"labelAnnotations\":[{\"description\":\"a\",\"score\":1}]},"
+                + "{},{\"labelAnnotations\":[{\"description\":\"c\",\"score\":0.5}]}]}");
+
+        assertEquals(3, results.size());
+        assertEquals("a", results.get(0).getLabelDescription(0));
+        assertEquals(0, results.get(1).getLabelCount());
+        assertEquals(0, results.get(1).getFaceCount());
+        assertEquals("c", results.get(2).getLabelDescription(0));
+    }
+
+    @Test
+    public void errorsAreKeptPerImage() throws Exception {
+        List<VisionResult> results = parse("{\"responses\":[{\"error\":{\"code\":3,\"message\":\"Bad image data.\"}},"
+                + "{\"labelAnnotations\":[{\"description\":\"dog\",\"score\":0.9}]}]}");
+
+        assertEquals("Bad image data.", results.get(0).getError());
+        assertFalse(results.get(1).hasError());
+    }
+
+    @Test
+    public void facesWithoutCompleteBoundsAreSkipped() throws Exception {
+        List<VisionResult> results = parse("{\"responses\":[{\"faceAnnotations\":["
+                + "{\"fdBoundingPoly\":{\"vertices\":[{\"x\":1},{\"x\":2}]},\"joyLikelihood\":\"LIKELY\"},"
+                + "{\"joyLikelihood\":\"LIKELY\"},"
+                + "{\"fdBoundingPoly\":null}," + FACE + "]}]}");
+
+        assertEquals(1, results.get(0).getFaceCount());
+        assertEquals(120f, results.get(0).getFaceVertexX(0, 0), 0f);
+    }
+
+    @Test
+    public void nullsAndUnknownValuesAreTolerated() throws Exception {
+        List<VisionResult> results = parse("{\"responses\":[{\"labelAnnotations\":[{\"description\":null,\"score\":null},"
+                + "null],\"faceAnnotations\":null,\"textAnnotations\":[{\"a\":[1,2,{\"b\":true}]}]}],\"extra\":false}");
+
+        VisionResult result = results.get(0);
+        assertEquals(1, result.getLabelCount());
+        assertNull(result.getLabelDescription(0));
+        assertEquals(0f, result.getLabelScore(0), 0f);
+        assertEquals(0, result.getFaceCount());
+    }
+
+    @Test
+    public void escapesAndUtf8AreDecoded() throws Exception {
+        List<VisionResult> results = parse("{\"responses\":[{\"labelAnnotations\":["
+                + "{\"description\":\"café \\\"\\u00e5\\\" \\\\ \\/ 🐶\",\"score\":0.5}]}]}");
+
+        assertEquals("café \"å\" \\ / 🐶", results.get(0).getLabelDescription(0));
+    }
+
+    @Test
+    public void numbersAreParsedLikeTheJdk() throws Exception {
+        String[] numbers = {"0", "1", "-2", "0.5", "0.0012", "123.456", "0.93000001", "1e2", "2.5E-3", "-0.75",
+                "0.12345678901234567890", "12345678901234567890"};
+        for (String number : numbers) {
+            List<VisionResult> results = parse("{\"responses\":[{\"labelAnnotations\":[{\"score\":" + number + "}]}]}");
+            assertEquals(number, Float.parseFloat(number), results.get(0).getLabelScore(0), 0f);
+        }
+    }
+
+    @Test
+    public void valuesSpanningBufferBoundariesAreRead() throws Exception {
+        // Skipped content much larger than the read buffer, read back a few bytes at a time
+        char[] padding = new char[20000];
+        Arrays.fill(padding, 'x');
+        StringBuilder json = new StringBuilder("{\"responses\":[{\"labelAnnotations\":[");
+        for (int i = 0; i < 200; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"mid\":\"").append(padding, 0, i * 7).append("\",\"description\":\"label ")
+                    .append(i).append("\",\"score\":0.").append(i).append('}');
+        }
+        json.append("]}]}");
+
+        InputStream in = new ByteArrayInputStream(json.toString().getBytes("UTF-8")) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 13));
+            }
+        };
+        VisionResult result = mParser.parse(in).get(0);
+
+        assertEquals(200, result.getLabelCount());
+        assertEquals("label 199", result.getLabelDescription(199));
+        assertEquals(Float.parseFloat("0.199"), result.getLabelScore(199), 0f);
+    }
+
+    @Test
+    public void parserCanBeReused() throws Exception {
+        VisionResult first = parse("{\"responses\":[{\"labelAnnotations\":[{\"description\":\"a\",\"score\":1}],"
+                + "\"faceAnnotations\":[" + FACE + "]}]}").get(0);
+        VisionResult second = parse("{\"responses\":[{\"labelAnnotations\":[{\"description\":\"b\",\"score\":1}]}]}").get(0);
+
+        assertEquals("a", first.getLabelDescription(0));
+        assertEquals(1, first.getFaceCount());
+        assertEquals("b", second.getLabelDescription(0));
+        assertEquals(1, second.getLabelCount());
+        assertEquals(0, second.getFaceCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedResponseFails() throws Exception {
+        parse("{\"responses\":[{\"labelAnnotations\":[{\"description\":\"a\",\"sco");
+    }
+
+    @Test(expected = IOException.class)
+    public void nonJsonFails() throws Exception {
+        parse("<html>Bad gateway</html>");
+    }
+
+    private List<VisionResult> parse(String json) throws IOException {
+        return mParser.parse(new ByteArrayInputStream(json.getBytes("UTF-8")));
+    }
+}
@@ -0,0 +1,62 @@
+package me.hammarstrom.imagerecognition.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class VisionResultCodecTest {
+
+    @Test
+    public void resultSurvivesRoundTrip() throws Exception {
+        VisionResult result = new VisionResult.Builder()
+                .setImageSize(1100, 825)
+                .addLabel("person", 0.93f)
+                .addLabel(null, 0.5f)
+                .addFace(new float[]{1, 2, 3, 4, 5, 6, 7, 8}, VisionResult.LIKELIHOOD_VERY_LIKELY,
+                        VisionResult.LIKELIHOOD_UNLIKELY, VisionResult.LIKELIHOOD_UNKNOWN, VisionResult.LIKELIHOOD_POSSIBLE)
+                .build();
+
+        VisionResult read = roundTrip(result);
+
+        assertEquals(1100, read.getImageWidth());
+        assertEquals(825, read.getImageHeight());
+        assertEquals(2, read.getLabelCount());
+        assertEquals("person", read.getLabelDescription(0));
+        assertEquals(0.93f, read.getLabelScore(0), 0f);
+        assertNull(read.getLabelDescription(1));
+        assertEquals(1, read.getFaceCount());
+        assertArrayEquals(result.getFaceVertices(), read.getFaceVertices(), 0f);
+        float[] vertices = new float[10];
+        assertEquals(8, read.getFaceVertices(vertices, 2));
+        assertArrayEquals(new float[]{0, 0, 1, 2, 3, 4, 5, 6, 7, 8}, vertices, 0f);
+        for (int e = 0; e < VisionResult.EXPRESSION_COUNT; e++) {
+            assertEquals(result.getLikelihood(0, e), read.getLikelihood(0, e));
+        }
+        assertNull(read.getError());
+    }
+
+    @Test
+    public void errorSurvivesRoundTrip() throws Exception {
+        VisionResult read = roundTrip(new VisionResult.Builder().setError("Bad image data.").build());
+
+        assertEquals("Bad image data.", read.getError());
+        assertEquals(0, read.getLabelCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownVersionFails() throws Exception {
+        VisionResultCodec.read(new DataInputStream(new ByteArrayInputStream(new byte[]{42, 0, 0, 0})));
+    }
+
+    private static VisionResult roundTrip(VisionResult result) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        VisionResultCodec.write(result, new DataOutputStream(bytes));
+        return VisionResultCodec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+}
@@ -0,0 +1,81 @@
+package me.hammarstrom.imagerecognition.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class YuvConverterTest {
+
+    private static final int WIDTH = 6;
+    private static final int HEIGHT = 4;
+
+    @Test
+    public void grayFrameConvertsToGray() throws Exception {
+        byte[] nv21 = frame(16 + 110, 128, 128);
+        int[] argb = new int[WIDTH * HEIGHT];
+
+        YuvConverter.nv21ToArgb(nv21, WIDTH, HEIGHT, argb);
+
+        // 110 * 1.164
+        for (int p : argb) {
+            assertEquals(0xFF808080, p);
+        }
+    }
+
+    @Test
+    public void chromaIsApplied() throws Exception {
+        // Pure red in BT.601 video range
+        byte[] nv21 = frame(81, 90, 240);
+        int[] argb = new int[WIDTH * HEIGHT];
+
+        YuvConverter.nv21ToArgb(nv21, WIDTH, HEIGHT, argb);
+
+        int p = argb[0];
+        assertTrue((p >> 16 & 0xFF) > 250);
+        assertTrue((p >> 8 & 0xFF) < 5);
+        assertTrue((p & 0xFF) < 5);
+    }
+
+    @Test
+    public void lumaIsCopied() throws Exception {
+        byte[] nv21 = frame(77, 128, 128);
+        byte[] luma = new byte[WIDTH * HEIGHT];
+
+        YuvConverter.nv21ToLuma(nv21, WIDTH, HEIGHT, luma);
+
+        for (byte l : luma) {
+            assertEquals(77, l);
+        }
+    }
+
+    @Test
+    public void argbLumaUsesBt601Weights() throws Exception {
+        int[] argb = {0xFFFFFFFF, 0xFF000000, 0xFFFF0000, 0xFF00FF00, 0xFF0000FF};
+        byte[] luma = new byte[argb.length];
+
+        YuvConverter.argbToLuma(argb, argb.length, 1, luma);
+
+        assertEquals(255, luma[0] & 0xFF);
+        assertEquals(0, luma[1] & 0xFF);
+        assertEquals(77, luma[2] & 0xFF);
+        assertEquals(149, luma[3] & 0xFF);
+        assertEquals(29, luma[4] & 0xFF);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedFrameIsRejected() throws Exception {
+        YuvConverter.nv21ToLuma(new byte[WIDTH * HEIGHT], WIDTH, HEIGHT, new byte[WIDTH * HEIGHT]);
+    }
+
+    private static byte[] frame(int y, int u, int v) {
+        byte[] nv21 = new byte[YuvConverter.nv21Size(WIDTH, HEIGHT)];
+        Arrays.fill(nv21, 0, WIDTH * HEIGHT, (byte) y);
+        for (int i = WIDTH * HEIGHT; i < nv21.length; i += 2) {
+            nv21[i] = (byte) v;
+            nv21[i + 1] = (byte) u;
+        }
+        return nv21;
+    }
+}
@@ -0,0 +1,481 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.loadtest;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpContent;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.javanet.NetHttpTransport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.hammarstrom.imagerecognition.core.AnnotateRequestWriter;
+import me.hammarstrom.imagerecognition.core.JpegEncoder;
+import me.hammarstrom.imagerecognition.core.LatencyHistogram;
+import me.hammarstrom.imagerecognition.core.VisionResponseParser;
+import me.hammarstrom.imagerecognition.core.VisionResult;
+
+/**
+ * Replays a corpus of JPEGs through the images:annotate request path at a
+ * fixed concurrency and reports throughput, latency and bytes on the wire.
+ *
+ * Requests are built and sent like the app sends them: the body is streamed
+ * by an {@link AnnotateRequestWriter} over a {@link NetHttpTransport} with the
+ * app's timeouts and no retries, and the response is streamed through a
+ * {@link VisionResponseParser}. Bytes on the wire are the request and
+ * response bodies, HTTP headers and chunk framing are not counted.
+ */
+public class LoadGenerator {
+
+    // Same features and timeouts as CloudVisionRequest and VisionClientHolder
+    private static final String[] FEATURE_TYPES = {"LABEL_DETECTION", "FACE_DETECTION"};
+    private static final int[] FEATURE_MAX_RESULTS = {5, 10};
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int READ_TIMEOUT_MS = 10000;
+
+    // Sizes of the synthetic corpus, as scaled down by the app before upload
+    private static final int[][] SYNTHETIC_SIZES = {{1100, 825}, {825, 1100}, {1100, 619}, {640, 480}};
+    private static final int SYNTHETIC_QUALITY = 90;
+
+    private final String mAnnotateUrl;
+    private final List<byte[]> mCorpus;
+    private final int mConcurrency;
+    private final int mBatchSize;
+
+    private final NetHttpTransport mTransport;
+    private final HttpRequestFactory mRequestFactory;
+
+    private final ThreadLocal<VisionResponseParser> mParser = new ThreadLocal<VisionResponseParser>() {
+        @Override
+        protected VisionResponseParser initialValue() {
+            return new VisionResponseParser();
+        }
+    };
+
+    /**
+     * @param rootUrl The root URL of the API, ex. https://vision.googleapis.com/
+     * @param apiKey An API key, or null if the server doesn't need one
+     * @param corpus The JPEGs to send, in turn
+     * @param concurrency Number of requests in flight at once
+     * @param batchSize Number of images in each request
+     */
+    public LoadGenerator(String rootUrl, String apiKey, List<byte[]> corpus, int concurrency, int batchSize) {
+        if (corpus.isEmpty()) {
+            throw new IllegalArgumentException("The corpus is empty");
+        }
+
+        GenericUrl url = new GenericUrl(rootUrl + "v1/images:annotate");
+        if (apiKey != null) {
+            url.put("key", apiKey);
+        }
+        mAnnotateUrl = url.build();
+        mCorpus = corpus;
+        mConcurrency = concurrency;
+        mBatchSize = batchSize;
+
+        // HttpURLConnection keeps at most this many idle connections per host
+        System.setProperty("http.maxConnections", String.valueOf(concurrency));
+
+        mTransport = new NetHttpTransport();
+        mRequestFactory = mTransport.createRequestFactory(new HttpRequestInitializer() {
+            @Override
+            public void initialize(HttpRequest request) throws IOException {
+                request.setConnectTimeout(CONNECT_TIMEOUT_MS);
+                request.setReadTimeout(READ_TIMEOUT_MS);
+                request.setNumberOfRetries(0);
+            }
+        });
+    }
+
+    /**
+     * Send requests until the count is reached or the time is up, whichever comes first
+     *
+     * @param requestCount Number of requests to send
+     * @param durationMs Max time to send requests for, 0 for no limit
+     * @return the result of the run
+     * @throws InterruptedException
+     */
+    public Report run(final int requestCount, long durationMs) throws InterruptedException {
+        final Report report = new Report(mConcurrency, mBatchSize);
+        final AtomicInteger next = new AtomicInteger();
+        final long deadline = durationMs > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMs) : Long.MAX_VALUE;
+
+        ExecutorService executor = Executors.newFixedThreadPool(mConcurrency);
+        long start = System.nanoTime();
+        for (int i = 0; i < mConcurrency; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    int index;
+                    while ((index = next.getAndIncrement()) < requestCount && System.nanoTime() < deadline) {
+                        sendOne(index, report);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        report.mElapsedNs = System.nanoTime() - start;
+        return report;
+    }
+
+    public void shutdown() throws IOException {
+        mTransport.shutdown();
+    }
+
+    private void sendOne(int index, Report report) {
+        List<AnnotateRequestWriter.Entry> entries = new ArrayList<>(mBatchSize);
+        for (int i = 0; i < mBatchSize; i++) {
+            final byte[] jpeg = mCorpus.get((index * mBatchSize + i) % mCorpus.size());
+            entries.add(new AnnotateRequestWriter.Entry(new AnnotateRequestWriter.JpegWriter() {
+                @Override
+                public void writeJpeg(OutputStream out) throws IOException {
+                    out.write(jpeg);
+                }
+            }, FEATURE_TYPES, FEATURE_MAX_RESULTS));
+        }
+        StreamingContent content = new StreamingContent(entries);
+
+        long start = System.nanoTime();
+        try {
+            HttpRequest request = mRequestFactory.buildPostRequest(new GenericUrl(mAnnotateUrl), content);
+            request.setThrowExceptionOnExecuteError(false);
+            HttpResponse response = request.execute();
+
+            InputStream body = response.getContent();
+            CountingInputStream in = new CountingInputStream(body != null ? body : new ByteArrayInputStream(new byte[0]));
+            try {
+                if (!response.isSuccessStatusCode()) {
+                    drain(in);
+                    report.failed(String.valueOf(response.getStatusCode()));
+                    return;
+                }
+
+                List<VisionResult> results = mParser.get().parse(in);
+                drain(in);
+                if (results.size() != mBatchSize) {
+                    report.failed("missing responses");
+                    return;
+                }
+
+                report.succeeded(System.nanoTime() - start);
+            } finally {
+                report.mBytesReceived.addAndGet(in.getCount());
+                // Closing the fully read body, rather than disconnecting, keeps the connection alive
+                in.close();
+            }
+        } catch (IOException e) {
+            report.failed(e.getClass().getSimpleName());
+        } finally {
+            report.mBytesSent.addAndGet(content.getBytesWritten());
+        }
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[4096];
+        while (in.read(buffer) != -1) {
+            // Read to the end so the connection can be reused
+        }
+    }
+
+    /**
+     * Outcome of a run.
+     */
+    public static class Report {
+
+        private final int mConcurrency;
+        private final int mBatchSize;
+
+        private final LatencyHistogram mLatency = new LatencyHistogram();
+        private final AtomicLong mBytesSent = new AtomicLong();
+        private final AtomicLong mBytesReceived = new AtomicLong();
+        private final Map<String, AtomicInteger> mFailures = new TreeMap<>();
+        private final AtomicInteger mFailureCount = new AtomicInteger();
+        private long mElapsedNs;
+
+        Report(int concurrency, int batchSize) {
+            mConcurrency = concurrency;
+            mBatchSize = batchSize;
+        }
+
+        void succeeded(long durationNs) {
+            mLatency.record(durationNs);
+        }
+
+        void failed(String reason) {
+            mFailureCount.incrementAndGet();
+            synchronized (mFailures) {
+                AtomicInteger count = mFailures.get(reason);
+                if (count == null) {
+                    count = new AtomicInteger();
+                    mFailures.put(reason, count);
+                }
+                count.incrementAndGet();
+            }
+        }
+
+        public long getSuccessCount() {
+            return mLatency.getCount();
+        }
+
+        public int getFailureCount() {
+            return mFailureCount.get();
+        }
+
+        public long getRequestCount() {
+            return getSuccessCount() + getFailureCount();
+        }
+
+        /**
+         * Get successful requests per second
+         *
+         * @return throughput
+         */
+        public double getRequestsPerSecond() {
+            return mElapsedNs > 0 ? getSuccessCount() * 1e9 / mElapsedNs : 0;
+        }
+
+        public LatencyHistogram getLatency() {
+            return mLatency;
+        }
+
+        public long getBytesSent() {
+            return mBytesSent.get();
+        }
+
+        public long getBytesReceived() {
+            return mBytesReceived.get();
+        }
+
+        @Override
+        public String toString() {
+            long requests = Math.max(1, getRequestCount());
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.US, "requests: %d, ok: %d, failed: %d in %.2f s at concurrency %d, %d image(s) per request%n",
+                    getRequestCount(), getSuccessCount(), getFailureCount(), mElapsedNs / 1e9, mConcurrency, mBatchSize));
+            sb.append(String.format(Locale.US, "throughput: %.1f requests/s, %.1f images/s%n",
+                    getRequestsPerSecond(), getRequestsPerSecond() * mBatchSize));
+            sb.append(String.format(Locale.US, "latency: p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms, mean %.1f ms%n",
+                    mLatency.getPercentileMs(50), mLatency.getPercentileMs(90), mLatency.getPercentileMs(99),
+                    mLatency.getMaxMs(), mLatency.getMeanMs()));
+            sb.append(String.format(Locale.US, "wire: sent %.1f KB (%.1f KB/request), received %.1f KB (%.1f KB/request)",
+                    getBytesSent() / 1024.0, getBytesSent() / 1024.0 / requests,
+                    getBytesReceived() / 1024.0, getBytesReceived() / 1024.0 / requests));
+            synchronized (mFailures) {
+                if (!mFailures.isEmpty()) {
+                    sb.append(String.format("%nfailures: ")).append(mFailures);
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Request body written by an {@link AnnotateRequestWriter}, like the app's
+     * AnnotateRequestContent, counting the bytes written.
+     */
+    private static class StreamingContent implements HttpContent {
+
+        private final List<AnnotateRequestWriter.Entry> mEntries;
+        private final AtomicLong mBytesWritten = new AtomicLong();
+
+        StreamingContent(List<AnnotateRequestWriter.Entry> entries) {
+            mEntries = entries;
+        }
+
+        long getBytesWritten() {
+            return mBytesWritten.get();
+        }
+
+        @Override
+        public long getLength() throws IOException {
+            return -1;
+        }
+
+        @Override
+        public String getType() {
+            return "application/json; charset=UTF-8";
+        }
+
+        @Override
+        public boolean retrySupported() {
+            return true;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            CountingOutputStream counting = new CountingOutputStream(out);
+            try {
+                AnnotateRequestWriter.write(counting, mEntries);
+            } finally {
+                mBytesWritten.addAndGet(counting.mCount);
+            }
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        long mCount;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            mCount++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            mCount += len;
+        }
+    }
+
+    /**
+     * Load the JPEGs of a directory, or synthesize a corpus if no directory is given
+     *
+     * @param directory The directory, or null
+     * @return the corpus
+     * @throws IOException
+     */
+    static List<byte[]> loadCorpus(String directory) throws IOException {
+        List<byte[]> corpus = new ArrayList<>();
+        if (directory == null) {
+            for (int[] size : SYNTHETIC_SIZES) {
+                corpus.add(syntheticJpeg(size[0], size[1]));
+            }
+            return corpus;
+        }
+
+        File[] files = new File(directory).listFiles();
+        if (files == null) {
+            throw new IOException("Not a directory: " + directory);
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            String name = file.getName().toLowerCase(Locale.US);
+            if (name.endsWith(".jpg") || name.endsWith(".jpeg")) {
+                corpus.add(readFile(file));
+            }
+        }
+        return corpus;
+    }
+
+    private static byte[] syntheticJpeg(int width, int height) throws IOException {
+        // Gradients with a bit of noise compress roughly like camera pictures
+        Random random = new Random(width * 31L + height);
+        int[] argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(16);
+                int r = (x * 255 / width + noise) & 0xFF;
+                int g = (y * 255 / height + noise) & 0xFF;
+                int b = ((x ^ y) & 0x3F) + noise + 96;
+                argb[y * width + x] = 0xFF000000 | r << 16 | g << 8 | b;
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(width * height / 4);
+        new JpegEncoder().encode(argb, width, height, SYNTHETIC_QUALITY, out);
+        return out.toByteArray();
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Run a load test and print the report. Options:
+     * --url (root URL, a mock server is started when left out), --key, --corpus (a directory of JPEGs),
+     * --concurrency, --requests, --duration-s, --batch and --warmup. The options of
+     * {@link MockVisionServer#main(String[])} configure the mock server.
+     */
+    public static void main(String[] args) throws Exception {
+        Arguments arguments = new Arguments(args);
+
+        MockVisionServer server = null;
+        String rootUrl = arguments.getString("url", null);
+        if (rootUrl == null) {
+            server = new MockVisionServer(MockVisionServer.Options.fromArguments(arguments).setPort(0));
+            server.start();
+            rootUrl = server.getRootUrl();
+        }
+
+        List<byte[]> corpus = loadCorpus(arguments.getString("corpus", null));
+        LoadGenerator generator = new LoadGenerator(rootUrl, arguments.getString("key", null), corpus,
+                arguments.getInt("concurrency", 4), arguments.getInt("batch", 1));
+        System.out.println("Sending " + corpus.size() + " JPEGs to " + rootUrl);
+
+        try {
+            // Open connections and let the JIT settle before anything is measured
+            int warmup = arguments.getInt("warmup", 20);
+            if (warmup > 0) {
+                generator.run(warmup, 0);
+            }
+            if (server != null) {
+                server.resetCounts();
+            }
+
+            long durationMs = TimeUnit.SECONDS.toMillis(arguments.getLong("duration-s", 0));
+            int requests = arguments.getInt("requests", durationMs > 0 ? Integer.MAX_VALUE : 200);
+            System.out.println(generator.run(requests, durationMs));
+            if (server != null) {
+                System.out.println("server: " + server);
+            }
+        } finally {
+            generator.shutdown();
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+}
@@ -0,0 +1,453 @@
+/*
+ Copyright 2016 Fredrik Hammarström
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package me.hammarstrom.imagerecognition.loadtest;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the Vision API speaking the images:annotate JSON contract.
+ *
+ * Every image of a request is answered with one of the responses of a
+ * canned or recorded {@code BatchAnnotateImagesResponse}, in turn, so the
+ * client gets as many responses as it sent images. Latency, stalls and
+ * error statuses can be injected to see how the client copes with a slow
+ * or failing backend without paying for real requests.
+ */
+public class MockVisionServer {
+
+    public static final String ANNOTATE_PATH = "/v1/images:annotate";
+
+    // The bundled response, recorded from the real API for a picture with two faces
+    static final String RECORDED_RESPONSE = "/annotate-response.json";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * What the server answers and how badly it behaves
+     */
+    public static class Options {
+        int port = 8080;
+        int threads = 64;
+        long latencyMs;
+        long jitterMs;
+        double errorRate;
+        int errorStatus = 503;
+        double stallRate;
+        long stallMs = 30000;
+        long seed = 42;
+        String responseJson;
+
+        public Options setPort(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Options setThreads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * @param latencyMs Fixed time added before every response
+         * @param jitterMs Upper bound of a uniformly distributed extra time
+         */
+        public Options setLatency(long latencyMs, long jitterMs) {
+            this.latencyMs = latencyMs;
+            this.jitterMs = jitterMs;
+            return this;
+        }
+
+        /**
+         * @param errorRate Share of requests answered with an error, 0 to 1
+         * @param errorStatus The HTTP status of the errors, ex. 429 or 503
+         */
+        public Options setErrors(double errorRate, int errorStatus) {
+            this.errorRate = errorRate;
+            this.errorStatus = errorStatus;
+            return this;
+        }
+
+        /**
+         * @param stallRate Share of requests held before they are answered, 0 to 1
+         * @param stallMs How long they are held, ex. longer than the client's read timeout
+         */
+        public Options setStalls(double stallRate, long stallMs) {
+            this.stallRate = stallRate;
+            this.stallMs = stallMs;
+            return this;
+        }
+
+        public Options setSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * @param responseJson A BatchAnnotateImagesResponse, null for the bundled recording
+         */
+        public Options setResponseJson(String responseJson) {
+            this.responseJson = responseJson;
+            return this;
+        }
+
+        static Options fromArguments(Arguments args) throws IOException {
+            Options options = new Options()
+                    .setPort(args.getInt("port", 8080))
+                    .setThreads(args.getInt("threads", 64))
+                    .setLatency(args.getLong("latency-ms", 0), args.getLong("jitter-ms", 0))
+                    .setErrors(args.getDouble("error-rate", 0), args.getInt("error-status", 503))
+                    .setStalls(args.getDouble("stall-rate", 0), args.getLong("stall-ms", 30000))
+                    .setSeed(args.getLong("seed", 42));
+            if (args.has("response")) {
+                options.setResponseJson(readFile(args.getString("response", null)));
+            }
+            return options;
+        }
+    }
+
+    private final Options mOptions;
+    private final String[] mResponses;
+    private final Random mRandom;
+
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mImageCount = new AtomicLong();
+    private final AtomicLong mErrorCount = new AtomicLong();
+    private final AtomicLong mStallCount = new AtomicLong();
+    private final AtomicLong mBytesReceived = new AtomicLong();
+    private final AtomicLong mBytesSent = new AtomicLong();
+
+    private HttpServer mServer;
+    private ExecutorService mExecutor;
+
+    public MockVisionServer(Options options) throws IOException {
+        mOptions = options;
+        mResponses = splitResponses(options.responseJson != null ? options.responseJson : readResource(RECORDED_RESPONSE));
+        mRandom = new Random(options.seed);
+    }
+
+    /**
+     * Start listening on the port of the options, 0 for any free port
+     *
+     * @throws IOException
+     */
+    public synchronized void start() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(mOptions.port), 0);
+        mServer.createContext(ANNOTATE_PATH, new AnnotateHandler());
+        mServer.createContext("/", new NotFoundHandler());
+
+        // Injected latency blocks a thread per request, so the pool bounds the concurrency served
+        mExecutor = Executors.newFixedThreadPool(mOptions.threads);
+        mServer.setExecutor(mExecutor);
+        mServer.start();
+    }
+
+    public synchronized void stop() {
+        if (mServer != null) {
+            mServer.stop(0);
+            mExecutor.shutdownNow();
+            mServer = null;
+            mExecutor = null;
+        }
+    }
+
+    public synchronized int getPort() {
+        return mServer.getAddress().getPort();
+    }
+
+    /**
+     * Get the root URL to give the client in place of https://vision.googleapis.com/
+     *
+     * @return root url
+     */
+    public String getRootUrl() {
+        return "http://localhost:" + getPort() + "/";
+    }
+
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    public long getImageCount() {
+        return mImageCount.get();
+    }
+
+    public long getErrorCount() {
+        return mErrorCount.get();
+    }
+
+    public long getStallCount() {
+        return mStallCount.get();
+    }
+
+    public long getBytesReceived() {
+        return mBytesReceived.get();
+    }
+
+    public long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    public void resetCounts() {
+        mRequestCount.set(0);
+        mImageCount.set(0);
+        mErrorCount.set(0);
+        mStallCount.set(0);
+        mBytesReceived.set(0);
+        mBytesSent.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "requests: %d, images: %d, errors: %d, stalls: %d, received: %d B, sent: %d B",
+                getRequestCount(), getImageCount(), getErrorCount(), getStallCount(), getBytesReceived(), getBytesSent());
+    }
+
+    private class AnnotateHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                if (!"POST".equals(exchange.getRequestMethod())) {
+                    sendError(exchange, 405, "METHOD_NOT_ALLOWED", "Use POST");
+                    return;
+                }
+
+                mRequestCount.incrementAndGet();
+
+                CountingInputStream in = new CountingInputStream(exchange.getRequestBody());
+                int imageCount;
+                try {
+                    imageCount = countImages(new InputStreamReader(in, UTF_8));
+                } catch (IOException | IllegalStateException e) {
+                    sendError(exchange, 400, "INVALID_ARGUMENT", "Invalid JSON payload received. " + e.getMessage());
+                    return;
+                } finally {
+                    mBytesReceived.addAndGet(in.getCount());
+                }
+                mImageCount.addAndGet(imageCount);
+
+                double error;
+                double stall;
+                long jitter;
+                synchronized (mRandom) {
+                    error = mRandom.nextDouble();
+                    stall = mRandom.nextDouble();
+                    jitter = mOptions.jitterMs > 0 ? (long) (mRandom.nextDouble() * mOptions.jitterMs) : 0;
+                }
+
+                long delayMs = mOptions.latencyMs + jitter;
+                if (stall < mOptions.stallRate) {
+                    mStallCount.incrementAndGet();
+                    delayMs = mOptions.stallMs;
+                }
+                if (delayMs > 0) {
+                    Thread.sleep(delayMs);
+                }
+
+                if (error < mOptions.errorRate) {
+                    mErrorCount.incrementAndGet();
+                    sendError(exchange, mOptions.errorStatus, statusName(mOptions.errorStatus), "Injected error");
+                    return;
+                }
+
+                send(exchange, 200, buildResponse(imageCount));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    private class NotFoundHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                sendError(exchange, 404, "NOT_FOUND", "Only " + ANNOTATE_PATH + " is served");
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     * Count the entries of the requests array, skipping over the image content
+     *
+     * @param reader The request body
+     * @return number of images in the request
+     * @throws IOException
+     */
+    static int countImages(Reader reader) throws IOException {
+        JsonReader json = new JsonReader(reader);
+        int count = 0;
+        json.beginObject();
+        while (json.hasNext()) {
+            if ("requests".equals(json.nextName())) {
+                json.beginArray();
+                while (json.hasNext()) {
+                    json.skipValue();
+                    count++;
+                }
+                json.endArray();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        return count;
+    }
+
+    /**
+     * Answer every image with the next recorded response, in turn
+     *
+     * @param imageCount Number of images in the request
+     * @return the response JSON
+     */
+    String buildResponse(int imageCount) {
+        StringBuilder sb = new StringBuilder("{\"responses\":[");
+        for (int i = 0; i < imageCount; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(mResponses[i % mResponses.length]);
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static String[] splitResponses(String batchResponse) {
+        JsonElement root = new JsonParser().parse(batchResponse);
+        JsonArray responses = root.getAsJsonObject().getAsJsonArray("responses");
+        if (responses == null || responses.size() == 0) {
+            throw new IllegalArgumentException("The response has no responses to replay");
+        }
+
+        String[] split = new String[responses.size()];
+        for (int i = 0; i < split.length; i++) {
+            split[i] = responses.get(i).toString();
+        }
+        return split;
+    }
+
+    private void sendError(HttpExchange exchange, int code, String status, String message) throws IOException {
+        // Same shape as the errors of Google APIs, so GoogleJsonResponseException can parse it
+        JsonObject error = new JsonObject();
+        error.addProperty("code", code);
+        error.addProperty("message", message);
+        error.addProperty("status", status);
+        JsonObject body = new JsonObject();
+        body.add("error", error);
+        send(exchange, code, body.toString());
+    }
+
+    private void send(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+        mBytesSent.addAndGet(bytes.length);
+    }
+
+    private static String statusName(int code) {
+        switch (code) {
+            case 400:
+                return "INVALID_ARGUMENT";
+            case 403:
+                return "PERMISSION_DENIED";
+            case 429:
+                return "RESOURCE_EXHAUSTED";
+            case 503:
+                return "UNAVAILABLE";
+            case 504:
+                return "DEADLINE_EXCEEDED";
+            default:
+                return "INTERNAL";
+        }
+    }
+
+    static String readResource(String name) throws IOException {
+        InputStream in = MockVisionServer.class.getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("Missing resource " + name);
+        }
+        return readFully(in);
+    }
+
+    static String readFile(String path) throws IOException {
+        return readFully(new FileInputStream(path));
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Run a server until the process is stopped. Options:
+     * --port, --threads, --latency-ms, --jitter-ms, --error-rate, --error-status,
+     * --stall-rate, --stall-ms, --seed and --response (a recorded response JSON file).
+     */
+    public static void main(String[] args) throws Exception {
+        final MockVisionServer server = new MockVisionServer(Options.fromArguments(new Arguments(args)));
+        server.start();
+        System.out.println("Mock Vision API at " + server.getRootUrl() + ANNOTATE_PATH.substring(1));
+
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                server.stop();
+                System.out.println(server);
+            }
+        });
+
+        while (true) {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+            System.out.println(server);
+        }
+    }
+}
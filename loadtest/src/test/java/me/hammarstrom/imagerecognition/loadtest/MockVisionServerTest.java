@@ -0,0 +1,159 @@
+package me.hammarstrom.imagerecognition.loadtest;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import me.hammarstrom.imagerecognition.core.AnnotateRequestWriter;
+
+import static org.junit.Assert.*;
+
+public class MockVisionServerTest {
+
+    private MockVisionServer mServer;
+
+    @After
+    public void tearDown() throws Exception {
+        if (mServer != null) {
+            mServer.stop();
+        }
+    }
+
+    @Test
+    public void imagesAreCountedWithoutReadingTheirContent() throws Exception {
+        String body = "{\"requests\":[{\"image\":{\"content\":\"AAAA\"},\"features\":[{\"type\":\"LABEL_DETECTION\"}]},"
+                + "{\"image\":{\"content\":\"BBBB\"}}],\"other\":1}";
+
+        assertEquals(2, MockVisionServer.countImages(new StringReader(body)));
+        assertEquals(0, MockVisionServer.countImages(new StringReader("{\"requests\":[]}")));
+    }
+
+    @Test
+    public void everyImageGetsAResponse() throws Exception {
+        start(new MockVisionServer.Options());
+
+        HttpURLConnection connection = post(request(3));
+        assertEquals(200, connection.getResponseCode());
+
+        JsonObject response = new JsonParser().parse(read(connection.getInputStream())).getAsJsonObject();
+        assertEquals(3, response.getAsJsonArray("responses").size());
+        assertTrue(response.getAsJsonArray("responses").get(0).getAsJsonObject().has("labelAnnotations"));
+
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals(3, mServer.getImageCount());
+        assertTrue(mServer.getBytesReceived() > 0);
+        assertTrue(mServer.getBytesSent() > 0);
+    }
+
+    @Test
+    public void cannedResponsesAreReplayedInTurn() throws Exception {
+        start(new MockVisionServer.Options().setResponseJson("{\"responses\":[{\"a\":1},{\"b\":2}]}"));
+
+        assertEquals("{\"responses\":[{\"a\":1},{\"b\":2},{\"a\":1}]}", mServer.buildResponse(3));
+    }
+
+    @Test
+    public void errorsAreInjected() throws Exception {
+        start(new MockVisionServer.Options().setErrors(1, 429));
+
+        HttpURLConnection connection = post(request(1));
+        assertEquals(429, connection.getResponseCode());
+
+        JsonObject error = new JsonParser().parse(read(connection.getErrorStream())).getAsJsonObject().getAsJsonObject("error");
+        assertEquals(429, error.get("code").getAsInt());
+        assertEquals("RESOURCE_EXHAUSTED", error.get("status").getAsString());
+        assertEquals(1, mServer.getErrorCount());
+    }
+
+    @Test
+    public void latencyIsInjected() throws Exception {
+        start(new MockVisionServer.Options().setLatency(100, 0));
+
+        long start = System.nanoTime();
+        assertEquals(200, post(request(1)).getResponseCode());
+        assertTrue(System.nanoTime() - start >= 100000000L);
+    }
+
+    @Test
+    public void invalidRequestsAreRejected() throws Exception {
+        start(new MockVisionServer.Options());
+
+        assertEquals(400, post("{\"requests\":".getBytes("UTF-8")).getResponseCode());
+    }
+
+    @Test
+    public void loadGeneratorReportsEveryRequest() throws Exception {
+        start(new MockVisionServer.Options().setErrors(0.5, 503));
+
+        List<byte[]> corpus = Arrays.asList(new byte[]{1, 2, 3}, new byte[]{4, 5});
+        LoadGenerator generator = new LoadGenerator(mServer.getRootUrl(), null, corpus, 2, 2);
+        LoadGenerator.Report report;
+        try {
+            report = generator.run(20, 0);
+        } finally {
+            generator.shutdown();
+        }
+
+        assertEquals(20, report.getRequestCount());
+        assertEquals(mServer.getErrorCount(), report.getFailureCount());
+        assertEquals(20 - mServer.getErrorCount(), report.getSuccessCount());
+        assertEquals(mServer.getBytesReceived(), report.getBytesSent());
+        assertEquals(mServer.getBytesSent(), report.getBytesReceived());
+        assertTrue(report.getLatency().getPercentileMs(99) > 0);
+    }
+
+    private void start(MockVisionServer.Options options) throws IOException {
+        mServer = new MockVisionServer(options.setPort(0).setThreads(4));
+        mServer.start();
+    }
+
+    private HttpURLConnection post(byte[] body) throws IOException {
+        URL url = new URL(mServer.getRootUrl() + MockVisionServer.ANNOTATE_PATH.substring(1));
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        OutputStream out = connection.getOutputStream();
+        out.write(body);
+        out.close();
+        return connection;
+    }
+
+    private static byte[] request(int imageCount) throws IOException {
+        List<AnnotateRequestWriter.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < imageCount; i++) {
+            entries.add(new AnnotateRequestWriter.Entry(new AnnotateRequestWriter.JpegWriter() {
+                @Override
+                public void writeJpeg(OutputStream out) throws IOException {
+                    out.write(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xD9});
+                }
+            }, new String[]{"LABEL_DETECTION"}, new int[]{5}));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AnnotateRequestWriter.write(out, entries);
+        return out.toByteArray();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toString("UTF-8");
+    }
+}